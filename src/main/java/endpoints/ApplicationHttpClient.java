@@ -0,0 +1,111 @@
+package endpoints;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP client used by all requests of one application, so that connections to backend servers
+ * (and their TLS handshakes) are reused across requests, and HTTP/2 is used where the server supports it.
+ *    <p>
+ * The underlying JDK client, and so its connections and threads, are shared by all applications,
+ * so that nothing needs to be closed when an application is reloaded.
+ *    <p>
+ * The number of concurrent requests from one application is limited,
+ * so that a slow backend cannot cause an unbounded number of open connections.
+ *    <p>
+ * The JDK client does not expose whether a particular request reused a connection,
+ * so the statistics count requests by the HTTP version negotiated instead.
+ */
+public class ApplicationHttpClient {
+
+    public record Statistics(
+        int maxConcurrentRequests, int inFlight, int waiting,
+        long requestCount, long http2ResponseCount, long failureCount, long timeoutCount
+    ) { }
+
+    protected final int maxConcurrentRequests;
+    protected final @Nonnull Duration requestTimeout;
+    protected final @Nonnull HttpClient client;
+    protected final @Nonnull Semaphore permits;
+    protected final @Nonnull AtomicLong requestCount = new AtomicLong(), http2ResponseCount = new AtomicLong(),
+        failureCount = new AtomicLong(), timeoutCount = new AtomicLong();
+
+    /** @param requestTimeout maximum time to wait for the response headers, after the connection has been made */
+    public ApplicationHttpClient(@Nonnull HttpClient client, int maxConcurrentRequests, @Nonnull Duration requestTimeout) {
+        if (maxConcurrentRequests < 1) throw new IllegalArgumentException(
+            "Maximum concurrent HTTP requests must be at least 1, not " + maxConcurrentRequests);
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requestTimeout = requestTimeout;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        this.client = client;
+    }
+
+    public static @Nonnull HttpClient newHttpClient(@Nonnull Duration connectTimeout) {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(connectTimeout)
+            .build();
+    }
+
+    protected static final @Nonnull HttpClient httpClientForTesting = newHttpClient(Duration.ofSeconds(10));
+
+    public static @Nonnull ApplicationHttpClient newForTesting() {
+        return new ApplicationHttpClient(httpClientForTesting, 10, Duration.ofSeconds(60));
+    }
+
+    /** The response body must be read or closed by the caller, otherwise the connection cannot be reused */
+    public @Nonnull HttpResponse<InputStream> send(@Nonnull HttpRequest.Builder request) throws IOException {
+        request.timeout(requestTimeout);
+
+        // Plain HTTP servers often don't understand the "h2c" upgrade, so only negotiate HTTP/2 over TLS
+        var built = request.build();
+        if ("http".equalsIgnoreCase(built.uri().getScheme()))
+            built = request.version(HttpClient.Version.HTTP_1_1).build();
+
+        try {
+            if ( ! permits.tryAcquire(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new IOException("Timeout after " + requestTimeout.toMillis() + "ms waiting for one of the " +
+                    maxConcurrentRequests + " concurrent HTTP requests allowed to complete");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting to send HTTP request", e);
+        }
+
+        try {
+            requestCount.incrementAndGet();
+            var response = client.send(built, BodyHandlers.ofInputStream());
+            if (response.version() == HttpClient.Version.HTTP_2) http2ResponseCount.incrementAndGet();
+            return response;
+        }
+        catch (IOException e) {
+            failureCount.incrementAndGet();
+            throw e;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failureCount.incrementAndGet();
+            throw new IOException("Interrupted waiting for HTTP response", e);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    public @Nonnull Statistics getStatistics() {
+        return new Statistics(maxConcurrentRequests, maxConcurrentRequests - permits.availablePermits(),
+            permits.getQueueLength(), requestCount.get(), http2ResponseCount.get(), failureCount.get(), timeoutCount.get());
+    }
+}
@@ -1,18 +1,15 @@
 package endpoints;
 
 import com.databasesandlife.util.EmailTransaction;
-import com.databasesandlife.util.Timer;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.databasesandlife.util.jdbc.DbTransaction;
 import endpoints.config.Application;
-import endpoints.config.ApplicationName;
 import endpoints.config.IntermediateValueName;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.*;
 
-import static endpoints.generated.jooq.Tables.APPLICATION_PUBLISH;
-
 /**
  * Represents a unit of work a user wishes to perform.
  *    <p>
@@ -35,28 +32,18 @@ public class ApplicationTransaction implements AutoCloseable {
     public final @Nonnull DbTransaction db = DeploymentParameters.get().newDbTransaction();
     protected final @Nonnull List<DbTransaction> additionalDbs = new ArrayList<>();
     protected final @Nonnull Map<Set<String>, EmailTransaction> email = new HashMap<>();
+    protected final @Nonnull RequestMetrics.InProgress inProgress = RequestMetrics.shared.startTransaction();
+    protected @CheckForNull RequestMetrics.Labels emailMetricLabels = null;
     
     public ApplicationTransaction(@Nonnull Application a) {
         this.application = a;
 
-        // This is necessary so that "SELECT FOR UPDATE" can be used, 
-        // and that committed values from other transactions can be read after the lock is acquired.
-        // (With REPEATABLE READ, even after SELECT FOR UPDATE acquires the lock, values from the start of the tx are read.)
+        // This is necessary so that the on-demand incrementing number counter can be incremented concurrently:
+        // after waiting for another transaction's row lock, the UPDATE sees that transaction's committed value.
+        // (With REPEATABLE READ, the UPDATE would fail with a serialization error instead.)
         db.execute("SET TRANSACTION ISOLATION LEVEL READ COMMITTED");
     }
 
-    public void acquireLock(
-        @Nonnull PublishEnvironment environment, @Nonnull ApplicationName applicationName
-    ) {
-        try (var ignored3 = new Timer("Acquire lock on '" + applicationName.name()
-            + "', environment '" + environment.name() + "'")) {
-            db.jooq().select().from(APPLICATION_PUBLISH)
-                .where(APPLICATION_PUBLISH.APPLICATION_NAME.eq(applicationName))
-                .and(APPLICATION_PUBLISH.ENVIRONMENT.eq(environment))
-                .forUpdate().fetchSingle();
-        }
-    }
-
     @SuppressWarnings("unused") // Used to be used when tasks could specify arbitrary DB connections, maybe useful in the future?
     public synchronized void addDatabaseConnection(@Nonnull DbTransaction db) {
         additionalDbs.add(db);
@@ -75,13 +62,19 @@ public class ApplicationTransaction implements AutoCloseable {
 
                 var tx = new EmailTransaction(config.generate(context, visibleIntermediateValues));
                 email.put(stringParams.keySet(), tx);
+                emailMetricLabels = RequestMetrics.Labels.of(context);
             }
             return email.get(stringParams.keySet());
         }
     }
 
     public void commit() {
-        email.values().forEach(e -> e.commit()); // more likely to go wrong, so place higher
+        if ( ! email.isEmpty()) {
+            assert emailMetricLabels != null;
+            try (var ignored = RequestMetrics.shared.start(RequestMetrics.Stage.emailSend, null, emailMetricLabels)) {
+                email.values().forEach(e -> e.commit()); // more likely to go wrong, so place higher
+            }
+        }
         db.commit();
         additionalDbs.forEach(db -> db.commit());
     }
@@ -89,5 +82,6 @@ public class ApplicationTransaction implements AutoCloseable {
     @Override public void close() { 
         db.close();
         additionalDbs.forEach(db -> db.close());
+        inProgress.close();
     }
 }
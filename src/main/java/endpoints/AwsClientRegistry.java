@@ -0,0 +1,46 @@
+package endpoints;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * AWS SDK clients shared by all requests.
+ *    <p>
+ * Each client has its own HTTP connection pool and credentials provider, which are expensive to create,
+ * and clients are thread-safe, so one client is created per service, region and endpoint override.
+ * Clients returned from here must not be closed by the caller; they are closed by {@link #close()} when the servlet is destroyed.
+ */
+@Slf4j
+public class AwsClientRegistry implements AutoCloseable {
+
+    /** @param region null means the SDK's default region */
+    protected record Key(@Nonnull Class<?> clientClass, @CheckForNull Region region, @CheckForNull URI endpointOverride) { }
+
+    protected final @Nonnull Map<Key, SdkAutoCloseable> clients = new ConcurrentHashMap<>();
+
+    /** @param newClient called only if no client for these parameters exists yet */
+    public <C extends SdkAutoCloseable> @Nonnull C get(
+        @Nonnull Class<C> clientClass, @CheckForNull Region region, @CheckForNull URI endpointOverride,
+        @Nonnull Supplier<C> newClient
+    ) {
+        var key = new Key(clientClass, region, endpointOverride);
+        return clientClass.cast(clients.computeIfAbsent(key, k -> newClient.get()));
+    }
+
+    @Override public void close() {
+        for (var i = clients.values().iterator(); i.hasNext(); ) {
+            var client = i.next();
+            i.remove();
+            try { client.close(); }
+            catch (RuntimeException e) { log.warn("Cannot close AWS client " + client, e); }
+        }
+    }
+}
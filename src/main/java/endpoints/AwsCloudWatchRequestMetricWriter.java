@@ -3,52 +3,200 @@ package endpoints;
 import com.databasesandlife.util.Timer;
 import endpoints.config.ApplicationName;
 import endpoints.config.NodeName;
-import lombok.RequiredArgsConstructor;
-import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.cloudwatch.model.Dimension;
 import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
 import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
 import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+import software.amazon.awssdk.services.cloudwatch.model.StatisticSet;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-/** Writes metrics to AWS CloudWatch */
-@RequiredArgsConstructor
-public class AwsCloudWatchRequestMetricWriter {
+/**
+ * Writes request metrics to AWS CloudWatch.
+ *    <p>
+ * Request durations are aggregated locally per application, endpoint, environment and status code,
+ * and each interval the aggregates are sent as CloudWatch statistic sets, in as few API calls as possible.
+ * The number of aggregates per interval is bounded; requests which would need a new aggregate once the bound is reached
+ * are dropped and counted, as are aggregates which cannot be sent.
+ *    <p>
+ * The aggregates are sent by a scheduler thread, which runs between {@link #start()} and {@link #close()}.
+ */
+@Slf4j
+public class AwsCloudWatchRequestMetricWriter implements AutoCloseable {
 
-    protected final @Nonnull CloudWatchClient client;
+    /** Maximum number of metric data in one PutMetricData request */
+    protected static final int maxDataPerRequest = 1000;
+
+    public record Statistics(int pendingSeries, long requestCount, long publishedCount, long droppedCount) { }
+
+    protected record Series(
+        @Nonnull ApplicationName application, @Nonnull NodeName endpoint, @Nonnull PublishEnvironment environment, int statusCode
+    ) { }
+
+    protected static class Aggregate {
+        long count = 0;
+        double sumMillis = 0, minMillis = Double.MAX_VALUE, maxMillis = 0;
+
+        void add(double millis) {
+            count++;
+            sumMillis += millis;
+            minMillis = Math.min(minMillis, millis);
+            maxMillis = Math.max(maxMillis, millis);
+        }
+    }
+
+    protected final @Nonnull CloudWatchAsyncClient client;
     protected final @Nonnull String instance;
-    
+    protected final @Nonnull Duration interval;
+    protected final int maxSeries;
+    protected @CheckForNull ScheduledExecutorService scheduler = null;
+    protected final @Nonnull AtomicLong requestCount = new AtomicLong(), publishedCount = new AtomicLong(),
+        droppedCount = new AtomicLong();
+
+    protected @Nonnull Instant intervalStart = Instant.now();
+    protected @Nonnull Map<Series, Aggregate> aggregates = new HashMap<>();
+
+    /** Completes once the metrics of the most recent publish have been sent */
+    protected @Nonnull CompletableFuture<Void> lastPublish = CompletableFuture.completedFuture(null);
+
+    /** @param maxSeries maximum number of (application, endpoint, environment, status code) combinations per interval */
+    public AwsCloudWatchRequestMetricWriter(
+        @Nonnull CloudWatchAsyncClient client, @Nonnull String instance, @Nonnull Duration interval, int maxSeries
+    ) {
+        this.client = client;
+        this.instance = instance;
+        this.interval = interval;
+        this.maxSeries = maxSeries;
+    }
+
+    /** Starts sending the aggregates at the end of each interval */
+    public synchronized void start() {
+        if (scheduler != null) throw new IllegalStateException("Metric writer has already been started");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, getClass().getSimpleName());
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::publish, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Does not block; the metric is sent with the others at the end of the current interval */
     public void scheduleWriteMetric(
         @Nonnull ApplicationName application, @Nonnull NodeName endpoint, @Nonnull PublishEnvironment environment,
-        @Nonnull Instant now, int statusCode, @Nonnull Duration duration
+        int statusCode, @Nonnull Duration duration
     ) {
-        Thread.startVirtualThread(() -> {
-            try (var ignored = new Timer("AwsCloudWatchRequestMetricWriter")) {
-                MetricDatum datum = MetricDatum.builder()
-                    .metricName("RequestDuration")
-                    .dimensions(
-                        Dimension.builder().name("Instance").value(instance).build(),
-                        Dimension.builder().name("Application").value(application.name()).build(),
-                        Dimension.builder().name("Endpoint").value(endpoint.getName()).build(),
-                        Dimension.builder().name("Environment").value(environment.name()).build(),
-                        Dimension.builder().name("StatusCode").value(String.valueOf(statusCode)).build()
-                    )
-                    .unit(StandardUnit.MILLISECONDS)
-                    .value((double) duration.toMillis())
-                    .timestamp(now)
-                    .build();
-    
-                PutMetricDataRequest request = PutMetricDataRequest.builder()
-                    .namespace("Endpoints")
-                    .metricData(List.of(datum))
-                    .build();
-    
-                client.putMetricData(request);
+        var series = new Series(application, endpoint, environment, statusCode);
+        requestCount.incrementAndGet();
+        synchronized (this) {
+            var aggregate = aggregates.get(series);
+            if (aggregate == null) {
+                if (aggregates.size() >= maxSeries) { droppedCount.incrementAndGet(); return; }
+                aggregates.put(series, aggregate = new Aggregate());
             }
-        });
+            aggregate.add((double) duration.toMillis());
+        }
+    }
+
+    protected @Nonnull MetricDatum newDatum(@Nonnull Instant timestamp, @Nonnull Series series, @Nonnull Aggregate aggregate) {
+        return MetricDatum.builder()
+            .metricName("RequestDuration")
+            .dimensions(
+                Dimension.builder().name("Instance").value(instance).build(),
+                Dimension.builder().name("Application").value(series.application().name()).build(),
+                Dimension.builder().name("Endpoint").value(series.endpoint().getName()).build(),
+                Dimension.builder().name("Environment").value(series.environment().name()).build(),
+                Dimension.builder().name("StatusCode").value(String.valueOf(series.statusCode())).build()
+            )
+            .unit(StandardUnit.MILLISECONDS)
+            .statisticValues(StatisticSet.builder()
+                .sampleCount((double) aggregate.count)
+                .sum(aggregate.sumMillis)
+                .minimum(aggregate.minMillis)
+                .maximum(aggregate.maxMillis)
+                .build())
+            .timestamp(timestamp)
+            .build();
+    }
+
+    /** Sends the aggregates of the interval which has just ended */
+    protected @Nonnull CompletableFuture<Void> publish() {
+        var result = sendAggregates();
+        synchronized (this) {
+            lastPublish = CompletableFuture.allOf(lastPublish, result);
+            return lastPublish;
+        }
+    }
+
+    protected @Nonnull CompletableFuture<Void> sendAggregates() {
+        Instant timestamp;
+        Map<Series, Aggregate> toPublish;
+        synchronized (this) {
+            timestamp = intervalStart;
+            toPublish = aggregates;
+            intervalStart = Instant.now();
+            aggregates = new HashMap<>();
+        }
+        if (toPublish.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        try (var ignored = new Timer(getClass().getSimpleName() + ": Publish " + toPublish.size() + " series")) {
+            var data = new ArrayList<MetricDatum>();
+            toPublish.forEach((series, aggregate) -> data.add(newDatum(timestamp, series, aggregate)));
+
+            var requests = new ArrayList<CompletableFuture<?>>();
+            for (var i = 0; i < data.size(); i += maxDataPerRequest) {
+                List<MetricDatum> batch = data.subList(i, Math.min(i + maxDataPerRequest, data.size()));
+                var request = PutMetricDataRequest.builder().namespace("Endpoints").metricData(batch).build();
+                requests.add(client.putMetricData(request).handle((response, e) -> { // Failure must not fail later publishes
+                    if (e == null) publishedCount.addAndGet(batch.size());
+                    else {
+                        droppedCount.addAndGet(batch.size());
+                        log.warn("Cannot write " + batch.size() + " metrics to AWS CloudWatch", e);
+                    }
+                    return null;
+                }));
+            }
+            return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]));
+        }
+        catch (RuntimeException e) {
+            droppedCount.addAndGet(toPublish.size());
+            log.warn("Cannot write metrics to AWS CloudWatch", e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /** Sends any metrics not yet sent, including those of a publish which is in progress, and waits for them to be sent */
+    @Override public void close() {
+        ScheduledExecutorService scheduler;
+        synchronized (this) { scheduler = this.scheduler; }
+        try {
+            if (scheduler != null) {
+                scheduler.shutdown(); // Cancels the next publish, but lets a publish which has started complete
+                if ( ! scheduler.awaitTermination(10, TimeUnit.SECONDS)) log.warn("Publishing metrics did not complete");
+            }
+            publish().get(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) { 
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted writing final metrics to AWS CloudWatch", e);
+        }
+        catch (Exception e) { log.warn("Cannot write final metrics to AWS CloudWatch", e); }
+    }
+
+    public synchronized @Nonnull Statistics getStatistics() {
+        return new Statistics(aggregates.size(), requestCount.get(), publishedCount.get(), droppedCount.get());
     }
 }
@@ -0,0 +1,89 @@
+package endpoints;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Threads shared by all requests for CPU-bound work such as XSLT and FOP, see {@link RequestThreads}.
+ *    <p>
+ * The pool is work-stealing, so that a thread whose own queue is empty takes work from the queues of the other threads.
+ * The number of threads is bounded, normally to the number of cores, so that many concurrent requests
+ * do not oversubscribe the CPU.
+ *    <p>
+ * Admission control: once the number of queued tasks exceeds a threshold, new requests are rejected
+ * before they start, rather than being queued behind work which is already late.
+ * Requests already executing are not affected.
+ */
+public class CpuThreads implements AutoCloseable {
+
+    public record Statistics(int threadCount, int activeThreadCount, long queueLength, long rejectedCount) { }
+
+    protected final @Nonnull ForkJoinPool pool;
+    protected final long maxQueueLength;
+    public final @Nonnull Duration retryAfter;
+    protected final @Nonnull AtomicLong rejectedCount = new AtomicLong();
+
+    /** @param maxQueueLength new requests are rejected while more tasks than this are waiting for a thread */
+    public CpuThreads(int threadCount, long maxQueueLength, @Nonnull Duration retryAfter) {
+        if (threadCount < 1) throw new IllegalArgumentException("CPU threads must be at least 1, not " + threadCount);
+        var threadNumber = new AtomicInteger();
+        this.pool = new ForkJoinPool(threadCount, p -> {
+            var t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("endpoints-cpu-" + threadNumber.incrementAndGet());
+            return t;
+        }, null, true);
+        this.maxQueueLength = maxQueueLength;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Performs I/O which a task on these threads cannot avoid, for example fetching a secret the first time its parameter
+     * is used. The pool starts an extra thread while the calling thread is blocked, so that CPU-bound tasks are not starved.
+     */
+    public static <T> T runBlocking(@Nonnull Supplier<T> io) {
+        if ( ! (Thread.currentThread() instanceof ForkJoinWorkerThread)) return io.get();
+
+        var blocker = new ForkJoinPool.ManagedBlocker() {
+            T result = null;
+            boolean done = false;
+            @Override public boolean block() { result = io.get(); done = true; return true; }
+            @Override public boolean isReleasable() { return done; }
+        };
+        try { ForkJoinPool.managedBlock(blocker); }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while blocking on I/O", e);
+        }
+        return blocker.result;
+    }
+
+    public void execute(@Nonnull Runnable task) {
+        pool.execute(task);
+    }
+
+    /** Estimate, as the queues of the threads are read without locking */
+    public long getQueueLength() {
+        return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+    }
+
+    /** Call before starting to execute a new request; returns false, and counts the rejection, if it should be rejected */
+    public boolean admitRequest() {
+        if (getQueueLength() <= maxQueueLength) return true;
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    public @Nonnull Statistics getStatistics() {
+        return new Statistics(pool.getParallelism(), pool.getActiveThreadCount(), getQueueLength(), rejectedCount.get());
+    }
+
+    /** Threads are daemon threads, so this is only necessary to stop executing tasks which are already queued */
+    @Override public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package endpoints;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the rows returned by {@code <xml-from-database cache-seconds="..">} queries of one application.
+ *    <p>
+ * Rows rather than DOM elements are cached, as DOM trees are not thread-safe and are modified by post-processing.
+ * The cache holds a maximum number of results; the least recently used results are removed.
+ *    <p>
+ * If many requests need the same result which is not in the cache, only one query is executed,
+ * and the others wait for its result.
+ */
+public class DatabaseResultCache {
+
+    /** A query may return several columns with the same name, so a row is a list of columns rather than a map */
+    public record Column(@Nonnull String name, @CheckForNull String value) { }
+
+    /** Each row has its columns in the order of the query */
+    public record Rows(@Nonnull List<List<Column>> rows) { }
+
+    @FunctionalInterface
+    public interface Query {
+        @Nonnull Rows execute();
+    }
+
+    public record Statistics(int entries, int maxEntries, long hits, long misses, long coalescedMisses, long evictions) { }
+
+    protected record Key(@Nonnull String jdbcUrl, @Nonnull String sql, @Nonnull List<Object> params) { }
+    protected record Entry(@Nonnull Rows rows, @Nonnull Instant expires) { }
+
+    protected final int maxEntries;
+    protected final @Nonnull AtomicLong hits = new AtomicLong(), misses = new AtomicLong(),
+        coalescedMisses = new AtomicLong(), evictions = new AtomicLong();
+    protected final @Nonnull LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            var remove = size() > maxEntries;
+            if (remove) evictions.incrementAndGet();
+            return remove;
+        }
+    };
+    protected final @Nonnull Map<Key, CompletableFuture<Rows>> inFlight = new HashMap<>();
+
+    public DatabaseResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    protected synchronized @CheckForNull Rows getIfFresh(@Nonnull Key key) {
+        var entry = entries.get(key);
+        if (entry == null) return null;
+        if (Instant.now().isBefore(entry.expires())) return entry.rows();
+        entries.remove(key);
+        return null;
+    }
+
+    protected synchronized void put(@Nonnull Key key, @Nonnull Rows rows, @Nonnull Duration timeToLive) {
+        entries.put(key, new Entry(rows, Instant.now().plus(timeToLive)));
+    }
+
+    /** @param params the parameters after expansion, which are passed to the SQL */
+    public @Nonnull Rows get(
+        @Nonnull String jdbcUrl, @Nonnull String sql, @Nonnull Object[] params, @Nonnull Duration timeToLive, @Nonnull Query query
+    ) {
+        var key = new Key(jdbcUrl, sql, Arrays.asList(params));
+        var queryInThisThread = new CompletableFuture<Rows>();
+        CompletableFuture<Rows> waitFor;
+
+        synchronized (this) {
+            var cached = getIfFresh(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+
+            waitFor = inFlight.putIfAbsent(key, queryInThisThread);
+            if (waitFor == null) misses.incrementAndGet();
+            else coalescedMisses.incrementAndGet();
+        }
+
+        if (waitFor != null) {
+            try { return waitFor.get(); }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for query being executed by another request", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException r) throw r;
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        try {
+            var result = query.execute();
+            put(key, result, timeToLive);
+            queryInThisThread.complete(result);
+            return result;
+        }
+        catch (RuntimeException e) {
+            queryInThisThread.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            synchronized (this) { inFlight.remove(key); }
+        }
+    }
+
+    public synchronized @Nonnull Statistics getStatistics() {
+        return new Statistics(entries.size(), maxEntries, hits.get(), misses.get(), coalescedMisses.get(), evictions.get());
+    }
+}
@@ -0,0 +1,249 @@
+package endpoints;
+
+import com.databasesandlife.util.jdbc.DbTransaction.CannotConnectToDatabaseException;
+import com.databasesandlife.util.jdbc.DbTransaction.DbConnectionProvider;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections to the Endpoints database.
+ *    <p>
+ * Connections are handed out wrapped, so that when {@link com.databasesandlife.util.jdbc.DbTransaction#close()} closes
+ * the connection, it is returned to the pool rather than being closed.
+ * Any uncommitted work is rolled back when the connection is returned.
+ *    <p>
+ * If a connection is borrowed for longer than the leak detection threshold, a warning is logged
+ * including the stack trace of where the connection was borrowed.
+ *    <p>
+ * Leak detection and the closing of idle connections are done by a housekeeping thread,
+ * which runs between {@link #start()} and {@link #close()}.
+ */
+@Slf4j
+public class DbConnectionPool implements DbConnectionProvider, AutoCloseable {
+
+    public record Statistics(
+        int maxSize, int idle, int active, int waiting,
+        long borrowCount, long timeoutCount, long leakCount,
+        @Nonnull Duration totalWait, @Nonnull Duration maxWait
+    ) { }
+
+    protected record IdleConnection(@Nonnull Connection connection, @Nonnull Instant idleSince) { }
+
+    @RequiredArgsConstructor
+    protected static class Borrow {
+        protected final @Nonnull Instant borrowedAt;
+        protected final @Nonnull Exception borrowedFrom;
+        protected volatile boolean leakReported = false;
+    }
+
+    protected final @Nonnull String jdbcUrl;
+    protected final int maxSize;
+    protected final @Nonnull Duration borrowTimeout, idleTimeout;
+    protected final @CheckForNull Duration leakDetectionThreshold;
+
+    protected final @Nonnull Semaphore permits;
+    protected final @Nonnull Deque<IdleConnection> idle = new ArrayDeque<>();
+    protected final @Nonnull Map<Connection, Borrow> borrowed = new ConcurrentHashMap<>();
+
+    protected @CheckForNull Thread housekeeping = null;
+    protected boolean closed = false; // guarded by idle
+
+    protected final @Nonnull AtomicLong borrowCount = new AtomicLong(), timeoutCount = new AtomicLong(),
+        leakCount = new AtomicLong(), totalWaitNanos = new AtomicLong(), maxWaitNanos = new AtomicLong();
+
+    /** @param leakDetectionThreshold null means no leak detection */
+    public DbConnectionPool(
+        @Nonnull String jdbcUrl, int maxSize, @Nonnull Duration borrowTimeout, @Nonnull Duration idleTimeout,
+        @CheckForNull Duration leakDetectionThreshold
+    ) {
+        if (maxSize < 1) throw new IllegalArgumentException("Connection pool size must be at least 1, not " + maxSize);
+        this.jdbcUrl = jdbcUrl;
+        this.maxSize = maxSize;
+        this.borrowTimeout = borrowTimeout;
+        this.idleTimeout = idleTimeout;
+        this.leakDetectionThreshold = leakDetectionThreshold;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /** Starts the housekeeping thread */
+    public synchronized void start() {
+        if (housekeeping != null) throw new IllegalStateException("Connection pool has already been started");
+        housekeeping = new Thread(this::housekeepingLoop, "DbConnectionPool housekeeping");
+        housekeeping.setDaemon(true);
+        housekeeping.start();
+    }
+
+    /** Stops the housekeeping thread and closes idle connections. Borrowed connections are closed when returned. */
+    @Override public synchronized void close() {
+        if (housekeeping != null) {
+            housekeeping.interrupt();
+            try { housekeeping.join(); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+
+        synchronized (idle) {
+            closed = true;
+            for (var c : idle) closeQuietly(c.connection());
+            idle.clear();
+        }
+    }
+
+    protected void closeQuietly(@Nonnull Connection c) {
+        try { c.close(); }
+        catch (SQLException e) { log.warn("Cannot close pooled connection", e); }
+    }
+
+    /** @return null if no valid idle connection is available */
+    protected @CheckForNull Connection takeIdleConnection() {
+        while (true) {
+            IdleConnection candidate;
+            synchronized (idle) { candidate = idle.pollFirst(); }
+            if (candidate == null) return null;
+
+            try { if (candidate.connection().isValid(5)) return candidate.connection(); }
+            catch (SQLException ignored) { }
+            log.info("Discarding pooled database connection as it is no longer valid");
+            closeQuietly(candidate.connection());
+        }
+    }
+
+    @Override public @Nonnull Connection getConnection() throws CannotConnectToDatabaseException {
+        var waitStart = System.nanoTime();
+        try {
+            if ( ! permits.tryAcquire(borrowTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new CannotConnectToDatabaseException("Timeout after " + borrowTimeout.toMillis() + "ms " +
+                    "waiting for database connection from pool (max size " + maxSize + ")", null);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotConnectToDatabaseException("Interrupted waiting for database connection from pool", e);
+        }
+
+        var waitNanos = System.nanoTime() - waitStart;
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        try {
+            var connection = takeIdleConnection();
+            if (connection == null) connection = DriverManager.getConnection(jdbcUrl);
+            var borrow = new Borrow(Instant.now(), new Exception("Connection borrowed here"));
+            borrowed.put(connection, borrow);
+            return wrap(connection, borrow);
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            if (e instanceof CannotConnectToDatabaseException c) throw c;
+            throw new CannotConnectToDatabaseException("Cannot connect to database", e);
+        }
+    }
+
+    protected void giveBack(@Nonnull Connection connection, @Nonnull Borrow borrow) {
+        if ( ! borrowed.remove(connection, borrow)) return; // Already returned, e.g. close() called twice
+
+        try {
+            if (connection.isClosed()) return;
+            if ( ! connection.getAutoCommit()) connection.rollback();
+            synchronized (idle) {
+                if ( ! closed) { idle.addFirst(new IdleConnection(connection, Instant.now())); return; }
+            }
+            closeQuietly(connection);
+        }
+        catch (SQLException e) {
+            log.warn("Discarding pooled database connection as it could not be reset", e);
+            closeQuietly(connection);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /** 
+     * Returns a connection whose close() method returns the connection to the pool.
+     * Once closed, the returned object cannot be used, even after the connection has been borrowed again.
+     */
+    protected @Nonnull Connection wrap(@Nonnull Connection connection, @Nonnull Borrow borrow) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close" -> { giveBack(connection, borrow); return null; }
+                    case "isClosed" -> { if (borrowed.get(connection) != borrow) return true; }
+                    case "unwrap" -> { if (((Class<?>) args[0]).isInstance(proxy)) return proxy; }
+                    case "equals" -> { return proxy == args[0]; }
+                    case "hashCode" -> { return System.identityHashCode(proxy); }
+                    case "toString" -> { return "Pooled(" + connection + ")"; }
+                    default -> { }
+                }
+                if (borrowed.get(connection) != borrow)
+                    throw new SQLException("Connection has already been returned to the pool");
+                try { return method.invoke(connection, args); }
+                catch (InvocationTargetException e) { throw e.getCause(); }
+            });
+    }
+
+    protected void detectLeaks() {
+        if (leakDetectionThreshold == null) return;
+        var threshold = Instant.now().minus(leakDetectionThreshold);
+        for (var b : borrowed.values()) {
+            if (b.borrowedAt.isBefore(threshold) && ! b.leakReported) {
+                b.leakReported = true;
+                leakCount.incrementAndGet();
+                log.warn("Possible database connection leak: connection borrowed at " + b.borrowedAt + " " +
+                    "has not been returned after " + leakDetectionThreshold.toSeconds() + " seconds", b.borrowedFrom);
+            }
+        }
+    }
+
+    protected void closeExpiredIdleConnections() {
+        var threshold = Instant.now().minus(idleTimeout);
+        synchronized (idle) {
+            for (var i = idle.iterator(); i.hasNext(); ) {
+                var c = i.next();
+                if (c.idleSince().isBefore(threshold)) {
+                    i.remove();
+                    closeQuietly(c.connection());
+                }
+            }
+        }
+    }
+
+    protected void housekeepingLoop() {
+        while (true) {
+            try {
+                //noinspection BusyWait
+                Thread.sleep(5_000);
+                detectLeaks();
+                closeExpiredIdleConnections();
+            }
+            catch (InterruptedException e) { return; }
+            catch (RuntimeException e) { log.warn("DbConnectionPool housekeeping failed", e); }
+        }
+    }
+
+    public @Nonnull Statistics getStatistics() {
+        int idleCount;
+        synchronized (idle) { idleCount = idle.size(); }
+        return new Statistics(maxSize, idleCount, borrowed.size(), permits.getQueueLength(),
+            borrowCount.get(), timeoutCount.get(), leakCount.get(),
+            Duration.ofNanos(totalWaitNanos.get()), Duration.ofNanos(maxWaitNanos.get()));
+    }
+}
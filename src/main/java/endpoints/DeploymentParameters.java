@@ -12,7 +12,7 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
 
@@ -22,8 +22,12 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.time.ZoneId;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static software.amazon.awssdk.regions.Region.US_EAST_1;
 
@@ -40,7 +44,7 @@ import static software.amazon.awssdk.regions.Region.US_EAST_1;
 @Slf4j
 public class DeploymentParameters {
     
-    private static DeploymentParameters sharedInstance = null;
+    private static volatile DeploymentParameters sharedInstance = null;
 
     /** Has trailing slash */ public final @Nonnull URL baseUrl;
     public final @Nonnull String jdbcUrl;
@@ -49,12 +53,37 @@ public class DeploymentParameters {
     public final boolean checkHash, displayExpectedHash, xsltDebugLog;
     public final @CheckForNull String servicePortalEnvironmentDisplayName, cloudWatchMetricsInstance;
     public final @CheckForNull ZoneId singleApplicationModeTimezoneId;
+    public final @Nonnull DbConnectionPool dbConnectionPool;
+    public final @Nonnull Duration publishedApplicationPollInterval;
+    public final @Nonnull RequestLogWriter requestLogWriter;
+    public final int httpClientMaxConcurrentRequests;
+    public final @Nonnull Duration httpClientConnectTimeout, httpClientRequestTimeout;
+    /** Shared by all applications and all loads of them, so that reloading an application does not leak connections */
+    public final @Nonnull HttpClient httpClient;
+    public final long httpResponseCacheMaxBytes;
+    public final int dataSourceDbPoolMaxSize, databaseResultCacheMaxEntries;
+    public final @Nonnull Duration awsSecretCacheTimeToLive, awsSecretNotFoundCacheTimeToLive;
+    public final @Nonnull Duration cloudWatchMetricsInterval;
+    public final int cloudWatchMetricsMaxSeries;
+    public final @Nonnull CpuThreads cpuThreads;
+    public final @Nonnull StreamingJsonXmlConverter jsonXmlConverter;
+    public final long maxRequestBytes;
+    public final int requestBodyMemoryThresholdBytes, requestLogMaxBodyBytes;
+    protected volatile @CheckForNull AwsCloudWatchRequestMetricWriter awsCloudWatchRequestMetricWriter = null;
+    protected boolean awsCloudWatchRequestMetricWriterClosed = false;
+    protected final @Nonnull Map<String, DbConnectionPool> dataSourceConnectionPools = new ConcurrentHashMap<>();
+    public final @Nonnull AwsClientRegistry awsClients = new AwsClientRegistry();
     
-    protected @CheckForNull ApplicationFactory applications = null;
+    protected volatile @CheckForNull ApplicationFactory applications = null;
     
-    public static synchronized DeploymentParameters get() {
-        if (sharedInstance == null) sharedInstance = new DeploymentParameters();
-        return sharedInstance;
+    /** Called on every request, so does not lock once the instance has been created */
+    public static DeploymentParameters get() {
+        var result = sharedInstance;
+        if (result != null) return result;
+        synchronized (DeploymentParameters.class) {
+            if (sharedInstance == null) sharedInstance = new DeploymentParameters();
+            return sharedInstance;
+        }
     }
 
     /** @return never return empty string */
@@ -99,6 +128,50 @@ public class DeploymentParameters {
             getOptionalParameter("ENDPOINTS_AWS_CLOUDWATCH_METRICS_INSTANCE").orElse(null);
         singleApplicationModeTimezoneId = 
             getOptionalParameter("ENDPOINTS_SINGLE_APPLICATION_MODE_TIMEZONE_ID").map(s -> ZoneId.of(s)).orElse(null);
+        dbConnectionPool = new DbConnectionPool(jdbcUrl,
+            Integer.parseInt(getOptionalParameter("ENDPOINTS_DB_POOL_MAX_SIZE").orElse("20")),
+            Duration.ofSeconds(Long.parseLong(getOptionalParameter("ENDPOINTS_DB_POOL_BORROW_TIMEOUT_SECONDS").orElse("30"))),
+            Duration.ofSeconds(Long.parseLong(getOptionalParameter("ENDPOINTS_DB_POOL_IDLE_TIMEOUT_SECONDS").orElse("600"))),
+            Optional.of(Long.parseLong(getOptionalParameter("ENDPOINTS_DB_POOL_LEAK_DETECTION_SECONDS").orElse("300")))
+                .filter(s -> s > 0).map(s -> Duration.ofSeconds(s)).orElse(null));
+        dbConnectionPool.start();
+        publishedApplicationPollInterval = Duration.ofSeconds(
+            Long.parseLong(getOptionalParameter("ENDPOINTS_PUBLISHED_APPLICATION_POLL_SECONDS").orElse("10")));
+        requestLogWriter = new RequestLogWriter();
+        httpClientMaxConcurrentRequests =
+            Integer.parseInt(getOptionalParameter("ENDPOINTS_HTTP_CLIENT_MAX_CONCURRENT_REQUESTS").orElse("50"));
+        httpClientConnectTimeout = Duration.ofSeconds(
+            Long.parseLong(getOptionalParameter("ENDPOINTS_HTTP_CLIENT_CONNECT_TIMEOUT_SECONDS").orElse("10")));
+        httpClientRequestTimeout = Duration.ofSeconds(
+            Long.parseLong(getOptionalParameter("ENDPOINTS_HTTP_CLIENT_REQUEST_TIMEOUT_SECONDS").orElse("60")));
+        httpClient = ApplicationHttpClient.newHttpClient(httpClientConnectTimeout);
+        httpResponseCacheMaxBytes = 1024L * 1024L *
+            Long.parseLong(getOptionalParameter("ENDPOINTS_XML_FROM_URL_CACHE_MAX_MEGABYTES").orElse("50"));
+        dataSourceDbPoolMaxSize =
+            Integer.parseInt(getOptionalParameter("ENDPOINTS_XML_FROM_DATABASE_POOL_MAX_SIZE").orElse("10"));
+        databaseResultCacheMaxEntries =
+            Integer.parseInt(getOptionalParameter("ENDPOINTS_XML_FROM_DATABASE_CACHE_MAX_ENTRIES").orElse("1000"));
+        awsSecretCacheTimeToLive = Duration.ofSeconds(
+            Long.parseLong(getOptionalParameter("ENDPOINTS_AWS_SECRET_CACHE_SECONDS").orElse("300")));
+        awsSecretNotFoundCacheTimeToLive = Duration.ofSeconds(
+            Long.parseLong(getOptionalParameter("ENDPOINTS_AWS_SECRET_NOT_FOUND_CACHE_SECONDS").orElse("30")));
+        cloudWatchMetricsInterval = Duration.ofSeconds(
+            Long.parseLong(getOptionalParameter("ENDPOINTS_AWS_CLOUDWATCH_METRICS_INTERVAL_SECONDS").orElse("60")));
+        cloudWatchMetricsMaxSeries =
+            Integer.parseInt(getOptionalParameter("ENDPOINTS_AWS_CLOUDWATCH_METRICS_MAX_SERIES").orElse("10000"));
+        cpuThreads = new CpuThreads(
+            getOptionalParameter("ENDPOINTS_CPU_THREADS").map(Integer::parseInt)
+                .orElse(Runtime.getRuntime().availableProcessors()),
+            Long.parseLong(getOptionalParameter("ENDPOINTS_CPU_MAX_QUEUE_LENGTH").orElse("1000")),
+            Duration.ofSeconds(Long.parseLong(getOptionalParameter("ENDPOINTS_OVERLOAD_RETRY_AFTER_SECONDS").orElse("5"))));
+        jsonXmlConverter = new StreamingJsonXmlConverter(1024L * 1024L *
+            Long.parseLong(getOptionalParameter("ENDPOINTS_JSON_MAX_MEGABYTES").orElse("100")));
+        maxRequestBytes = 1024L * 1024L *
+            Long.parseLong(getOptionalParameter("ENDPOINTS_MAX_REQUEST_MEGABYTES").orElse("100"));
+        requestBodyMemoryThresholdBytes = 1024 *
+            Integer.parseInt(getOptionalParameter("ENDPOINTS_REQUEST_BODY_MEMORY_KILOBYTES").orElse("1024"));
+        requestLogMaxBodyBytes = 1024 *
+            Integer.parseInt(getOptionalParameter("ENDPOINTS_REQUEST_LOG_MAX_BODY_KILOBYTES").orElse("1024"));
 
         log.info("Endpoints server application is in " + 
             (isSingleApplicationMode() 
@@ -106,19 +179,68 @@ public class DeploymentParameters {
                 : "MULTIPLE APPLICATIONS mode (via service portal, publishing from Git)"));
     }
     
-    public synchronized ApplicationFactory getApplications(@Nonnull DbTransaction tx) {
-        if (applications == null) {
-            var threads = new XsltCompilationThreads();
-            applications = isSingleApplicationMode() 
-                ? new FixedPathApplicationFactory(threads) 
-                : new PublishedApplicationFactory(tx, threads, publishedApplicationsDirectory);
-            threads.execute();
+    /** Called on every request, so does not lock once the applications have been loaded */
+    public ApplicationFactory getApplications(@Nonnull DbTransaction tx) {
+        var result = applications;
+        if (result != null) return result;
+        synchronized (this) {
+            if (applications == null) {
+                var threads = new XsltCompilationThreads();
+                var newApplications = isSingleApplicationMode() 
+                    ? new FixedPathApplicationFactory(threads) 
+                    : new PublishedApplicationFactory(tx, threads, publishedApplicationsDirectory, 
+                        publishedApplicationPollInterval);
+                threads.execute();
+                if (newApplications instanceof PublishedApplicationFactory p) p.start();
+                applications = newApplications;
+            }
+            return applications;
         }
-        return applications;
     }
 
+    /** Stops checking for newly published applications */
+    public synchronized void closeApplications() {
+        if (applications instanceof PublishedApplicationFactory p) p.close();
+    }
+
+    /** 
+     * Each application has its own limit, so that one application's slow backends cannot use up another's requests.
+     * The connections are shared.
+     */
+    public @Nonnull ApplicationHttpClient newApplicationHttpClient() {
+        return new ApplicationHttpClient(httpClient, httpClientMaxConcurrentRequests, httpClientRequestTimeout);
+    }
+
+    public @Nonnull HttpResponseCache newHttpResponseCache() {
+        return new HttpResponseCache(httpResponseCacheMaxBytes);
+    }
+
+    public @Nonnull DatabaseResultCache newDatabaseResultCache() {
+        return new DatabaseResultCache(databaseResultCacheMaxEntries);
+    }
+
+    /** 
+     * For {@code <xml-from-database>} data sources. Pools are shared between applications,
+     * as applications are often re-published with the same JDBC URL. 
+     */
+    public @Nonnull DbConnectionPool getDataSourceConnectionPool(@Nonnull String dataSourceJdbcUrl) {
+        return dataSourceConnectionPools.computeIfAbsent(dataSourceJdbcUrl, url -> {
+            var pool = new DbConnectionPool(url, 
+                dataSourceDbPoolMaxSize, dbConnectionPool.borrowTimeout, dbConnectionPool.idleTimeout, null);
+            pool.start();
+            return pool;
+        });
+    }
+
+    /** Closes {@link #dbConnectionPool} and the data source pools */
+    public void closeDbConnectionPools() {
+        for (var pool : dataSourceConnectionPools.values()) pool.close();
+        dbConnectionPool.close();
+    }
+
+    /** Borrows a connection from {@link #dbConnectionPool}, which is returned to the pool when the transaction is closed */
     public DbTransaction newDbTransaction() throws CannotConnectToDatabaseException {
-        return new DbTransaction(jdbcUrl);
+        return new DbTransaction(dbConnectionPool);
     }
     
     protected void setAwsEndpointOverride(
@@ -136,6 +258,7 @@ public class DeploymentParameters {
         builder.endpointOverride(endpointOverride);
     }
 
+    /** Caller must close the client. Use {@link #getAwsS3Client()} unless a separate client is needed. */
     public @Nonnull S3Client newAwsS3Client() {
         var builder = S3Client.builder();
         if (awsS3EndpointOverride != null) builder.region(US_EAST_1);  // Needed for localstack
@@ -143,18 +266,52 @@ public class DeploymentParameters {
         return builder.build();
     }
 
-    public @Nonnull SecretsManagerClient newAwsSecretsManagerClient(@Nonnull Region region) {
-        var builder = SecretsManagerClient.builder();
-        builder.region(region);
-        setAwsEndpointOverride(builder, awsSecretsManagerEndpointOverride);
-        return builder.build();
+    /** Shared client, which must not be closed */
+    public @Nonnull S3Client getAwsS3Client() {
+        return awsClients.get(S3Client.class, null, awsS3EndpointOverride, this::newAwsS3Client);
     }
 
+    /** Shared client, which must not be closed */
+    public @Nonnull SecretsManagerClient getAwsSecretsManagerClient(@Nonnull Region region) {
+        return awsClients.get(SecretsManagerClient.class, region, awsSecretsManagerEndpointOverride, () -> {
+            var builder = SecretsManagerClient.builder();
+            builder.region(region);
+            setAwsEndpointOverride(builder, awsSecretsManagerEndpointOverride);
+            return builder.build();
+        });
+    }
+
+    /** Shared client, which must not be closed */
+    public @Nonnull CloudWatchAsyncClient getAwsCloudWatchClient() {
+        return awsClients.get(CloudWatchAsyncClient.class, null, awsCloudWatchEndpointOverride, () -> {
+            var builder = CloudWatchAsyncClient.builder();
+            setAwsEndpointOverride(builder, awsCloudWatchEndpointOverride);
+            return builder.build();
+        });
+    }
+
+    /** Called on every request, so does not lock once the writer has been created */
     public @CheckForNull AwsCloudWatchRequestMetricWriter getAwsCloudWatchRequestMetricWriter() {
         if (cloudWatchMetricsInstance == null) return null;
-        
-        var builder = CloudWatchClient.builder();
-        setAwsEndpointOverride(builder, awsSecretsManagerEndpointOverride);
-        return new AwsCloudWatchRequestMetricWriter(builder.build(), cloudWatchMetricsInstance);
+        var result = awsCloudWatchRequestMetricWriter;
+        if (result != null) return result;
+        synchronized (this) {
+            if (awsCloudWatchRequestMetricWriterClosed) return null;
+            if (awsCloudWatchRequestMetricWriter == null) {
+                var writer = new AwsCloudWatchRequestMetricWriter(
+                    getAwsCloudWatchClient(), cloudWatchMetricsInstance, cloudWatchMetricsInterval, cloudWatchMetricsMaxSeries);
+                writer.start();
+                awsCloudWatchRequestMetricWriter = writer;
+            }
+            return awsCloudWatchRequestMetricWriter;
+        }
+    }
+
+    /** Sends the metrics not yet sent. Afterwards, no more metrics are written. */
+    public synchronized void closeAwsCloudWatchRequestMetricWriter() {
+        awsCloudWatchRequestMetricWriterClosed = true;
+        var writer = awsCloudWatchRequestMetricWriter;
+        awsCloudWatchRequestMetricWriter = null;
+        if (writer != null) writer.close();
     }
 }
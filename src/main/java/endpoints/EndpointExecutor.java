@@ -1,18 +1,19 @@
 package endpoints;
 
 import com.databasesandlife.util.DomParser;
-import com.databasesandlife.util.ThreadPool;
 import com.databasesandlife.util.ThreadPool.SynchronizationPoint;
 import com.databasesandlife.util.Timer;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.databasesandlife.util.jdbc.DbTransaction;
-import com.offerready.xslt.JsonXmlConverter;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
 import com.offerready.xslt.destination.BufferedHttpResponseDocumentGenerationDestination;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import endpoints.HttpRequestSpecification.HttpRequestFailedException;
 import endpoints.LazyCachingValue.LazyParameterComputationException;
 import endpoints.OnDemandIncrementingNumber.OnDemandIncrementingNumberType;
+import endpoints.RequestLogWriter.RequestLogEntry;
+import endpoints.RequestMetrics.Labels;
+import endpoints.RequestMetrics.Stage;
 import endpoints.TransformationContext.ParameterNotFoundPolicy;
 import endpoints.config.*;
 import endpoints.config.ApplicationFactory.ApplicationConfig;
@@ -25,8 +26,6 @@ import endpoints.generated.jooq.tables.records.RequestLogIdsRecord;
 import endpoints.generated.jooq.tables.records.RequestLogRecord;
 import endpoints.task.RequestLogExpressionCaptureTask;
 import endpoints.task.Task.TaskExecutionFailedException;
-import endpoints.task.TaskId;
-import jakarta.activation.MimetypesFileTypeMap;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -40,6 +39,7 @@ import org.w3c.dom.Node;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -47,7 +47,6 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
@@ -66,8 +65,7 @@ import static com.databasesandlife.util.ThreadPool.unwrapException;
 import static com.databasesandlife.util.gwtsafe.ConfigurationException.prefixExceptionMessage;
 import static endpoints.OnDemandIncrementingNumber.OnDemandIncrementingNumberType.*;
 import static endpoints.OnDemandIncrementingNumber.newLazyNumbers;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
-import static endpoints.generated.jooq.Tables.APPLICATION_CONFIG;
+import static endpoints.datasource.DataSourceCommandFetcher.moveInto;
 import static java.util.Arrays.stream;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
@@ -79,6 +77,20 @@ public class EndpointExecutor {
     @FunctionalInterface
     public interface Responder {
         void respond(@Nonnull BufferedHttpResponseDocumentGenerationDestination response);
+
+        /** @return null if this responder needs the whole response in memory, in which case stream='true' is ignored */
+        default @CheckForNull StreamingHttpResponseDocumentGenerationDestination newStreamingDestinationOrNull() { return null; }
+
+        static @Nonnull Responder forServletResponse(@Nonnull HttpServletResponse resp) {
+            return new Responder() {
+                @Override public void respond(@Nonnull BufferedHttpResponseDocumentGenerationDestination response) {
+                    response.deliver(resp);
+                }
+                @Override public @Nonnull StreamingHttpResponseDocumentGenerationDestination newStreamingDestinationOrNull() {
+                    return new StreamingHttpResponseDocumentGenerationDestination(resp);
+                }
+            };
+        }
     }
 
     public static class EndpointExecutionFailedException extends Exception {
@@ -92,6 +104,28 @@ public class EndpointExecutor {
         }
     }
 
+    /** Request was rejected before execution, as the server has too much work queued, see {@link CpuThreads} */
+    public static class ServerOverloadedException extends EndpointExecutionFailedException {
+        public final @Nonnull Duration retryAfter;
+        public ServerOverloadedException(@Nonnull Duration retryAfter) {
+            super(SC_SERVICE_UNAVAILABLE, "Server overloaded, please retry later", null);
+            this.retryAfter = retryAfter;
+        }
+
+        /** Sends 503 with a Retry-After header, so that clients and load balancers back off */
+        public void sendError(@Nonnull HttpServletResponse resp) throws IOException {
+            resp.setHeader("Retry-After", Long.toString(retryAfter.toSeconds()));
+            resp.sendError(statusCode, externalMessage);
+        }
+    }
+
+    /** Request body is longer than the maximum configured for the endpoint, see {@link RequestBodyBuffer} */
+    public static class RequestTooLargeException extends EndpointExecutionFailedException {
+        public RequestTooLargeException(long maxBytes) {
+            super(SC_REQUEST_ENTITY_TOO_LARGE, "Request body is larger than the maximum of " + maxBytes + " bytes", null);
+        }
+    }
+
     public static class InvalidRequestException extends Exception {
         public InvalidRequestException(String msg) { super(msg); }
         public InvalidRequestException(String prefix, Throwable e) { super(prefixExceptionMessage(prefix, e), e); }
@@ -149,9 +183,9 @@ public class EndpointExecutor {
     protected @Nonnull Runnable transformXmlIntoParameters(
         @Nonnull PublishEnvironment environment, @Nonnull ApplicationName applicationName,
         @Nonnull Application application, @Nonnull ApplicationTransaction tx,
-        @Nonnull ThreadPool threads, @Nonnull Endpoint endpoint, @Nonnull RequestId requestId, 
-        @Nonnull Request req, boolean debugAllowed, boolean debugRequested, 
-        @Nonnull ParameterTransformationLogger parameterTransformationLogger,
+        @Nonnull RequestThreads threads, @Nonnull Endpoint endpoint, @Nonnull RequestId requestId, 
+        @Nonnull Request req, @Nonnull ApplicationConfig appConfig, boolean debugRequested, 
+        @Nonnull ParameterTransformationLogger parameterTransformationLogger, @CheckForNull ExecutionTrace trace,
         @Nonnull Map<OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc, 
         @Nonnull ParameterTransformation parameterTransformation,
         @Nonnull Map<ParameterName, String> requestParameters,
@@ -170,7 +204,7 @@ public class EndpointExecutor {
         inputParametersDocument.getDocumentElement().appendChild(inputFromRequestElement);
         appendTextElement(inputFromRequestElement, "endpoint", endpoint.name.name);
         if (debugRequested) inputFromRequestElement.appendChild(inputParametersDocument.createElement("debug-requested"));
-        for (var n : inputFromRequestContents) inputFromRequestElement.appendChild(inputParametersDocument.importNode(n, true));
+        for (var n : inputFromRequestContents) moveInto(inputFromRequestElement, n);
         for (var param : req.getLowercaseHttpHeadersWithoutCookies().entrySet())
             for (var value : param.getValue())
                 appendTextElement(inputFromRequestElement, "http-header", "name-lowercase", param.getKey(), value);
@@ -182,12 +216,9 @@ public class EndpointExecutor {
         // Add <input-from-application>
         var inputFromApplicationElement = inputParametersDocument.createElement("input-from-application");
         inputParametersDocument.getDocumentElement().appendChild(inputFromApplicationElement);
-        var databaseConfig = tx.db.jooq().selectFrom(APPLICATION_CONFIG)
-            .where(APPLICATION_CONFIG.APPLICATION_NAME.eq(applicationName)).fetchOne();
         appendTextElement(inputFromApplicationElement, "application", applicationName.name());
-        appendTextElement(inputFromApplicationElement, "application-display-name", 
-            databaseConfig == null ? null : databaseConfig.getDisplayName());
-        if (debugAllowed) inputFromApplicationElement.appendChild(inputParametersDocument.createElement("debug-allowed"));
+        appendTextElement(inputFromApplicationElement, "application-display-name", appConfig.displayName());
+        if (appConfig.debugAllowed()) inputFromApplicationElement.appendChild(inputParametersDocument.createElement("debug-allowed"));
         if (application.getRevision() != null) 
             appendTextElement(inputFromApplicationElement, "git-revision", application.getRevision().sha256Hex());
         appendTextElement(inputFromApplicationElement, "secret-key", application.getSecretKeys()[0]);
@@ -196,21 +227,25 @@ public class EndpointExecutor {
         // Schedule execution of e.g. <xml-from-application>
         var context = new TransformationContext(environment, applicationName, application, tx, threads, endpoint, requestParameters,
             ParameterNotFoundPolicy.emptyString, requestId, req, autoInc, new HashMap<>());
+        context.trace = trace;
         var dataSourceResults = new ArrayList<DataSourceCommandFetcher>();
         for (var c : parameterTransformation.dataSourceCommands)
             dataSourceResults.add(c.scheduleExecution(context, Set.of()));
 
+        var traceNode = trace == null ? null : trace.newNode("<endpoint name='" + endpoint.name.getName() + "'>: " +
+            "<parameter-transformation>", null, dataSourceResults);
         return threads.addTaskWithDependencies(dataSourceResults, () -> {
+            if (traceNode != null) traceNode.started();
             var result = new HashMap<ParameterName, String>();
             try (
                 var ignored = new Timer("<endpoint name='" + endpoint.name.getName() + "'>: " +
-                    "<parameter-transformation> XSLT Transformation")
+                    "<parameter-transformation> XSLT Transformation");
+                var ignored2 = RequestMetrics.shared.start(Stage.parameterTransformation, null, Labels.of(context))
             ) {
                 // Add results of e.g. <xml-from-application>
                 for (var r : dataSourceResults)
                     for (var element : r.get())
-                        inputParametersDocument.getDocumentElement().appendChild(
-                            inputParametersDocument.importNode(element, true));
+                        moveInto(inputParametersDocument.getDocumentElement(), element);
 
                 // Debug Log
                 log.debug("Parameter Transformation Input:\n" + formatXmlPretty(inputParametersDocument.getDocumentElement()));
@@ -235,7 +270,7 @@ public class EndpointExecutor {
                         "New format is to return <error> or nothing.");
                 assertNoOtherElements(outputParametersRoot, "error", "parameter");
 
-                var endpointsParameters = new HashSet<>(endpoint.aggregateParametersOverParents().keySet());
+                var endpointsParameters = new HashSet<>(endpoint.getExecutionPlan().parameters.keySet());
                 TransformationContext.getSystemParameterNames().forEach(x -> endpointsParameters.add(new ParameterName(x)));
                 for (var parameterElement : getSubElements(outputParametersRoot, "parameter")) {
                     var paramName = new ParameterName(getMandatoryAttribute(parameterElement, "name"));
@@ -250,6 +285,7 @@ public class EndpointExecutor {
                 "While processing result of parameter transformation", e)); }
             catch (DocumentTemplateInvalidException | TransformerException |
                 ParameterTransformationHadErrorException | InvalidRequestException e) { throw new RuntimeException(e); }
+            finally { if (traceNode != null) traceNode.finished(); }
 
             consumeParameters.accept(result);
         });
@@ -259,7 +295,7 @@ public class EndpointExecutor {
     protected @Nonnull Node[] convertJsonToXml(@Nonnull String contentType, @Nonnull InputStream jsonInputStream) 
     throws InvalidRequestException {
         try {
-            var rootNode = new JsonXmlConverter().convertJsonToXml(contentType, jsonInputStream, "json-request");
+            var rootNode = DeploymentParameters.get().jsonXmlConverter.convertJsonToXml(contentType, jsonInputStream, "json-request");
             var nodeList = rootNode.getChildNodes();
             
             var result = new Node[nodeList.getLength()];
@@ -278,17 +314,18 @@ public class EndpointExecutor {
     protected @Nonnull Element encloseElement(@Nonnull String surroundingTag, @Nonnull Node... children) {
         var doc = DomParser.newDocumentBuilder().newDocument();
         var result = doc.createElement(surroundingTag);
-        for (var c : children) result.appendChild(doc.importNode(c, true));
+        for (var c : children) moveInto(result, c);
         return result;
     }
 
     @SuppressWarnings("UnusedReturnValue") 
+    @SneakyThrows(IOException.class)
     protected @Nonnull Runnable getParameters(
         @Nonnull PublishEnvironment environment, @Nonnull ApplicationName applicationName,
         @Nonnull Application application, @Nonnull ApplicationTransaction tx,
-        @Nonnull ThreadPool threads, @Nonnull Endpoint endpoint, @Nonnull RequestId requestId,
-        @Nonnull Request req, boolean debugAllowed, boolean debugRequested,
-        @Nonnull ParameterTransformationLogger parameterTransformationLogger, 
+        @Nonnull RequestThreads threads, @Nonnull Endpoint endpoint, @Nonnull RequestId requestId,
+        @Nonnull Request req, @Nonnull ApplicationConfig appConfig, boolean debugRequested,
+        @Nonnull ParameterTransformationLogger parameterTransformationLogger, @CheckForNull ExecutionTrace trace,
         @Nonnull Map<OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc,
         @Nonnull Consumer<Map<ParameterName, String>> consumeParameters
     ) throws InvalidRequestException, TransformationFailedException {
@@ -296,7 +333,7 @@ public class EndpointExecutor {
             try {
                 // Apply <parameter> definition from endpoints.xml
                 var checkedParameters = new HashMap<ParameterName, String>();
-                for (var paramEntry : endpoint.aggregateParametersOverParents().entrySet()) {
+                for (var paramEntry : endpoint.getExecutionPlan().parameters.entrySet()) {
                     var param = paramEntry.getKey();
                     var defn = paramEntry.getValue();
     
@@ -324,7 +361,7 @@ public class EndpointExecutor {
                 return threads.addTask(() -> validateThenConsumeParameters.accept(inputParameters));
             } else {
                 return transformXmlIntoParameters(environment, applicationName, application, tx, threads, endpoint, requestId, req,
-                    debugAllowed, debugRequested, parameterTransformationLogger, autoInc,
+                    appConfig, debugRequested, parameterTransformationLogger, trace, autoInc,
                     endpoint.parameterTransformation, inputParameters, validateThenConsumeParameters,
                     parameterElements);
             }
@@ -335,15 +372,15 @@ public class EndpointExecutor {
                     "<parameter-transformation> defined, therefore cannot accept XML or JSON request " +
                     "with Content-Type '" + contentType + "'");
                 final @Nonnull Element requestDocument;
-                if (contentType.contains("xml"))
-                    requestDocument = encloseElement("xml", 
-                        DomParser.from(new ByteArrayInputStream(req.getRequestBodyIfPost().body())));
-                else if (contentType.contains("json")) 
-                    requestDocument = encloseElement("json", 
-                        convertJsonToXml(contentType, new ByteArrayInputStream(req.getRequestBodyIfPost().body())));
-                else throw new RuntimeException("Unreachable; contentType='" + contentType + "'");
+                try (var body = req.getRequestBodyIfPost().body().newInputStream()) {
+                    if (contentType.contains("xml"))
+                        requestDocument = encloseElement("xml", DomParser.from(body));
+                    else if (contentType.contains("json"))
+                        requestDocument = encloseElement("json", convertJsonToXml(contentType, body));
+                    else throw new RuntimeException("Unreachable; contentType='" + contentType + "'");
+                }
                 return transformXmlIntoParameters(environment, applicationName, application, tx, threads, endpoint, requestId, req,
-                    debugAllowed, debugRequested, parameterTransformationLogger, autoInc,
+                    appConfig, debugRequested, parameterTransformationLogger, trace, autoInc,
                     endpoint.parameterTransformation, Map.of(), validateThenConsumeParameters, 
                     Stream.concat(Stream.of(parameterElements), Stream.of(requestDocument)).toArray(Element[]::new));
             }
@@ -374,24 +411,51 @@ public class EndpointExecutor {
         protected final @Nonnull ResponseConfiguration config;
         protected final int contentStatusCode;
         protected final @Nonnull Consumer<BufferedHttpResponseDocumentGenerationDestination> responseConsumer;
+        protected final @Nonnull Responder responder;
+        protected @CheckForNull ExecutionTrace.Node traceNode = null;
+        
+        /** 
+         * Only {@code <success>} may be streamed. An {@code <error>} is only sent once the request log has been written
+         * and the transaction committed, and must not be written into a {@code <success>} which has already been streamed.
+         */
+        protected boolean isStreamingAllowed() {
+            return false;
+        }
+        
+        protected @Nonnull BufferedHttpResponseDocumentGenerationDestination newDestination() {
+            var hasBody = ! (config instanceof EmptyResponseConfiguration || config instanceof RedirectResponseConfiguration);
+            var streaming = isStreamingAllowed() && config.streaming && hasBody 
+                ? responder.newStreamingDestinationOrNull() : null;
+            return streaming == null ? new BufferedHttpResponseDocumentGenerationDestination() : streaming;
+        }
         
         @SneakyThrows({IOException.class, InvalidRequestException.class, TransformationFailedException.class})
         public void runUnconditionally() {
-            var destination = new BufferedHttpResponseDocumentGenerationDestination();
+            var destination = newDestination();
             var stringParams = context.getParametersAndIntermediateValuesAndSecrets(config.inputIntermediateValues);
+            
+            // Headers are set before the body is written, as they are sent with the first bytes of a streamed body
 
             switch (config) {
                 case EmptyResponseConfiguration e -> destination.setStatusCode(contentStatusCode);
                 case StaticResponseConfiguration r -> {
-                    destination.setStatusCode(contentStatusCode);
-                    destination.setContentType(new MimetypesFileTypeMap().getContentType(r.file));
-                    try (var o = destination.getOutputStream()) { Files.copy(r.file.toPath(), o); }
                     if (r.downloadFilenamePatternOrNull != null)
                         destination.setContentDispositionToDownload(
-                            replacePlainTextParameters(r.downloadFilenamePatternOrNull, stringParams));
+                            r.downloadFilenamePatternOrNull.expand(stringParams));
+                    if (destination instanceof StreamingHttpResponseDocumentGenerationDestination s) {
+                        s.sendStaticFile(contentStatusCode, r.file, r.contentType,
+                            r.getETag(context.application.getRevision()), context.request.getLowercaseHttpHeadersWithoutCookies());
+                    } else {
+                        destination.setStatusCode(contentStatusCode);
+                        destination.setContentType(r.contentType);
+                        try (var o = destination.getOutputStream()) { Files.copy(r.file.toPath(), o); }
+                    }
                 }
                 case UrlResponseConfiguration r -> {
                     destination.setStatusCode(contentStatusCode);
+                    if (r.downloadFilenamePatternOrNull != null)
+                        destination.setContentDispositionToDownload(
+                            r.downloadFilenamePatternOrNull.expand(stringParams));
                     r.spec.scheduleExecutionAndAssertNoError(context, config.inputIntermediateValues, (@CheckForNull var result) -> {
                         if (result != null) {
                             destination.setContentType(result.getContentType());
@@ -399,22 +463,19 @@ public class EndpointExecutor {
                             catch (IOException e) { throw new RuntimeException(e); }
                         }
                     });
-                    if (r.downloadFilenamePatternOrNull != null)
-                        destination.setContentDispositionToDownload(
-                            replacePlainTextParameters(r.downloadFilenamePatternOrNull, stringParams));
                 }
                 case RedirectResponseConfiguration r -> {
-                    var url = replacePlainTextParameters(r.urlPattern, stringParams);
+                    var url = r.urlPattern.expand(stringParams);
                     if (!((RedirectResponseConfiguration)config).whitelist.isUrlInWhiteList(url))
                         throw new InvalidRequestException("Redirect URL '"+url+"' is not in whitelist");
                     destination.setRedirectUrl(new URL(url));
                 }
                 case TransformationResponseConfiguration r -> {
                     destination.setStatusCode(contentStatusCode);
-                    r.transformer.scheduleExecution(context, config.inputIntermediateValues, destination);
                     if (r.downloadFilenamePatternOrNull != null)
                         destination.setContentDispositionToDownload(
-                            replacePlainTextParameters(r.downloadFilenamePatternOrNull, stringParams));
+                            r.downloadFilenamePatternOrNull.expand(stringParams));
+                    r.transformer.scheduleExecution(context, config.inputIntermediateValues, destination);
                 }
                 case OoxmlParameterExpansionResponseConfiguration r -> {
                     destination.setStatusCode(contentStatusCode);
@@ -428,16 +489,20 @@ public class EndpointExecutor {
 
         @Override 
         public void run() {
-            var stringParams = context.getParametersAndIntermediateValuesAndSecrets(config.inputIntermediateValues);
+            if (traceNode != null) traceNode.started();
+            try {
+                var stringParams = context.getParametersAndIntermediateValuesAndSecrets(config.inputIntermediateValues);
 
-            boolean satisfiesCondition = config.satisfiesCondition(
-                context.endpoint.getParameterMultipleValueSeparator(), stringParams);
-            synchronized (context) {
-                if (context.alreadyDeliveredResponse || !satisfiesCondition) return;
-                context.alreadyDeliveredResponse = true;
-            }
+                boolean satisfiesCondition = config.satisfiesCondition(
+                    context.endpoint.getParameterMultipleValueSeparator(), stringParams);
+                synchronized (context) {
+                    if (context.alreadyDeliveredResponse || !satisfiesCondition) return;
+                    context.alreadyDeliveredResponse = true;
+                }
 
-            runUnconditionally();
+                runUnconditionally();
+            }
+            finally { if (traceNode != null) traceNode.finished(); }
         }
     }
 
@@ -453,9 +518,9 @@ public class EndpointExecutor {
             @Nonnull Application application, @Nonnull TransformationContext context,
             @Nonnull ResponseConfiguration config, int statusCode, @Nonnull ApplicationConfig appConfig,
             @Nonnull Map<OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc,
-            @Nonnull Consumer<BufferedHttpResponseDocumentGenerationDestination> responseConsumer
+            @Nonnull Consumer<BufferedHttpResponseDocumentGenerationDestination> responseConsumer, @Nonnull Responder responder
         ) {
-            super(context, config, statusCode, responseConsumer);
+            super(context, config, statusCode, responseConsumer, responder);
             this.environment = environment;
             this.applicationName = applicationName;
             this.application = application;
@@ -463,6 +528,10 @@ public class EndpointExecutor {
             this.autoInc = autoInc;
         }
 
+        @Override protected boolean isStreamingAllowed() {
+            return true;
+        }
+
         @SneakyThrows({InvalidRequestException.class, TransformationFailedException.class, NodeNotFoundException.class})
         @Override public void runUnconditionally() {
             var stringParams = context.getParametersAndIntermediateValuesAndSecrets(config.inputIntermediateValues);
@@ -484,14 +553,14 @@ public class EndpointExecutor {
                                 .entrySet().stream().collect(
                                     toMap(e -> new ParameterName(e.getKey()), e -> List.of(e.getValue()))) 
                             : patterns.entrySet().stream().collect(
-                                toMap(e -> e.getKey(), e -> List.of(replacePlainTextParameters(e.getValue(), stringParams))));
+                                toMap(e -> e.getKey(), e -> List.of(e.getValue().expand(stringParams))));
                     }
                 };
 
                 attemptSuccess(environment, applicationName, application, appConfig,
                     application.getEndpoints().findEndpointOrThrow(((ForwardToEndpointResponseConfiguration) config).endpoint),
-                    context.tx, context.threads, false, new ParameterTransformationLogger(), autoInc,
-                    context.requestLogExpressionCaptures, null, context.requestId, request, responseConsumer);
+                    context.tx, context.threads, false, new ParameterTransformationLogger(), context.trace, autoInc,
+                    context.requestLogExpressionCaptures, null, context.requestId, request, responseConsumer, responder);
             }
             else super.runUnconditionally();
         }
@@ -502,7 +571,7 @@ public class EndpointExecutor {
         @Nonnull ApplicationName applicationName, @Nonnull PublishEnvironment environment, @Nonnull NodeName endpointName,
         @Nonnull Instant now, @Nonnull RequestId requestId, @Nonnull Request req, 
         boolean debugAllowed, boolean debugRequested, boolean verboseRequested,
-        @Nonnull ParameterTransformationLogger parameterTransformationLogger, 
+        @Nonnull ParameterTransformationLogger parameterTransformationLogger, @CheckForNull ExecutionTrace trace,
         @Nonnull Map<OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc, 
         @Nonnull Map<String, String> requestLogExpressionCaptures,
         @Nonnull BufferedHttpResponseDocumentGenerationDestination response,
@@ -518,7 +587,6 @@ public class EndpointExecutor {
         ids.setOnDemandPerpetualIncrementingNumber(autoInc.get(perpetual).getValueOrNull());
         ids.setOnDemandYearIncrementingNumber(autoInc.get(year).getValueOrNull());
         ids.setOnDemandMonthIncrementingNumber(autoInc.get(month).getValueOrNull());
-        tx.insert(ids);
         
         var r = new RequestLogRecord();
         r.setRequestId(requestId);
@@ -529,12 +597,22 @@ public class EndpointExecutor {
         r.setParameterTransformationOutput(recordDebugInfo ? parameterTransformationLogger.output : null);
         r.setRequestContentType(Optional.ofNullable(req.getRequestBodyIfPost())
             .filter(x -> recordDebugInfo).map(b -> b.contentType()).orElse(null));
+        // Large bodies are truncated, in which case their length is recorded
+        var requestLogMaxBodyBytes = DeploymentParameters.get().requestLogMaxBodyBytes;
         r.setRequestBody(Optional.ofNullable(req.getRequestBodyIfPost())
-            .filter(x -> recordDebugInfo).map(b -> b.body()).orElse(null));
+            .filter(x -> recordDebugInfo).map(b -> b.body().getPrefix(requestLogMaxBodyBytes)).orElse(null));
+        r.setRequestBodyLength(Optional.ofNullable(req.getRequestBodyIfPost())
+            .filter(x -> recordDebugInfo).map(b -> b.body().getLength())
+            .filter(length -> length > requestLogMaxBodyBytes).orElse(null));
+        r.setExecutionTrace(recordDebugInfo && trace != null ? trace.toChromeTraceJson() : null);
         alterRequestLog.accept(r);
-        tx.insert(r);
         
-        RequestLogExpressionCaptureTask.writeToDb(tx, requestId, requestLogExpressionCaptures);
+        var captures = RequestLogExpressionCaptureTask.newRecords(requestId, requestLogExpressionCaptures);
+        
+        try (var ignored = RequestMetrics.shared.start(Stage.requestLog, null,
+                new Labels(applicationName.name(), endpointName.getName(), environment.name()))) {
+            DeploymentParameters.get().requestLogWriter.write(tx, new RequestLogEntry(ids, r, captures));
+        }
     }
     
     @SuppressWarnings("UnusedReturnValue")
@@ -542,57 +620,30 @@ public class EndpointExecutor {
         @Nonnull PublishEnvironment environment, @Nonnull ApplicationName applicationName, @Nonnull ApplicationConfig appConfig,
         @Nonnull TransformationContext context, @Nonnull Endpoint endpoint,
         @Nonnull Map<OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc,
-        @Nonnull Consumer<BufferedHttpResponseDocumentGenerationDestination> responseConsumer
+        @Nonnull Consumer<BufferedHttpResponseDocumentGenerationDestination> responseConsumer, @Nonnull Responder responder
     ) {
-        var synchronizationPointForTaskId = new HashMap<TaskId, SynchronizationPoint>();
-        var synchronizationPointForOutputValue = new HashMap<IntermediateValueName, SynchronizationPoint>();
-        var tasksToSchedule = new ArrayList<>(endpoint.tasks);
+        var plan = endpoint.getExecutionPlan();
         
-        var infiniteLoopProtection = 0;
-        while ( ! tasksToSchedule.isEmpty()) {
-            tasks: for (var tasksToScheduleIter = tasksToSchedule.iterator(); tasksToScheduleIter.hasNext(); ) {
-                var task = tasksToScheduleIter.next();
-                var dependencies = new ArrayList<SynchronizationPoint>();
-                
-                // What tasks do we depend on? Ignore the task for now in case our dependencies haven't been scheduled yet
-                for (var predecessor : task.predecessors) {
-                    if ( ! synchronizationPointForTaskId.containsKey(predecessor)) continue tasks;
-                    dependencies.add(synchronizationPointForTaskId.get(predecessor));
-                }
-                for (var neededInputValue : task.inputIntermediateValues) {
-                    if ( ! synchronizationPointForOutputValue.containsKey(neededInputValue)) continue tasks;
-                    dependencies.add(synchronizationPointForOutputValue.get(neededInputValue));
-                }
-                
-                // Schedule the task (after our dependencies)
-                var taskRunnable = task.scheduleTaskExecutionIfNecessary(dependencies, context);
-                
-                // Remove the task from the list of tasks still to schedule
-                tasksToScheduleIter.remove();
-                
-                // Record our runnable for this task, in case future tasks need to depend on us
-                if (task.getTaskIdOrNull() != null)
-                    synchronizationPointForTaskId.put(task.getTaskIdOrNull(), taskRunnable);
-                for (var outputValue : task.getOutputIntermediateValues()) 
-                    synchronizationPointForOutputValue.put(outputValue, taskRunnable);
-            }
-
-            if (infiniteLoopProtection++ >= 1_000)
-                throw new RuntimeException("Unreachable: Probably circular dependency of task intermediate variables");
+        // Tasks are sorted, so the tasks each task depends on have already been scheduled
+        var synchronizationPointForTask = new SynchronizationPoint[plan.tasks.size()];
+        for (int t = 0; t < plan.tasks.size(); t++) {
+            var dependencies = new ArrayList<SynchronizationPoint>(plan.taskDependencies[t].length);
+            for (var d : plan.taskDependencies[t]) dependencies.add(synchronizationPointForTask[d]);
+            synchronizationPointForTask[t] = plan.tasks.get(t).scheduleTaskExecutionIfNecessary(dependencies, context);
         }
 
         ResponseIncludingForward previousResponse = null;
-        for (var success : endpoint.success) {
+        for (int s = 0; s < endpoint.success.size(); s++) {
+            var success = endpoint.success.get(s);
             var dependencies = new ArrayList<Runnable>();
             if (previousResponse != null)
                 dependencies.add(previousResponse);
-            for (var predecessor : success.predecessors) 
-                dependencies.add(synchronizationPointForTaskId.get(predecessor));
-            for (var neededInputValue : success.inputIntermediateValues) 
-                dependencies.add(synchronizationPointForOutputValue.get(neededInputValue));
+            for (var d : plan.successDependencies[s]) dependencies.add(synchronizationPointForTask[d]);
 
             var thisResponse = new ResponseIncludingForward(environment, applicationName, context.application,
-                context, success, SC_OK, appConfig, autoInc, responseConsumer);
+                context, success, SC_OK, appConfig, autoInc, responseConsumer, responder);
+            if (context.trace != null) thisResponse.traceNode = context.trace.newNode(
+                "<endpoint name='" + endpoint.name.getName() + "'>: <success>", thisResponse, dependencies);
             context.threads.addTaskWithDependencies(dependencies, thisResponse);
             
             previousResponse = thisResponse;
@@ -605,29 +656,35 @@ public class EndpointExecutor {
     protected void attemptSuccess(
         @Nonnull PublishEnvironment environment, @Nonnull ApplicationName applicationName,
         @Nonnull Application application, @Nonnull ApplicationConfig appConfig, @Nonnull Endpoint endpoint,
-        @Nonnull ApplicationTransaction tx, @Nonnull ThreadPool threads,
+        @Nonnull ApplicationTransaction tx, @Nonnull RequestThreads threads,
         boolean debugRequested, @Nonnull ParameterTransformationLogger parameterTransformationLogger,
-        @Nonnull Map<OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc,
+        @CheckForNull ExecutionTrace trace, @Nonnull Map<OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc,
         @Nonnull Map<String, String> requestLogExpressionCaptures,
         @CheckForNull String hashToCheck, @Nonnull RequestId requestId, @Nonnull Request req,
-        @Nonnull Consumer<BufferedHttpResponseDocumentGenerationDestination> responseConsumer
+        @Nonnull Consumer<BufferedHttpResponseDocumentGenerationDestination> responseConsumer, @Nonnull Responder responder
     ) throws InvalidRequestException, TransformationFailedException {
         getParameters(environment, applicationName, application, tx, threads, endpoint, requestId, req,
-            appConfig.debugAllowed(), debugRequested, parameterTransformationLogger,
+            appConfig, debugRequested, parameterTransformationLogger, trace,
             autoInc, parameters -> {
                 try {
                     if (hashToCheck != null) assertHashCorrect(application, environment, endpoint, parameters, hashToCheck);
                     
                     var context = new TransformationContext(environment, applicationName, application, tx, threads, endpoint, 
                         parameters, ParameterNotFoundPolicy.error, requestId, req, autoInc, requestLogExpressionCaptures);
+                    context.trace = trace;
                     scheduleTasksAndSuccess(environment, applicationName, appConfig,
-                        context, endpoint, autoInc, responseConsumer);
+                        context, endpoint, autoInc, responseConsumer, responder);
                 }
                 catch (IncorrectHashException e) { throw new RuntimeException(e); }
             }
         );
     }
 
+    /** Rejects the request before it starts, if the server already has too much work queued */
+    protected static void admitRequest(@Nonnull CpuThreads cpuThreads) throws ServerOverloadedException {
+        if ( ! cpuThreads.admitRequest()) throw new ServerOverloadedException(cpuThreads.retryAfter);
+    }
+
     /**
      * The application etc. are assumed to exist.
      * @param hashToCheck null if not to check hash (e.g. service portal is calling this, so no hash check)
@@ -637,34 +694,38 @@ public class EndpointExecutor {
         @Nonnull Application application, @Nonnull Endpoint endpoint, boolean debugRequested, boolean verboseRequested,
         @CheckForNull String hashToCheck, @Nonnull Request req, @Nonnull Responder responder
     ) throws EndpointExecutionFailedException {
-        try (var ignored = new Timer(getClass().getSimpleName())) {
+        admitRequest(DeploymentParameters.get().cpuThreads);
+        
+        try (var ignored = new Timer(getClass().getSimpleName());
+             var ignored3 = RequestMetrics.shared.startExecution()) {
             var now = Instant.now();
             var requestId = RequestId.newRandom();
             
             var parameterTransformationLogger = new ParameterTransformationLogger();
             var awsCloudWatchRequestMetricWriter = DeploymentParameters.get().getAwsCloudWatchRequestMetricWriter();
+
+            var successResponse = new Consumer<BufferedHttpResponseDocumentGenerationDestination>() {
+                public BufferedHttpResponseDocumentGenerationDestination destination;
+                @Override public void accept(BufferedHttpResponseDocumentGenerationDestination d) { destination = d; } 
+            };
+            ExecutionTrace trace = null;
             
             try (var tx = new ApplicationTransaction(application);
                  var ignored2 = new Timer("<success> for application='"+applicationName.name()+"', endpoint='"+endpoint.name.name+"'")) {
                 
-                var threads = new ThreadPool();
-                threads.setThreadNamePrefix("<success>");
+                var threads = new RequestThreads();
                 
                 var appConfig = DeploymentParameters.get().getApplications(tx.db).fetchApplicationConfig(tx.db, applicationName);
                 
                 if (appConfig.locked()) throw new InvalidRequestException("Application is locked");
+                if (appConfig.debugAllowed() && debugRequested) trace = new ExecutionTrace();
 
                 var autoInc = newLazyNumbers(applicationName, environment, now);
                 var requestLogExpressionCaptures = new HashMap<String, String>();
-
-                var successResponse = new Consumer<BufferedHttpResponseDocumentGenerationDestination>() {
-                    public BufferedHttpResponseDocumentGenerationDestination destination;
-                    @Override public void accept(BufferedHttpResponseDocumentGenerationDestination d) { destination = d; } 
-                };
                 
                 attemptSuccess(environment, applicationName, application, appConfig, 
-                    endpoint, tx, threads, debugRequested, parameterTransformationLogger, autoInc, 
-                    requestLogExpressionCaptures, hashToCheck, requestId, req, successResponse);
+                    endpoint, tx, threads, debugRequested, parameterTransformationLogger, trace, autoInc, 
+                    requestLogExpressionCaptures, hashToCheck, requestId, req, successResponse, responder);
 
                 try { threads.execute(); }
                 catch (RuntimeException e) {
@@ -681,12 +742,12 @@ public class EndpointExecutor {
 
                 insertRequestLog(tx.db, applicationName, environment, endpoint.name, now, requestId, 
                     req, appConfig.debugAllowed(), debugRequested, verboseRequested, 
-                    parameterTransformationLogger, autoInc, requestLogExpressionCaptures, successResponse.destination,
+                    parameterTransformationLogger, trace, autoInc, requestLogExpressionCaptures, successResponse.destination,
                     r -> {});
                 
                 if (awsCloudWatchRequestMetricWriter != null)
                     awsCloudWatchRequestMetricWriter.scheduleWriteMetric(
-                        applicationName, endpoint.name, environment, now,
+                        applicationName, endpoint.name, environment,
                         successResponse.destination.getStatusCode(), Duration.between(now, Instant.now()));
 
                 tx.commit();
@@ -716,13 +777,16 @@ public class EndpointExecutor {
                     errorExpansionValues.put(new ParameterName("parameter-transformation-error-text"),
                         e instanceof ParameterTransformationHadErrorException p ? p.error : "");
 
-                    var threads = new ThreadPool();
-                    threads.setThreadNamePrefix("<error>");
+                    var threads = new RequestThreads();
                     var autoInc = newLazyNumbers(applicationName, environment, now);
                     var context = new TransformationContext(environment, applicationName, application, tx, 
                         threads, endpoint, errorExpansionValues, ParameterNotFoundPolicy.error, 
                         requestId, req, autoInc, new HashMap<>());
-                    threads.addTask(new Response(context, endpoint.error, statusCode, errorResponse));
+                    context.trace = trace;
+                    var response = new Response(context, endpoint.error, statusCode, errorResponse, responder);
+                    if (trace != null) response.traceNode = trace.newNode(
+                        "<endpoint name='" + endpoint.name.getName() + "'>: <error>", response, List.of());
+                    threads.addTask(response);
                     
                     try { threads.execute(); }
                     catch (RuntimeException e2) {
@@ -734,7 +798,7 @@ public class EndpointExecutor {
 
                     insertRequestLog(tx.db, applicationName, environment, endpoint.name, now, requestId, 
                         req, appConfig.debugAllowed(), debugRequested, verboseRequested, 
-                        parameterTransformationLogger, autoInc, context.requestLogExpressionCaptures, 
+                        parameterTransformationLogger, trace, autoInc, context.requestLogExpressionCaptures, 
                         errorResponse.destination, r -> {
                             r.setExceptionMessage(e.getMessage());
                             r.setHttpRequestFailedUrl(e instanceof HttpRequestFailedException h ? h.url : null);
@@ -744,11 +808,19 @@ public class EndpointExecutor {
 
                     if (awsCloudWatchRequestMetricWriter != null)
                         awsCloudWatchRequestMetricWriter.scheduleWriteMetric(
-                            applicationName, endpoint.name, environment, now,
+                            applicationName, endpoint.name, environment,
                             errorResponse.destination.getStatusCode(), Duration.between(now, Instant.now()));
 
                     tx.commit();
-                    responder.respond(errorResponse.destination);
+                    
+                    var streamedSuccess = successResponse.destination 
+                        instanceof StreamingHttpResponseDocumentGenerationDestination s ? s : null;
+                    if (streamedSuccess != null && streamedSuccess.isCommitted())
+                        log.error("Cannot deliver <error>, as the streamed <success> response has already been sent");
+                    else {
+                        if (streamedSuccess != null) streamedSuccess.reset(); // e.g. its status and Content-Disposition
+                        responder.respond(errorResponse.destination);
+                    }
                 }
                 catch (InvalidRequestException | TransformationFailedException ee) {
                     throw new EndpointExecutionFailedException(500, "Error occurred; but <error> has an error: "+ee, ee);
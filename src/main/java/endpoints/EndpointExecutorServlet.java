@@ -2,7 +2,12 @@ package endpoints;
 
 import com.databasesandlife.util.Timer;
 import endpoints.EndpointExecutor.InvalidRequestException;
+import endpoints.EndpointExecutor.RequestTooLargeException;
+import endpoints.EndpointExecutor.Responder;
+import endpoints.EndpointExecutor.ServerOverloadedException;
 import endpoints.PublishEnvironment.PublishEnvironmentNotFoundException;
+import endpoints.RequestMetrics.Labels;
+import endpoints.RequestMetrics.Stage;
 import endpoints.config.Application;
 import endpoints.config.ApplicationFactory.ApplicationNotFoundException;
 import endpoints.config.ApplicationName;
@@ -23,6 +28,8 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.Locale;
 import java.util.regex.Pattern;
 
@@ -47,6 +54,7 @@ public class EndpointExecutorServlet extends AbstractEndpointsServlet {
         }
     }
     
+    @SneakyThrows(IOException.class)
     protected void logParamsForDebugging(@Nonnull HttpServletRequest servletRequest, @Nonnull Request request) {
         if ( ! DeploymentParameters.get().xsltDebugLog) return;
         
@@ -61,18 +69,21 @@ public class EndpointExecutorServlet extends AbstractEndpointsServlet {
                     e.getKey().name, v.length(), StringEscapeUtils.escapeJava(v.substring(0, Math.min(1000, v.length())))));
 
         for (var e : request.getUploadedFiles()) {
-            var bytes = e.toByteArray();
+            final byte[] bytes;
+            final long size;
+            try (var in = e.getInputStream()) {
+                bytes = in.readNBytes(10);
+                size = bytes.length + in.transferTo(OutputStream.nullOutputStream());
+            }
 
             var hexString = new StringBuilder();
-            var length = bytes.length;
-            if (length > 10) length = 10;
-            for (int i=0;i<length;i++) {
-                String x = "0" + Integer.toHexString(0xFF & bytes[i]);
+            for (var b : bytes) {
+                String x = "0" + Integer.toHexString(0xFF & b);
                 hexString.append(x.substring(x.length() - 2));
             }
 
             log.info(String.format(Locale.ENGLISH, "Uploaded file: field='%s', size %,d bytes, first bytes (hex) = %s",
-                e.getFieldName(), bytes.length, hexString));
+                e.getFieldName(), size, hexString));
         }
     }
 
@@ -111,6 +122,7 @@ public class EndpointExecutorServlet extends AbstractEndpointsServlet {
             final PublishEnvironment environment;
             final Application application;
             final Endpoint endpoint;
+            var lookupStartNanos = System.nanoTime();
             try (var tx = DeploymentParameters.get().newDbTransaction()) {
                 environment = PublishEnvironment.parseOrDefault(environmentName);
                 application = DeploymentParameters.get().getApplications(tx).getApplication(tx, applicationName, environment);
@@ -132,15 +144,19 @@ public class EndpointExecutorServlet extends AbstractEndpointsServlet {
                 return; 
             }
 
-            var request = new ServletRequest(req);
-            
-            logParamsForDebugging(req, request);
-                
-            var suppliedHash = req.getParameter("hash");
+            RequestMetrics.shared.record(Stage.applicationLookup, null,
+                new Labels(applicationName.name(), endpointName.getName(), environment.name()),
+                Duration.ofNanos(System.nanoTime() - lookupStartNanos));
+
+            try (var request = new ServletRequest(req, endpoint.getMaxRequestBytes())) {
+                logParamsForDebugging(req, request);
+
+                var suppliedHash = req.getParameter("hash");
 
-            new EndpointExecutor().execute(environment, applicationName, application, endpoint,
-                parseBoolean(req.getParameter("debug")), parseBoolean(req.getParameter("verbose")),
-                suppliedHash, request, responseContent -> responseContent.deliver(resp));
+                new EndpointExecutor().execute(environment, applicationName, application, endpoint,
+                    parseBoolean(req.getParameter("debug")), parseBoolean(req.getParameter("verbose")),
+                    suppliedHash, request, Responder.forServletResponse(resp));
+            }
         }
         catch (InvalidRequestException e) {
             // Assuming it's just an error with some text for the user, don't fill up our logs with stack backtraces
@@ -149,6 +165,14 @@ public class EndpointExecutorServlet extends AbstractEndpointsServlet {
             
             resp.sendError(400, "Request invalid: " + e.getMessage());
         }
+        catch (ServerOverloadedException e) {
+            log.warn(e.getMessage());
+            e.sendError(resp);
+        }
+        catch (RequestTooLargeException e) {
+            log.warn(e.getMessage());
+            resp.sendError(e.statusCode, e.externalMessage);
+        }
         catch (Exception e) { 
             log.error("An internal error occurred", e);
             resp.sendError(500, "An internal error occurred");
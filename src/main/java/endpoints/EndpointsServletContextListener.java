@@ -0,0 +1,23 @@
+package endpoints;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Releases the resources which are shared by all servlets, once, when the web application is stopped.
+ *    <p>
+ * This is not done in the servlets' destroy methods, as there are multiple servlets,
+ * and destroying one must not affect requests still being executed by the others.
+ */
+public class EndpointsServletContextListener implements ServletContextListener {
+
+    @Override public void contextInitialized(ServletContextEvent event) { }
+
+    @Override public void contextDestroyed(ServletContextEvent event) {
+        DeploymentParameters.get().closeApplications();
+        DeploymentParameters.get().closeAwsCloudWatchRequestMetricWriter(); // uses an AWS client, so is closed before them
+        DeploymentParameters.get().awsClients.close();
+        DeploymentParameters.get().cpuThreads.close();
+        DeploymentParameters.get().closeDbConnectionPools();
+    }
+}
@@ -0,0 +1,125 @@
+package endpoints;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the timeline of the nodes of an endpoint execution's task graph, e.g. data sources, tasks and responses,
+ * for requests where debug is allowed and requested.
+ *    <p>
+ * Each node records when it was scheduled, when it started and finished, which thread it ran on, and which nodes it depended on.
+ * A node became runnable when the last of its dependencies finished, so the time between that and its start
+ * is time spent waiting for a free thread.
+ *    <p>
+ * Dependencies are the {@link Runnable}s passed to the thread pool, which are mapped to nodes by identity.
+ * The trace is stored in the request log in Chrome trace event format,
+ * which can be opened in "chrome://tracing" or <a href="https://ui.perfetto.dev/">Perfetto</a>.
+ */
+public class ExecutionTrace {
+
+    public class Node {
+        protected final int id;
+        protected final @Nonnull String name;
+        protected final @Nonnull List<Node> dependencies;
+        protected final long scheduledNanos = System.nanoTime();
+        protected boolean started = false, finished = false;
+        protected long startedNanos, finishedNanos; // Only set once started and finished respectively
+        protected @CheckForNull String threadName = null;
+
+        protected Node(int id, @Nonnull String name, @Nonnull List<Node> dependencies) {
+            this.id = id;
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+
+        /** Call from the thread executing the node */
+        public void started() {
+            synchronized (ExecutionTrace.this) {
+                started = true;
+                startedNanos = System.nanoTime();
+                threadName = Thread.currentThread().getName();
+            }
+        }
+
+        public void finished() {
+            synchronized (ExecutionTrace.this) {
+                finished = true;
+                finishedNanos = System.nanoTime();
+            }
+        }
+    }
+
+    protected final long createdNanos = System.nanoTime();
+    protected final @Nonnull List<Node> nodes = new ArrayList<>();
+    protected final @Nonnull Map<Runnable, Node> nodeForRunnable = new IdentityHashMap<>();
+
+    /**
+     * @param runnable     the object other nodes will pass to the thread pool as a dependency, in order to depend on this node
+     * @param dependencies runnables passed to the thread pool as dependencies; those not recorded in this trace are ignored
+     */
+    public synchronized @Nonnull Node newNode(
+        @Nonnull String name, @CheckForNull Runnable runnable, @Nonnull Collection<? extends Runnable> dependencies
+    ) {
+        var dependencyNodes = new ArrayList<Node>();
+        for (var d : dependencies) {
+            var n = nodeForRunnable.get(d);
+            if (n != null) dependencyNodes.add(n);
+        }
+        var result = new Node(nodes.size(), name, dependencyNodes);
+        nodes.add(result);
+        if (runnable != null) nodeForRunnable.put(runnable, result);
+        return result;
+    }
+
+    protected double toMicros(long nanos) {
+        return (nanos - createdNanos) / 1_000.0;
+    }
+
+    /** Node started after all its dependencies finished; or, if it has none, after it was scheduled */
+    protected long getRunnableNanos(@Nonnull Node node) {
+        var result = node.scheduledNanos;
+        for (var d : node.dependencies) if (d.finished) result = Math.max(result, d.finishedNanos);
+        return result;
+    }
+
+    /** Nodes which never started, e.g. as an earlier node failed, are omitted */
+    public synchronized @Nonnull String toChromeTraceJson() {
+        var events = new JSONArray();
+        for (var node : nodes) {
+            if ( ! node.started) continue;
+            var finishedNanos = node.finished ? node.finishedNanos : node.startedNanos;
+            var runnableNanos = Math.min(getRunnableNanos(node), node.startedNanos);
+
+            var args = new JSONObject();
+            args.put("id", node.id);
+            args.put("waitMs", (node.startedNanos - runnableNanos) / 1e6);
+            args.put("runMs", (finishedNanos - node.startedNanos) / 1e6);
+            args.put("dependencies", new JSONArray(node.dependencies.stream().map(d -> d.id).toList()));
+            if ( ! node.finished) args.put("finished", false);
+
+            var event = new JSONObject();
+            event.put("name", node.name);
+            event.put("cat", "endpoints");
+            event.put("ph", "X");
+            event.put("ts", toMicros(node.startedNanos));
+            event.put("dur", (finishedNanos - node.startedNanos) / 1_000.0);
+            event.put("pid", 1);
+            event.put("tid", node.threadName);
+            event.put("args", args);
+            events.put(event);
+        }
+
+        var result = new JSONObject();
+        result.put("traceEvents", events);
+        result.put("displayTimeUnit", "ms");
+        return result.toString(2);
+    }
+}
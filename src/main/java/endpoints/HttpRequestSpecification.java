@@ -12,11 +12,13 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.common.net.MediaType;
 import com.offerready.xslt.DocumentGenerator.StyleVisionXslt;
-import com.offerready.xslt.JsonXmlConverter;
 import com.offerready.xslt.WeaklyCachedXsltTransformer;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import endpoints.EndpointExecutor.InvalidRequestException;
+import endpoints.HttpResponseCache.CachePolicy;
+import endpoints.HttpResponseCache.CachedResponse;
+import endpoints.HttpResponseCache.FetchedResponse;
 import endpoints.config.IntermediateValueName;
 import endpoints.config.ParameterName;
 import endpoints.datasource.TransformationFailedException;
@@ -40,13 +42,21 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Consumer;
@@ -72,12 +82,12 @@ public class HttpRequestSpecification {
     }
 
     public final boolean ignoreIfError;
-    protected final @Nonnull String urlPattern;
+    protected final @Nonnull ParameterTemplate urlPattern;
     protected final @Nonnull HttpMethod method;
-    protected final @Nonnull Map<String, String> getParameterPatterns;
-    protected final @Nonnull Map<String, String> requestHeaderPatterns;
-    protected @CheckForNull String usernamePatternOrNull, passwordPatternOrNull;
-    protected final @Nonnull Map<String, String> postParameterPatterns;
+    protected final @Nonnull Map<String, ParameterTemplate> getParameterPatterns;
+    protected final @Nonnull Map<String, ParameterTemplate> requestHeaderPatterns;
+    protected @CheckForNull ParameterTemplate usernamePatternOrNull, passwordPatternOrNull;
+    protected final @Nonnull Map<String, ParameterTemplate> postParameterPatterns;
     protected @CheckForNull Element requestBodyXmlTemplate;
     protected @CheckForNull WeaklyCachedXsltTransformer requestBodyXmlTransformer;
     protected boolean replaceXmlElementWithFileUploads, replaceXmlElementsWithTransformerResults;
@@ -170,6 +180,15 @@ public class HttpRequestSpecification {
         });
     }
 
+    protected static @Nonnull Map<String, ParameterTemplate> parseParameterTemplateMap(
+        @Nonnull Element container, @Nonnull String elementName, @Nonnull String keyAttribute
+    ) throws ConfigurationException {
+        var result = new LinkedHashMap<String, ParameterTemplate>();
+        for (var e : parseMap(container, elementName, keyAttribute).entrySet())
+            result.put(e.getKey(), ParameterTemplate.compile(e.getValue()));
+        return result;
+    }
+
     public HttpRequestSpecification(
         @Nonnull XsltCompilationThreads threads, @Nonnull File httpXsltDirectory, @Nonnull Element command
     ) throws ConfigurationException {
@@ -179,21 +198,21 @@ public class HttpRequestSpecification {
 
         ignoreIfError = parseBoolean(getOptionalAttribute(command, "ignore-if-error"));
         
-        urlPattern = getMandatorySingleSubElement(command, "url").getTextContent();
+        urlPattern = ParameterTemplate.compile(getMandatorySingleSubElement(command, "url").getTextContent());
 
         var methodElement = getOptionalSingleSubElement(command, "method");
         if (methodElement == null) method = HttpMethod.GET;
         else method = HttpMethod.valueOf(getMandatoryAttribute(methodElement, "name"));
 
-        getParameterPatterns = parseMap(command, "get-parameter", "name");
-        requestHeaderPatterns = parseMap(command, "request-header", "name");
-        postParameterPatterns = parseMap(command, "post-parameter", "name");
+        getParameterPatterns = parseParameterTemplateMap(command, "get-parameter", "name");
+        requestHeaderPatterns = parseParameterTemplateMap(command, "request-header", "name");
+        postParameterPatterns = parseParameterTemplateMap(command, "post-parameter", "name");
 
         var authElement = getOptionalSingleSubElement(command, "basic-access-authentication");
         if (authElement != null) {
             assertNoOtherElements(authElement, "username", "password");
-            usernamePatternOrNull = getMandatoryAttribute(authElement, "username");
-            passwordPatternOrNull = getMandatoryAttribute(authElement, "password");
+            usernamePatternOrNull = ParameterTemplate.compile(getMandatoryAttribute(authElement, "username"));
+            passwordPatternOrNull = ParameterTemplate.compile(getMandatoryAttribute(authElement, "password"));
         }
 
         var requestBodyXmlTemplateContainer = getOptionalSingleSubElement(command, "xml-body");
@@ -293,113 +312,169 @@ public class HttpRequestSpecification {
         throw new RuntimeException(e);
     }
 
+    /** A response from {@link ApplicationHttpClient}, in the form expected by code which processes a {@link URLConnection} */
+    public static class HttpResponseUrlConnection extends URLConnection {
+        protected final @Nonnull HttpHeaders headers;
+        protected final @Nonnull InputStream body;
+
+        public HttpResponseUrlConnection(@Nonnull URI uri, @Nonnull HttpHeaders headers, @Nonnull InputStream body)
+        throws MalformedURLException {
+            super(uri.toURL());
+            this.headers = headers;
+            this.body = body;
+            this.connected = true;
+        }
+
+        @Override public void connect() { }
+        @Override public @Nonnull InputStream getInputStream() { return body; }
+        @Override public @CheckForNull String getHeaderField(@Nonnull String name) { return headers.firstValue(name).orElse(null); }
+        @Override public @Nonnull Map<String, List<String>> getHeaderFields() { return headers.map(); }
+    }
+
+    /** These are set by the HTTP client itself, and may not be set by the request */
+    protected static final @Nonnull Set<String> restrictedLowercaseRequestHeaders =
+        Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    protected void assertSuccess(@Nonnull String baseUrl, @Nonnull HttpResponse<InputStream> response)
+    throws IOException, HttpRequestFailedException {
+        if (response.statusCode() >= 200 && response.statusCode() < 300) return;
+        
+        String errorBody = null;
+        var type = response.headers().firstValue("Content-Type").orElse(null);
+        if (type != null && (type.contains("text") || type.contains("json") || type.contains("xml"))) {
+            var responseCharset = MediaType.parse(type).charset().or(UTF_8);
+            errorBody = IOUtils.toString(response.body(), responseCharset);
+        }
+
+        var bodyMsg = errorBody == null ? "" :
+            " (body was: " +
+                (errorBody.length() > 1_000 ? errorBody.substring(0, 1_000) + "... [truncated]" : errorBody)
+                + ")";
+
+        // The JDK client does not expose the reason phrase sent by the server (HTTP/2 has none), so only the code is shown
+        throw new HttpRequestFailedException(baseUrl, response.statusCode(), "URL '" + baseUrl
+            + "' returned " + response.statusCode() + bodyMsg);
+    }
+
     /** @param after URLConnection is null if an error occurred and this request is set to ignore errors */
     public void scheduleExecutionAndAssertNoError(
         @Nonnull TransformationContext context,    
         @Nonnull Set<IntermediateValueName> visibleIntermediateValues,
         @Nonnull Consumer<URLConnection> after
+    )  {
+        scheduleExecutionAndAssertNoError(context, visibleIntermediateValues, null, after);
+    }
+
+    /** 
+     * @param cachePolicy null means the response is not cached
+     * @param after URLConnection is null if an error occurred and this request is set to ignore errors 
+     */
+    public void scheduleExecutionAndAssertNoError(
+        @Nonnull TransformationContext context,    
+        @Nonnull Set<IntermediateValueName> visibleIntermediateValues,
+        @CheckForNull CachePolicy cachePolicy,
+        @Nonnull Consumer<URLConnection> after
     )  {
         var stringParams = context.getParametersAndIntermediateValuesAndSecrets(visibleIntermediateValues);
-        var baseUrl = replacePlainTextParameters(urlPattern, stringParams); // without ?x=y parameters
+        var baseUrl = urlPattern.expand(stringParams); // without ?x=y parameters
         var precursorTasks = new ArrayList<Runnable>();
         try {
             var getParameters = new HashMap<String, String>();
             for (var e : getParameterPatterns.entrySet())
-                getParameters.put(e.getKey(), replacePlainTextParameters(e.getValue(), stringParams));
+                getParameters.put(e.getKey(), e.getValue().expand(stringParams));
             var urlAndParams = getParameterPatterns.isEmpty()
                 ? baseUrl
                 : baseUrl + "?" + WebEncodingUtils.encodeGetParameters(getParameters);
+            var uri = new URL(urlAndParams).toURI();
 
-            var urlConnection = (HttpURLConnection) new URL(urlAndParams).openConnection();
-            urlConnection.setRequestMethod(method.name());
-
+            var headers = new LinkedHashMap<String, String>();
             for (var e : requestHeaderPatterns.entrySet())
-                urlConnection.setRequestProperty(e.getKey(), replacePlainTextParameters(e.getValue(), stringParams));
+                headers.put(e.getKey(), e.getValue().expand(stringParams));
+            var hasContentTypeHeader = requestHeaderPatterns.keySet().stream()
+                .map(x -> x.toLowerCase()).collect(toSet()).contains("content-type");
 
             if (usernamePatternOrNull != null && passwordPatternOrNull != null) {
-                var user = replacePlainTextParameters(usernamePatternOrNull, stringParams);
-                var pw = replacePlainTextParameters(passwordPatternOrNull, stringParams);
+                var user = usernamePatternOrNull.expand(stringParams);
+                var pw = passwordPatternOrNull.expand(stringParams);
                 var encodedAuth = Base64.encodeBase64String((user + ":" + pw).getBytes(UTF_8));
-                urlConnection.setRequestProperty("Authorization", "Basic " + encodedAuth);
+                headers.put("Authorization", "Basic " + encodedAuth);
             }
             
+            // Request body is produced by precursor tasks (e.g. XSLT), then sent once they are complete
+            var body = new Object() {
+                volatile @CheckForNull byte[] bytes = null;
+                volatile boolean failed = false;
+            };
+            
             if ( ! postParameterPatterns.isEmpty()) {
+                if ( ! hasContentTypeHeader) headers.put("Content-Type", "application/x-www-form-urlencoded");
                 Runnable req = () -> {
                     var expanded = new HashMap<String, String>();
                     for (var e : postParameterPatterns.entrySet())
-                        expanded.put(e.getKey(), replacePlainTextParameters(e.getValue(), stringParams));
-                    var bodyBytes = WebEncodingUtils.encodeGetParameters(expanded).toString().getBytes(StandardCharsets.UTF_8);
-                    urlConnection.setDoOutput(true);
-                    try (DataOutputStream wr = new DataOutputStream(urlConnection.getOutputStream())) {
-                        wr.write(bodyBytes);
-                    }
-                    catch (IOException e) {
-                        throwException(baseUrl, e); // IOException can be URL not found etc.
-                        after.accept(null);
-                    }
+                        expanded.put(e.getKey(), e.getValue().expand(stringParams));
+                    body.bytes = WebEncodingUtils.encodeGetParameters(expanded).toString().getBytes(StandardCharsets.UTF_8);
                 };
-                context.threads.addTaskOffPool(req);
+                context.threads.addTask(req);
                 precursorTasks.add(req);
             }
 
             if (requestBodyXmlTemplate != null || requestBodyXmlTransformer != null) {
-                if ( ! requestHeaderPatterns.keySet().stream().map(x -> x.toLowerCase()).collect(toSet()).contains("content-type"))
-                    urlConnection.setRequestProperty("Content-Type", "application/xml; charset=UTF-8");
+                if ( ! hasContentTypeHeader) headers.put("Content-Type", "application/xml; charset=UTF-8");
                 
                 // Get XML (either fixed in <xml-body>, or result of XSLT) 
-                final Document body;
+                final Document xmlBody;
                 if (requestBodyXmlTemplate != null) {
-                    body = DomVariableExpander.expand(dollarThenBraces, p -> stringParams.get(p).get(), requestBodyXmlTemplate);
+                    xmlBody = DomVariableExpander.expand(dollarThenBraces, p -> stringParams.get(p).get(), requestBodyXmlTemplate);
                 } else if (requestBodyXmlTransformer != null) {
                     var parametersXml = createParametersElement("parameters", context, visibleIntermediateValues);
                     var bodyDocument = new DOMResult();
                     requestBodyXmlTransformer.newTransformer().transform(
                         new DOMSource(parametersXml.getOwnerDocument()), bodyDocument);
-                    body = (Document) bodyDocument.getNode();
-                    logXmlForDebugging(getClass(), "Result of XSLT, to send to '" + baseUrl + "'", body);
+                    xmlBody = (Document) bodyDocument.getNode();
+                    logXmlForDebugging(getClass(), "Result of XSLT, to send to '" + baseUrl + "'", xmlBody);
                 } else {
                     throw new RuntimeException("Unreachable");
                 }
                 
                 // Add base64 uploaded files if necessary
                 var bodyAfterUploadFiles = (replaceXmlElementWithFileUploads)
-                    ? replaceXmlElementWithFileUploads(context.request.getUploadedFiles(), body) : body;
+                    ? replaceXmlElementWithFileUploads(context.request.getUploadedFiles(), xmlBody) : xmlBody;
                 
-                // After XSLT results expanded, make request
-                Consumer<Document> makeRequest = bodyAfterXsltElementExpansion -> {
-                    urlConnection.setDoOutput(true);
-                    try (var o = urlConnection.getOutputStream()) {
-                        // This does not do any XSLT, it simply sends the DOM to the HTTP server
+                // After XSLT results expanded, serialize body
+                Consumer<Document> serializeBody = bodyAfterXsltElementExpansion -> {
+                    try {
+                        // This does not do any XSLT, it simply serializes the DOM
+                        var o = new ByteArrayOutputStream();
                         TransformerFactory.newInstance().newTransformer().transform(
                             new DOMSource(bodyAfterXsltElementExpansion), new StreamResult(o));
+                        body.bytes = o.toByteArray();
                     }
-                    catch (IOException | TransformerException e) {
-                        throwException(baseUrl, e); // IOException can be URL not found etc.
+                    catch (TransformerException e) {
+                        body.failed = true;
+                        throwException(baseUrl, e);
                         after.accept(null);
                     }
                 };
                 
                 // Add base64 XSLT results if necessary (e.g. PDFs)
-                // Then do the request (always in a "task" so that we are not blocked by slow HTTP servers) 
+                // Then serialize the body (always in a "task" so that we are not blocked by slow HTTP servers) 
                 if (replaceXmlElementsWithTransformerResults) {
                     var xmlExpander = new XmlWithBase64TransformationsExpander(context, bodyAfterUploadFiles);
-                    precursorTasks.add(xmlExpander.schedule(visibleIntermediateValues, makeRequest));
+                    precursorTasks.add(xmlExpander.schedule(visibleIntermediateValues, serializeBody));
                 } else {
-                    Runnable req = () -> makeRequest.accept(bodyAfterUploadFiles);
-                    context.threads.addTaskOffPool(req);
+                    Runnable req = () -> serializeBody.accept(bodyAfterUploadFiles);
+                    context.threads.addTask(req);
                     precursorTasks.add(req);
                 }
             }
 
             if (requestBodyJsonTemplate != null || requestBodyJsonTransformer != null) {
-                if ( ! requestHeaderPatterns.keySet().stream().map(x -> x.toLowerCase()).collect(toSet()).contains("content-type"))
-                    urlConnection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-                urlConnection.setDoOutput(true);
-                Runnable sendRequest = () -> { 
-                    try (var o = urlConnection.getOutputStream()) {
+                if ( ! hasContentTypeHeader) headers.put("Content-Type", "application/json; charset=UTF-8");
+                Runnable serializeBody = () -> { 
+                    try {
                         if (requestBodyJsonTemplate != null) {
-                            var body = expandJson(stringParams, requestBodyJsonTemplate);
-                            new ObjectMapper().writeValue(o, body);
+                            var json = expandJson(stringParams, requestBodyJsonTemplate);
+                            body.bytes = new ObjectMapper().writeValueAsBytes(json);
                         } else if (requestBodyJsonTransformer != null) {
                             var parametersXml = createParametersElement("parameters", context, visibleIntermediateValues);
                             StringWriter json = new StringWriter();
@@ -407,56 +482,79 @@ public class HttpRequestSpecification {
                                 new DOMSource(parametersXml.getOwnerDocument()), new StreamResult(json));
                             if (DeploymentParameters.get().xsltDebugLog)
                                 log.info("Result of XSLT, to send to '" + baseUrl + "'\n" + json);
-                            IOUtils.write(json.toString(), o, UTF_8);
+                            body.bytes = json.toString().getBytes(UTF_8);
                         } else {
                             throw new RuntimeException("Unreachable");
                         }
                     }
                     catch (IOException | DocumentTemplateInvalidException | TransformerException e) {
+                        body.failed = true;
                         throwException(baseUrl, e);
                         after.accept(null);
                     }
                 };
-                context.threads.addTaskOffPool(sendRequest);
-                precursorTasks.add(sendRequest);
+                context.threads.addTask(serializeBody);
+                precursorTasks.add(serializeBody);
             }
             
             Runnable executeRequest = () -> {
+                if (body.failed) return; // "after" has already been called
+                
                 try (var ignored2 = new Timer("Execute HTTP request to '" + baseUrl + "'")) {
-                    if (urlConnection.getResponseCode() < 200 || urlConnection.getResponseCode() >= 300) {
-                        String body = null;
-                        var type = urlConnection.getContentType();
-                        if (type != null && (type.contains("text") || type.contains("json") || type.contains("xml"))) {
-                            try (var errorStream = urlConnection.getErrorStream()) {
-                                if (errorStream != null) {
-                                    var responseCharset = MediaType.parse(urlConnection.getContentType()).charset().or(UTF_8);
-                                    body = IOUtils.toString(errorStream, responseCharset);
-                                }
-                            }
+                    var bytes = body.bytes;
+                    
+                    // HttpURLConnection, which was used previously, sent a GET with a body as a POST
+                    var effectiveMethod = (bytes != null && method == HttpMethod.GET) ? HttpMethod.POST : method;
+                    
+                    var request = HttpRequest.newBuilder(uri).method(effectiveMethod.name(),
+                        bytes == null ? BodyPublishers.noBody() : BodyPublishers.ofByteArray(bytes));
+                    for (var e : headers.entrySet()) {
+                        if (restrictedLowercaseRequestHeaders.contains(e.getKey().toLowerCase()))
+                            log.warn("Ignoring <request-header name='" + e.getKey() + "'>, which is set automatically");
+                        else request.header(e.getKey(), e.getValue());
+                    }
+                    
+                    var client = context.application.getHttpClient();
+                    
+                    if (cachePolicy == null) {
+                        var response = client.send(request);
+                        try {
+                            assertSuccess(baseUrl, response);
+                            after.accept(new HttpResponseUrlConnection(response.uri(), response.headers(), response.body()));
                         }
-
-                        var bodyMsg = body == null ? "" :
-                            " (body was: " +
-                                (body.length() > 1_000 ? body.substring(0, 1_000) + "... [truncated]" : body)
-                                + ")";
-
-                        var reasonPhrase = urlConnection.getResponseMessage() == null || urlConnection.getResponseMessage().isEmpty()
-                            ? "" : " " + urlConnection.getResponseMessage();
-
-                        throw new HttpRequestFailedException(baseUrl, urlConnection.getResponseCode(), "URL '" + baseUrl
-                            + "' returned " + urlConnection.getResponseCode()
-                            + reasonPhrase + bodyMsg);
+                        finally {
+                            IOUtils.closeQuietly(response.body()); // Allows the connection to be reused
+                        }
+                    } else {
+                        var key = HttpResponseCache.newKey(effectiveMethod.name(), uri, headers, bytes);
+                        var cached = context.application.getHttpResponseCache().get(key, () -> {
+                            var response = client.send(request);
+                            try (var responseBody = response.body()) {
+                                assertSuccess(baseUrl, response);
+                                return new FetchedResponse(
+                                    new CachedResponse(response.uri(), response.headers(), responseBody.readAllBytes()),
+                                    cachePolicy.getTimeToLive(response.headers()));
+                            }
+                        });
+                        after.accept(new HttpResponseUrlConnection(cached.uri(), cached.headers(), 
+                            new ByteArrayInputStream(cached.body())));
                     }
-
-                    after.accept(urlConnection);
                 }
                 catch (IOException | HttpRequestFailedException e) { 
                     throwException(baseUrl, e);
                     after.accept(null);
                 }
+                catch (IllegalArgumentException e) { // e.g. invalid header value
+                    throwException(baseUrl, new HttpRequestFailedException(baseUrl, null, "URL '" + baseUrl + "'", e));
+                    after.accept(null);
+                }
             };
             context.threads.addTaskWithDependenciesOffPool(precursorTasks, executeRequest);
         }
+        catch (URISyntaxException e) {
+            throwException(baseUrl, new HttpRequestFailedException(baseUrl, null, "URL '" + baseUrl + "'", e));
+            after.accept(null);
+        }
         catch (TransformationFailedException | IOException | DocumentTemplateInvalidException | TransformerException e) {
             throwException(baseUrl, e);
             after.accept(null);
@@ -469,7 +567,20 @@ public class HttpRequestSpecification {
         @Nonnull Set<IntermediateValueName> visibleIntermediateValues,
         @Nonnull Consumer<Element> after
     ) {
-        scheduleExecutionAndAssertNoError(context, visibleIntermediateValues, (@CheckForNull var urlConnection) -> {
+        scheduleExecutionAndParseResponse(context, visibleIntermediateValues, null, after);
+    }
+
+    /** 
+     * @param cachePolicy null means the response is not cached
+     * @param after null if an error occurred and this request is set to ignore errors. Does not expand variables in response 
+     */
+    public void scheduleExecutionAndParseResponse(
+        @Nonnull TransformationContext context,
+        @Nonnull Set<IntermediateValueName> visibleIntermediateValues,
+        @CheckForNull CachePolicy cachePolicy,
+        @Nonnull Consumer<Element> after
+    ) {
+        scheduleExecutionAndAssertNoError(context, visibleIntermediateValues, cachePolicy, (@CheckForNull var urlConnection) -> {
             if (urlConnection == null) { after.accept(null); return; }
 
             var url = urlConnection.getURL();
@@ -482,7 +593,7 @@ public class HttpRequestSpecification {
                 }
                 else if (urlConnection.getContentType().toLowerCase().contains("json")) {
                     try {
-                        var xmlFromJson = new JsonXmlConverter().convertJsonToXml(
+                        var xmlFromJson = DeploymentParameters.get().jsonXmlConverter.convertJsonToXml(
                             urlConnection.getContentType(), urlConnection.getInputStream(), "response");
                         after.accept(xmlFromJson);
                     }
@@ -0,0 +1,231 @@
+package endpoints;
+
+import endpoints.HttpRequestSpecification.HttpRequestFailedException;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches successful HTTP responses of one application, for {@code <xml-from-url cache-seconds="..">}.
+ *    <p>
+ * Once an entry's time-to-live has expired, it is still served for the same time again
+ * while a single background request fetches the new version ("stale while revalidate").
+ * If many requests need the same response which is not in the cache, only one request is made to the server,
+ * and the others wait for its result.
+ *    <p>
+ * The cache is bounded by the total size of the response bodies; the least recently used entries are removed.
+ */
+@Slf4j
+public class HttpResponseCache {
+
+    public record CachedResponse(@Nonnull URI uri, @Nonnull HttpHeaders headers, @Nonnull byte[] body) { }
+
+    /** @param timeToLive zero means the response should not be cached */
+    public record FetchedResponse(@Nonnull CachedResponse response, @Nonnull Duration timeToLive) { }
+
+    @FunctionalInterface
+    public interface Fetcher {
+        @Nonnull FetchedResponse fetch() throws IOException, HttpRequestFailedException;
+    }
+
+    /** How long responses may be cached */
+    public record CachePolicy(@CheckForNull Duration fixedTimeToLive) {
+        /** RFC 9111 section 1.2.2: larger values of max-age are treated as this */
+        protected static final long maxDeltaSeconds = 2_147_483_648L;
+
+        /** "123" means cache for 123 seconds, "cache-control" means as long as the server's Cache-Control header allows */
+        public static @Nonnull CachePolicy parse(@Nonnull String cacheSeconds) {
+            if (cacheSeconds.equals("cache-control")) return new CachePolicy(null);
+            return new CachePolicy(Duration.ofSeconds(Long.parseLong(cacheSeconds)));
+        }
+
+        /**
+         * @return directive names in lower case, with their values unquoted, or with a null value if they have none.
+         *     Commas within quoted values, such as {@code no-cache="set-cookie, x-foo"}, do not separate directives.
+         */
+        protected static @Nonnull Map<String, String> parseCacheControl(@Nonnull List<String> headerValues) {
+            var result = new HashMap<String, String>();
+            for (var header : headerValues) {
+                var i = 0;
+                while (i < header.length()) {
+                    var nameStart = i;
+                    while (i < header.length() && header.charAt(i) != '=' && header.charAt(i) != ',') i++;
+                    var name = header.substring(nameStart, i).trim().toLowerCase();
+                    
+                    String value = null;
+                    if (i < header.length() && header.charAt(i) == '=') {
+                        i++;
+                        while (i < header.length() && Character.isWhitespace(header.charAt(i))) i++;
+                        var v = new StringBuilder();
+                        if (i < header.length() && header.charAt(i) == '"') {
+                            for (i++; i < header.length() && header.charAt(i) != '"'; i++) {
+                                if (header.charAt(i) == '\\' && i + 1 < header.length()) i++; // quoted-pair
+                                v.append(header.charAt(i));
+                            }
+                            while (i < header.length() && header.charAt(i) != ',') i++;
+                            value = v.toString();
+                        } else {
+                            while (i < header.length() && header.charAt(i) != ',') v.append(header.charAt(i++));
+                            value = v.toString().trim();
+                        }
+                    }
+                    
+                    if ( ! name.isEmpty()) result.putIfAbsent(name, value);
+                    i++; // Comma
+                }
+            }
+            return result;
+        }
+
+        public @Nonnull Duration getTimeToLive(@Nonnull HttpHeaders responseHeaders) {
+            if (fixedTimeToLive != null) return fixedTimeToLive;
+
+            var directives = parseCacheControl(responseHeaders.allValues("Cache-Control"));
+            if (directives.containsKey("no-store")) return Duration.ZERO;
+            
+            // With field names, e.g. no-cache="set-cookie", only those header fields may not be reused, not the response
+            if (directives.containsKey("no-cache") && directives.get("no-cache") == null) return Duration.ZERO;
+            if (directives.containsKey("private") && directives.get("private") == null) return Duration.ZERO;
+            
+            // This is a shared cache, so s-maxage takes precedence
+            var maxAge = directives.containsKey("s-maxage") ? directives.get("s-maxage") : directives.get("max-age");
+            if (maxAge == null || ! maxAge.matches("\\d+")) return Duration.ZERO;
+            if (maxAge.length() > 10) return Duration.ofSeconds(maxDeltaSeconds);
+            return Duration.ofSeconds(Math.min(Long.parseLong(maxAge), maxDeltaSeconds));
+        }
+    }
+
+    public record Statistics(int entries, long bytes, long hits, long staleHits, long misses, long coalescedMisses) { }
+
+    protected record Entry(@Nonnull CachedResponse response, @Nonnull Instant expires, @Nonnull Duration timeToLive) {
+        boolean isFresh(@Nonnull Instant now) { return now.isBefore(expires); }
+        boolean isServableWhileRevalidating(@Nonnull Instant now) { return now.isBefore(expires.plus(timeToLive)); }
+    }
+
+    protected final long maxBytes;
+    protected final @Nonnull LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected final @Nonnull Map<String, CompletableFuture<CachedResponse>> inFlight = new HashMap<>();
+    protected long bytes = 0;
+    protected final @Nonnull AtomicLong hits = new AtomicLong(), staleHits = new AtomicLong(),
+        misses = new AtomicLong(), coalescedMisses = new AtomicLong();
+
+    public HttpResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @SneakyThrows(NoSuchAlgorithmException.class)
+    protected static @Nonnull String sha256(@Nonnull byte[] bytes) {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    /** The key must contain everything which can influence the response, including credentials in headers */
+    public static @Nonnull String newKey(
+        @Nonnull String method, @Nonnull URI uri, @Nonnull Map<String, String> headers, @CheckForNull byte[] body
+    ) {
+        var result = new StringBuilder();
+        result.append(method).append(' ').append(uri).append('\n');
+        new TreeMap<>(headers).forEach((k, v) -> result.append(k.toLowerCase()).append(": ").append(v).append('\n'));
+        if (body != null) result.append(sha256(body));
+        return result.toString();
+    }
+
+    protected synchronized void put(@Nonnull String key, @Nonnull FetchedResponse fetched) {
+        if (fetched.timeToLive().isZero() || fetched.timeToLive().isNegative()) return;
+        if (fetched.response().body().length > maxBytes) return;
+
+        var previous = entries.put(key, new Entry(fetched.response(), Instant.now().plus(fetched.timeToLive()), fetched.timeToLive()));
+        if (previous != null) bytes -= previous.response().body().length;
+        bytes += fetched.response().body().length;
+
+        for (var i = entries.values().iterator(); bytes > maxBytes && i.hasNext(); ) {
+            bytes -= i.next().response().body().length;
+            i.remove();
+        }
+    }
+
+    /** Fetches the response, storing it and completing the future which other requests for the same key are waiting on */
+    protected @Nonnull CachedResponse fetchAndPut(
+        @Nonnull String key, @Nonnull CompletableFuture<CachedResponse> future, @Nonnull Fetcher fetcher
+    ) throws IOException, HttpRequestFailedException {
+        try {
+            var fetched = fetcher.fetch();
+            put(key, fetched);
+            future.complete(fetched.response());
+            return fetched.response();
+        }
+        catch (IOException | HttpRequestFailedException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            synchronized (this) { inFlight.remove(key); }
+        }
+    }
+
+    public @Nonnull CachedResponse get(@Nonnull String key, @Nonnull Fetcher fetcher) throws IOException, HttpRequestFailedException {
+        CompletableFuture<CachedResponse> waitFor;
+        CompletableFuture<CachedResponse> fetchInThisThread = null;
+
+        synchronized (this) {
+            var now = Instant.now();
+            var entry = entries.get(key);
+            if (entry != null && entry.isFresh(now)) {
+                hits.incrementAndGet();
+                return entry.response();
+            }
+
+            waitFor = inFlight.get(key);
+            if (entry != null && entry.isServableWhileRevalidating(now)) {
+                staleHits.incrementAndGet();
+                if (waitFor == null) {
+                    var revalidation = new CompletableFuture<CachedResponse>();
+                    inFlight.put(key, revalidation);
+                    // Each key is revalidated by at most one thread, and each request waits for an HTTP client permit
+                    Thread.ofVirtual().name(HttpResponseCache.class.getSimpleName() + " revalidation").start(() -> {
+                        try { fetchAndPut(key, revalidation, fetcher); }
+                        catch (Exception e) { log.warn("Cannot revalidate cached HTTP response, will serve stale response", e); }
+                    });
+                }
+                return entry.response();
+            }
+
+            if (waitFor == null) {
+                misses.incrementAndGet();
+                fetchInThisThread = new CompletableFuture<>();
+                inFlight.put(key, fetchInThisThread);
+            }
+            else coalescedMisses.incrementAndGet();
+        }
+
+        if (fetchInThisThread != null) return fetchAndPut(key, fetchInThisThread, fetcher);
+
+        try { return waitFor.get(); }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for HTTP response being fetched by another request", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException i) throw i;
+            if (e.getCause() instanceof HttpRequestFailedException h) throw h;
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public synchronized @Nonnull Statistics getStatistics() {
+        return new Statistics(entries.size(), bytes, hits.get(), staleHits.get(), misses.get(), coalescedMisses.get());
+    }
+}
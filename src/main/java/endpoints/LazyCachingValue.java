@@ -10,6 +10,8 @@ import static com.databasesandlife.util.gwtsafe.ConfigurationException.prefixExc
  *    <p>
  * This is necessary for secrets, which should only throw an error if they do not exist and are actually accessed.
  * (i.e. secrets which are referenced but which do not exist on AWS, and which are never actually referenced, should not error.)
+ *    <p>
+ * Computing a value may block on I/O, so is done via {@link CpuThreads#runBlocking}, as it may happen on a CPU thread.
  */
 public abstract class LazyCachingValue {
 
@@ -23,15 +25,17 @@ public abstract class LazyCachingValue {
     protected abstract @Nonnull String computeParameter() throws LazyParameterComputationException;
   
     public synchronized @Nonnull String get() throws LazyParameterComputationException {
-        if (value == null) value = computeParameter();
+        if (value == null) value = CpuThreads.runBlocking(this::computeParameter);
         return value;
     }
     
     public static @Nonnull LazyCachingValue newFixed(@Nonnull String fixedValue) {
-        return new LazyCachingValue() {
+        var result = new LazyCachingValue() {
             @Override protected @Nonnull String computeParameter() {
                 return fixedValue;
             }
         };
+        result.value = fixedValue; // so that get() never needs to block
+        return result;
     }
 }
@@ -0,0 +1,89 @@
+package endpoints;
+
+import endpoints.config.ApplicationFactory.LoadedApplication;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+import static endpoints.RequestMetrics.appendMetric;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Exposes metrics in Prometheus text format, for scraping by Prometheus or any OpenMetrics-compatible system.
+ *    <p>
+ * Contains the stage histograms from {@link RequestMetrics}, plus the statistics of the shared resources:
+ * database connection pool, CPU threads, request log writer, CloudWatch writer,
+ * and each loaded application's HTTP client and caches.
+ */
+public class MetricsServlet extends HttpServlet {
+
+    protected void appendPerApplication(
+        @Nonnull StringBuilder out, @Nonnull List<LoadedApplication> applications,
+        @Nonnull String name, @Nonnull String type, @Nonnull String help, @Nonnull Function<LoadedApplication, Number> value
+    ) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (var a : applications)
+            out.append(name).append("{application=\"").append(RequestMetrics.escape(a.name().name()))
+                .append("\",environment=\"").append(a.environment().name()).append("\"} ")
+                .append(value.apply(a)).append('\n');
+    }
+
+    protected @Nonnull String formatMetrics() {
+        var out = new StringBuilder();
+        RequestMetrics.shared.appendPrometheus(out);
+
+        var params = DeploymentParameters.get();
+
+        var db = params.dbConnectionPool.getStatistics();
+        appendMetric(out, "endpoints_db_pool_active_connections", "gauge", "Connections borrowed from the pool", db.active());
+        appendMetric(out, "endpoints_db_pool_idle_connections", "gauge", "Connections idle in the pool", db.idle());
+        appendMetric(out, "endpoints_db_pool_waiting_threads", "gauge", "Threads waiting for a connection", db.waiting());
+        appendMetric(out, "endpoints_db_pool_timeouts_total", "counter", "Timeouts waiting for a connection", db.timeoutCount());
+
+        var requestLog = params.requestLogWriter.getStatistics();
+        appendMetric(out, "endpoints_request_log_written_total", "counter", "Request log entries written", requestLog.writtenCount());
+
+        var cpu = params.cpuThreads.getStatistics();
+        appendMetric(out, "endpoints_cpu_threads", "gauge", "Threads for CPU-bound work shared by all requests", cpu.threadCount());
+        appendMetric(out, "endpoints_cpu_active_threads", "gauge", "Threads for CPU-bound work currently executing a task", cpu.activeThreadCount());
+        appendMetric(out, "endpoints_cpu_queue_length", "gauge", "Tasks waiting for a thread for CPU-bound work", cpu.queueLength());
+        appendMetric(out, "endpoints_cpu_rejected_requests_total", "counter", "Requests rejected with 503 as too many tasks were waiting", cpu.rejectedCount());
+
+        var cloudWatch = params.awsCloudWatchRequestMetricWriter;
+        if (cloudWatch != null) appendMetric(out, "endpoints_cloudwatch_metrics_dropped_total", "counter",
+            "Request metrics not sent to AWS CloudWatch", cloudWatch.getStatistics().droppedCount());
+
+        var factory = params.applications;
+        var applications = factory == null ? List.<LoadedApplication>of() : factory.getLoadedApplications();
+        appendPerApplication(out, applications, "endpoints_http_client_in_flight_requests", "gauge",
+            "HTTP requests to backends in progress", a -> a.application().getHttpClient().getStatistics().inFlight());
+        appendPerApplication(out, applications, "endpoints_http_client_waiting_requests", "gauge",
+            "HTTP requests to backends waiting for the concurrency limit", a -> a.application().getHttpClient().getStatistics().waiting());
+        appendPerApplication(out, applications, "endpoints_http_client_failures_total", "counter",
+            "HTTP requests to backends which failed", a -> a.application().getHttpClient().getStatistics().failureCount());
+        appendPerApplication(out, applications, "endpoints_xml_from_url_cache_hits_total", "counter",
+            "xml-from-url responses served from the cache", a -> a.application().getHttpResponseCache().getStatistics().hits());
+        appendPerApplication(out, applications, "endpoints_xml_from_url_cache_misses_total", "counter",
+            "xml-from-url responses not in the cache", a -> a.application().getHttpResponseCache().getStatistics().misses());
+        appendPerApplication(out, applications, "endpoints_xml_from_url_cache_bytes", "gauge",
+            "Size of the xml-from-url response cache", a -> a.application().getHttpResponseCache().getStatistics().bytes());
+        appendPerApplication(out, applications, "endpoints_xml_from_database_cache_hits_total", "counter",
+            "xml-from-database results served from the cache", a -> a.application().getDatabaseResultCache().getStatistics().hits());
+        appendPerApplication(out, applications, "endpoints_xml_from_database_cache_misses_total", "counter",
+            "xml-from-database results not in the cache", a -> a.application().getDatabaseResultCache().getStatistics().misses());
+
+        return out.toString();
+    }
+
+    @Override protected void doGet(@Nonnull HttpServletRequest req, @Nonnull HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.getOutputStream().write(formatMetrics().getBytes(UTF_8));
+    }
+}
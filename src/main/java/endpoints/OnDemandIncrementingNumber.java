@@ -11,6 +11,7 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Map;
@@ -30,6 +31,7 @@ public class OnDemandIncrementingNumber {
         perpetual {
             @Override public @Nonnull Field<Integer> getRequestLogIdsField() { return REQUEST_LOG_IDS.ON_DEMAND_PERPETUAL_INCREMENTING_NUMBER; }
             @Override public @Nonnull Condition getRequestLogCondition(Instant now, ZoneId timezone) { return trueCondition(); }
+            @Override public @Nonnull String getPeriod(@Nonnull Instant now, @Nonnull ZoneId timezone) { return ""; }
         },
         year {
             @Override public @Nonnull Field<Integer> getRequestLogIdsField() { return REQUEST_LOG_IDS.ON_DEMAND_YEAR_INCREMENTING_NUMBER; }
@@ -39,6 +41,9 @@ public class OnDemandIncrementingNumber {
                 return REQUEST_LOG.DATETIME.ge(startLocal.atZone(timezone).toInstant())
                     .and(REQUEST_LOG.DATETIME.lt(startLocal.plus(1, ChronoUnit.YEARS).atZone(timezone).toInstant())); 
             }
+            @Override public @Nonnull String getPeriod(@Nonnull Instant now, @Nonnull ZoneId timezone) {
+                return DateTimeFormatter.ofPattern("yyyy").format(now.atZone(timezone));
+            }
         },
         month {
             @Override public @Nonnull Field<Integer> getRequestLogIdsField() { return REQUEST_LOG_IDS.ON_DEMAND_MONTH_INCREMENTING_NUMBER; }
@@ -48,10 +53,16 @@ public class OnDemandIncrementingNumber {
                 return REQUEST_LOG.DATETIME.ge(startLocal.atZone(timezone).toInstant())
                     .and(REQUEST_LOG.DATETIME.lt(startLocal.plus(1, ChronoUnit.MONTHS).atZone(timezone).toInstant()));
             }
+            @Override public @Nonnull String getPeriod(@Nonnull Instant now, @Nonnull ZoneId timezone) {
+                return DateTimeFormatter.ofPattern("yyyy-MM").format(now.atZone(timezone));
+            }
         };
 
         public abstract @Nonnull Field<Integer> getRequestLogIdsField();
         public abstract @Nonnull Condition getRequestLogCondition(@Nonnull Instant now, @Nonnull ZoneId timezone);
+        
+        /** Key of the row in ON_DEMAND_INCREMENTING_NUMBER, the numbers restart when this changes */
+        public abstract @Nonnull String getPeriod(@Nonnull Instant now, @Nonnull ZoneId timezone);
     }
 
     protected final @Nonnull ApplicationName application;
@@ -71,8 +82,7 @@ public class OnDemandIncrementingNumber {
 
         int newValue;
         synchronized (tx) {
-            tx.acquireLock(environment, application);
-
+            // Not from the application config cache: this transaction may have altered the timezone, and there may be no row
             var timezone = tx.db.jooq()
                 .select(APPLICATION_CONFIG.TIMEZONE)
                 .from(APPLICATION_CONFIG)
@@ -81,17 +91,41 @@ public class OnDemandIncrementingNumber {
             if (timezone == null) throw new RuntimeException("Unreachable: " +
                 "Neither 'application_config' row is present, nor is environment variable set");
 
-            var max = tx.db.jooq()
-                .select(max(type.getRequestLogIdsField()))
-                .from(REQUEST_LOG_IDS)
-                .join(REQUEST_LOG).on(REQUEST_LOG.REQUEST_ID.eq(REQUEST_LOG_IDS.REQUEST_ID))
-                .where(REQUEST_LOG_IDS.APPLICATION.eq(application))
-                .and(REQUEST_LOG_IDS.ENVIRONMENT.eq(environment))
-                .and(type.getRequestLogCondition(now, timezone))
-                .fetchSingle().value1();
+            var counter = ON_DEMAND_INCREMENTING_NUMBER;
+            var period = type.getPeriod(now, timezone);
+            var key = counter.APPLICATION.eq(application)
+                .and(counter.ENVIRONMENT.eq(environment))
+                .and(counter.TYPE.eq(type.name()))
+                .and(counter.PERIOD.eq(period));
+
+            // First number in this period (or application not seeded by the migration): continue from the request log
+            if ( ! tx.db.jooq().fetchExists(counter, key)) {
+                var max = tx.db.jooq()
+                    .select(max(type.getRequestLogIdsField()))
+                    .from(REQUEST_LOG_IDS)
+                    .join(REQUEST_LOG).on(REQUEST_LOG.REQUEST_ID.eq(REQUEST_LOG_IDS.REQUEST_ID))
+                    .where(REQUEST_LOG_IDS.APPLICATION.eq(application))
+                    .and(REQUEST_LOG_IDS.ENVIRONMENT.eq(environment))
+                    .and(type.getRequestLogCondition(now, timezone))
+                    .fetchSingle().value1();
+
+                tx.db.jooq().insertInto(counter)
+                    .set(counter.APPLICATION, application)
+                    .set(counter.ENVIRONMENT, environment)
+                    .set(counter.TYPE, type.name())
+                    .set(counter.PERIOD, period)
+                    .set(counter.LAST_VALUE, max == null ? 0 : max)
+                    .onConflictDoNothing()
+                    .execute();
+            }
 
-            if (max == null) newValue = 1;
-            else newValue = max + 1;
+            // Row lock is held until the transaction ends, so numbers are gap-free if the transaction rolls back
+            newValue = tx.db.jooq().update(counter)
+                .set(counter.LAST_VALUE, counter.LAST_VALUE.plus(1))
+                .where(key)
+                .returning(counter.LAST_VALUE)
+                .fetchOne()
+                .getLastValue();
         }
         
         synchronized (this) {
@@ -21,14 +21,13 @@ import java.util.zip.ZipOutputStream;
 import static com.databasesandlife.util.DomParser.assertNoOtherElements;
 import static com.databasesandlife.util.DomParser.getMandatoryAttribute;
 import static com.databasesandlife.util.DomVariableExpander.VariableSyntax.dollarThenBraces;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toMap;
 import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
 
 public class OoxmlParameterExpander {
     
-    protected final @Nonnull String filenamePattern;
+    protected final @Nonnull ParameterTemplate filenamePattern;
     protected final @Nonnull File input;
     
     public OoxmlParameterExpander(@Nonnull File ooxmlContainerDir, @Nonnull String filenameAttribute, @Nonnull Element config)
@@ -39,7 +38,7 @@ public class OoxmlParameterExpander {
         if ( ! input.exists()) throw new ConfigurationException("File '" + filename
             + "' cannot be found in '" + ooxmlContainerDir.getName() + "' directory");
 
-        this.filenamePattern = getMandatoryAttribute(config, filenameAttribute);
+        this.filenamePattern = ParameterTemplate.compile(getMandatoryAttribute(config, filenameAttribute));
     }
 
     /**
@@ -99,7 +98,7 @@ public class OoxmlParameterExpander {
         return context.threads.addTask(() -> {
             try {
                 var stringParams = context.getParametersAndIntermediateValuesAndSecrets(inputIntermediateValues);
-                var filename = replacePlainTextParameters(filenamePattern, stringParams);
+                var filename = filenamePattern.expand(stringParams);
                 
                 destination.setContentDispositionToDownload(filename);
                 destination.setContentType(getContentTypeForFilename(filename));
@@ -0,0 +1,97 @@
+package endpoints;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * A string containing parameters such as ${foo}, split into its literal text and parameter names when the configuration is
+ * parsed, so that expanding it for each request does not need to scan the string again.
+ *    <p>
+ * The syntax is the same as {@link PlaintextParameterReplacer#replacePlainTextParameters(String, Map)}:
+ * a parameter is "${" followed by at least one character, up to the next "}", not spanning lines.
+ * Parameters which are not found remain in their original unreplaced form.
+ *    <p>
+ * Objects of this class are immutable and may be shared between requests.
+ */
+public class ParameterTemplate {
+
+    protected final @Nonnull String template;
+
+    /** One more element than {@link #parameterNames}: the literal text before, between and after the parameters */
+    protected final @Nonnull String[] literals;
+    protected final @Nonnull String[] parameterNames;
+
+    protected ParameterTemplate(@Nonnull String template, @Nonnull String[] literals, @Nonnull String[] parameterNames) {
+        this.template = template;
+        this.literals = literals;
+        this.parameterNames = parameterNames;
+    }
+
+    protected static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /** @return index of the "}" ending the parameter whose name starts at nameStart, or -1 if there is none */
+    protected static int findParameterEnd(@Nonnull String template, int nameStart) {
+        for (int i = nameStart; i < template.length(); i++) {
+            var c = template.charAt(i);
+            if (isLineTerminator(c)) return -1;
+            if (c == '}' && i > nameStart) return i;
+        }
+        return -1;
+    }
+
+    public static @Nonnull ParameterTemplate compile(@Nonnull String template) {
+        var literals = new ArrayList<String>();
+        var parameterNames = new ArrayList<String>();
+        var literalStart = 0;
+        var start = template.indexOf("${");
+        while (start >= 0) {
+            var end = findParameterEnd(template, start + 2);
+            if (end < 0) {
+                start = template.indexOf("${", start + 1);
+                continue;
+            }
+            literals.add(template.substring(literalStart, start));
+            parameterNames.add(template.substring(start + 2, end));
+            literalStart = end + 1;
+            start = template.indexOf("${", literalStart);
+        }
+        literals.add(template.substring(literalStart));
+        return new ParameterTemplate(template, literals.toArray(new String[0]), parameterNames.toArray(new String[0]));
+    }
+
+    public static @CheckForNull ParameterTemplate compileOrNull(@CheckForNull String template) {
+        return template == null ? null : compile(template);
+    }
+
+    public boolean containsParameters() {
+        return parameterNames.length > 0;
+    }
+
+    public boolean isEmpty() {
+        return template.isEmpty();
+    }
+
+    /** Replaces parameters such as ${XYZ}. Parameters which are not found remain in their original unreplaced form. */
+    public @Nonnull String expand(@Nonnull Map<String, LazyCachingValue> parameters) {
+        if (parameterNames.length == 0) return template;
+
+        var result = new StringBuilder(template.length() + 16 * parameterNames.length);
+        result.append(literals[0]);
+        for (int i = 0; i < parameterNames.length; i++) {
+            var value = parameters.get(parameterNames[i]);
+            if (value == null) result.append("${").append(parameterNames[i]).append('}');
+            else result.append(value.get());
+            result.append(literals[i + 1]);
+        }
+        return result.toString();
+    }
+
+    /** @return the template, as it was written in the configuration */
+    @Override public @Nonnull String toString() {
+        return template;
+    }
+}
@@ -12,7 +12,6 @@ import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static java.util.regex.Matcher.quoteReplacement;
 import static java.util.stream.Collectors.joining;
 
 public class PlaintextParameterReplacer {
@@ -47,6 +46,19 @@ public class PlaintextParameterReplacer {
     ) throws ConfigurationException {
         assertParametersSuffice(getKeys(params, visibleIntermediateValues), template, msg);
     }
+
+    public static void assertParametersSuffice(
+        @Nonnull Set<String> params, @CheckForNull ParameterTemplate template, @Nonnull String msg
+    ) throws ConfigurationException {
+        assertParametersSuffice(params, template == null ? null : template.toString(), msg);
+    }
+
+    public static void assertParametersSuffice(
+        @Nonnull Set<ParameterName> params, @Nonnull Set<IntermediateValueName> visibleIntermediateValues,
+        @CheckForNull ParameterTemplate template, @Nonnull String msg
+    ) throws ConfigurationException {
+        assertParametersSuffice(params, visibleIntermediateValues, template == null ? null : template.toString(), msg);
+    }
     
     public static boolean containsParameters(@CheckForNull CharSequence template) {
         try {
@@ -58,18 +70,13 @@ public class PlaintextParameterReplacer {
         }
     }
 
-    /** Replaces variables such as ${XYZ} in the template. Variables which are not found remain in their original unreplaced form. */
+    /**
+     * Replaces variables such as ${XYZ} in the template. Variables which are not found remain in their original unreplaced form.
+     *    <p>
+     * For templates which come from the configuration, compile a {@link ParameterTemplate} when the configuration is parsed instead.
+     */
     public static String replacePlainTextParameters(@Nonnull String template, @Nonnull Map<String, LazyCachingValue> parameters) {
-        var result = new StringBuilder();
-        var matcher = Pattern.compile("\\$\\{(.+?)}").matcher(template);
-        while (matcher.find()) {
-            var name = matcher.group(1);
-            var replacementLazyValue = parameters.get(name);
-            var replacement = replacementLazyValue == null ? matcher.group() : replacementLazyValue.get();
-            matcher.appendReplacement(result, quoteReplacement(replacement));
-        }
-        matcher.appendTail(result);
-        return result.toString();
+        return ParameterTemplate.compile(template).expand(parameters);
     }
 
 }
@@ -17,7 +17,7 @@ import java.util.Map;
  */
 public interface Request {
 
-    record RequestBody(@Nonnull String contentType, @Nonnull byte[] body) { }
+    record RequestBody(@Nonnull String contentType, @Nonnull RequestBodyBuffer body) { }
     
     @CheckForNull InetAddress getClientIpAddress();
     
@@ -0,0 +1,90 @@
+package endpoints;
+
+import endpoints.EndpointExecutor.RequestTooLargeException;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Holds the body of a request, so that it can be read multiple times, firstly for processing, and secondly for the request log.
+ *    <p>
+ * Bodies up to a threshold are held in memory. Larger bodies are written to a temporary file as they are read,
+ * so that a few concurrent large requests do not exhaust the heap. The file is deleted by {@link #close()}.
+ */
+public class RequestBodyBuffer implements AutoCloseable {
+
+    protected final @Getter long length;
+    protected final @CheckForNull byte[] bytes;
+    protected final @CheckForNull File file;
+
+    protected RequestBodyBuffer(long length, @CheckForNull byte[] bytes, @CheckForNull File file) {
+        this.length = length;
+        this.bytes = bytes;
+        this.file = file;
+    }
+
+    /** Reads the stream to its end, but stops as soon as the maximum length is exceeded */
+    public static @Nonnull RequestBodyBuffer read(@Nonnull InputStream in, long maxBytes, int memoryThresholdBytes)
+    throws IOException, RequestTooLargeException {
+        var memory = new ByteArrayOutputStream();
+        OutputStream out = memory;
+        File file = null;
+        long length = 0;
+        try {
+            var chunk = new byte[8192];
+            for (int n; (n = in.read(chunk)) >= 0; ) {
+                length += n;
+                if (length > maxBytes) throw new RequestTooLargeException(maxBytes);
+                if (file == null && length > memoryThresholdBytes) {
+                    file = File.createTempFile("endpoints-request-body-", ".tmp");
+                    out = new BufferedOutputStream(new FileOutputStream(file));
+                    memory.writeTo(out);
+                    memory.reset();
+                }
+                out.write(chunk, 0, n);
+            }
+            out.close();
+            return file == null
+                ? new RequestBodyBuffer(length, memory.toByteArray(), null)
+                : new RequestBodyBuffer(length, null, file);
+        }
+        catch (IOException | RequestTooLargeException | RuntimeException e) {
+            try { out.close(); } catch (IOException ignored) { }
+            //noinspection ResultOfMethodCallIgnored
+            if (file != null) file.delete();
+            throw e;
+        }
+    }
+
+    /** Each call returns a new stream, reading from the start of the body. The caller must close it. */
+    @SneakyThrows(IOException.class)
+    public @Nonnull InputStream newInputStream() {
+        if (bytes != null) return new ByteArrayInputStream(bytes);
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /** @return the whole body, if it is no longer than maxBytes, otherwise its first maxBytes */
+    @SneakyThrows(IOException.class)
+    public @Nonnull byte[] getPrefix(int maxBytes) {
+        if (bytes != null) return bytes.length <= maxBytes ? bytes : Arrays.copyOf(bytes, maxBytes);
+        try (var in = newInputStream()) { return in.readNBytes(maxBytes); }
+    }
+
+    @Override public void close() {
+        //noinspection ResultOfMethodCallIgnored
+        if (file != null) file.delete();
+    }
+}
@@ -0,0 +1,47 @@
+package endpoints;
+
+import com.databasesandlife.util.jdbc.DbTransaction;
+import endpoints.generated.jooq.tables.records.RequestLogExpressionCaptureRecord;
+import endpoints.generated.jooq.tables.records.RequestLogIdsRecord;
+import endpoints.generated.jooq.tables.records.RequestLogRecord;
+import org.jooq.TableRecord;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes request log entries to the database, in the request's transaction.
+ *    <p>
+ * This means an entry is only written if the request's work is committed, and cannot be lost once it has been.
+ * The rows of an entry are inserted with a jOOQ batch insert, so that all the request's expression captures
+ * are sent to the database together, rather than one statement per row.
+ */
+public class RequestLogWriter {
+
+    public record RequestLogEntry(
+        @Nonnull RequestLogIdsRecord ids,
+        @Nonnull RequestLogRecord log,
+        @Nonnull List<RequestLogExpressionCaptureRecord> expressionCaptures
+    ) { }
+
+    public record Statistics(long writtenCount) { }
+
+    protected final @Nonnull AtomicLong writtenCount = new AtomicLong();
+
+    /** The entry is written if, and only if, the transaction is committed */
+    public void write(@Nonnull DbTransaction tx, @Nonnull RequestLogEntry entry) {
+        // Foreign keys mean the ids must be inserted before the rows referencing them; jOOQ keeps this order
+        var records = new ArrayList<TableRecord<?>>(2 + entry.expressionCaptures().size());
+        records.add(entry.ids());
+        records.add(entry.log());
+        records.addAll(entry.expressionCaptures());
+        tx.jooq().batchInsert(records).execute();
+        writtenCount.incrementAndGet();
+    }
+
+    public @Nonnull Statistics getStatistics() {
+        return new Statistics(writtenCount.get());
+    }
+}
@@ -0,0 +1,179 @@
+package endpoints;
+
+import lombok.RequiredArgsConstructor;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of the stages of endpoint execution, and gauges of work in progress,
+ * exposed in Prometheus text format by {@link MetricsServlet}.
+ *    <p>
+ * Histograms are labelled by application, endpoint and environment.
+ * To bound memory and the load on the monitoring system, once the maximum number of series has been reached,
+ * new series are recorded with the application and endpoint labels set to "_other_".
+ */
+public class RequestMetrics {
+
+    @RequiredArgsConstructor
+    public enum Stage {
+        applicationLookup("application_lookup"),
+        parameterTransformation("parameter_transformation"),
+        dataSource("data_source"),
+        transformation("transformation"),
+        task("task"),
+        emailSend("email_send"),
+        requestLog("request_log");
+
+        public final @Nonnull String prometheusName;
+    }
+
+    public record Labels(@Nonnull String application, @Nonnull String endpoint, @Nonnull String environment) {
+        public static final Labels none = new Labels("", "", "");
+        protected static final Labels other = new Labels("_other_", "_other_", "_other_");
+
+        public static @Nonnull Labels of(@Nonnull TransformationContext context) {
+            return new Labels(context.applicationName.name(), context.endpoint.name.getName(), context.environment.name());
+        }
+    }
+
+    /** @param type for example the data source command, or empty string */
+    protected record Series(@Nonnull Stage stage, @Nonnull String type, @Nonnull Labels labels) { }
+
+    /** Upper bounds of the buckets, in seconds */
+    protected static final double[] bucketBounds = { 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+
+    protected static class Histogram {
+        protected final @Nonnull LongAdder[] buckets = new LongAdder[bucketBounds.length];
+        protected final @Nonnull LongAdder count = new LongAdder();
+        protected final @Nonnull DoubleAdder sumSeconds = new DoubleAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void observe(double seconds) {
+            for (int i = 0; i < bucketBounds.length; i++)
+                if (seconds <= bucketBounds[i]) { buckets[i].increment(); break; }
+            count.increment();
+            sumSeconds.add(seconds);
+        }
+    }
+
+    /** Records the time from its creation until it is closed */
+    @RequiredArgsConstructor
+    public class Measurement implements AutoCloseable {
+        protected final @Nonnull Stage stage;
+        protected final @Nonnull String type;
+        protected final @Nonnull Labels labels;
+        protected final long startNanos = System.nanoTime();
+
+        @Override public void close() {
+            record(stage, type, labels, Duration.ofNanos(System.nanoTime() - startNanos));
+        }
+    }
+
+    /** Counts something as in progress from its creation until it is closed */
+    public static class InProgress implements AutoCloseable {
+        protected final @Nonnull AtomicInteger counter;
+
+        protected InProgress(@Nonnull AtomicInteger counter) {
+            this.counter = counter;
+            counter.incrementAndGet();
+        }
+
+        @Override public void close() {
+            counter.decrementAndGet();
+        }
+    }
+
+    public static final @Nonnull RequestMetrics shared = new RequestMetrics(10_000);
+
+    protected final int maxSeries;
+    protected final @Nonnull Map<Series, Histogram> histograms = new ConcurrentHashMap<>();
+    protected final @Nonnull AtomicLong limitedSeriesCount = new AtomicLong();
+    protected final @Nonnull AtomicInteger executionsInProgress = new AtomicInteger();
+    protected final @Nonnull AtomicInteger transactionsInProgress = new AtomicInteger();
+
+    public RequestMetrics(int maxSeries) {
+        this.maxSeries = maxSeries;
+    }
+
+    public void record(@Nonnull Stage stage, @CheckForNull String type, @Nonnull Labels labels, @Nonnull Duration duration) {
+        var series = new Series(stage, type == null ? "" : type, labels);
+        var histogram = histograms.get(series);
+        if (histogram == null) {
+            if (histograms.size() >= maxSeries) {
+                limitedSeriesCount.incrementAndGet();
+                series = new Series(stage, series.type(), Labels.other);
+            }
+            histogram = histograms.computeIfAbsent(series, s -> new Histogram());
+        }
+        histogram.observe(duration.toNanos() / 1e9);
+    }
+
+    public @Nonnull Measurement start(@Nonnull Stage stage, @CheckForNull String type, @Nonnull Labels labels) {
+        return new Measurement(stage, type == null ? "" : type, labels);
+    }
+
+    public @Nonnull InProgress startExecution() {
+        return new InProgress(executionsInProgress);
+    }
+
+    public @Nonnull InProgress startTransaction() {
+        return new InProgress(transactionsInProgress);
+    }
+
+    protected static @Nonnull String escape(@Nonnull String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /** Appends the histograms and gauges in Prometheus text exposition format */
+    public void appendPrometheus(@Nonnull StringBuilder out) {
+        var name = "endpoints_stage_duration_seconds";
+        out.append("# HELP ").append(name).append(" Duration of each stage of endpoint execution\n");
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        histograms.entrySet().stream()
+            .sorted(Comparator.comparing((Map.Entry<Series, Histogram> e) -> e.getKey().toString()))
+            .forEach(e -> {
+                var s = e.getKey();
+                var labels = "stage=\"" + s.stage().prometheusName + "\",type=\"" + escape(s.type()) + "\"," +
+                    "application=\"" + escape(s.labels().application()) + "\",endpoint=\"" + escape(s.labels().endpoint()) + "\"," +
+                    "environment=\"" + escape(s.labels().environment()) + "\"";
+                var h = e.getValue();
+                long cumulative = 0;
+                for (int i = 0; i < bucketBounds.length; i++) {
+                    cumulative += h.buckets[i].sum();
+                    out.append(name).append("_bucket{").append(labels).append(",le=\"").append(bucketBounds[i])
+                        .append("\"} ").append(cumulative).append('\n');
+                }
+                var count = h.count.sum();
+                out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+                out.append(name).append("_sum{").append(labels).append("} ").append(h.sumSeconds.sum()).append('\n');
+                out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+            });
+
+        appendMetric(out, "endpoints_stage_duration_limited_series_total", "counter",
+            "Observations recorded under '_other_' labels as the maximum number of series was reached", limitedSeriesCount.get());
+        appendMetric(out, "endpoints_executions_in_progress", "gauge",
+            "Endpoint executions currently in progress", executionsInProgress.get());
+        appendMetric(out, "endpoints_transactions_in_progress", "gauge",
+            "Application transactions currently open", transactionsInProgress.get());
+    }
+
+    public static void appendMetric(
+        @Nonnull StringBuilder out, @Nonnull String name, @Nonnull String type, @Nonnull String help, @Nonnull Number value
+    ) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,164 @@
+package endpoints;
+
+import com.databasesandlife.util.ThreadPool;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes the tasks of one endpoint execution, each once the tasks it depends on have completed,
+ * with the same interface as {@link ThreadPool}, but on threads shared by all requests, rather than on threads
+ * created for each request.
+ *    <p>
+ * Tasks are scheduled according to their type.
+ * Tasks added with "addTask" are CPU-bound, for example XSLT and FOP, and run on the shared {@link CpuThreads}.
+ * Tasks added with "addTaskOffPool" block on I/O, for example HTTP requests, database queries and AWS calls,
+ * and each runs on its own virtual thread, so that many concurrent slow backends do not need a platform thread each.
+ * Tasks on the CPU pool must therefore never block waiting for I/O,
+ * except via {@link CpuThreads#runBlocking}, which is how secrets referenced by parameters are fetched on first use.
+ *    <p>
+ * A task may depend on a task which has not been added yet; it then runs once that task has been added and has completed.
+ * Tasks are only started once {@link #execute()} has been called.
+ * If a task throws an exception, no further tasks are started,
+ * and {@link #execute()} throws the exception once the tasks already running have completed.
+ */
+public class RequestThreads {
+
+    protected static final @Nonnull ExecutorService blockingThreads =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("endpoints-io-", 1).factory());
+
+    protected static class Node {
+        final @Nonnull Runnable task;
+        final boolean blocking;
+        int remainingDependencies = 0;
+
+        Node(@Nonnull Runnable task, boolean blocking) {
+            this.task = task;
+            this.blocking = blocking;
+        }
+    }
+
+    protected final @Nonnull Set<Runnable> completed = Collections.newSetFromMap(new IdentityHashMap<>());
+    protected final @Nonnull Map<Runnable, List<Node>> dependentsOfTask = new IdentityHashMap<>();
+    protected final @Nonnull List<Node> readyBeforeExecute = new ArrayList<>();
+    protected boolean executing = false;
+    protected int incompleteCount = 0, runningCount = 0;
+    protected @CheckForNull Throwable failure = null;
+
+    protected synchronized void add(@Nonnull Collection<? extends Runnable> dependencies, @Nonnull Runnable task, boolean blocking) {
+        var node = new Node(task, blocking);
+        incompleteCount++;
+        for (var d : dependencies) {
+            if (completed.contains(d)) continue;
+            dependentsOfTask.computeIfAbsent(d, x -> new ArrayList<>()).add(node);
+            node.remainingDependencies++;
+        }
+        if (node.remainingDependencies == 0) start(node);
+    }
+
+    protected @Nonnull CpuThreads getCpuThreads() {
+        return DeploymentParameters.get().cpuThreads;
+    }
+
+    /** Must be called with the lock held */
+    protected void start(@Nonnull Node node) {
+        if (failure != null) return;
+        if ( ! executing) { readyBeforeExecute.add(node); return; }
+        runningCount++;
+        try {
+            if (node.blocking) blockingThreads.execute(() -> run(node));
+            else getCpuThreads().execute(() -> run(node));
+        }
+        catch (RejectedExecutionException e) { // e.g. the pool has been shut down
+            runningCount--;
+            if (failure == null) failure = e;
+            notifyAll();
+        }
+    }
+
+    protected void run(@Nonnull Node node) {
+        Throwable thrown = null;
+        try { node.task.run(); }
+        catch (Throwable e) { thrown = e; } // including checked exceptions thrown with @SneakyThrows
+        finally {
+            synchronized (this) {
+                runningCount--;
+                if (thrown != null) {
+                    if (failure == null) failure = thrown;
+                } else {
+                    incompleteCount--;
+                    completed.add(node.task);
+                    var dependents = dependentsOfTask.remove(node.task);
+                    if (dependents != null)
+                        for (var d : dependents)
+                            if (--d.remainingDependencies == 0) start(d);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    public <T extends Runnable> @Nonnull T addTask(@Nonnull T task) {
+        add(List.of(), task, false);
+        return task;
+    }
+
+    public <T extends Runnable> @Nonnull T addTaskWithDependencies(
+        @Nonnull Collection<? extends Runnable> dependencies, @Nonnull T task
+    ) {
+        add(dependencies, task, false);
+        return task;
+    }
+
+    /** For tasks which block on I/O */
+    public <T extends Runnable> @Nonnull T addTaskOffPool(@Nonnull T task) {
+        add(List.of(), task, true);
+        return task;
+    }
+
+    /** For tasks which block on I/O */
+    public <T extends Runnable> @Nonnull T addTaskWithDependenciesOffPool(
+        @Nonnull Collection<? extends Runnable> dependencies, @Nonnull T task
+    ) {
+        add(dependencies, task, true);
+        return task;
+    }
+
+    /**
+     * Runs the tasks, including those added by tasks while running, and waits for them all to complete.
+     * @throws RuntimeException the exception thrown by a task, wrapped if it is a checked exception
+     */
+    public void execute() {
+        synchronized (this) {
+            if (executing) throw new IllegalStateException("Already executed");
+            executing = true;
+            for (var node : readyBeforeExecute) start(node);
+            readyBeforeExecute.clear();
+
+            try {
+                while (runningCount > 0) wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new RuntimeException("Interrupted waiting for tasks to complete", e);
+                throw (RuntimeException) failure;
+            }
+
+            if (failure instanceof RuntimeException e) throw e;
+            if (failure instanceof Error e) throw e;
+            if (failure != null) throw new RuntimeException(failure);
+            if (incompleteCount > 0) throw new IllegalStateException(incompleteCount + " task(s) " +
+                "depend on tasks which were never added");
+        }
+    }
+}
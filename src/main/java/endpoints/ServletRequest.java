@@ -2,6 +2,7 @@ package endpoints;
 
 import com.databasesandlife.util.servlet.IpAddressDeterminer;
 import endpoints.EndpointExecutor.EndpointExecutionFailedException;
+import endpoints.EndpointExecutor.RequestTooLargeException;
 import endpoints.config.ParameterName;
 import lombok.SneakyThrows;
 
@@ -18,20 +19,30 @@ import static java.util.stream.Collectors.toMap;
 
 /**
  * Represents an HTTP request in the form of a {@link Request} which can be processed by {@link EndpointExecutor}.
+ *    <p>
+ * Must be closed once the request has been processed, as the body may be held in a temporary file.
  */
-public class ServletRequest implements Request {
+public class ServletRequest implements Request, AutoCloseable {
     
     protected final @Nonnull HttpServletRequest req;
-    protected final @Nonnull byte[] requestBody;
+    protected final @Nonnull RequestBodyBuffer requestBody;
 
-    public ServletRequest(@Nonnull HttpServletRequest req) throws EndpointExecutionFailedException {
+    /** @throws RequestTooLargeException before reading the body, if the Content-Length header is larger than the maximum */
+    public ServletRequest(@Nonnull HttpServletRequest req, long maxBodyBytes) throws EndpointExecutionFailedException {
         this.req = req;
         
+        if (req.getContentLengthLong() > maxBodyBytes) throw new RequestTooLargeException(maxBodyBytes);
+        
         // We have to support the body being read multiple times, firstly for processing, and secondly for the request log
-        try { requestBody = req.getInputStream().readAllBytes(); }
+        try { requestBody = RequestBodyBuffer.read(req.getInputStream(), maxBodyBytes,
+            DeploymentParameters.get().requestBodyMemoryThresholdBytes); }
         catch (IOException e) { throw new EndpointExecutionFailedException(400, "I/O problem reading request", e); }
     }
 
+    @Override public void close() {
+        requestBody.close();
+    }
+
     @Override public @CheckForNull InetAddress getClientIpAddress() {
         return new IpAddressDeterminer().getRequestIpAddress(req);
     }
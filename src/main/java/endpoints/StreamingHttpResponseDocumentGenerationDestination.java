@@ -0,0 +1,192 @@
+package endpoints;
+
+import com.offerready.xslt.destination.BufferedHttpResponseDocumentGenerationDestination;
+import lombok.SneakyThrows;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes the response body directly to the client, rather than buffering it in memory, for {@code <success stream="true">}.
+ *    <p>
+ * The status code and headers are sent to the client as soon as the first bytes of the body are written,
+ * so they must be set before the body is written. After that, an {@code <error>} can no longer be delivered.
+ */
+public class StreamingHttpResponseDocumentGenerationDestination extends BufferedHttpResponseDocumentGenerationDestination {
+
+    protected final @Nonnull HttpServletResponse response;
+    protected @CheckForNull OutputStream body = null;
+
+    /** Headers such as CORS headers, which were set before this destination, and which {@link #reset()} keeps */
+    protected final @Nonnull Map<String, List<String>> previousHeaders = new LinkedHashMap<>();
+
+    public StreamingHttpResponseDocumentGenerationDestination(@Nonnull HttpServletResponse response) {
+        this.response = response;
+        for (var name : response.getHeaderNames()) previousHeaders.put(name, List.copyOf(response.getHeaders(name)));
+    }
+
+    @Override public void setStatusCode(int statusCode) {
+        super.setStatusCode(statusCode);
+        response.setStatus(statusCode);
+    }
+
+    @Override public void setContentType(@Nonnull String contentType) {
+        super.setContentType(contentType);
+        response.setContentType(contentType);
+    }
+
+    @Override public void setContentDispositionToDownload(@Nonnull String filename) {
+        super.setContentDispositionToDownload(filename);
+        response.setHeader("Content-Disposition", formatContentDispositionToDownload(filename));
+    }
+
+    /**
+     * The same header as a buffered response would send. The filename is escaped, as it comes from parameters:
+     * the "filename" is ASCII for older clients, and "filename*" (RFC 6266) carries the full UTF-8 name.
+     */
+    public static @Nonnull String formatContentDispositionToDownload(@Nonnull String filename) {
+        var ascii = new StringBuilder();
+        for (var c : filename.toCharArray()) {
+            if (c < 0x20 || c >= 0x7F) ascii.append('_');
+            else if (c == '"' || c == '\\') ascii.append('\\').append(c);
+            else ascii.append(c);
+        }
+        var result = "attachment; filename=\"" + ascii + "\"";
+        if (filename.chars().anyMatch(c -> c >= 0x7F)) result += "; filename*=UTF-8''" +
+            URLEncoder.encode(filename, UTF_8).replace("+", "%20").replace("*", "%2A");
+        return result;
+    }
+
+    /** The servlet output stream, which stays open when closed, as the response is only complete once the request is logged */
+    @SneakyThrows(IOException.class)
+    @Override public synchronized @Nonnull OutputStream getOutputStream() {
+        if (body == null) body = new FilterOutputStream(response.getOutputStream()) {
+            @Override public void write(@Nonnull byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+            @Override public void close() throws IOException { flush(); }
+        };
+        return body;
+    }
+
+    /** 
+     * @return null if the Range header is absent, not a single valid byte range, or should be ignored due to If-Range.
+     *     An invalid Range header, such as "bytes=5-3", is ignored, and the whole file is sent (RFC 7233).
+     */
+    protected static @CheckForNull long[] parseRange(
+        @Nonnull Map<String, List<String>> lowercaseRequestHeaders, @Nonnull String etag, long length
+    ) {
+        var range = lowercaseRequestHeaders.getOrDefault("range", List.of());
+        if (range.size() != 1) return null;
+        
+        var ifRange = lowercaseRequestHeaders.getOrDefault("if-range", List.of());
+        if ( ! ifRange.isEmpty() && ! ifRange.get(0).trim().equals(etag)) return null;
+        
+        var m = Pattern.compile("bytes=(\\d*)-(\\d*)").matcher(range.get(0).trim());
+        if ( ! m.matches() || (m.group(1).isEmpty() && m.group(2).isEmpty())) return null;
+        try {
+            if (m.group(1).isEmpty()) { // "bytes=-500" means the last 500 bytes
+                var suffix = Math.min(Long.parseLong(m.group(2)), length);
+                return new long[] { length - suffix, length - 1 };
+            }
+            var start = Long.parseLong(m.group(1));
+            if ( ! m.group(2).isEmpty() && Long.parseLong(m.group(2)) < start) return null;
+            var end = m.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(m.group(2)), length - 1);
+            return new long[] { start, end };
+        }
+        catch (NumberFormatException e) { return null; } // Too many digits
+    }
+    
+    protected static boolean matchesIfNoneMatch(@Nonnull Map<String, List<String>> lowercaseRequestHeaders, @Nonnull String etag) {
+        return lowercaseRequestHeaders.getOrDefault("if-none-match", List.of()).stream()
+            .flatMap(h -> Arrays.stream(h.split(",")))
+            .map(t -> t.trim().replaceFirst("^W/", ""))
+            .anyMatch(t -> t.equals("*") || t.equals(etag));
+    }
+
+    /**
+     * Sends a file which does not change, supporting conditional requests (If-None-Match) and HTTP Range requests.
+     * The file is transferred from its channel to the client without being read into memory.
+     * @param statusCode if not 200, the request is not conditional and the whole file is sent with this status code
+     */
+    @SneakyThrows(IOException.class)
+    public void sendStaticFile(
+        int statusCode, @Nonnull File file, @Nonnull String contentType, @Nonnull String etag, 
+        @Nonnull Map<String, List<String>> lowercaseRequestHeaders
+    ) {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var length = channel.size();
+            var conditional = statusCode == HttpServletResponse.SC_OK;
+            
+            response.setHeader("ETag", etag);
+            response.setHeader("Accept-Ranges", "bytes");
+            
+            if (conditional && matchesIfNoneMatch(lowercaseRequestHeaders, etag)) {
+                setStatusCode(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            
+            setContentType(contentType);
+            
+            var range = conditional ? parseRange(lowercaseRequestHeaders, etag, length) : null;
+            if (range != null && range[0] >= length) { // e.g. starts after the end of the file
+                setStatusCode(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader("Content-Range", "bytes */" + length);
+                return;
+            }
+            
+            long start = 0, count = length;
+            if (range == null) setStatusCode(statusCode);
+            else {
+                setStatusCode(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+                start = range[0];
+                count = range[1] - range[0] + 1;
+            }
+            response.setContentLengthLong(count);
+            
+            var target = Channels.newChannel(response.getOutputStream());
+            while (count > 0) {
+                var transferred = channel.transferTo(start, count, target);
+                if (transferred <= 0) throw new IOException("File '" + file + "' truncated while being sent");
+                start += transferred;
+                count -= transferred;
+            }
+        }
+    }
+
+    public boolean isCommitted() {
+        return response.isCommitted();
+    }
+
+    /** 
+     * Discards the status, headers and any buffered body set via this destination, so that an {@code <error>} can be
+     * delivered instead. Only possible if the response has not been committed.
+     */
+    public synchronized void reset() {
+        response.reset();
+        for (var e : previousHeaders.entrySet())
+            for (var value : e.getValue()) response.addHeader(e.getKey(), value);
+        body = null;
+    }
+
+    /** The body has already been written, so just make sure the client has received everything */
+    @SneakyThrows(IOException.class)
+    @Override public void deliver(@Nonnull HttpServletResponse ignored) {
+        response.flushBuffer();
+    }
+}
@@ -0,0 +1,282 @@
+package endpoints;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import org.json.JSONException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+
+/**
+ * Converts JSON to XML as a stream of SAX events, reading the JSON as it arrives,
+ * without building a JSON tree or holding the JSON text in memory.
+ *    <p>
+ * Each key of a JSON object becomes an element, and each item of an array becomes an element named after the array's key.
+ * Characters which are not allowed in XML names are replaced by "_xxxx_" containing their hex Unicode character code.
+ * An object with a "_content" key, whose other values are not objects or arrays, becomes a single element,
+ * with the value of "_content" as its text and the other keys as attributes.
+ * Items of a top-level array become "item" elements. Null becomes an empty element.
+ * Elements are in the order of the keys in the JSON.
+ *    <p>
+ * The XML is the same as that of the non-streaming JsonXmlConverter, apart from two intentional differences:
+ * the elements of an object are in the order of the JSON, rather than in the order of a hash of their keys,
+ * and numbers are as written in the JSON, for example "1.50" or "1e3", rather than being parsed and formatted again.
+ *    <p>
+ * JSON longer than the maximum size is rejected while it is being read.
+ */
+public class StreamingJsonXmlConverter {
+
+    protected static final @Nonnull Pattern charsetPattern = Pattern.compile("charset=\"?([^;\"\\s]+)", CASE_INSENSITIVE);
+    protected static final @Nonnull TransformerFactory transformerFactory = TransformerFactory.newInstance();
+
+    protected final @Nonnull JsonFactory jsonFactory;
+
+    /** @param maxBytes maximum length of the JSON, in bytes, or characters if the content type specifies a charset */
+    public StreamingJsonXmlConverter(long maxBytes) {
+        jsonFactory = JsonFactory.builder()
+            .streamReadConstraints(StreamReadConstraints.builder()
+                .maxDocumentLength(maxBytes)
+                .maxStringLength((int) Math.min(maxBytes, Integer.MAX_VALUE))
+                .build())
+            .build();
+    }
+
+    protected @Nonnull JsonParser newParser(@CheckForNull String contentType, @Nonnull InputStream json) throws IOException {
+        var charset = charsetPattern.matcher(contentType == null ? "" : contentType);
+        if (charset.find()) {
+            try { return jsonFactory.createParser(new InputStreamReader(json, Charset.forName(charset.group(1)))); }
+            catch (IllegalArgumentException ignored) { } // unknown charset, so detect it from the JSON as if none were specified
+        }
+        return jsonFactory.createParser(json);
+    }
+
+    protected static boolean isNameStartChar(char c) {
+        return c == '_' || Character.isLetter(c);
+    }
+
+    protected static boolean isNameChar(char c) {
+        return c == '_' || c == '-' || c == '.' || Character.isLetterOrDigit(c);
+    }
+
+    protected static @Nonnull String toXmlName(@Nonnull String key) {
+        if (key.isEmpty()) return "_";
+
+        var valid = isNameStartChar(key.charAt(0));
+        for (int i = 1; valid && i < key.length(); i++) valid = isNameChar(key.charAt(i));
+        if (valid) return key;
+
+        var result = new StringBuilder();
+        for (int i = 0; i < key.length(); i++) {
+            var c = key.charAt(i);
+            if (i == 0 ? isNameStartChar(c) : isNameChar(c)) result.append(c);
+            else result.append(String.format("_%04x_", (int) c));
+        }
+        return result.toString();
+    }
+
+    protected static class JsonWriter {
+        protected static final @Nonnull AttributesImpl noAttributes = new AttributesImpl();
+
+        protected final @Nonnull JsonParser parser;
+        protected final @Nonnull ContentHandler out;
+
+        protected JsonWriter(@Nonnull JsonParser parser, @Nonnull ContentHandler out) {
+            this.parser = parser;
+            this.out = out;
+        }
+
+        protected void writeElement(@Nonnull String name, @Nonnull AttributesImpl attributes, @Nonnull String text)
+        throws SAXException {
+            out.startElement("", name, name, attributes);
+            if ( ! text.isEmpty()) out.characters(text.toCharArray(), 0, text.length());
+            out.endElement("", name, name);
+        }
+
+        /** @param token the current token, the first token of the value */
+        protected void writeValue(@Nonnull String name, @Nonnull JsonToken token) throws IOException, SAXException {
+            switch (token) {
+                case START_ARRAY -> {
+                    for (var t = parser.nextToken(); t != JsonToken.END_ARRAY; t = parser.nextToken()) writeValue(name, t);
+                }
+                case START_OBJECT -> writeObject(name);
+                case VALUE_NULL -> writeElement(name, noAttributes, "");
+                default -> writeElement(name, noAttributes, parser.getText());
+            }
+        }
+
+        /**
+         * Whether an object becomes an element with attributes is only known once all its keys have been read,
+         * so its start, and its keys with values which are not objects or arrays, are held back until then,
+         * or until a key with an object or array value is read.
+         */
+        protected void writeObject(@Nonnull String name) throws IOException, SAXException {
+            var heldBackKeys = new ArrayList<String>();
+            var heldBackValues = new ArrayList<String>();
+            var started = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var key = parser.currentName();
+                var token = parser.nextToken();
+                if (token.isScalarValue()) {
+                    var text = token == JsonToken.VALUE_NULL ? "" : parser.getText();
+                    if (started) writeElement(toXmlName(key), noAttributes, text);
+                    else { heldBackKeys.add(key); heldBackValues.add(text); }
+                } else {
+                    if ( ! started) {
+                        out.startElement("", name, name, noAttributes);
+                        writeHeldBack(heldBackKeys, heldBackValues);
+                        started = true;
+                    }
+                    writeValue(toXmlName(key), token);
+                }
+            }
+
+            if ( ! started) {
+                var contentIndex = heldBackKeys.indexOf("_content");
+                if (contentIndex >= 0) {
+                    var attributes = new AttributesImpl();
+                    for (int i = 0; i < heldBackKeys.size(); i++) {
+                        if (i == contentIndex) continue;
+                        var attributeName = toXmlName(heldBackKeys.get(i));
+                        attributes.addAttribute("", attributeName, attributeName, "CDATA", heldBackValues.get(i));
+                    }
+                    writeElement(name, attributes, heldBackValues.get(contentIndex));
+                    return;
+                }
+                out.startElement("", name, name, noAttributes);
+                writeHeldBack(heldBackKeys, heldBackValues);
+            }
+            out.endElement("", name, name);
+        }
+
+        protected void writeHeldBack(@Nonnull List<String> keys, @Nonnull List<String> values) throws SAXException {
+            for (int i = 0; i < keys.size(); i++) writeElement(toXmlName(keys.get(i)), noAttributes, values.get(i));
+        }
+
+        protected void writeDocument(@Nonnull String rootElementName) throws IOException, SAXException {
+            var token = parser.nextToken();
+            if (token == null) throw new SAXException("JSON is empty");
+
+            out.startDocument();
+            if (token == JsonToken.START_ARRAY) {
+                out.startElement("", rootElementName, rootElementName, noAttributes);
+                for (var t = parser.nextToken(); t != JsonToken.END_ARRAY; t = parser.nextToken()) writeValue("item", t);
+                out.endElement("", rootElementName, rootElementName);
+            }
+            else writeValue(rootElementName, token);
+            out.endDocument();
+
+            if (parser.nextToken() != null) throw new SAXException("Unexpected content after the end of the JSON");
+        }
+    }
+
+    /** Parses the JSON from the byte stream of the input source */
+    protected class JsonReader implements XMLReader {
+        protected final @CheckForNull String contentType;
+        protected final @Nonnull String rootElementName;
+        protected @CheckForNull EntityResolver entityResolver = null;
+        protected @CheckForNull DTDHandler dtdHandler = null;
+        protected @CheckForNull ContentHandler contentHandler = null;
+        protected @CheckForNull ErrorHandler errorHandler = null;
+
+        protected JsonReader(@CheckForNull String contentType, @Nonnull String rootElementName) {
+            this.contentType = contentType;
+            this.rootElementName = rootElementName;
+        }
+
+        // The events are always those of a namespace-aware parser which does not report xmlns attributes
+        @Override public boolean getFeature(@Nonnull String name) throws SAXNotRecognizedException {
+            return switch (name) {
+                case "http://xml.org/sax/features/namespaces" -> true;
+                case "http://xml.org/sax/features/namespace-prefixes" -> false;
+                default -> throw new SAXNotRecognizedException(name);
+            };
+        }
+
+        @Override public void setFeature(@Nonnull String name, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+            if (getFeature(name) != value) throw new SAXNotSupportedException(name + "=" + value);
+        }
+
+        @Override public Object getProperty(@Nonnull String name) throws SAXNotRecognizedException {
+            throw new SAXNotRecognizedException(name);
+        }
+
+        @Override public void setProperty(@Nonnull String name, Object value) throws SAXNotRecognizedException {
+            throw new SAXNotRecognizedException(name);
+        }
+
+        @Override public void setEntityResolver(EntityResolver resolver) { entityResolver = resolver; }
+        @Override public EntityResolver getEntityResolver() { return entityResolver; }
+        @Override public void setDTDHandler(DTDHandler handler) { dtdHandler = handler; }
+        @Override public DTDHandler getDTDHandler() { return dtdHandler; }
+        @Override public void setContentHandler(ContentHandler handler) { contentHandler = handler; }
+        @Override public ContentHandler getContentHandler() { return contentHandler; }
+        @Override public void setErrorHandler(ErrorHandler handler) { errorHandler = handler; }
+        @Override public ErrorHandler getErrorHandler() { return errorHandler; }
+
+        @Override public void parse(@Nonnull InputSource input) throws IOException, SAXException {
+            if (input.getByteStream() == null) throw new SAXException("JSON input source must have a byte stream");
+            try (var parser = newParser(contentType, input.getByteStream())) {
+                new JsonWriter(parser, contentHandler == null ? new DefaultHandler() : contentHandler)
+                    .writeDocument(rootElementName);
+            }
+            catch (JsonProcessingException e) { throw new SAXException("Cannot parse JSON: " + e.getMessage(), e); }
+        }
+
+        @Override public void parse(@Nonnull String systemId) throws SAXException {
+            throw new SAXException("JSON can only be read from a byte stream");
+        }
+    }
+
+    /** Reading the source, for example by an XSLT transformation, reads and converts the JSON */
+    public @Nonnull SAXSource newSource(
+        @CheckForNull String contentType, @Nonnull InputStream json, @Nonnull String rootElementName
+    ) {
+        return new SAXSource(new JsonReader(contentType, rootElementName), new InputSource(json));
+    }
+
+    /** @throws JSONException if the JSON is invalid or too long, in order to be a replacement for the non-streaming converter */
+    public @Nonnull Element convertJsonToXml(
+        @CheckForNull String contentType, @Nonnull InputStream json, @Nonnull String rootElementName
+    ) throws JSONException {
+        try {
+            final Transformer identity;
+            synchronized (transformerFactory) { identity = transformerFactory.newTransformer(); }
+
+            var result = new DOMResult();
+            identity.transform(newSource(contentType, json, rootElementName), result);
+            return ((Document) result.getNode()).getDocumentElement();
+        }
+        catch (TransformerException e) { throw new JSONException(e.getMessage(), e); }
+    }
+}
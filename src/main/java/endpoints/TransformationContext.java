@@ -1,9 +1,9 @@
 package endpoints;
 
-import com.databasesandlife.util.ThreadPool;
 import com.databasesandlife.util.ThreadPool.SynchronizationPoint;
 import com.offerready.xslt.destination.BufferedDocumentGenerationDestination;
 import endpoints.config.*;
+import endpoints.datasource.DataSource;
 import endpoints.datasource.TransformationFailedException;
 import lombok.RequiredArgsConstructor;
 
@@ -36,16 +36,20 @@ public class TransformationContext {
     public final @Nonnull ApplicationName applicationName;
     public final @Nonnull Application application;
     public final @Nonnull ApplicationTransaction tx;
-    public final @Nonnull ThreadPool threads;
+    public final @Nonnull RequestThreads threads;
     public final @Nonnull Endpoint endpoint;
     private final @Nonnull Map<ParameterName, String> params;
     public final @Nonnull ParameterNotFoundPolicy parameterNotFoundPolicy;
     public final @Nonnull Map<IntermediateValueName, String> intermediateValues = synchronizedMap(new HashMap<>());
+    /** Data sources already scheduled in this context, so that each is only executed once, see {@link DataSource#scheduleExecution} */
+    public final @Nonnull Map<DataSource.ExecutionKey, DataSource.Execution> dataSourceExecutions = new HashMap<>();
     public final @Nonnull RequestId requestId;
     public final @Nonnull Request request;
     public final @Nonnull Map<OnDemandIncrementingNumber.OnDemandIncrementingNumberType, OnDemandIncrementingNumber> autoInc;
     public final @Nonnull Map<String, String> requestLogExpressionCaptures;
     public boolean alreadyDeliveredResponse = false;
+    /** Set if the execution of this request is being traced */
+    public @CheckForNull ExecutionTrace trace = null;
     protected @CheckForNull Map<String, LazyCachingValue> secrets = null;
 
     public synchronized @Nonnull Runnable scheduleTransformation(
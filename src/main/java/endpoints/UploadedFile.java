@@ -21,7 +21,8 @@ public abstract class UploadedFile {
 
     /**
      * This is safe to call multiple times.
-     * @implNote Both Wicket and Servlet are based on Jetty, which reads and stores the entire content when preparing the request.
+     * @implNote Both Wicket and Servlet are based on Jetty, which reads and stores the entire content when preparing the request,
+     *     in memory or, for larger uploads, in a temporary file.
      */
     public abstract @Nonnull InputStream getInputStream();
     
@@ -31,6 +32,7 @@ public abstract class UploadedFile {
     public abstract @CheckForNull String getSubmittedFileName();
 
     /** 
+     * Prefer {@link #getInputStream()} where possible, as uploads can be large.
      * @implNote Note that this creates a copy of the byte buffer each time it's called 
      */
     @SneakyThrows(IOException.class)
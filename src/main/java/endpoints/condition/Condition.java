@@ -2,60 +2,179 @@ package endpoints.condition;
 
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import endpoints.LazyCachingValue;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.config.IntermediateValueName;
 import endpoints.config.ParameterName;
-import lombok.AllArgsConstructor;
 import org.w3c.dom.Element;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.BiFunction;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
+import static endpoints.config.EndpointHierarchyNode.defaultParameterMultipleValueSeparator;
 import static java.util.Arrays.stream;
 
-/** Represents the <code>if="${foo}" equals="xyz"</code> conditions that tasks may have */
-@AllArgsConstructor // For testing
+/**
+ * Represents the <code>if="${foo}" equals="xyz"</code> conditions that tasks may have
+ *    <p>
+ * A side of the condition which contains no parameters is split into its values, and those values are parsed as required
+ * by the operator, only once, rather than on every evaluation.
+ */
 public class Condition {
-    
+
     public enum Operator { equals, notequals, isempty, hasmultiple, gt, ge, lt, le }
-    
+
+    /**
+     * The values of one side of the condition, in the forms that the operator needs.
+     * Immutable, so that the values of a constant side can be shared between requests.
+     */
+    protected static class Operand {
+        public final @Nonnull String[] values;
+
+        /** Only for the right-hand side of equals and notequals */
+        public final @CheckForNull Set<String> valueSet;
+
+        /** Only for numerical operators; null if there are no values, or if any value is not a number */
+        public final @CheckForNull BigDecimal min, max;
+
+        public Operand(@Nonnull String separator, @Nonnull String value, boolean withValueSet, boolean withNumbers) {
+            this.values = splitValues(value, separator);
+            this.valueSet = withValueSet ? new HashSet<>(Arrays.asList(values)) : null;
+
+            BigDecimal min = null, max = null;
+            if (withNumbers) {
+                try {
+                    for (var v : values) {
+                        var number = new BigDecimal(v);
+                        if (min == null || number.compareTo(min) < 0) min = number;
+                        if (max == null || number.compareTo(max) > 0) max = number;
+                    }
+                }
+                catch (NumberFormatException ignored) { min = max = null; }
+            }
+            this.min = min;
+            this.max = max;
+        }
+    }
+
     protected final @Nonnull Operator operator;
-    protected final @Nonnull String lhsPattern, rhsPattern;
-    
+    protected final @Nonnull ParameterTemplate lhsPattern, rhsPattern;
+
+    /**
+     * The sides which contain no parameters, prepared once per separator.
+     * Key is parameter multiple value separator, as endpoints sharing this condition may have different ones.
+     */
+    protected final @Nonnull Map<String, Operand> lhsConstantForSeparator = new ConcurrentHashMap<>();
+    protected final @Nonnull Map<String, Operand> rhsConstantForSeparator = new ConcurrentHashMap<>();
+
+    /** For testing */
+    public Condition(@Nonnull Operator operator, @Nonnull String lhsPattern, @Nonnull String rhsPattern) {
+        this.operator = operator;
+        this.lhsPattern = ParameterTemplate.compile(lhsPattern);
+        this.rhsPattern = ParameterTemplate.compile(rhsPattern);
+        compileConstants();
+    }
+
     public Condition(@Nonnull Element element) throws ConfigurationException {
         if (element.hasAttribute("if")) {
-            this.lhsPattern = element.getAttribute("if");
+            this.lhsPattern = ParameterTemplate.compile(element.getAttribute("if"));
             for (var op : Operator.values()) {
                 if (element.hasAttribute(op.name())) {
                     this.operator = op;
-                    this.rhsPattern = element.getAttribute(op.name());
-                    if (op == Operator.isempty || op == Operator.hasmultiple) 
-                        if ( ! Set.of("true", "false").contains(this.rhsPattern))
+                    this.rhsPattern = ParameterTemplate.compile(element.getAttribute(op.name()));
+                    if (op == Operator.isempty || op == Operator.hasmultiple)
+                        if ( ! Set.of("true", "false").contains(this.rhsPattern.toString()))
                             throw new ConfigurationException("Condition "+op+" must be "+op+"='true' or "+op+"='false', " +
                                 "not "+op+"='"+this.rhsPattern+"'");
+                    compileConstants();
                     return;
                 }
             }
-            throw new ConfigurationException("'if' attribute found, but second attribute not found, expected one of: " + 
+            throw new ConfigurationException("'if' attribute found, but second attribute not found, expected one of: " +
                 stream(Operator.values()).map(x -> "'"+x+"'").collect(Collectors.joining(", ")));
         } else {
             this.operator = Operator.equals;
-            this.lhsPattern = "";
-            this.rhsPattern = "";
+            this.lhsPattern = ParameterTemplate.compile("");
+            this.rhsPattern = ParameterTemplate.compile("");
         }
     }
-    
+
+    /** Same as String.split with the separator quoted, including removing trailing empty values, but without a regular expression */
+    public static @Nonnull String[] splitValues(@Nonnull String value, @Nonnull String separator) {
+        if (separator.isEmpty()) return value.split(Pattern.quote(separator));
+
+        var index = value.indexOf(separator);
+        if (index < 0) return new String[] { value };
+
+        var result = new ArrayList<String>();
+        var start = 0;
+        for (; index >= 0; index = value.indexOf(separator, start)) {
+            result.add(value.substring(start, index));
+            start = index + separator.length();
+        }
+        result.add(value.substring(start));
+
+        var size = result.size();
+        while (size > 0 && result.get(size - 1).isEmpty()) size--;
+        return result.subList(0, size).toArray(new String[0]);
+    }
+
+    protected boolean isNumerical() {
+        return operator == Operator.gt || operator == Operator.ge || operator == Operator.lt || operator == Operator.le;
+    }
+
+    protected @Nonnull Operand newLhs(@Nonnull String separator, @Nonnull String value) {
+        return new Operand(separator, value, false, isNumerical());
+    }
+
+    protected @Nonnull Operand newRhs(@Nonnull String separator, @Nonnull String value) {
+        return new Operand(separator, value, operator == Operator.equals || operator == Operator.notequals, isNumerical());
+    }
+
+    /** Almost all endpoints use the default separator, so constant sides can be prepared when the configuration is loaded */
+    protected void compileConstants() {
+        if ( ! lhsPattern.containsParameters())
+            lhsConstantForSeparator.put(defaultParameterMultipleValueSeparator, newLhs(defaultParameterMultipleValueSeparator, lhsPattern.toString()));
+        if ( ! rhsPattern.containsParameters())
+            rhsConstantForSeparator.put(defaultParameterMultipleValueSeparator, newRhs(defaultParameterMultipleValueSeparator, rhsPattern.toString()));
+    }
+
+    protected @Nonnull Operand getLhs(@Nonnull String separator, @Nonnull Map<String, LazyCachingValue> parameters) {
+        if (lhsPattern.containsParameters()) return newLhs(separator, lhsPattern.expand(parameters));
+        return lhsConstantForSeparator.computeIfAbsent(separator, sep -> newLhs(sep, lhsPattern.toString()));
+    }
+
+    protected @Nonnull Operand getRhs(@Nonnull String separator, @Nonnull Map<String, LazyCachingValue> parameters) {
+        if (rhsPattern.containsParameters()) return newRhs(separator, rhsPattern.expand(parameters));
+        return rhsConstantForSeparator.computeIfAbsent(separator, sep -> newRhs(sep, rhsPattern.toString()));
+    }
+
+    public @Nonnull ParameterTemplate getLhsPattern() {
+        return lhsPattern;
+    }
+
+    /**
+     * For indexing: if this condition is only true when the left-hand side has one of a fixed set of values, those values,
+     * otherwise null.
+     */
+    public @CheckForNull Set<String> getEqualsValuesOrNull(@Nonnull String parameterMultipleValueSeparator) {
+        if (operator != Operator.equals || ! isOptional() || rhsPattern.containsParameters()) return null;
+        return getRhs(parameterMultipleValueSeparator, Map.of()).valueSet;
+    }
+
     public boolean isOptional() {
         return ! (operator == Operator.equals && lhsPattern.isEmpty() && rhsPattern.isEmpty());
     }
-    
+
     public String getDescriptionForDebugging() {
         if (isOptional()) return " if='" + lhsPattern + "' " + operator.name() + "='" + rhsPattern + "'";
         else return "";
@@ -68,38 +187,35 @@ public class Condition {
         PlaintextParameterReplacer.assertParametersSuffice(params, visibleIntermediateValues, lhsPattern, "'if' attribute");
         PlaintextParameterReplacer.assertParametersSuffice(params, visibleIntermediateValues, rhsPattern, "'"+operator+"' attribute");
     }
-    
-    protected boolean evaluateNumerical(
-        @Nonnull String[] lhs, @Nonnull String[] rhs,
-        @Nonnull BiFunction<BigDecimal, BigDecimal, Boolean> matches
-    ) {
-        for (var lString : lhs) {
-            for (var rString : rhs) {
-                try {
-                    var lNumber = new BigDecimal(lString);
-                    var rNumber = new BigDecimal(rString);
-                    if ( ! matches.apply(lNumber, rNumber)) return false;
-                }
-                catch (NumberFormatException ignored) { 
-                    return false;
-                }
-            }
-        }
-        return true;
+
+    protected static boolean containsAny(@Nonnull String[] lhs, @Nonnull Set<String> rhs) {
+        for (var l : lhs) if (rhs.contains(l)) return true;
+        return false;
     }
-    
+
+    /** Every value on the left must compare with every value on the right, which is the same as comparing with their min or max */
+    protected boolean evaluateNumerical(@Nonnull Operand lhs, @Nonnull Operand rhs) {
+        if (lhs.values.length == 0 || rhs.values.length == 0) return true;
+        if (lhs.min == null || lhs.max == null || rhs.min == null || rhs.max == null) return false;
+        return switch (operator) {
+            case gt -> lhs.min.compareTo(rhs.max) >  0;
+            case ge -> lhs.min.compareTo(rhs.max) >= 0;
+            case lt -> lhs.max.compareTo(rhs.min) <  0;
+            case le -> lhs.max.compareTo(rhs.min) <= 0;
+            default -> throw new IllegalStateException(operator.name());
+        };
+    }
+
     public boolean evaluate(@Nonnull String parameterMultipleValueSeparator, @Nonnull Map<String, LazyCachingValue> parameters) {
-        var lhs = replacePlainTextParameters(lhsPattern, parameters).split(Pattern.quote(parameterMultipleValueSeparator));
-        var rhs = replacePlainTextParameters(rhsPattern, parameters).split(Pattern.quote(parameterMultipleValueSeparator));
+        if ( ! isOptional()) return true;
+
+        var lhs = getLhs(parameterMultipleValueSeparator, parameters);
         return switch (operator) {
-            case equals -> stream(lhs).anyMatch(x -> Arrays.asList(rhs).contains(x));
-            case notequals -> stream(lhs).noneMatch(x -> Arrays.asList(rhs).contains(x));
-            case isempty -> rhsPattern.equals("true") == stream(lhs).allMatch(x -> x.isEmpty());
-            case hasmultiple -> rhsPattern.equals("true") == lhs.length > 1;
-            case gt -> evaluateNumerical(lhs, rhs, (a,b) -> a.compareTo(b) >  0);
-            case ge -> evaluateNumerical(lhs, rhs, (a,b) -> a.compareTo(b) >= 0);
-            case lt -> evaluateNumerical(lhs, rhs, (a,b) -> a.compareTo(b) <  0);
-            case le -> evaluateNumerical(lhs, rhs, (a,b) -> a.compareTo(b) <= 0);
+            case equals -> containsAny(lhs.values, getRhs(parameterMultipleValueSeparator, parameters).valueSet);
+            case notequals -> ! containsAny(lhs.values, getRhs(parameterMultipleValueSeparator, parameters).valueSet);
+            case isempty -> rhsPattern.toString().equals("true") == stream(lhs.values).allMatch(x -> x.isEmpty());
+            case hasmultiple -> rhsPattern.toString().equals("true") == lhs.values.length > 1;
+            case gt, ge, lt, le -> evaluateNumerical(lhs, getRhs(parameterMultipleValueSeparator, parameters));
         };
     }
 }
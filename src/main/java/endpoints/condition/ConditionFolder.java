@@ -3,11 +3,13 @@ package endpoints.condition;
 import com.databasesandlife.util.DomParser;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import endpoints.LazyCachingValue;
+import endpoints.ParameterTemplate;
 import endpoints.config.IntermediateValueName;
 import endpoints.config.ParameterName;
 import lombok.RequiredArgsConstructor;
 import org.w3c.dom.Element;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +38,16 @@ public class ConditionFolder {
         for (var c : conditions) c.assertParametersSuffice(params, visibleIntermediateValues);
     }
 
+    /** For indexing: the first condition which is only true when its left-hand side, if specified, has one of a fixed set of values */
+    protected @CheckForNull Condition findEqualsConditionOrNull(
+        @CheckForNull ParameterTemplate lhsPattern, @Nonnull String parameterMultipleValueSeparator
+    ) {
+        for (var c : conditions)
+            if (c.getEqualsValuesOrNull(parameterMultipleValueSeparator) != null)
+                if (lhsPattern == null || c.getLhsPattern().toString().equals(lhsPattern.toString())) return c;
+        return null;
+    }
+
     public boolean evaluate(@Nonnull String parameterMultipleValueSeparator, @Nonnull Map<String, LazyCachingValue> parameters) {
         return conditions.stream().allMatch(c -> c.evaluate(parameterMultipleValueSeparator, parameters));
     }
@@ -3,19 +3,26 @@ package endpoints.condition;
 import com.databasesandlife.util.DomParser;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import endpoints.LazyCachingValue;
+import endpoints.ParameterTemplate;
 import endpoints.config.IntermediateValueName;
 import endpoints.config.ParameterName;
 import lombok.RequiredArgsConstructor;
 import org.w3c.dom.Element;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /** A set of condition folders joined by OR */
 @RequiredArgsConstructor
 public class ConditionFolderList {
+
+    /** An expression such as "${foo}", and the values it must have one of */
+    public record IndexKey(@Nonnull ParameterTemplate expression, @Nonnull Set<String> values) { }
     
     protected final @Nonnull List<ConditionFolder> conditions;
     
@@ -29,6 +36,25 @@ public class ConditionFolderList {
         for (var c : conditions) c.assertParametersSuffice(params, visibleIntermediateValues);
     }
 
+    /**
+     * For indexing: if these conditions can only be satisfied when one expression, such as "${foo}", has one of a fixed set of values,
+     * that expression and those values, otherwise null.
+     */
+    public @CheckForNull IndexKey getIndexKeyOrNull(@Nonnull String parameterMultipleValueSeparator) {
+        if (conditions.isEmpty()) return null;
+
+        var first = conditions.get(0).findEqualsConditionOrNull(null, parameterMultipleValueSeparator);
+        if (first == null) return null;
+
+        var values = new HashSet<String>();
+        for (var folder : conditions) {
+            var c = folder.findEqualsConditionOrNull(first.getLhsPattern(), parameterMultipleValueSeparator);
+            if (c == null) return null;
+            values.addAll(Objects.requireNonNull(c.getEqualsValuesOrNull(parameterMultipleValueSeparator)));
+        }
+        return new IndexKey(first.getLhsPattern(), values);
+    }
+
     public boolean evaluate(@Nonnull String parameterMultipleValueSeparator, @Nonnull Map<String, LazyCachingValue> parameters) {
         if (conditions.isEmpty()) return true; // No conditions = OK
         return conditions.stream().anyMatch(c -> c.evaluate(parameterMultipleValueSeparator, parameters));
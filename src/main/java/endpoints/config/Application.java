@@ -1,7 +1,10 @@
 package endpoints.config;
 
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
+import endpoints.ApplicationHttpClient;
+import endpoints.DatabaseResultCache;
 import endpoints.GitRevision;
+import endpoints.HttpResponseCache;
 import endpoints.config.ServicePortalEndpointMenuItem.ServicePortalEndpointMenuFolder;
 import lombok.Getter;
 import lombok.SneakyThrows;
@@ -9,6 +12,7 @@ import lombok.SneakyThrows;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -32,13 +36,19 @@ public class Application {
     protected @Getter @CheckForNull AwsS3Configuration awsS3ConfigurationOrNull;
     protected @Getter @Nonnull AwsSecretsToParameterMapping secrets;
     protected @Getter @Nonnull ServicePortalEndpointMenuFolder servicePortalEndpointMenuItems;
+    protected @Getter @Nonnull ApplicationHttpClient httpClient;
+    protected @Getter @Nonnull HttpResponseCache httpResponseCache;
+    protected @Getter @Nonnull DatabaseResultCache databaseResultCache;
     
     protected Application() { } 
     
     @SneakyThrows(ConfigurationException.class)
     public static @Nonnull Application newForTesting() {
         var result = new Application();
-        result.secrets = new AwsSecretsToParameterMapping(new File("doesnt-exist"));
+        result.secrets = new AwsSecretsToParameterMapping(new File("doesnt-exist"), Duration.ZERO, Duration.ZERO);
+        result.httpClient = ApplicationHttpClient.newForTesting();
+        result.httpResponseCache = new HttpResponseCache(10_000_000);
+        result.databaseResultCache = new DatabaseResultCache(1_000);
         return result;
     }
 
@@ -9,6 +9,7 @@ import com.offerready.xslt.DocumentGenerator;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import com.offerready.xslt.parser.DocumentOutputDefinitionParser;
 import com.offerready.xslt.parser.SecurityParser;
+import endpoints.DeploymentParameters;
 import endpoints.GitRevision;
 import endpoints.PublishEnvironment;
 import endpoints.datasource.DataSource;
@@ -17,7 +18,9 @@ import org.w3c.dom.Element;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.time.ZoneId;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public abstract class ApplicationFactory extends DocumentOutputDefinitionParser {
@@ -29,7 +32,9 @@ public abstract class ApplicationFactory extends DocumentOutputDefinitionParser
     
     public record ApplicationConfig(
         boolean locked, 
-        boolean debugAllowed
+        boolean debugAllowed,
+        @CheckForNull String displayName,
+        @CheckForNull ZoneId timezone
     ) { }
 
     public static final String endpointXmlFilename = "endpoints.xml";
@@ -165,7 +170,11 @@ public abstract class ApplicationFactory extends DocumentOutputDefinitionParser
             result.secretKeys = SecurityParser.parse(new File(directory, "security.xml"));
             result.emailConfigurationOrNull = emailConfig;
             result.awsS3ConfigurationOrNull = awsS3Config;
-            result.secrets = new AwsSecretsToParameterMapping(new File(directory, "secrets.xml"));
+            result.secrets = new AwsSecretsToParameterMapping(new File(directory, "secrets.xml"),
+                DeploymentParameters.get().awsSecretCacheTimeToLive, DeploymentParameters.get().awsSecretNotFoundCacheTimeToLive);
+            result.httpClient = DeploymentParameters.get().newApplicationHttpClient();
+            result.httpResponseCache = DeploymentParameters.get().newHttpResponseCache();
+            result.databaseResultCache = DeploymentParameters.get().newDatabaseResultCache();
             result.servicePortalEndpointMenuItems = new ServicePortalEndpointMenuItemsParser().parse(result.endpoints,
                 new File(directory, "service-portal-endpoint-menu-items.xml"));
             
@@ -181,10 +190,21 @@ public abstract class ApplicationFactory extends DocumentOutputDefinitionParser
         }
     }
     
+    public record LoadedApplication(
+        @Nonnull ApplicationName name, @Nonnull PublishEnvironment environment, @Nonnull Application application
+    ) { }
+    
     public abstract @Nonnull Application getApplication(
         @Nonnull DbTransaction db,
         @Nonnull ApplicationName name, @Nonnull PublishEnvironment environment
     ) throws ApplicationNotFoundException;
     
+    /** May return a cached value, see {@link #invalidateApplicationConfig(ApplicationName)} */
     public abstract @Nonnull ApplicationConfig fetchApplicationConfig(@Nonnull DbTransaction db, @Nonnull ApplicationName name);
+
+    /** Must be called after the transaction altering the application's configuration in the database has committed */
+    public abstract void invalidateApplicationConfig(@Nonnull ApplicationName name);
+
+    /** For monitoring; does not load any applications */
+    public abstract @Nonnull List<LoadedApplication> getLoadedApplications();
 }
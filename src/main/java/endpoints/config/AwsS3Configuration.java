@@ -24,8 +24,9 @@ public record AwsS3Configuration(
             var bucket = getMandatorySingleSubElementTextContent(root, "bucket");
 
             // Check that we can access the bucket
-            try (var awsS3Client = DeploymentParameters.get().newAwsS3Client()) {
-                awsS3Client.getBucketLocation(GetBucketLocationRequest.builder().bucket(bucket).build());
+            try {
+                DeploymentParameters.get().getAwsS3Client()
+                    .getBucketLocation(GetBucketLocationRequest.builder().bucket(bucket).build());
             }
             catch (Exception e) { throw new ConfigurationException("Bucket '" + bucket + "'", e); }
 
@@ -4,24 +4,55 @@ import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import endpoints.DeploymentParameters;
 import endpoints.LazyCachingValue;
 import endpoints.LazyCachingValue.LazyParameterComputationException;
+import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.secretsmanager.model.ResourceNotFoundException;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static com.databasesandlife.util.DomParser.*;
 import static software.amazon.awssdk.regions.Region.US_EAST_1;
 
+/**
+ * Maps parameter names to AWS secrets, and caches secret values for all requests of the application.
+ *    <p>
+ * Secrets are only fetched when a request actually uses them.
+ * Once a cached value is older than 80% of its time-to-live, the next request to use it still gets the cached value,
+ * and the secret is fetched again in the background.
+ * Secrets which do not exist are also cached, for a shorter time, so that a misconfiguration does not cause a
+ * Secrets Manager request on every endpoint request. Other errors, e.g. network problems, are not cached.
+ */
+@Slf4j
 public class AwsSecretsToParameterMapping {
     
+    /** Exactly one of value or notFound is set */
+    protected record CachedSecret(
+        @CheckForNull String value, @CheckForNull ResourceNotFoundException notFound, @Nonnull Instant fetchedAt
+    ) { }
+    
     public final @Nonnull Region region;
     public final @Nonnull Map<String, String> secretNameForParameterName;
+    protected final @Nonnull Duration timeToLive, notFoundTimeToLive;
+    protected final @Nonnull Map<String, CachedSecret> cache = new ConcurrentHashMap<>();
+    protected final @Nonnull Set<String> refreshing = ConcurrentHashMap.newKeySet();
     
-    public AwsSecretsToParameterMapping(@Nonnull File file) throws ConfigurationException {
+    /** @param timeToLive zero means secrets are fetched every time a request uses them */
+    public AwsSecretsToParameterMapping(
+        @Nonnull File file, @Nonnull Duration timeToLive, @Nonnull Duration notFoundTimeToLive
+    ) throws ConfigurationException {
+        this.timeToLive = timeToLive;
+        this.notFoundTimeToLive = notFoundTimeToLive;
+        
         if ( ! file.exists()) {
             region = US_EAST_1; // never used, as secrets are never looked up
             secretNameForParameterName = Map.of();
@@ -43,19 +74,63 @@ public class AwsSecretsToParameterMapping {
         catch (ConfigurationException e) { throw new ConfigurationException(file.getAbsolutePath(), e); }
     }
     
-    protected @Nonnull String fetchSecret(@Nonnull String secretName) throws LazyParameterComputationException {
-        try (var client = DeploymentParameters.get().newAwsSecretsManagerClient(region)) {
-            return client.getSecretValue(r -> r.secretId(secretName)).secretString();
-        }
+    /** @return the current time, can be overridden for testing */
+    protected @Nonnull Instant now() {
+        return Instant.now();
+    }
+    
+    /** Can be overridden for testing */
+    protected @Nonnull String fetchSecretValue(@Nonnull String secretName) throws ResourceNotFoundException {
+        var client = DeploymentParameters.get().getAwsSecretsManagerClient(region);
+        return client.getSecretValue(r -> r.secretId(secretName)).secretString();
+    }
+    
+    protected @Nonnull CachedSecret fetchSecret(@Nonnull String secretName) throws LazyParameterComputationException {
+        try { return new CachedSecret(fetchSecretValue(secretName), null, now()); }
+        catch (ResourceNotFoundException e) { return new CachedSecret(null, e, now()); }
         catch (Exception e) { throw new LazyParameterComputationException("Cannot fetch AWS secret '" + secretName + "'", e); }
     }
     
+    /** If the secret cannot be fetched, or no longer exists, the cached value is kept until it expires */
+    protected void refreshInBackground(@Nonnull String secretName) {
+        if ( ! refreshing.add(secretName)) return;
+        Thread.startVirtualThread(() -> {
+            try { 
+                var fetched = fetchSecret(secretName);
+                if (fetched.notFound() == null) cache.put(secretName, fetched);
+                else log.warn("AWS secret '" + secretName + "' not found while refreshing, will use cached value");
+            }
+            catch (LazyParameterComputationException e) { log.warn("Cannot refresh AWS secret, will use cached value", e); }
+            finally { refreshing.remove(secretName); }
+        });
+    }
+    
+    protected @Nonnull String getSecret(@Nonnull String secretName) throws LazyParameterComputationException {
+        var now = now();
+        var cached = cache.get(secretName);
+        
+        var age = cached == null ? null : Duration.between(cached.fetchedAt(), now);
+        var ttl = cached == null || cached.notFound() == null ? timeToLive : notFoundTimeToLive;
+        if (age == null || age.compareTo(ttl) >= 0) {
+            cached = fetchSecret(secretName);
+            cache.put(secretName, cached); // Even with a zero time-to-live, as secrets not found have their own
+        }
+        else if (cached.notFound() == null && age.compareTo(ttl.multipliedBy(8).dividedBy(10)) >= 0) {
+            refreshInBackground(secretName);
+        }
+        
+        // A new exception for each request, so that its stack trace is that of the request
+        if (cached.notFound() != null) 
+            throw new LazyParameterComputationException("Cannot fetch AWS secret '" + secretName + "'", cached.notFound());
+        return cached.value();
+    }
+    
     public @Nonnull Map<String, LazyCachingValue> getValues() {
         return secretNameForParameterName.entrySet().stream().collect(Collectors.toMap(
             e -> e.getKey(),
             e -> new LazyCachingValue() {
                 @Override protected @Nonnull String computeParameter() throws LazyParameterComputationException {
-                    try { return fetchSecret(e.getValue()); }
+                    try { return getSecret(e.getValue()); }
                     catch (LazyParameterComputationException x) {
                         throw new LazyParameterComputationException("Cannot compute parameter '" + e.getKey() + "'", x); 
                     } 
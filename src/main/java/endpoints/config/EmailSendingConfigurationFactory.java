@@ -2,6 +2,7 @@ package endpoints.config;
 
 import com.databasesandlife.util.EmailTransaction.*;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.TransformationContext;
 
@@ -13,18 +14,16 @@ import java.util.Map;
 import java.util.Set;
 
 import static com.databasesandlife.util.DomParser.*;
-import static endpoints.PlaintextParameterReplacer.containsParameters;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
 
 public class EmailSendingConfigurationFactory {
 
-    protected final @CheckForNull String mxAddressElementPattern, usernamePattern, passwordPattern, serverPattern, portPattern;
+    protected final @CheckForNull ParameterTemplate mxAddressElementPattern, usernamePattern, passwordPattern, serverPattern, portPattern;
     
     /** 
      * Extra headers that should be added to emails sent.
      * Keys are not patterns, values are patterns. 
      */
-    protected final @Nonnull Map<String, String> extraHeaderPatternForHeaderKey; 
+    protected final @Nonnull Map<String, ParameterTemplate> extraHeaderPatternForHeaderKey; 
 
     public EmailSendingConfigurationFactory(@Nonnull File file) throws ConfigurationException {
         try {
@@ -34,14 +33,14 @@ public class EmailSendingConfigurationFactory {
                 throw new ConfigurationException("Root node must be <email-sending-configuration>");
             assertNoOtherElements(rootEl, "mx-address", "server", "username", "password", "port", "header");
     
-            mxAddressElementPattern = getOptionalSingleSubElementTextContent(rootEl, "mx-address");
-            usernamePattern = getOptionalSingleSubElementTextContent(rootEl, "username");
-            passwordPattern = getOptionalSingleSubElementTextContent(rootEl, "password");
-            serverPattern = getOptionalSingleSubElementTextContent(rootEl, "server");
-            portPattern = getOptionalSingleSubElementTextContent(rootEl, "port");
+            mxAddressElementPattern = ParameterTemplate.compileOrNull(getOptionalSingleSubElementTextContent(rootEl, "mx-address"));
+            usernamePattern = ParameterTemplate.compileOrNull(getOptionalSingleSubElementTextContent(rootEl, "username"));
+            passwordPattern = ParameterTemplate.compileOrNull(getOptionalSingleSubElementTextContent(rootEl, "password"));
+            serverPattern = ParameterTemplate.compileOrNull(getOptionalSingleSubElementTextContent(rootEl, "server"));
+            portPattern = ParameterTemplate.compileOrNull(getOptionalSingleSubElementTextContent(rootEl, "port"));
             
-            if (portPattern != null && ! containsParameters(portPattern)) {
-                try { Integer.parseInt(portPattern); }
+            if (portPattern != null && ! portPattern.containsParameters()) {
+                try { Integer.parseInt(portPattern.toString()); }
                 catch (NumberFormatException e) { throw new ConfigurationException("<port>", e); }
             }
             
@@ -52,7 +51,7 @@ public class EmailSendingConfigurationFactory {
             for (var e : getSubElements(rootEl, "header")) {
                 String key = getMandatoryAttribute(e, "name");
                 String value = e.getTextContent().trim();
-                extraHeaderPatternForHeaderKey.put(key, value);
+                extraHeaderPatternForHeaderKey.put(key, ParameterTemplate.compile(value));
             }
         }
         catch (ConfigurationException e) { throw new ConfigurationException(file.getAbsolutePath(), e); }
@@ -86,25 +85,25 @@ public class EmailSendingConfigurationFactory {
         final SmtpServerConfiguration smtp;
         if (mxAddressElementPattern != null) {
             var mx = new MxSmtpConfiguration();
-            mx.mxAddress = replacePlainTextParameters(mxAddressElementPattern, stringParams);
+            mx.mxAddress = mxAddressElementPattern.expand(stringParams);
             smtp = mx;
         } else {
             SmtpServerAddress address;
 
             if (usernamePattern != null && passwordPattern != null) {
                 var tls = new TlsSmtpServerAddress();
-                tls.username = replacePlainTextParameters(usernamePattern, stringParams);
-                tls.password = replacePlainTextParameters(passwordPattern, stringParams);
+                tls.username = usernamePattern.expand(stringParams);
+                tls.password = passwordPattern.expand(stringParams);
                 address = tls;
             } else {
                 address = new SmtpServerAddress();
             }
 
             assert serverPattern != null : "Constructor checks that either serverPattern or mxAddressElementPattern is non-null";
-            address.host = replacePlainTextParameters(serverPattern, stringParams);
+            address.host = serverPattern.expand(stringParams);
 
             if (portPattern != null) {
-                var port = replacePlainTextParameters(portPattern, stringParams);
+                var port = portPattern.expand(stringParams);
                 try { address.port = Integer.parseInt(port); }
                 catch (NumberFormatException e) { throw new ConfigurationException("<port>", e); }
             }
@@ -115,7 +114,7 @@ public class EmailSendingConfigurationFactory {
         var result = new EmailSendingConfiguration(smtp);
 
         for (var e : extraHeaderPatternForHeaderKey.entrySet()) 
-            result.extraHeaders.put(e.getKey(), replacePlainTextParameters(e.getValue(), stringParams));
+            result.extraHeaders.put(e.getKey(), e.getValue().expand(stringParams));
 
         return result;
     }
@@ -1,5 +1,6 @@
 package endpoints.config;
 
+import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
 import endpoints.config.response.ResponseConfiguration;
 import endpoints.task.Task;
@@ -20,6 +21,7 @@ public class Endpoint extends EndpointHierarchyNode {
     public @Nonnull List<ResponseConfiguration> success;
     public @Nonnull ResponseConfiguration error;
     public final @Nonnull List<Task> tasks = new ArrayList<>();
+    protected @Nonnull EndpointExecutionPlan executionPlan;
     
     public static @Nonnull Endpoint newForTesting() {
         var result = new Endpoint();
@@ -27,6 +29,15 @@ public class Endpoint extends EndpointHierarchyNode {
         return result;
     }
 
+    /** Call once all tasks and &lt;success&gt;s have been added, before the endpoint is used */
+    public void createExecutionPlan() throws ConfigurationException {
+        executionPlan = new EndpointExecutionPlan(this);
+    }
+
+    public @Nonnull EndpointExecutionPlan getExecutionPlan() {
+        return executionPlan;
+    }
+
     @Override
     public @Nonnull Map<NodeName, Endpoint> getEndpointForName() {
         return Map.of(name, this);    
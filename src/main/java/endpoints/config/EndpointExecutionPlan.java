@@ -0,0 +1,111 @@
+package endpoints.config;
+
+import com.databasesandlife.util.gwtsafe.ConfigurationException;
+import endpoints.task.Task;
+import endpoints.task.TaskId;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In which order the tasks of an endpoint are scheduled, and which tasks each task and &lt;success&gt; waits for,
+ * computed once when the application is loaded, rather than on every request.
+ *    <p>
+ * The tasks are topologically sorted, so that each task comes after all the tasks it depends on,
+ * either via &lt;after&gt; or via an intermediate value which the other task outputs.
+ * Each task is identified by its index in {@link #tasks}, and each intermediate value by the index of the task which outputs it,
+ * so executing the plan only requires array lookups.
+ *    <p>
+ * Creating the plan checks that all dependencies exist and are not circular.
+ *    <p>
+ * The plan is immutable, as it is shared between all requests to the endpoint.
+ */
+public class EndpointExecutionPlan {
+
+    /** Topologically sorted */
+    public final @Nonnull List<Task> tasks;
+
+    /** For each task in {@link #tasks}, the indexes in {@link #tasks} of the tasks it waits for. Must not be modified. */
+    public final @Nonnull int[][] taskDependencies;
+
+    /** For each &lt;success&gt;, in order, the indexes in {@link #tasks} of the tasks it waits for. Must not be modified. */
+    public final @Nonnull int[][] successDependencies;
+
+    /** Parameters of the endpoint, including those defined by its parent folders */
+    public final @Nonnull Map<ParameterName, Parameter> parameters;
+
+    public EndpointExecutionPlan(@Nonnull Endpoint endpoint) throws ConfigurationException {
+        var successAndTasks = new ArrayList<EndpointExecutionParticipant>();
+        successAndTasks.addAll(endpoint.success);
+        successAndTasks.addAll(endpoint.tasks);
+        EndpointExecutionParticipant.assertNoCircularDependencies(successAndTasks);
+
+        var taskForId = new HashMap<TaskId, Integer>();
+        var taskForOutputValue = new HashMap<IntermediateValueName, Integer>();
+        for (int t = 0; t < endpoint.tasks.size(); t++) {
+            var task = endpoint.tasks.get(t);
+            if (task.getTaskIdOrNull() != null) taskForId.put(task.getTaskIdOrNull(), t);
+            for (var outputValue : task.getOutputIntermediateValues()) taskForOutputValue.put(outputValue, t);
+        }
+
+        // Dependencies, as indexes into endpoint.tasks, and the reverse
+        var unsortedDependencies = new int[endpoint.tasks.size()][];
+        var dependents = new ArrayList<List<Integer>>();
+        for (int t = 0; t < endpoint.tasks.size(); t++) dependents.add(new ArrayList<>());
+        for (int t = 0; t < endpoint.tasks.size(); t++) {
+            unsortedDependencies[t] = getDependencies(taskForId, taskForOutputValue, endpoint.tasks.get(t));
+            for (var d : unsortedDependencies[t]) dependents.get(d).add(t);
+        }
+
+        // Sort, preserving the order in endpoints.xml where there are no dependencies; there are no cycles, so all are sorted
+        var remainingDependencyCount = new int[endpoint.tasks.size()];
+        var ready = new ArrayDeque<Integer>();
+        for (int t = 0; t < endpoint.tasks.size(); t++) {
+            remainingDependencyCount[t] = unsortedDependencies[t].length;
+            if (remainingDependencyCount[t] == 0) ready.add(t);
+        }
+        var sortedIndexForUnsorted = new int[endpoint.tasks.size()];
+        var sorted = new ArrayList<Task>();
+        while ( ! ready.isEmpty()) {
+            var t = ready.poll();
+            sortedIndexForUnsorted[t] = sorted.size();
+            sorted.add(endpoint.tasks.get(t));
+            for (var dependent : dependents.get(t))
+                if (--remainingDependencyCount[dependent] == 0) ready.add(dependent);
+        }
+        taskDependencies = new int[sorted.size()][];
+        for (int t = 0; t < endpoint.tasks.size(); t++)
+            taskDependencies[sortedIndexForUnsorted[t]] = renumber(sortedIndexForUnsorted, unsortedDependencies[t]);
+
+        successDependencies = new int[endpoint.success.size()][];
+        for (int s = 0; s < endpoint.success.size(); s++)
+            successDependencies[s] = renumber(sortedIndexForUnsorted,
+                getDependencies(taskForId, taskForOutputValue, endpoint.success.get(s)));
+
+        tasks = Collections.unmodifiableList(sorted);
+        parameters = Collections.unmodifiableMap(endpoint.aggregateParametersOverParents());
+    }
+
+    /** The dependencies are known to exist, as they have already been checked */
+    protected static @Nonnull int[] getDependencies(
+        @Nonnull Map<TaskId, Integer> taskForId, @Nonnull Map<IntermediateValueName, Integer> taskForOutputValue,
+        @Nonnull EndpointExecutionParticipant participant
+    ) {
+        var result = new TreeSet<Integer>();
+        for (var predecessor : participant.predecessors) result.add(taskForId.get(predecessor));
+        for (var inputValue : participant.inputIntermediateValues) result.add(taskForOutputValue.get(inputValue));
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    protected static @Nonnull int[] renumber(@Nonnull int[] sortedIndexForUnsorted, @Nonnull int[] unsorted) {
+        var result = new int[unsorted.length];
+        for (int i = 0; i < unsorted.length; i++) result[i] = sortedIndexForUnsorted[unsorted[i]];
+        return result;
+    }
+}
@@ -2,6 +2,7 @@ package endpoints.config;
 
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.HashMap;
 import java.util.Map;
@@ -10,8 +11,18 @@ public class EndpointHierarchyFolderNode extends EndpointHierarchyNode {
     
     public @Nonnull EndpointHierarchyNode[] children;
 
+    /** All endpoints under this folder; created when the application is loaded, null for folders created in tests */
+    protected @CheckForNull Map<NodeName, Endpoint> endpointIndex = null;
+
+    /** Call once the children have been set and will no longer change */
+    public void createEndpointIndex() {
+        endpointIndex = Map.copyOf(getEndpointForName());
+    }
+
     @Override
     public @Nonnull Map<NodeName, Endpoint> getEndpointForName() {
+        if (endpointIndex != null) return endpointIndex;
+        
         var result = new HashMap<NodeName, Endpoint>();
         for (var c : children) result.putAll(c.getEndpointForName());
         return result;
@@ -19,12 +30,9 @@ public class EndpointHierarchyFolderNode extends EndpointHierarchyNode {
 
     @Override
     public @Nonnull Endpoint findEndpointOrThrow(@Nonnull NodeName name) throws NodeNotFoundException {
-        for (var child : children) {
-            try { return child.findEndpointOrThrow(name); }
-            catch (NodeNotFoundException ignored) { }
-        }
-        
-        throw new NodeNotFoundException(name);
+        var result = getEndpointForName().get(name);
+        if (result == null) throw new NodeNotFoundException(name);
+        return result;
     }
     
     @Override
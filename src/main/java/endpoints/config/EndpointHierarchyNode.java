@@ -1,6 +1,7 @@
 package endpoints.config;
 
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
+import endpoints.DeploymentParameters;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -8,9 +9,12 @@ import java.util.HashMap;
 import java.util.Map;
 
 public abstract class EndpointHierarchyNode {
+
+    public static final @Nonnull String defaultParameterMultipleValueSeparator = "||";
     
     public @CheckForNull EndpointHierarchyNode parentOrNull;
     public @CheckForNull String parameterMultipleValueSeparatorOverride;
+    public @CheckForNull Long maxRequestBytesOverride;
     public final @Nonnull Map<ParameterName, Parameter> parameters = new HashMap<>();
     
     public static class NodeNotFoundException extends Exception {
@@ -38,7 +42,14 @@ public abstract class EndpointHierarchyNode {
     public @Nonnull String getParameterMultipleValueSeparator() {
         if (parameterMultipleValueSeparatorOverride != null) return parameterMultipleValueSeparatorOverride;
         if (parentOrNull != null) return parentOrNull.getParameterMultipleValueSeparator();
-        return "||";
+        return defaultParameterMultipleValueSeparator;
+    }
+
+    /** Maximum length of the body of a request to an endpoint */
+    public long getMaxRequestBytes() {
+        if (maxRequestBytesOverride != null) return maxRequestBytesOverride;
+        if (parentOrNull != null) return parentOrNull.getMaxRequestBytes();
+        return DeploymentParameters.get().maxRequestBytes;
     }
     
     public abstract @Nonnull Map<NodeName, Endpoint> getEndpointForName();
@@ -48,6 +48,12 @@ public class EndpointHierarchyParser extends DomParser {
     ) throws ConfigurationException {
         node.parentOrNull = parentOrNull;
         node.parameterMultipleValueSeparatorOverride = getOptionalAttribute(element, "multiple-value-separator");
+        var maxRequestMegabytes = getOptionalAttribute(element, "max-request-megabytes");
+        if (maxRequestMegabytes != null) {
+            try { node.maxRequestBytesOverride = 1024L * 1024L * Long.parseLong(maxRequestMegabytes); }
+            catch (NumberFormatException e) { throw new ConfigurationException("max-request-megabytes='" +
+                maxRequestMegabytes + "' is not a whole number"); }
+        }
         for (var p : getSubElements(element, "parameter")) node.parameters.putAll(parseParameter(p));
     }
     
@@ -207,6 +213,9 @@ public class EndpointHierarchyParser extends DomParser {
             if (result.error instanceof ForwardToEndpointResponseConfiguration)
                 throw new ConfigurationException("<forward-to-endpoint> was used in <error>, may only be used in <success>");
             
+            if (result.error.streaming)
+                throw new ConfigurationException("stream='true' was used in <error>, may only be used in <success>");
+            
             if ( ! result.error.inputIntermediateValues.isEmpty()) 
                 throw new ConfigurationException("<error> may not have consume <input-intermediate-value>s, " +
                     "as the tasks which produce those intermediate values might not have been successful");
@@ -216,10 +225,7 @@ public class EndpointHierarchyParser extends DomParser {
                 result.tasks.add(parseTask(threads, applicationDir,
                     transformers, result.aggregateParametersOverParents().keySet(), t, taskElements.get(t)));
             
-            var successAndTasks = new ArrayList<EndpointExecutionParticipant>();
-            successAndTasks.addAll(result.success);
-            successAndTasks.addAll(result.tasks);
-            EndpointExecutionParticipant.assertNoCircularDependencies(successAndTasks);
+            result.createExecutionPlan();
 
             return result;
         }
@@ -242,6 +248,7 @@ public class EndpointHierarchyParser extends DomParser {
         for (var el : getSubElements(element, "endpoint"))
             children.add(parseEndpoint(threads, transformers, applicationDir, result, el));
         result.children = children.toArray(new EndpointHierarchyNode[0]);
+        result.createEndpointIndex();
         
         return result;
     }
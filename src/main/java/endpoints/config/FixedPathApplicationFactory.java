@@ -4,10 +4,12 @@ import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.databasesandlife.util.jdbc.DbTransaction;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import endpoints.DeploymentParameters;
 import endpoints.PublishEnvironment;
 
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.util.List;
 
 /** Provides only one application called "endpoints" which is at "/var/endpoints/fixed-application" in the filesystem */
 public class FixedPathApplicationFactory extends ApplicationFactory {
@@ -30,7 +32,7 @@ public class FixedPathApplicationFactory extends ApplicationFactory {
         }
     }
 
-    @Override public synchronized @Nonnull Application getApplication(
+    @Override public @Nonnull Application getApplication(
         @Nonnull DbTransaction db, @Nonnull ApplicationName app, @Nonnull PublishEnvironment environment
     ) throws ApplicationNotFoundException {
         if ( ! environment.equals(PublishEnvironment.getDefault())) throw new ApplicationNotFoundException(app);
@@ -39,6 +41,12 @@ public class FixedPathApplicationFactory extends ApplicationFactory {
     }
 
     public @Nonnull ApplicationConfig fetchApplicationConfig(@Nonnull DbTransaction db, @Nonnull ApplicationName applicationName) {
-        return new ApplicationConfig(false, false);
+        return new ApplicationConfig(false, false, null, DeploymentParameters.get().singleApplicationModeTimezoneId);
+    }
+
+    @Override public void invalidateApplicationConfig(@Nonnull ApplicationName name) { }
+
+    @Override public @Nonnull List<LoadedApplication> getLoadedApplications() {
+        return List.of(new LoadedApplication(new ApplicationName("endpoints"), PublishEnvironment.getDefault(), application));
     }
 }
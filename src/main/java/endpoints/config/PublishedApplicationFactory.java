@@ -4,26 +4,40 @@ import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.databasesandlife.util.jdbc.DbTransaction;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import endpoints.DeploymentParameters;
 import endpoints.GitApplicationRepository;
 import endpoints.GitApplicationRepository.RepositoryCommandFailedException;
 import endpoints.GitRevision;
 import endpoints.PublishEnvironment;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.databasesandlife.util.gwtsafe.ConfigurationException.prefixExceptionMessage;
 import static endpoints.generated.jooq.Tables.APPLICATION_CONFIG;
 import static endpoints.generated.jooq.Tables.APPLICATION_PUBLISH;
+import static java.util.stream.Collectors.toMap;
 
 /**
- * Loads and caches Applications from disk based on the directory specified in the database (last publish)
+ * Loads and caches Applications from disk based on the directory specified in the database (last publish).
+ *    <p>
+ * Lookups are served from an immutable map which is replaced (copy-on-write) whenever an application is loaded,
+ * so requests neither lock nor query the database if the application is already loaded.
+ * Between {@link #start()} and {@link #close()}, a background thread polls the database for newly published revisions 
+ * and reloads those applications; until the new revision is loaded, requests continue to be served by the previous revision.
+ * Loading one application never blocks requests to another.
+ *    <p>
+ * Application configuration (locked, debug allowed, etc.) is also cached, and is forgotten on each poll.
  */
 @Slf4j
-public class PublishedApplicationFactory extends ApplicationFactory {
+public class PublishedApplicationFactory extends ApplicationFactory implements AutoCloseable {
 
     protected record ApplicationDefn(
         @Nonnull ApplicationName name,
@@ -31,16 +45,32 @@ public class PublishedApplicationFactory extends ApplicationFactory {
     ) { }
 
     protected final @Nonnull File applicationCheckoutContainerDir;
-    protected final @Nonnull Map<ApplicationDefn, Application> cache = new HashMap<>();
+    protected final @Nonnull Duration pollInterval;
+    protected @CheckForNull Thread poller = null;
+    protected volatile boolean closed = false;
+    protected final @Nonnull Object cacheWriteLock = new Object();
+    protected volatile @Nonnull Map<ApplicationDefn, Application> cache = Map.of();
+    protected final @Nonnull Map<ApplicationDefn, Object> loadLockForApplication = new ConcurrentHashMap<>();
+    protected final @Nonnull Map<ApplicationName, ApplicationConfig> applicationConfigCache = new ConcurrentHashMap<>();
+    /** Incremented whenever cached application configuration is forgotten; guarded by applicationConfigCache */
+    protected long applicationConfigGeneration = 0;
+    
+    /** Creates the factory without loading any applications, for testing */
+    protected PublishedApplicationFactory(@Nonnull File applicationCheckoutContainerDir, @Nonnull Duration pollInterval) {
+        this.applicationCheckoutContainerDir = applicationCheckoutContainerDir;
+        this.pollInterval = pollInterval;
+    }
     
     /**
      * Creates the factory and schedules the loading of all known applications on the passed thread pool.
+     * Call {@link #start()} to check for newly published revisions every pollInterval.
      */
     @SuppressFBWarnings("SA_LOCAL_SELF_ASSIGNMENT")
     public PublishedApplicationFactory(
-        @Nonnull DbTransaction tx, @Nonnull XsltCompilationThreads threads, @Nonnull File applicationCheckoutContainerDir
+        @Nonnull DbTransaction tx, @Nonnull XsltCompilationThreads threads, @Nonnull File applicationCheckoutContainerDir,
+        @Nonnull Duration pollInterval
     ) {
-        this.applicationCheckoutContainerDir = applicationCheckoutContainerDir;
+        this(applicationCheckoutContainerDir, pollInterval);
 
         //noinspection ConstantConditions - prevents non-thread-safe transaction from being accidentally used inside thread pool
         tx = tx;
@@ -58,10 +88,7 @@ public class PublishedApplicationFactory extends ApplicationFactory {
             var loadAndCacheApplication = (Runnable) () -> {
                 try {
                     var application = loadApplication(threads, revision, directory);
-
-                    synchronized (PublishedApplicationFactory.this) {
-                        cache.put(new ApplicationDefn(app, r.value2()), application);
-                    }
+                    putIntoCache(new ApplicationDefn(app, r.value2()), application);
                 }
                 catch (Exception e) {
                     log.error("Cannot load application '"+app.name()+"' (will skip)", e);
@@ -80,6 +107,23 @@ public class PublishedApplicationFactory extends ApplicationFactory {
         }
     }
 
+    /** Starts the background thread checking for newly published revisions */
+    public synchronized void start() {
+        if (poller != null) throw new IllegalStateException("Application factory has already been started");
+        poller = new Thread(this::pollForPublishedRevisions, getClass().getSimpleName() + " poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /** Stops the background thread, waiting for any reload in progress to finish */
+    @Override public synchronized void close() {
+        closed = true;
+        if (poller == null) return;
+        poller.interrupt();
+        try { poller.join(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
     protected @Nonnull GitRevision fetchPublishedRevisionFromDb(
         @Nonnull DbTransaction db, @Nonnull ApplicationName a, @Nonnull PublishEnvironment environment
     ) throws ApplicationNotFoundException {
@@ -97,31 +141,126 @@ public class PublishedApplicationFactory extends ApplicationFactory {
         return new File(applicationCheckoutContainerDir, a.name() + "-" + r.sha256Hex());
     }
 
-    /** This fetches previously published applications, therefore they are assumed to be valid */
-    @Override public synchronized Application getApplication(
-        @Nonnull DbTransaction tx, @Nonnull ApplicationName name, @Nonnull PublishEnvironment environment
-    ) throws ApplicationNotFoundException {
-        try {
-            // Determine what revision has been published and thus which we should load
-            var revision = fetchPublishedRevisionFromDb(tx, name, environment);
+    /** @param application null means remove the application from the cache */
+    protected void putIntoCache(@Nonnull ApplicationDefn defn, @CheckForNull Application application) {
+        synchronized (cacheWriteLock) {
+            var newCache = new HashMap<>(cache);
+            if (application == null) newCache.remove(defn);
+            else newCache.put(defn, application);
+            cache = Map.copyOf(newCache);
+        }
+    }
 
+    /** Loads the revision, unless it is already loaded. Only blocks other callers loading the same application. */
+    protected @Nonnull Application loadAndCache(
+        @Nonnull GitApplicationRepository repo, @Nonnull ApplicationDefn defn, @Nonnull GitRevision revision
+    ) throws RepositoryCommandFailedException, ConfigurationException {
+        synchronized (loadLockForApplication.computeIfAbsent(defn, d -> new Object())) {
             // Do we already have this revision loaded?
-            var cachedApp = cache.get(new ApplicationDefn(name, environment));
+            var cachedApp = cache.get(defn);
             if (cachedApp != null && revision.equals(cachedApp.revision)) return cachedApp;
 
             // Checkout the application to disk if necessary (e.g. AWS instance restarted, new blank disk)
-            var directory = getApplicationDirectory(name, revision);
-            var repo = GitApplicationRepository.fetch(tx, name);
+            var directory = getApplicationDirectory(defn.name(), revision);
             repo.checkoutAtomicallyIfNecessary(revision, directory);
 
             // Load the application and put into our cache
-            log.info("Application '" + name.name() + "' has changed or was never loaded: will reload...");
+            log.info("Application '" + defn.name().name() + "' has changed or was never loaded: will reload...");
             var threads = new XsltCompilationThreads();
-            cachedApp = loadApplication(threads, revision, directory);
-            cache.put(new ApplicationDefn(name, environment), cachedApp);
+            var application = loadApplication(threads, revision, directory);
             threads.execute();
+            putIntoCache(defn, application);
 
-            return cachedApp;
+            return application;
+        }
+    }
+
+    /** Fetches the repository in its own transaction, then loads the revision unless it is already loaded */
+    protected @Nonnull Application loadAndCache(@Nonnull ApplicationDefn defn, @Nonnull GitRevision revision)
+    throws RepositoryCommandFailedException, ConfigurationException {
+        final GitApplicationRepository repo;
+        try (var tx = DeploymentParameters.get().newDbTransaction()) {
+            repo = GitApplicationRepository.fetch(tx, defn.name());
+            tx.commit();
+        }
+        return loadAndCache(repo, defn, revision);
+    }
+
+    protected @Nonnull Map<ApplicationDefn, GitRevision> fetchPublishedRevisions() {
+        try (var tx = DeploymentParameters.get().newDbTransaction()) {
+            var result = tx.jooq()
+                .select(APPLICATION_PUBLISH.APPLICATION_NAME, APPLICATION_PUBLISH.ENVIRONMENT, APPLICATION_PUBLISH.REVISION)
+                .from(APPLICATION_PUBLISH).fetch().stream()
+                .collect(toMap(r -> new ApplicationDefn(r.value1(), r.value2()), r -> r.value3()));
+            tx.commit();
+            return result;
+        }
+    }
+
+    /** 
+     * Reloads any loaded applications whose published revision has changed, and forgets deleted applications.
+     * Also forgets cached application configuration, so that changes made directly in the database,
+     * or via the service portal on another server, are seen after one poll interval.
+     */
+    protected void reloadChangedApplications() {
+        synchronized (applicationConfigCache) {
+            applicationConfigGeneration++;
+            applicationConfigCache.clear();
+        }
+
+        var published = fetchPublishedRevisions();
+        for (var e : cache.entrySet()) {
+            var defn = e.getKey();
+            var revision = published.get(defn);
+            if (revision == null) {
+                log.info("Application '" + defn.name().name() + "' is no longer published: will remove from cache");
+                putIntoCache(defn, null);
+            }
+            else if ( ! revision.equals(e.getValue().revision)) {
+                try { loadAndCache(defn, revision); }
+                catch (Exception ex) {
+                    log.error("Cannot reload application '" + defn.name().name() + "' (will keep previous revision)", ex);
+                }
+            }
+        }
+    }
+
+    protected void pollForPublishedRevisions() {
+        while ( ! closed) {
+            try {
+                //noinspection BusyWait
+                Thread.sleep(pollInterval.toMillis());
+                reloadChangedApplications();
+            }
+            catch (InterruptedException e) { return; }
+            catch (Exception e) { log.error("Cannot check for newly published applications (will try again)", e); }
+        }
+    }
+
+    /** Called after a publish is committed, so that the new revision is used immediately rather than after the next poll */
+    public void onApplicationPublished(
+        @Nonnull ApplicationName name, @Nonnull PublishEnvironment environment, @Nonnull GitRevision revision
+    ) {
+        try {
+            loadAndCache(new ApplicationDefn(name, environment), revision);
+        }
+        catch (RepositoryCommandFailedException | ConfigurationException e) {
+            throw new RuntimeException(prefixExceptionMessage("Application which was successfully published is invalid", e), e);
+        }
+    }
+
+    /** This fetches previously published applications, therefore they are assumed to be valid */
+    @Override public @Nonnull Application getApplication(
+        @Nonnull DbTransaction tx, @Nonnull ApplicationName name, @Nonnull PublishEnvironment environment
+    ) throws ApplicationNotFoundException {
+        var defn = new ApplicationDefn(name, environment);
+        var cachedApp = cache.get(defn);
+        if (cachedApp != null) return cachedApp;
+
+        // Not loaded, e.g. published on another server since the last poll, or could not be loaded at startup
+        try {
+            var revision = fetchPublishedRevisionFromDb(tx, name, environment);
+            return loadAndCache(GitApplicationRepository.fetch(tx, name), defn, revision);
         }
         catch (RepositoryCommandFailedException | ConfigurationException e) {
             throw new RuntimeException(prefixExceptionMessage(
@@ -129,12 +268,46 @@ public class PublishedApplicationFactory extends ApplicationFactory {
         }
     }
 
-    public @Nonnull ApplicationConfig fetchApplicationConfig(@Nonnull DbTransaction db, @Nonnull ApplicationName applicationName) {
+    protected @Nonnull ApplicationConfig fetchApplicationConfigFromDb(
+        @Nonnull DbTransaction db, @Nonnull ApplicationName applicationName
+    ) {
         var appConfig = db.jooq()
-            .select(APPLICATION_CONFIG.LOCKED, APPLICATION_CONFIG.DEBUG_ALLOWED)
+            .select(APPLICATION_CONFIG.LOCKED, APPLICATION_CONFIG.DEBUG_ALLOWED, 
+                APPLICATION_CONFIG.DISPLAY_NAME, APPLICATION_CONFIG.TIMEZONE)
             .from(APPLICATION_CONFIG)
             .where(APPLICATION_CONFIG.APPLICATION_NAME.eq(applicationName))
             .fetchSingle();
-        return new ApplicationConfig(appConfig.value1(), appConfig.value2());
+        return new ApplicationConfig(appConfig.value1(), appConfig.value2(), appConfig.value3(), appConfig.value4());
+    }
+
+    /** 
+     * Configuration read before, but cached after, an invalidation is not cached, as it might be out of date.
+     * @throws RuntimeException if the application has no 'application_config' row, as before caching was introduced
+     */
+    public @Nonnull ApplicationConfig fetchApplicationConfig(@Nonnull DbTransaction db, @Nonnull ApplicationName applicationName) {
+        var cached = applicationConfigCache.get(applicationName);
+        if (cached != null) return cached;
+        
+        long generation;
+        synchronized (applicationConfigCache) { generation = applicationConfigGeneration; }
+        
+        var result = fetchApplicationConfigFromDb(db, applicationName);
+        synchronized (applicationConfigCache) {
+            if (generation == applicationConfigGeneration) applicationConfigCache.put(applicationName, result);
+        }
+        return result;
+    }
+
+    @Override public @Nonnull List<LoadedApplication> getLoadedApplications() {
+        return cache.entrySet().stream()
+            .map(e -> new LoadedApplication(e.getKey().name(), e.getKey().env(), e.getValue()))
+            .toList();
+    }
+
+    @Override public void invalidateApplicationConfig(@Nonnull ApplicationName name) {
+        synchronized (applicationConfigCache) {
+            applicationConfigGeneration++;
+            applicationConfigCache.remove(name);
+        }
     }
 }
@@ -8,6 +8,9 @@ import com.offerready.xslt.WeaklyCachedXsltTransformer;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
 import com.offerready.xslt.XsltParameters;
 import com.offerready.xslt.destination.BufferedDocumentGenerationDestination;
+import endpoints.RequestMetrics;
+import endpoints.RequestMetrics.Labels;
+import endpoints.RequestMetrics.Stage;
 import endpoints.TransformationContext;
 import endpoints.datasource.DataSource;
 import endpoints.datasource.TransformationFailedException;
@@ -59,7 +62,9 @@ public class Transformer {
                         "application/xml", DomParser.formatXmlPretty(document.getDocumentElement()).getBytes(UTF_8));
                 }
                 
-                generator.transform(dest, document, true, null, null);
+                try (var ignored = RequestMetrics.shared.start(Stage.transformation, null, Labels.of(context))) {
+                    generator.transform(dest, document, true, null, null);
+                }
                 
                 if (writeOutputToAwsS3 != null) {
                     assert context.application.awsS3ConfigurationOrNull != null : "checked in requiresAwsS3Configuration";
@@ -1,11 +1,11 @@
 package endpoints.config;
 
 import com.databasesandlife.util.DomParser;
-import com.databasesandlife.util.ThreadPool;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import endpoints.DeploymentParameters;
 import endpoints.PublishEnvironment;
 import endpoints.RequestId;
+import endpoints.RequestThreads;
 import org.w3c.dom.Element;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.model.Tag;
@@ -45,26 +45,25 @@ public class WriteTransformationDataToAwsS3Command {
     }
     
     public void scheduleWriting(
-        @Nonnull ThreadPool threads, @Nonnull PublishEnvironment environment, @Nonnull RequestId requestId,
+        @Nonnull RequestThreads threads, @Nonnull PublishEnvironment environment, @Nonnull RequestId requestId,
         @Nonnull AwsS3Configuration config, @Nonnull String dataSourceName, 
         @Nonnull String contentType, @Nonnull byte[] contents
     ) {
         threads.addTaskOffPool(() -> {
-            try (var s3 = DeploymentParameters.get().newAwsS3Client()) {
-                var extension = contentType.contains("xml") ? ".xml" : "";
+            var s3 = DeploymentParameters.get().getAwsS3Client();
+            var extension = contentType.contains("xml") ? ".xml" : "";
 
-                var tagList = new ArrayList<Tag>();
-                tagList.add(Tag.builder().key("environment").value(environment.name()).build());
-                tags.forEach((key, value) -> tagList.add(Tag.builder().key(key).value(value).build()));
+            var tagList = new ArrayList<Tag>();
+            tagList.add(Tag.builder().key("environment").value(environment.name()).build());
+            tags.forEach((key, value) -> tagList.add(Tag.builder().key(key).value(value).build()));
 
-                s3.putObject(req -> req
-                    .bucket(config.bucket())
-                    .key(String.format("%s%s-%s-transformer-%s%s", 
-                        folder, requestId.id(), dataSourceName, inputOrOutput, extension))
-                    .contentType(contentType)
-                    .tagging(Tagging.builder().tagSet(tagList).build()),
-                    RequestBody.fromBytes(contents));
-            }
+            s3.putObject(req -> req
+                .bucket(config.bucket())
+                .key(String.format("%s%s-%s-transformer-%s%s", 
+                    folder, requestId.id(), dataSourceName, inputOrOutput, extension))
+                .contentType(contentType)
+                .tagging(Tagging.builder().tagSet(tagList).build()),
+                RequestBody.fromBytes(contents));
         });
     }
 }
@@ -2,6 +2,7 @@ package endpoints.config.response;
 
 import com.databasesandlife.util.DomParser;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.config.NodeName;
 import endpoints.config.ParameterName;
@@ -22,14 +23,14 @@ public class ForwardToEndpointResponseConfiguration extends ResponseConfiguratio
     @Nonnull public NodeName endpoint;
     
     /** Null means that all parameters are forwarded */
-    @CheckForNull public Map<ParameterName, String> inputParameterPatterns;
+    @CheckForNull public Map<ParameterName, ParameterTemplate> inputParameterPatterns;
 
     @SuppressWarnings("SameParameterValue") 
-    protected Map<ParameterName, String> parseParameterMap(Element container, String elementName, String keyAttribute)
+    protected Map<ParameterName, ParameterTemplate> parseParameterMap(Element container, String elementName, String keyAttribute)
     throws ConfigurationException {
-        var result = new HashMap<ParameterName, String>();
+        var result = new HashMap<ParameterName, ParameterTemplate>();
         for (Element e : getSubElements(container, elementName))
-            result.put(new ParameterName(getMandatoryAttribute(e, keyAttribute)), e.getTextContent());
+            result.put(new ParameterName(getMandatoryAttribute(e, keyAttribute)), ParameterTemplate.compile(e.getTextContent()));
         return result;
     }
 
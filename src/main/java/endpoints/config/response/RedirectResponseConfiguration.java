@@ -3,6 +3,7 @@ package endpoints.config.response;
 import com.databasesandlife.util.DomParser;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.config.ParameterName;
 import endpoints.config.UrlPrefixWhiteList;
@@ -17,7 +18,7 @@ import static com.databasesandlife.util.DomParser.getSubElements;
 
 public class RedirectResponseConfiguration extends ResponseConfiguration {
     
-    public @Nonnull String urlPattern;
+    public @Nonnull ParameterTemplate urlPattern;
     public @Nonnull UrlPrefixWhiteList whitelist;
 
     @SuppressFBWarnings("NP_METHOD_PARAMETER_TIGHTENS_ANNOTATION")
@@ -25,7 +26,7 @@ public class RedirectResponseConfiguration extends ResponseConfiguration {
         super(config);
         
         assertNoOtherElements(config, "redirect-to", "redirect-prefix-whitelist-entry", "input-intermediate-value");
-        urlPattern = redirectToElement.getTextContent().trim();
+        urlPattern = ParameterTemplate.compile(redirectToElement.getTextContent().trim());
         whitelist = new UrlPrefixWhiteList();
         for (var e : getSubElements(config, "redirect-prefix-whitelist-entry"))
             whitelist.urlPrefixWhiteList.add(e.getTextContent().trim());
@@ -12,15 +12,21 @@ import javax.annotation.Nonnull;
 import java.util.Map;
 import java.util.Set;
 
+import static com.databasesandlife.util.DomParser.getOptionalAttribute;
+
 public abstract class ResponseConfiguration extends EndpointExecutionParticipant {
 
     protected final @Nonnull String tagName;
     protected final @Nonnull Condition condition;
+    
+    /** Body is written directly to the client rather than buffered, see {@link endpoints.StreamingHttpResponseDocumentGenerationDestination} */
+    public final boolean streaming;
 
     public ResponseConfiguration(@Nonnull Element config) throws ConfigurationException {
         super(config);
         tagName = config.getTagName();
         condition = new Condition(config);
+        streaming = Boolean.parseBoolean(getOptionalAttribute(config, "stream"));
     }
     
     public @Nonnull String getHumanReadableId() {
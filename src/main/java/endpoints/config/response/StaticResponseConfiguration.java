@@ -1,8 +1,12 @@
 package endpoints.config.response;
 
+import com.databasesandlife.util.MD5Hex;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
+import endpoints.GitRevision;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.config.ParameterName;
+import jakarta.activation.MimetypesFileTypeMap;
 import lombok.SneakyThrows;
 import org.w3c.dom.Element;
 
@@ -16,8 +20,11 @@ import static com.databasesandlife.util.DomParser.*;
 
 public class StaticResponseConfiguration extends ResponseConfiguration {
 
+    protected static final @Nonnull MimetypesFileTypeMap contentTypes = new MimetypesFileTypeMap();
+
     public final @Nonnull File file;
-    public final @CheckForNull String downloadFilenamePatternOrNull;
+    public final @Nonnull String contentType;
+    public final @CheckForNull ParameterTemplate downloadFilenamePatternOrNull;
 
     @SneakyThrows(IOException.class)
     public static @Nonnull File findStaticFileAndAssertExists(@Nonnull File staticDir, @Nonnull String filename)
@@ -37,7 +44,8 @@ public class StaticResponseConfiguration extends ResponseConfiguration {
         super(config);
         assertNoOtherElements(responseElement);
         file = findStaticFileAndAssertExists(staticDir, getMandatoryAttribute(responseElement, "filename"));
-        downloadFilenamePatternOrNull = getOptionalAttribute(responseElement, "download-filename");
+        contentType = contentTypes.getContentType(file);
+        downloadFilenamePatternOrNull = ParameterTemplate.compileOrNull(getOptionalAttribute(responseElement, "download-filename"));
     }
 
     @Override public void assertParametersSuffice(@Nonnull Set<ParameterName> params) throws ConfigurationException {
@@ -47,4 +55,15 @@ public class StaticResponseConfiguration extends ResponseConfiguration {
     }
 
     @Override public boolean isDownload() { return downloadFilenamePatternOrNull != null; }
+
+    /**
+     * Files in the "static" directory do not change within a Git revision.
+     * Without a revision (single application mode) the file's modification time and size are used.
+     */
+    public @Nonnull String getETag(@CheckForNull GitRevision revision) {
+        var version = revision == null
+            ? Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length())
+            : revision.sha256Hex();
+        return "\"" + MD5Hex.sha256hex(version + ":" + file.getPath()) + "\"";
+    }
 }
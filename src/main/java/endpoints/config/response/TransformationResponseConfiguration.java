@@ -2,6 +2,7 @@ package endpoints.config.response;
 
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.config.ParameterName;
 import endpoints.config.Transformer;
@@ -17,7 +18,7 @@ import static com.databasesandlife.util.DomParser.*;
 public class TransformationResponseConfiguration extends ResponseConfiguration {
     
     public @Nonnull Transformer transformer;
-    public @CheckForNull String downloadFilenamePatternOrNull;
+    public @CheckForNull ParameterTemplate downloadFilenamePatternOrNull;
 
     public TransformationResponseConfiguration(
         @Nonnull Map<String, Transformer> transformers, @Nonnull Element config, @Nonnull Element responseElement
@@ -28,7 +29,7 @@ public class TransformationResponseConfiguration extends ResponseConfiguration {
         var transformerName = getMandatoryAttribute(responseElement, "name");
         transformer = transformers.get(transformerName);
         if (transformer == null) throw new ConfigurationException("Transformer name='"+transformerName+"' not found");
-        downloadFilenamePatternOrNull = getOptionalAttribute(responseElement, "download-filename");
+        downloadFilenamePatternOrNull = ParameterTemplate.compileOrNull(getOptionalAttribute(responseElement, "download-filename"));
     }
 
     @Override public void assertParametersSuffice(@Nonnull Set<ParameterName> params) throws ConfigurationException {
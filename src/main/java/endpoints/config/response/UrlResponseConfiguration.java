@@ -3,6 +3,7 @@ package endpoints.config.response;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import endpoints.HttpRequestSpecification;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.config.ParameterName;
 import org.w3c.dom.Element;
@@ -17,7 +18,7 @@ import static com.databasesandlife.util.DomParser.getOptionalAttribute;
 public class UrlResponseConfiguration extends ResponseConfiguration {
     
     public final @Nonnull HttpRequestSpecification spec;
-    public final @CheckForNull String downloadFilenamePatternOrNull;
+    public final @CheckForNull ParameterTemplate downloadFilenamePatternOrNull;
 
     public UrlResponseConfiguration(
         @Nonnull XsltCompilationThreads threads, @Nonnull File httpXsltDirectory, 
@@ -25,7 +26,7 @@ public class UrlResponseConfiguration extends ResponseConfiguration {
     ) throws ConfigurationException {
         super(config);
         spec = new HttpRequestSpecification(threads, httpXsltDirectory, responseElement);
-        downloadFilenamePatternOrNull = getOptionalAttribute(responseElement, "download-filename");
+        downloadFilenamePatternOrNull = ParameterTemplate.compileOrNull(getOptionalAttribute(responseElement, "download-filename"));
     }
 
     @Override public void assertParametersSuffice(@Nonnull Set<ParameterName> params) throws ConfigurationException {
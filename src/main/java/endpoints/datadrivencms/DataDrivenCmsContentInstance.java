@@ -5,15 +5,17 @@ import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import org.w3c.dom.Element;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 
 /** Represents an &lt;instance&gt; a &lt;content&gt; in a &lt;data-driven-cms&gt; file */
 public class DataDrivenCmsContentInstance extends DataDrivenCmsInstance {
     
-    protected final Element copy;
+    /** The elements within &lt;copy&gt; */
+    protected final List<Element> copyElements;
 
     public DataDrivenCmsContentInstance(@Nonnull String contentId, @Nonnull Element element) throws ConfigurationException {
         super(contentId, element);
         DomParser.assertNoOtherElements(element, "condition-folder", "copy");
-        this.copy = DomParser.getMandatorySingleSubElement(element, "copy");
+        this.copyElements = DomParser.getSubElements(DomParser.getMandatorySingleSubElement(element, "copy"), "*");
     }
 }
@@ -18,14 +18,20 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static endpoints.config.ApplicationFactory.dataDrivenCmsDir;
+import static endpoints.config.EndpointHierarchyNode.defaultParameterMultipleValueSeparator;
 
 public class DataDrivenCmsDataSourceCommand extends DataSourceCommand {
     
     protected final List<DataDrivenCmsFile> files;
 
+    /** Key is parameter multiple value separator, as endpoints using this command may have different ones */
+    protected final @Nonnull Map<String, DataDrivenCmsIndex> indexForSeparator = new ConcurrentHashMap<>();
+
     @SneakyThrows(IOException.class)
     public DataDrivenCmsDataSourceCommand(
         @Nonnull XsltCompilationThreads threads, @Nonnull File applicationDir, @Nonnull Element config
@@ -40,6 +46,9 @@ public class DataDrivenCmsDataSourceCommand extends DataSourceCommand {
                 catch (ConfigurationException e) { throw new ConfigurationException(file.toString(), e); }
             }
         }
+        
+        indexForSeparator.put(defaultParameterMultipleValueSeparator,
+            new DataDrivenCmsIndex(defaultParameterMultipleValueSeparator, files));
     }
 
     @Override public void assertParametersSuffice(
@@ -49,6 +58,10 @@ public class DataDrivenCmsDataSourceCommand extends DataSourceCommand {
             f.assertParametersSuffice(params, visibleIntermediateValues);
     }
 
+    protected @Nonnull DataDrivenCmsIndex getIndex(@Nonnull String parameterMultipleValueSeparator) {
+        return indexForSeparator.computeIfAbsent(parameterMultipleValueSeparator, sep -> new DataDrivenCmsIndex(sep, files));
+    }
+
     @Override
     public @Nonnull DataSourceCommandFetcher scheduleFetch(
         @Nonnull TransformationContext context,
@@ -58,7 +71,7 @@ public class DataDrivenCmsDataSourceCommand extends DataSourceCommand {
             @Override protected @Nonnull Element[] populateOrThrow() {
                 var stringParams = context.getParametersAndIntermediateValuesAndSecrets(visibleIntermediateValues);
                 var sep = context.endpoint.getParameterMultipleValueSeparator();
-                return new Element[] { DataDrivenCmsFile.createDataSourceOutput(sep, stringParams, files) };
+                return new Element[] { getIndex(sep).createDataSourceOutput(stringParams) };
             }
         };
         context.threads.addTask(result);
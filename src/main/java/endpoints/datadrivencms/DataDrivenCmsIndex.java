@@ -0,0 +1,179 @@
+package endpoints.datadrivencms;
+
+import com.databasesandlife.util.DomParser;
+import endpoints.LazyCachingValue;
+import endpoints.ParameterTemplate;
+import endpoints.condition.Condition;
+import org.w3c.dom.Element;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Finds the instances of data-driven CMS files which match a request, without evaluating the conditions of every instance.
+ *    <p>
+ * Most instances have conditions such as if="${country}" equals="de". For each such expression, the instances are indexed by
+ * the values the expression must have for their conditions to be satisfied.
+ * For a request, only the conditions of the instances found via the index, and of instances which cannot be indexed, are evaluated.
+ *    <p>
+ * The output order, by id, then by priority descending, then in the order of the files and of the instances within them,
+ * is computed when the index is built.
+ *    <p>
+ * The index is immutable, and is built for one parameter multiple value separator.
+ */
+public class DataDrivenCmsIndex {
+
+    protected static class InstanceIndex<T extends DataDrivenCmsInstance> {
+
+        protected record IndexedExpression(@Nonnull ParameterTemplate expression, @Nonnull Map<String, List<Integer>> instancesForValue) { }
+
+        protected record FileInstance<T>(int file, @Nonnull T instance) { }
+
+        /** Distinct ids of all instances in all files, sorted */
+        protected final @Nonnull String[] ids;
+
+        /** All instances of all files, in output order. Instances are identified by their index in this list. */
+        protected final @Nonnull List<T> instances;
+
+        /** For each file, the indexes in {@link #ids} of the ids it has instances for */
+        protected final @Nonnull List<Set<Integer>> idsForFile = new ArrayList<>();
+
+        /** For each file, the instances which cannot be indexed, so are evaluated for each request */
+        protected final @Nonnull List<List<Integer>> unindexedInstancesForFile = new ArrayList<>();
+
+        /** For each file, the expressions its instances are indexed by */
+        protected final @Nonnull List<Collection<IndexedExpression>> indexedExpressionsForFile = new ArrayList<>();
+
+        public InstanceIndex(
+            @Nonnull String parameterMultipleValueSeparator,
+            @Nonnull List<DataDrivenCmsFile> files, @Nonnull Function<DataDrivenCmsFile, List<T>> itemsExtractor
+        ) {
+            // List.sort is stable, so instances with the same id and priority stay in the order of the files
+            var sorted = new ArrayList<FileInstance<T>>();
+            for (int f = 0; f < files.size(); f++)
+                for (var instance : itemsExtractor.apply(files.get(f))) sorted.add(new FileInstance<>(f, instance));
+            sorted.sort(Comparator.comparing((FileInstance<T> i) -> i.instance().contentId)
+                .thenComparing(i -> -i.instance().priority));
+
+            ids = sorted.stream().map(i -> i.instance().contentId).distinct().toArray(String[]::new);
+            instances = sorted.stream().map(FileInstance::instance).toList();
+
+            var idIndex = new HashMap<String, Integer>();
+            for (int i = 0; i < ids.length; i++) idIndex.put(ids[i], i);
+
+            var indexedExpressionForExpressionForFile = new ArrayList<Map<String, IndexedExpression>>();
+            for (int f = 0; f < files.size(); f++) {
+                idsForFile.add(new TreeSet<>());
+                unindexedInstancesForFile.add(new ArrayList<>());
+                indexedExpressionForExpressionForFile.add(new LinkedHashMap<>());
+            }
+
+            for (int i = 0; i < sorted.size(); i++) {
+                var f = sorted.get(i).file();
+                var instance = sorted.get(i).instance();
+                idsForFile.get(f).add(idIndex.get(instance.contentId));
+
+                var key = instance.conditionFolders.getIndexKeyOrNull(parameterMultipleValueSeparator);
+                if (key == null) { unindexedInstancesForFile.get(f).add(i); continue; }
+
+                var indexedExpression = indexedExpressionForExpressionForFile.get(f).computeIfAbsent(key.expression().toString(),
+                    e -> new IndexedExpression(key.expression(), new HashMap<>()));
+                for (var value : key.values())
+                    indexedExpression.instancesForValue().computeIfAbsent(value, v -> new ArrayList<>()).add(i);
+            }
+
+            for (var m : indexedExpressionForExpressionForFile) indexedExpressionsForFile.add(m.values());
+        }
+
+        /**
+         * @param fileMatches for each file, whether its global conditions are satisfied
+         * @return for each id of the files which match, in order, the instances which match, in order, possibly none
+         */
+        public @Nonnull Map<String, List<T>> find(
+            @Nonnull String parameterMultipleValueSeparator, @Nonnull Map<String, LazyCachingValue> params,
+            @Nonnull boolean[] fileMatches
+        ) {
+            var idPresent = new boolean[ids.length];
+            var candidates = new BitSet(instances.size());
+            var valuesForExpression = new HashMap<String, String[]>();
+            for (int f = 0; f < fileMatches.length; f++) {
+                if ( ! fileMatches[f]) continue;
+                for (var id : idsForFile.get(f)) idPresent[id] = true;
+                for (var i : unindexedInstancesForFile.get(f)) candidates.set(i);
+                for (var e : indexedExpressionsForFile.get(f)) {
+                    var values = valuesForExpression.computeIfAbsent(e.expression().toString(),
+                        x -> Condition.splitValues(e.expression().expand(params), parameterMultipleValueSeparator));
+                    for (var value : values) {
+                        var instancesForValue = e.instancesForValue().get(value);
+                        if (instancesForValue != null) for (var i : instancesForValue) candidates.set(i);
+                    }
+                }
+            }
+
+            var result = new LinkedHashMap<String, List<T>>();
+            for (int id = 0; id < ids.length; id++) if (idPresent[id]) result.put(ids[id], new ArrayList<>());
+            for (var i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                var instance = instances.get(i);
+                if (instance.conditionFolders.evaluate(parameterMultipleValueSeparator, params))
+                    result.get(instance.contentId).add(instance);
+            }
+            return result;
+        }
+    }
+
+    public final @Nonnull String parameterMultipleValueSeparator;
+    protected final @Nonnull List<DataDrivenCmsFile> files;
+    protected final @Nonnull InstanceIndex<DataDrivenCmsContentInstance> contents;
+    protected final @Nonnull InstanceIndex<DataDrivenCmsPropertyInstance> properties;
+
+    public DataDrivenCmsIndex(@Nonnull String parameterMultipleValueSeparator, @Nonnull List<DataDrivenCmsFile> files) {
+        this.parameterMultipleValueSeparator = parameterMultipleValueSeparator;
+        this.files = List.copyOf(files);
+        this.contents = new InstanceIndex<>(parameterMultipleValueSeparator, files, f -> f.contents);
+        this.properties = new InstanceIndex<>(parameterMultipleValueSeparator, files, f -> f.properties);
+    }
+
+    public @Nonnull Element createDataSourceOutput(@Nonnull Map<String, LazyCachingValue> params) {
+        var fileMatches = new boolean[files.size()];
+        for (int f = 0; f < files.size(); f++)
+            fileMatches[f] = files.get(f).globalConditions.evaluate(parameterMultipleValueSeparator, params);
+
+        var document = DomParser.newDocumentBuilder().newDocument();
+        var root = document.createElement("data-driven-cms");
+
+        for (var e : contents.find(parameterMultipleValueSeparator, params, fileMatches).entrySet()) {
+            var contentElement = document.createElement("content");
+            contentElement.setAttribute("id", e.getKey());
+            root.appendChild(contentElement);
+
+            for (var content : e.getValue()) {
+                var instanceElement = document.createElement("instance");
+                contentElement.appendChild(instanceElement);
+
+                for (var copyElement : content.copyElements)
+                    instanceElement.appendChild(document.importNode(copyElement, true));
+            }
+        }
+
+        for (var e : properties.find(parameterMultipleValueSeparator, params, fileMatches).entrySet()) {
+            if (e.getValue().isEmpty()) continue; // e.g. no conditions match, so no items
+
+            var propertyElement = document.createElement("property");
+            propertyElement.setAttribute("id", e.getKey());
+            propertyElement.setAttribute("value", e.getValue().get(0).value); // highest priority
+            root.appendChild(propertyElement);
+        }
+
+        return root;
+    }
+}
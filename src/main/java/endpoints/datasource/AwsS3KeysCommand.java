@@ -54,25 +54,24 @@ public class AwsS3KeysCommand extends DataSourceCommand {
 
         var result = new TreeMap<Instant, List<Element>>();
 
-        try (var client = DeploymentParameters.get().newAwsS3Client()) {
-            var folder = Optional.ofNullable(folderOrNull).map(f -> f+"/");
-            var pages = client.listObjectsV2Paginator(request -> request
-                .bucket(s3.bucket())
-                .prefix(folder.orElse(null)));
-            for (var page : pages) {
-                objects: for (var s3Object : page.contents()) {
-                    var tagList = client.getObjectTagging(request -> request
-                        .bucket(s3.bucket())
-                        .key(s3Object.key()));
-                    var tags = tagList.tagSet().stream().collect(toMap(t -> t.key(), t -> t.value()));
-                    for (var requestedTag : matchTag.entrySet())
-                        if ( ! tags.getOrDefault(requestedTag.getKey(), "").equals(requestedTag.getValue()))
-                            continue objects;
+        var client = DeploymentParameters.get().getAwsS3Client();
+        var folder = Optional.ofNullable(folderOrNull).map(f -> f+"/");
+        var pages = client.listObjectsV2Paginator(request -> request
+            .bucket(s3.bucket())
+            .prefix(folder.orElse(null)));
+        for (var page : pages) {
+            objects: for (var s3Object : page.contents()) {
+                var tagList = client.getObjectTagging(request -> request
+                    .bucket(s3.bucket())
+                    .key(s3Object.key()));
+                var tags = tagList.tagSet().stream().collect(toMap(t -> t.key(), t -> t.value()));
+                for (var requestedTag : matchTag.entrySet())
+                    if ( ! tags.getOrDefault(requestedTag.getKey(), "").equals(requestedTag.getValue()))
+                        continue objects;
 
-                    result
-                        .computeIfAbsent(s3Object.lastModified(), key -> new ArrayList<>())
-                        .add(newObjectElement(resultDocument, s3Object.key().replace(folder.orElse(""), "")));
-                }
+                result
+                    .computeIfAbsent(s3Object.lastModified(), key -> new ArrayList<>())
+                    .add(newObjectElement(resultDocument, s3Object.key().replace(folder.orElse(""), "")));
             }
         }
         
@@ -97,7 +96,7 @@ public class AwsS3KeysCommand extends DataSourceCommand {
                 return new Element[] { execute(s3) };
             }
         };
-        context.threads.addTask(result);
+        context.threads.addTaskOffPool(result);
         return result;
     }
 }
@@ -34,17 +34,17 @@ public class AwsS3ObjectCommand extends DataSourceCommand {
     }
     
     protected @Nonnull Element execute(@Nonnull AwsS3Configuration s3) throws TransformationFailedException {
-        try (var client = DeploymentParameters.get().newAwsS3Client()) {
-            var response = client.getObject(r -> r
+        // Closing the response returns the connection to the shared client's pool
+        try (var response = DeploymentParameters.get().getAwsS3Client().getObject(r -> r
                 .bucket(s3.bucket())
-                .key(key));
+                .key(key))) {
             var bytes = response.readAllBytes();
             var xml = DomParser.from(new ByteArrayInputStream(bytes));
             
             var result = DomParser.newDocumentBuilder().newDocument();
             var root = result.createElement("aws-s3-object");
             root.setAttribute("key", key);
-            root.appendChild(result.importNode(xml, true));
+            DataSourceCommandFetcher.moveInto(root, xml);
             return root;
         }
         catch (IOException | ConfigurationException e) { throw new TransformationFailedException(e); }
@@ -60,7 +60,7 @@ public class AwsS3ObjectCommand extends DataSourceCommand {
                 return new Element[] { execute(s3) };
             }
         };
-        context.threads.addTask(result);
+        context.threads.addTaskOffPool(result);
         return result;
     }
 }
@@ -11,11 +11,14 @@ import lombok.RequiredArgsConstructor;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -61,8 +64,57 @@ public class DataSource {
         }
     }
 
-    /** @param visibleIntermediateValues these values are already produced by the time this method is called. */
-    public @Nonnull Runnable scheduleExecution(
+    /** Identifies the document a data source produces: the same data source with the same intermediate values */
+    public record ExecutionKey(@Nonnull DataSource source, @Nonnull Map<IntermediateValueName, String> intermediateValues) { }
+
+    /**
+     * A data source scheduled within a {@link TransformationContext}, whose document is shared by all its transformers.
+     *    <p>
+     * DOM implementations are not safe for concurrent reading, so each transformer is given its own document.
+     * Once the document has been created, the copies for the other transformers are made, by the task which created it,
+     * and the original is given to one of the transformers, so a data source with one transformer is never copied.
+     */
+    public static class Execution {
+        protected @CheckForNull Runnable createDocument = null;
+
+        /** Transformers scheduled before the document was created */
+        protected int consumerCount = 0;
+
+        /** Set once the document is being created; after that, no more transformers can be given their own document */
+        protected boolean consumersComplete = false;
+
+        /** One document for each transformer, once created */
+        protected final @Nonnull ArrayDeque<Document> documents = new ArrayDeque<>();
+
+        /** @return false if the document has already been created, so the transformer needs a new execution */
+        protected synchronized boolean addConsumer() {
+            if (consumersComplete) return false;
+            consumerCount++;
+            return true;
+        }
+
+        protected void setDocument(@Nonnull Document document) {
+            final int copyCount;
+            synchronized (this) {
+                consumersComplete = true;
+                copyCount = consumerCount - 1;
+            }
+
+            // No transformer has the document yet, so it can be read without locking
+            var result = new ArrayList<Document>(copyCount + 1);
+            for (int i = 0; i < copyCount; i++) result.add((Document) document.cloneNode(true));
+            result.add(document);
+
+            synchronized (this) { documents.addAll(result); }
+        }
+
+        protected synchronized @Nonnull Document takeDocument() {
+            assert ! documents.isEmpty() : "only called after createDocument has completed, once per transformer";
+            return documents.poll();
+        }
+    }
+
+    protected @Nonnull Runnable scheduleDocumentCreation(
         @Nonnull TransformationContext context,
         @Nonnull Set<IntermediateValueName> visibleIntermediateValues,
         @Nonnull Consumer<Document> afterDataSource
@@ -70,20 +122,58 @@ public class DataSource {
         var futures = new ArrayList<DataSourceCommandFetcher>(commands.size());
         for (var c : commands) futures.add(c.scheduleExecution(context, visibleIntermediateValues));
         
+        var traceNode = context.trace == null ? null : context.trace.newNode("<endpoint name='" + 
+            context.endpoint.name.getName() + "'>: <data-source>", null, futures);
         Runnable createDocument = () -> {
-            var elements = futures.stream().flatMap(r -> Arrays.stream(r.get())).toArray(Element[]::new);
-            
-            try { elements = DataSourcePostProcessor.postProcess(postProcessors, elements); }
-            catch (TransformationFailedException e) { throw new RuntimeException(e); }
-            
-            var result = DomParser.newDocumentBuilder().newDocument();
-            result.appendChild(result.createElement("transformation-input"));
-            for (var element : elements)
-                result.getDocumentElement().appendChild(result.importNode(element, true));
-            afterDataSource.accept(result);
+            if (traceNode != null) traceNode.started();
+            try {
+                var elements = futures.stream().flatMap(r -> Arrays.stream(r.get())).toArray(Element[]::new);
+                
+                try { elements = DataSourcePostProcessor.postProcess(postProcessors, elements); }
+                catch (TransformationFailedException e) { throw new RuntimeException(e); }
+                
+                var result = DomParser.newDocumentBuilder().newDocument();
+                result.appendChild(result.createElement("transformation-input"));
+                for (var element : elements)
+                    DataSourceCommandFetcher.moveInto(result.getDocumentElement(), element);
+                afterDataSource.accept(result);
+            }
+            finally { if (traceNode != null) traceNode.finished(); }
         };
         context.threads.addTaskWithDependencies(futures, createDocument);
 
         return createDocument;
     }
+
+    /**
+     * Within one context, a data source with the same intermediate values is only executed once,
+     * even if it is used by multiple transformers, for example by the response and by an email attachment.
+     * A transformer scheduled after the document has been created, for example by a task which runs later,
+     * executes the data source again, as the original document may already be being read by another transformer.
+     *
+     * @param visibleIntermediateValues these values are already produced by the time this method is called. 
+     */
+    public @Nonnull Runnable scheduleExecution(
+        @Nonnull TransformationContext context,
+        @Nonnull Set<IntermediateValueName> visibleIntermediateValues,
+        @Nonnull Consumer<Document> afterDataSource
+    ) throws TransformationFailedException {
+        var key = new ExecutionKey(this, context.getVisibleIntermediateValues(visibleIntermediateValues));
+        Execution execution;
+        synchronized (context.dataSourceExecutions) {
+            execution = context.dataSourceExecutions.get(key);
+            if (execution == null || ! execution.addConsumer()) {
+                execution = new Execution();
+                execution.addConsumer();
+                execution.createDocument = scheduleDocumentCreation(context, visibleIntermediateValues, execution::setDocument);
+                context.dataSourceExecutions.put(key, execution);
+            }
+        }
+
+        var sharedExecution = execution;
+        Runnable afterDocument = () -> afterDataSource.accept(sharedExecution.takeDocument());
+        context.threads.addTaskWithDependencies(List.of(execution.createDocument), afterDocument);
+
+        return afterDocument;
+    }
 }
@@ -2,6 +2,9 @@ package endpoints.datasource;
 
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.RequestMetrics;
+import endpoints.RequestMetrics.Labels;
+import endpoints.RequestMetrics.Stage;
 import endpoints.TransformationContext;
 import endpoints.config.IntermediateValueName;
 import endpoints.config.ParameterName;
@@ -12,6 +15,7 @@ import org.w3c.dom.Element;
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Set;
 
@@ -29,6 +33,9 @@ import static endpoints.config.ApplicationFactory.dataSourcePostProcessingXsltDi
 public abstract class DataSourceCommand {
 
     protected final @Nonnull List<DataSourcePostProcessor> postProcessors;
+    
+    /** For example "xml-from-url", used in metrics */
+    protected final @Nonnull String tagName;
 
     @SneakyThrows({SecurityException.class, ClassNotFoundException.class, NoSuchMethodException.class,
         IllegalAccessException.class, InstantiationException.class, InvocationTargetException.class})
@@ -69,6 +76,7 @@ public abstract class DataSourceCommand {
     ) throws ConfigurationException {
         this.postProcessors = DataSourcePostProcessor.parsePostProcessors(threads, 
             new File(applicationDir, dataSourcePostProcessingXsltDir), config);
+        this.tagName = config.getTagName();
     }
 
     public boolean requiresAwsS3Configuration() { return false; }
@@ -101,6 +109,20 @@ public abstract class DataSourceCommand {
         @Nonnull Set<IntermediateValueName> visibleIntermediateValues
     ) throws TransformationFailedException {
         var fetched = scheduleFetch(context, visibleIntermediateValues);
-        return schedulePostProcessing(context, fetched);
+        var result = schedulePostProcessing(context, fetched);
+        
+        // Fetches are scheduled without dependencies, often performed off the thread pool, so start when they are scheduled
+        var traceNode = context.trace == null ? null : context.trace.newNode(
+            "<endpoint name='" + context.endpoint.name.getName() + "'>: <" + tagName + ">", result, List.of());
+        if (traceNode != null) traceNode.started();
+        
+        context.threads.addTaskWithDependencies(List.of(result), () -> {
+            // From when the fetch started running, so time waiting for a thread or for other tasks is not measured
+            var startedNanos = fetched.startedNanos;
+            if (startedNanos != null) RequestMetrics.shared.record(Stage.dataSource, tagName, Labels.of(context),
+                Duration.ofNanos(System.nanoTime() - startedNanos));
+            if (traceNode != null) traceNode.finished();
+        });
+        return result;
     }
 }
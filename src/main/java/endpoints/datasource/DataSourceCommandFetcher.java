@@ -2,13 +2,25 @@ package endpoints.datasource;
 
 import lombok.SneakyThrows;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+/**
+ * Produces the result of a data source command.
+ *    <p>
+ * The result elements belong to the one consumer of the result, which may move them into its own document
+ * with {@link #moveInto(Element, Node)}. Therefore each execution must produce new elements,
+ * never elements which are shared, for example cached between requests.
+ */
 public abstract class DataSourceCommandFetcher implements Runnable {
     
     protected Element[] result;
     
+    /** When the fetch started running, rather than when it was scheduled, or null if it has not yet started */
+    protected volatile @CheckForNull Long startedNanos = null;
+    
     /** @return does not have parameters expanded */
     protected abstract @Nonnull Element[] populateOrThrow() throws TransformationFailedException;
 
@@ -20,7 +32,19 @@ public abstract class DataSourceCommandFetcher implements Runnable {
     @SneakyThrows(TransformationFailedException.class)
     @Override
     public void run() {
+        startedNanos = System.nanoTime();
         var r = populateOrThrow();
         synchronized (this) { result = r; }
     }
+
+    /**
+     * Appends the node to the parent, moving it from its document rather than copying it, as results can be large.
+     * The node is removed from its previous parent.
+     */
+    public static void moveInto(@Nonnull Element parent, @Nonnull Node node) {
+        var doc = parent.getOwnerDocument();
+        var moved = node.getOwnerDocument() == doc ? node : doc.adoptNode(node);
+        if (moved == null) moved = doc.importNode(node, true); // e.g. node is from a different DOM implementation
+        parent.appendChild(moved);
+    }
 }
@@ -54,14 +54,13 @@ public class DataSourcePostProcessor {
         return postProcessors;
     }
 
+    /**
+     * @param inputDoc has the root element &lt;data-source-post-processing-input&gt;
+     * @return has the root element &lt;data-source-post-processing-output&gt;
+     */
     @SneakyThrows(DocumentTemplateInvalidException.class)
-    public @Nonnull Element[] postProcess(@Nonnull Element[] elements) throws TransformationFailedException {
+    protected @Nonnull Document postProcess(@Nonnull Document inputDoc) throws TransformationFailedException {
         try {
-            var inputDoc = DomParser.newDocumentBuilder().newDocument();
-            var inputRoot = inputDoc.createElement("data-source-post-processing-input");
-            inputDoc.appendChild(inputRoot);
-            for (var e : elements) inputRoot.appendChild(inputDoc.importNode(e, true));
-
             var output = new DOMResult();
             xslt.newTransformer().transform(new DOMSource(inputDoc), output);
 
@@ -69,26 +68,38 @@ public class DataSourcePostProcessor {
             if ( ! outputDoc.getDocumentElement().getNodeName().equals("data-source-post-processing-output"))
                 throw new TransformationFailedException("Data Source post-processing returned a document whose root node was <" +
                     outputDoc.getDocumentElement().getNodeName() + "> but should be <data-source-post-processing-output>");
-            var result = new ArrayList<Element>();
-            for (int i = 0; i < outputDoc.getDocumentElement().getChildNodes().getLength(); i++) {
-                var x = outputDoc.getDocumentElement().getChildNodes().item(i);
-                if (x instanceof Element e) result.add(e);
-            }
-            return result.toArray(Element[]::new);
+            return outputDoc;
         }
         catch (TransformerException e) { throw new TransformationFailedException(e); }
     }
     
+    /**
+     * The elements are moved into the input document of the first post-processor, rather than copied.
+     * The output document of each post-processor is the input document of the next, with its root element renamed,
+     * so the data is not copied between post-processors.
+     */
     public static @Nonnull Element[] postProcess(@Nonnull List<DataSourcePostProcessor> postProcessors, @Nonnull Element[] elements)
     throws TransformationFailedException {
+        if (postProcessors.isEmpty()) return elements;
+
+        var doc = DomParser.newDocumentBuilder().newDocument();
+        doc.appendChild(doc.createElement("data-source-post-processing-input"));
+        for (var e : elements) DataSourceCommandFetcher.moveInto(doc.getDocumentElement(), e);
+
         for (int i = 0; i < postProcessors.size(); i++) {
-            try { elements = postProcessors.get(i).postProcess(elements); }
+            if (i > 0) doc.renameNode(doc.getDocumentElement(), null, "data-source-post-processing-input");
+            try { doc = postProcessors.get(i).postProcess(doc); }
             catch (TransformationFailedException e) {
                 var ordinal = i==0 ? "1st" : i==1 ? "2nd" : i==2 ? "3rd" : (i+1)+"th (starting at 1)";
                 throw new TransformationFailedException(ordinal + " <post-process>", e);
             }
         }
-        return elements;
+
+        var result = new ArrayList<Element>();
+        for (int i = 0; i < doc.getDocumentElement().getChildNodes().getLength(); i++) {
+            var x = doc.getDocumentElement().getChildNodes().item(i);
+            if (x instanceof Element e) result.add(e);
+        }
+        return result.toArray(Element[]::new);
     }
 }
- 
@@ -4,6 +4,7 @@ import com.databasesandlife.util.DomParser;
 import com.databasesandlife.util.MD5Hex;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.TransformationContext;
 import endpoints.config.IntermediateValueName;
@@ -16,20 +17,19 @@ import java.io.File;
 import java.util.Set;
 
 import static com.databasesandlife.util.DomParser.*;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
 
 public class MD5Command extends DataSourceCommand {
     
-    protected final @CheckForNull String idPatternOrNull;
-    protected final @Nonnull String messageStringPattern;
+    protected final @CheckForNull ParameterTemplate idPatternOrNull;
+    protected final @Nonnull ParameterTemplate messageStringPattern;
 
     public MD5Command(
         @Nonnull XsltCompilationThreads threads, @Nonnull File applicationDir, @Nonnull Element command
     ) throws ConfigurationException {
         super(threads, applicationDir, command);
         assertNoOtherElements(command, "post-process");
-        idPatternOrNull = getOptionalAttribute(command, "id");
-        messageStringPattern = getMandatoryAttribute(command, "message-string");
+        idPatternOrNull = ParameterTemplate.compileOrNull(getOptionalAttribute(command, "id"));
+        messageStringPattern = ParameterTemplate.compile(getMandatoryAttribute(command, "message-string"));
     }
 
     @Override
@@ -51,7 +51,7 @@ public class MD5Command extends DataSourceCommand {
             @Override protected @Nonnull Element[] populateOrThrow() {
                 var stringParams = context.getParametersAndIntermediateValuesAndSecrets(visibleIntermediateValues);
 
-                var md5Digest = MD5Hex.md5(replacePlainTextParameters(messageStringPattern, stringParams));
+                var md5Digest = MD5Hex.md5(messageStringPattern.expand(stringParams));
 
                 var result = DomParser.newDocumentBuilder().newDocument();
 
@@ -59,7 +59,7 @@ public class MD5Command extends DataSourceCommand {
                 hashElement.setTextContent(md5Digest);
 
                 if (idPatternOrNull != null)
-                    hashElement.setAttribute("id", replacePlainTextParameters(idPatternOrNull, stringParams));
+                    hashElement.setAttribute("id", idPatternOrNull.expand(stringParams));
 
                 return new Element[] { hashElement };
             }
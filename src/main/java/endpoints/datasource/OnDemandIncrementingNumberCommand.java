@@ -58,7 +58,7 @@ public class OnDemandIncrementingNumberCommand extends DataSourceCommand {
                 return new Element[] { e };
             }
         };
-        context.threads.addTask(result);
+        context.threads.addTaskOffPool(result);
         return result;
     }
 }
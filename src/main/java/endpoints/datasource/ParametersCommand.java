@@ -60,7 +60,7 @@ public class ParametersCommand extends DataSourceCommand {
         var result = doc.createElement(tagName);
         doc.appendChild(result);
         for (var e : createParametersElements(params, intermediateValues, fileUploads))
-            result.appendChild(doc.importNode(e, true));
+            DataSourceCommandFetcher.moveInto(result, e);
         return result;
     }
 
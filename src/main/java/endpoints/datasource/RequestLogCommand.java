@@ -118,7 +118,7 @@ public class RequestLogCommand extends DataSourceCommand {
                 }
             }
         };
-        context.threads.addTask(result);
+        context.threads.addTaskOffPool(result);
         return result;
     }
 }
@@ -6,6 +6,7 @@ import com.databasesandlife.util.DomVariableExpander.VariableNotFoundException;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import endpoints.LazyCachingValue;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.TransformationContext;
 import endpoints.config.ApplicationFactory;
@@ -24,7 +25,6 @@ import java.util.Set;
 
 import static com.databasesandlife.util.DomParser.*;
 import static com.databasesandlife.util.DomVariableExpander.VariableSyntax.dollarThenBraces;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
 import static java.lang.Boolean.parseBoolean;
 import static java.util.stream.Collectors.toMap;
 
@@ -32,7 +32,7 @@ import static java.util.stream.Collectors.toMap;
 public class XmlFromApplicationCommand extends DataSourceCommand {
     
     protected final @Nonnull File xmlFromApplicationDir;
-    protected final @Nonnull String filenamePattern;
+    protected final @Nonnull ParameterTemplate filenamePattern;
     protected final boolean ignoreIfNotFound;
 
     public XmlFromApplicationCommand(
@@ -41,7 +41,7 @@ public class XmlFromApplicationCommand extends DataSourceCommand {
         super(threads, applicationDir, command);
         this.xmlFromApplicationDir = new File(applicationDir, ApplicationFactory.xmlFromApplicationDir);
         assertNoOtherElements(command, "post-process");
-        filenamePattern = getMandatoryAttribute(command, "file");
+        filenamePattern = ParameterTemplate.compile(getMandatoryAttribute(command, "file"));
         ignoreIfNotFound = parseBoolean(getOptionalAttribute(command, "ignore-if-not-found"));
     }
 
@@ -55,7 +55,7 @@ public class XmlFromApplicationCommand extends DataSourceCommand {
         var stringKeys = PlaintextParameterReplacer.getKeys(params, visibleIntermediateValues);
         PlaintextParameterReplacer.assertParametersSuffice(stringKeys, filenamePattern, "'file' attribute");
         
-        checkContents: if ( ! filenamePattern.contains("$")) {
+        checkContents: if ( ! filenamePattern.toString().contains("$")) {
             try {
                 var emptyParams = stringKeys.stream().collect(toMap(param -> param, param -> LazyCachingValue.newFixed("")));
                 var element = executeImmediately(emptyParams);
@@ -70,7 +70,7 @@ public class XmlFromApplicationCommand extends DataSourceCommand {
     protected @CheckForNull Element executeImmediately(@Nonnull Map<String, LazyCachingValue> params) 
     throws TransformationFailedException {
         try {
-            var leafname = replacePlainTextParameters(filenamePattern, params);
+            var leafname = filenamePattern.expand(params);
             var file = new File(xmlFromApplicationDir, leafname);
 
             if ( ! file.getCanonicalPath().startsWith(xmlFromApplicationDir.getCanonicalPath()+File.separator)) {
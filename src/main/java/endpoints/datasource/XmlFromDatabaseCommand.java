@@ -6,26 +6,33 @@ import com.databasesandlife.util.jdbc.DbTransaction;
 import com.databasesandlife.util.jdbc.DbTransaction.CannotConnectToDatabaseException;
 import com.databasesandlife.util.jdbc.DbTransaction.SqlException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.DatabaseResultCache.Column;
+import endpoints.DatabaseResultCache.Rows;
+import endpoints.DeploymentParameters;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.TransformationContext;
 import endpoints.config.IntermediateValueName;
 import endpoints.config.ParameterName;
 import org.w3c.dom.Element;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
 import static com.databasesandlife.util.DomParser.*;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
 
 public class XmlFromDatabaseCommand extends DataSourceCommand {
     
     protected final @Nonnull String outputTag;
     protected final @Nonnull String jdbcUrl;
     protected final @Nonnull String sql;
-    protected final @Nonnull List<String> paramPatterns;
+    protected final @Nonnull List<ParameterTemplate> paramPatterns;
+    protected final @CheckForNull Duration cacheTimeToLive;
     
     public XmlFromDatabaseCommand(
         @Nonnull XsltCompilationThreads threads, @Nonnull File applicationDir, @Nonnull Element config
@@ -49,10 +56,14 @@ public class XmlFromDatabaseCommand extends DataSourceCommand {
         }
 
         sql = getMandatorySingleSubElement(config, "sql").getTextContent();
-        paramPatterns = getSubElements(config, "param").stream().map(e -> e.getTextContent()).toList();
+        paramPatterns = getSubElements(config, "param").stream().map(e -> ParameterTemplate.compile(e.getTextContent())).toList();
+
+        var cacheSeconds = getOptionalAttribute(config, "cache-seconds");
+        try { cacheTimeToLive = cacheSeconds == null ? null : Duration.ofSeconds(Long.parseLong(cacheSeconds)); }
+        catch (NumberFormatException e) { throw new ConfigurationException("cache-seconds='" + cacheSeconds + "' must be a number"); }
 
         var paramsExpanded = paramPatterns.stream().map(pattern -> null).toArray();
-        try { execute(paramsExpanded); }
+        try { query(paramsExpanded); }
         catch (SqlException | CannotConnectToDatabaseException e) { throw new ConfigurationException(e); }
     }
     
@@ -67,20 +78,31 @@ public class XmlFromDatabaseCommand extends DataSourceCommand {
             PlaintextParameterReplacer.assertParametersSuffice(params, visibleIntermediateValues, p, "<param>");
     }
 
-    protected @Nonnull Element[] execute(@Nonnull Object[] paramsExpanded) {
+    /** Uses a connection from the pool for this JDBC URL, so that connections are not opened for every request */
+    protected @Nonnull Rows query(@Nonnull Object[] paramsExpanded) {
+        var result = new ArrayList<List<Column>>();
+        try (var db = new DbTransaction(DeploymentParameters.get().getDataSourceConnectionPool(jdbcUrl))) {
+            for (var row : db.query(sql, paramsExpanded)) {
+                var columns = new ArrayList<Column>();
+                for (var col : row.getColumnNames()) columns.add(new Column(col, row.getString(col)));
+                result.add(columns);
+            }
+        }
+        return new Rows(result);
+    }
+
+    protected static @Nonnull Element[] toElements(@Nonnull String outputTag, @Nonnull Rows rows) {
         var resultDocument = DomParser.newDocumentBuilder().newDocument();
         var root = resultDocument.createElement(outputTag);
         resultDocument.appendChild(root);
 
-        try (var db = new DbTransaction(jdbcUrl)) {
-            for (var row : db.query(sql, paramsExpanded)) {
-                var rowElement = resultDocument.createElement("row");
-                root.appendChild(rowElement);
-                for (var col : row.getColumnNames()) {
-                    var colElement = resultDocument.createElement(col);
-                    rowElement.appendChild(colElement);
-                    colElement.setTextContent(row.getString(col));
-                }
+        for (var row : rows.rows()) {
+            var rowElement = resultDocument.createElement("row");
+            root.appendChild(rowElement);
+            for (var col : row) {
+                var colElement = resultDocument.createElement(col.name());
+                rowElement.appendChild(colElement);
+                colElement.setTextContent(col.value());
             }
         }
 
@@ -95,8 +117,12 @@ public class XmlFromDatabaseCommand extends DataSourceCommand {
         var result = new DataSourceCommandFetcher() {
             @Override protected Element[] populateOrThrow() {
                 var stringParams = context.getParametersAndIntermediateValuesAndSecrets(visibleIntermediateValues);
-                var paramsExpanded = paramPatterns.stream().map(pattern -> replacePlainTextParameters(pattern, stringParams)).toArray();
-                return execute(paramsExpanded);
+                var paramsExpanded = paramPatterns.stream().map(pattern -> pattern.expand(stringParams)).toArray();
+                var rows = cacheTimeToLive == null
+                    ? query(paramsExpanded)
+                    : context.application.getDatabaseResultCache().get(jdbcUrl, sql, paramsExpanded, cacheTimeToLive, 
+                        () -> query(paramsExpanded));
+                return toElements(outputTag, rows);
             }
         };
         context.threads.addTaskOffPool(result);
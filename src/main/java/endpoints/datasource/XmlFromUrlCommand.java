@@ -5,6 +5,7 @@ import com.databasesandlife.util.ThreadPool.ScheduleDependencyInAnyOrder;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import endpoints.HttpRequestSpecification;
+import endpoints.HttpResponseCache.CachePolicy;
 import endpoints.TransformationContext;
 import endpoints.config.IntermediateValueName;
 import endpoints.config.ParameterName;
@@ -24,6 +25,7 @@ public class XmlFromUrlCommand extends DataSourceCommand {
     protected final @CheckForNull String outputWrapperElementName;
     protected final @Nonnull HttpRequestSpecification spec;
     protected final boolean expandParametersInResponse;
+    protected final @CheckForNull CachePolicy cachePolicy;
     
     public XmlFromUrlCommand(
         @Nonnull XsltCompilationThreads threads, @Nonnull File applicationDir, @Nonnull Element config
@@ -32,6 +34,12 @@ public class XmlFromUrlCommand extends DataSourceCommand {
         outputWrapperElementName = getOptionalAttribute(config, "tag");
         spec = new HttpRequestSpecification(threads, new File(applicationDir, httpXsltDir), config);
         expandParametersInResponse = Boolean.parseBoolean(getOptionalAttribute(config, "expand-parameters-in-response", "true"));
+
+        var cacheSeconds = getOptionalAttribute(config, "cache-seconds");
+        try { cachePolicy = cacheSeconds == null ? null : CachePolicy.parse(cacheSeconds); }
+        catch (NumberFormatException e) {
+            throw new ConfigurationException("cache-seconds='" + cacheSeconds + "' must be a number of seconds or 'cache-control'");
+        }
     }
 
     @Override
@@ -69,7 +77,7 @@ public class XmlFromUrlCommand extends DataSourceCommand {
                 return new Element[] { wrapped };
             }
         };
-        spec.scheduleExecutionAndParseResponse(context, visibleIntermediateValues, element -> {
+        spec.scheduleExecutionAndParseResponse(context, visibleIntermediateValues, cachePolicy, element -> {
             result.unexpanded = element;
             context.threads.addTask(result);
         });
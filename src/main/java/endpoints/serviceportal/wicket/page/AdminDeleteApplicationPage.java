@@ -52,6 +52,7 @@ public class AdminDeleteApplicationPage extends AbstractLoggedInAdminPage {
             getSession().info("Application '" + name.name() + "' successfully deleted.");
             setResponsePage(AdminApplicationListPage.class);
             tx.commit();
+            DeploymentParameters.get().getApplications(tx).invalidateApplicationConfig(name);
         }
     }
 }
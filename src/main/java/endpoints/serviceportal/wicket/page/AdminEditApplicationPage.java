@@ -183,6 +183,7 @@ public class AdminEditApplicationPage extends AbstractLoggedInAdminPage {
             setResponsePage(AdminApplicationListPage.class);
             
             tx.commit();
+            DeploymentParameters.get().getApplications(tx).invalidateApplicationConfig(r.getApplicationName());
         }
     }
 }
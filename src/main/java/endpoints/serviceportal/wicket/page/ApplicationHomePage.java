@@ -49,6 +49,7 @@ public class ApplicationHomePage extends AbstractLoggedInApplicationPage {
             app.update();
             
             tx.commit();
+            DeploymentParameters.get().getApplications(tx).invalidateApplicationConfig(app.getApplicationName());
         }
     }
 
@@ -62,6 +63,7 @@ public class ApplicationHomePage extends AbstractLoggedInApplicationPage {
                 .setNull(REQUEST_LOG.PARAMETER_TRANSFORMATION_OUTPUT)
                 .setNull(REQUEST_LOG.REQUEST_CONTENT_TYPE)
                 .setNull(REQUEST_LOG.REQUEST_BODY)
+                .setNull(REQUEST_LOG.EXECUTION_TRACE)
                 .where(REQUEST_LOG.REQUEST_ID.in(
                     select(REQUEST_LOG_IDS.REQUEST_ID)
                     .from(REQUEST_LOG_IDS)
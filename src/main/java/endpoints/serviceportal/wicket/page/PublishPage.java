@@ -1,8 +1,10 @@
 package endpoints.serviceportal.wicket.page;
 
 import endpoints.DeploymentParameters;
+import endpoints.GitRevision;
 import endpoints.PublishEnvironment;
 import endpoints.PublishProcess;
+import endpoints.config.PublishedApplicationFactory;
 import endpoints.serviceportal.wicket.panel.NavigationPanel.NavigationItem;
 import endpoints.serviceportal.wicket.panel.ServicePortalFeedbackPanel;
 import lombok.extern.slf4j.Slf4j;
@@ -40,12 +42,22 @@ public class PublishPage extends AbstractLoggedInApplicationPage {
         add(new Link<Void>("promote") { @Override public void onClick() { onPromote(); }});
     }
 
+    /** Load the new revision now, rather than waiting for the next poll, so the portal immediately shows the new revision */
+    protected void loadPublishedApplication(@Nonnull PublishEnvironment environment, @Nonnull GitRevision revision) {
+        try (var tx = DeploymentParameters.get().newDbTransaction()) {
+            if (DeploymentParameters.get().getApplications(tx) instanceof PublishedApplicationFactory applications)
+                applications.onApplicationPublished(getSession().getLoggedInApplicationDataOrThrow().application(),
+                    environment, revision);
+            tx.commit();
+        }
+    }
+
     public void onPublish(@Nonnull PublishEnvironment environment) {
         var application = getSession().getLoggedInApplicationDataOrThrow().application();
+        final GitRevision revision;
         try (var tx = DeploymentParameters.get().newDbTransaction()) {
             var publish = new PublishProcess(application, environment);
-            @SuppressWarnings("unused") var revision = publish.publish(tx,
-                line -> LoggerFactory.getLogger(PublishPage.class).info(line));
+            revision = publish.publish(tx, line -> LoggerFactory.getLogger(PublishPage.class).info(line));
             var envText = environment == PublishEnvironment.live ? "" : " to " + environment.name() + " environment";
             getSession().info("Successfully published '" + getSession().getLoggedInApplicationDataOrThrow().applicationDisplayName() + "'" + envText);
             setResponsePage(PublishPage.class); // Cause navigation to reload (e.g. custom menu items changed after publish)
@@ -54,12 +66,16 @@ public class PublishPage extends AbstractLoggedInApplicationPage {
         catch (PublishProcess.ApplicationInvalidException e) {
             log.warn("Publish of '" + application.name() + "' on '" + environment.name() + "' failed", e);
             error(e.getMessage());
+            return;
         }
+        
+        loadPublishedApplication(environment, revision);
     }
 
     public void onPromote() {
+        final GitRevision currentPreviewRevision;
         try (var tx = DeploymentParameters.get().newDbTransaction()) {
-            var currentPreviewRevision = tx.jooq()
+            currentPreviewRevision = tx.jooq()
                 .select(APPLICATION_PUBLISH.REVISION)
                 .from(APPLICATION_PUBLISH)
                 .where(APPLICATION_PUBLISH.APPLICATION_NAME.eq(getSession().getLoggedInApplicationDataOrThrow().application()))
@@ -77,5 +93,7 @@ public class PublishPage extends AbstractLoggedInApplicationPage {
 
             tx.commit();
         }
+        
+        loadPublishedApplication(PublishEnvironment.live, currentPreviewRevision);
     }
 }
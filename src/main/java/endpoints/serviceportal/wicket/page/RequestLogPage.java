@@ -144,6 +144,7 @@ public class RequestLogPage extends AbstractLoggedInApplicationPage {
         /** Doesn't have the XML and request body fields populated (they might be huge, don't store them in the session) */
         public @Nonnull RequestLogRecord record;
         public @Nonnull ParameterTransformationXml parameterTransformationInput, parameterTransformationOutput;
+        public boolean executionTraceIsAvailable;
         public @Nonnull List<RequestLogExpressionCaptureRecord> expressionCaptures;
     }
 
@@ -160,6 +161,7 @@ public class RequestLogPage extends AbstractLoggedInApplicationPage {
                 fields.add(field(REQUEST_LOG.PARAMETER_TRANSFORMATION_OUTPUT.isNotNull()));
                 fields.add(coalesce(field(REQUEST_LOG.PARAMETER_TRANSFORMATION_OUTPUT
                     .cast(String.class).containsIgnoreCase(filterText)), false));
+                fields.add(field(REQUEST_LOG.EXECUTION_TRACE.isNotNull()));
                 fields.addAll(asList(REQUEST_LOG.fields()));
                 fields.addAll(asList(REQUEST_LOG_IDS.fields()));
                 
@@ -167,6 +169,7 @@ public class RequestLogPage extends AbstractLoggedInApplicationPage {
                 fields.remove(REQUEST_LOG.REQUEST_BODY);
                 fields.remove(REQUEST_LOG.PARAMETER_TRANSFORMATION_INPUT);
                 fields.remove(REQUEST_LOG.PARAMETER_TRANSFORMATION_OUTPUT);
+                fields.remove(REQUEST_LOG.EXECUTION_TRACE);
 
                 var requestLogRecords = tx.jooq()
                     .select(fields)
@@ -188,6 +191,7 @@ public class RequestLogPage extends AbstractLoggedInApplicationPage {
                     .map(r -> new RequestLogEntry(r.into(REQUEST_LOG_IDS), r.into(REQUEST_LOG),
                         new ParameterTransformationXml(r.get(0, Boolean.class), r.get(1, Boolean.class)),
                         new ParameterTransformationXml(r.get(2, Boolean.class), r.get(3, Boolean.class)),
+                        r.get(4, Boolean.class),
                         captures.getOrDefault(r.into(REQUEST_LOG_IDS).getRequestId(), List.of())))
                     .collect(toCollection(ArrayList::new));
             }
@@ -258,6 +262,14 @@ public class RequestLogPage extends AbstractLoggedInApplicationPage {
         }
     }
     
+    protected class JsonDownloadResource extends DownloadResource<String> {
+        public JsonDownloadResource(@Nonnull RequestId id, @Nonnull Field<String> requestLogField, @Nonnull String filename) {
+            super(id, requestLogField, "application/json; charset=utf-8", filename);
+        }
+
+        @Override protected @Nonnull byte[] getData(Attributes x) { return fetch().getBytes(UTF_8); }
+    }
+    
     public RequestLogPage() {
         super(NavigationItem.RequestLogPage, null);
 
@@ -335,13 +347,17 @@ public class RequestLogPage extends AbstractLoggedInApplicationPage {
 
                 var debug = new WebMarkupContainer("debug");
                 debug.setVisible(rec.getRequestContentType() != null
-                    || entry.parameterTransformationInput.xmlIsAvailable || entry.parameterTransformationOutput.xmlIsAvailable);
+                    || entry.parameterTransformationInput.xmlIsAvailable || entry.parameterTransformationOutput.xmlIsAvailable
+                    || entry.executionTraceIsAvailable);
                 debug.add(new ResourceLink<>("downloadRequestBody",
                     new BinaryDownloadResource(id, REQUEST_LOG.REQUEST_BODY, rec.getRequestContentType(),
                         "request-body-"+id.id()))
                     .setVisible(rec.getRequestContentType() != null));
                 debug.add(new Label("requestContentType", rec.getRequestContentType())
                     .setVisible(rec.getRequestContentType() != null));
+                debug.add(new Label("requestBodyLength", Optional.ofNullable(rec.getRequestBodyLength())
+                        .map(x -> String.format(Locale.ENGLISH, "%,d", x)).orElse(null))
+                    .setVisible(rec.getRequestBodyLength() != null));
                 debug.add(new WebMarkupContainer("noRequestContentType").setVisible(rec.getRequestContentType() == null));
                 debug.add(new ResourceLink<>("downloadInputXml",
                     new XmlDownloadResource(id, REQUEST_LOG.PARAMETER_TRANSFORMATION_INPUT, "input-"+id.id()+".xml"))
@@ -353,6 +369,9 @@ public class RequestLogPage extends AbstractLoggedInApplicationPage {
                     .add(AttributeAppender.append("class",
                         entry.parameterTransformationOutput.matchesTextFilter ? "filter-highlight" : ""))
                     .setVisible(entry.parameterTransformationOutput.xmlIsAvailable));
+                debug.add(new ResourceLink<>("downloadExecutionTrace",
+                    new JsonDownloadResource(id, REQUEST_LOG.EXECUTION_TRACE, "execution-trace-"+id.id()+".json"))
+                    .setVisible(entry.executionTraceIsAvailable));
 
                 var details = new WebMarkupContainer("details");
                 details.add(AttributeAppender.append("style", () -> expandedRows.contains(id) ? "" : "display:none;"));
@@ -3,9 +3,15 @@ package endpoints.shortlinktoendpoint;
 import com.databasesandlife.util.Timer;
 import endpoints.*;
 import endpoints.EndpointExecutor.InvalidRequestException;
+import endpoints.EndpointExecutor.RequestTooLargeException;
+import endpoints.EndpointExecutor.Responder;
+import endpoints.EndpointExecutor.ServerOverloadedException;
+import endpoints.config.Application;
 import endpoints.config.ApplicationFactory.ApplicationNotFoundException;
+import endpoints.config.Endpoint;
 import endpoints.config.EndpointHierarchyNode.NodeNotFoundException;
 import endpoints.config.ParameterName;
+import endpoints.generated.jooq.tables.records.ShortLinkToEndpointRecord;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Nonnull;
@@ -32,45 +38,50 @@ public class ShortLinkToEndpointServlet extends AbstractEndpointsServlet {
 
         var path = req.getRequestURI().substring(req.getContextPath().length());
         
-        try (var tx = DeploymentParameters.get().newDbTransaction();
-             var ignored = new Timer(getClass().getSimpleName() + " " + path)) {
+        try (var ignored = new Timer(getClass().getSimpleName() + " " + path)) {
             var m = Pattern.compile("/shortlink/(\\w+)").matcher(path);
             if ( ! m.matches()) throw new InvalidRequestException("URL '" + path + "' malformed");
 
-            var code = new ShortLinkToEndpointCode(m.group(1));
-            var shortLink = tx.jooq()
-                .selectFrom(SHORT_LINK_TO_ENDPOINT)
-                .where(SHORT_LINK_TO_ENDPOINT.SHORT_LINK_TO_ENDPOINT_CODE.eq(code))
-                .and(SHORT_LINK_TO_ENDPOINT.EXPIRES_ON.gt(now()))
-                .fetchOne();
-            if (shortLink == null) {
-                log.error("Code '" + code.getCode() + "' not found");
-                resp.sendError(404, "Code '" + code.getCode() + "' not found");
-                return;
-            }
+            // Return the connection to the pool before executing the endpoint, which borrows its own connection
+            final ShortLinkToEndpointRecord shortLink;
+            final Map<ParameterName, String> params;
+            final Application application;
+            final Endpoint endpoint;
+            try (var tx = DeploymentParameters.get().newDbTransaction()) {
+                var code = new ShortLinkToEndpointCode(m.group(1));
+                shortLink = tx.jooq()
+                    .selectFrom(SHORT_LINK_TO_ENDPOINT)
+                    .where(SHORT_LINK_TO_ENDPOINT.SHORT_LINK_TO_ENDPOINT_CODE.eq(code))
+                    .and(SHORT_LINK_TO_ENDPOINT.EXPIRES_ON.gt(now()))
+                    .fetchOne();
+                if (shortLink == null) {
+                    log.error("Code '" + code.getCode() + "' not found");
+                    resp.sendError(404, "Code '" + code.getCode() + "' not found");
+                    return;
+                }
 
-            var params = tx.jooq()
-                .selectFrom(SHORT_LINK_TO_ENDPOINT_PARAMETER)
-                .where(SHORT_LINK_TO_ENDPOINT_PARAMETER.SHORT_LINK_TO_ENDPOINT_CODE.eq(code))
-                .fetchMap(SHORT_LINK_TO_ENDPOINT_PARAMETER.PARAMETER_NAME, SHORT_LINK_TO_ENDPOINT_PARAMETER.PARAMETER_VALUE);
+                params = tx.jooq()
+                    .selectFrom(SHORT_LINK_TO_ENDPOINT_PARAMETER)
+                    .where(SHORT_LINK_TO_ENDPOINT_PARAMETER.SHORT_LINK_TO_ENDPOINT_CODE.eq(code))
+                    .fetchMap(SHORT_LINK_TO_ENDPOINT_PARAMETER.PARAMETER_NAME, SHORT_LINK_TO_ENDPOINT_PARAMETER.PARAMETER_VALUE);
 
-            var application = DeploymentParameters.get().getApplications(tx).getApplication(
-                tx, shortLink.getApplication(), shortLink.getEnvironment());
-            var endpoint = application.getEndpoints().findEndpointOrThrow(shortLink.getEndpoint());
+                application = DeploymentParameters.get().getApplications(tx).getApplication(
+                    tx, shortLink.getApplication(), shortLink.getEnvironment());
+                endpoint = application.getEndpoints().findEndpointOrThrow(shortLink.getEndpoint());
+                tx.commit();
+            }
 
-            var request = new ServletRequest(req) {
+            try (var request = new ServletRequest(req, endpoint.getMaxRequestBytes()) {
                 @Override public @Nonnull Map<ParameterName, List<String>> getParameters() {
                     return params.entrySet().stream().collect(toMap(r -> r.getKey(), r -> List.of(r.getValue())));
                 }
                 @Override public RequestBody getRequestBodyIfPost() { return null; }
                 @Override public @Nonnull List<UploadedFile> getUploadedFiles() { return List.of(); }
-            };
-            
-            new EndpointExecutor().execute(shortLink.getEnvironment(), shortLink.getApplication(), application, endpoint,
-                parseBoolean(req.getParameter("debug")), parseBoolean(req.getParameter("verbose")),
-                null, request, responseContent -> responseContent.deliver(resp));
-            
-            tx.commit();
+            }) {
+                new EndpointExecutor().execute(shortLink.getEnvironment(), shortLink.getApplication(), application, endpoint,
+                    parseBoolean(req.getParameter("debug")), parseBoolean(req.getParameter("verbose")),
+                    null, request, Responder.forServletResponse(resp));
+            }
         }
         catch (ApplicationNotFoundException e) {
             resp.sendError(400, "Application specified in short link not found " +
@@ -83,6 +94,14 @@ public class ShortLinkToEndpointServlet extends AbstractEndpointsServlet {
             log.error("Request invalid", e);
             resp.sendError(400, "Request invalid: " + e.getMessage());
         }
+        catch (ServerOverloadedException e) {
+            log.warn(e.getMessage());
+            e.sendError(resp);
+        }
+        catch (RequestTooLargeException e) {
+            log.warn(e.getMessage());
+            resp.sendError(e.statusCode, e.externalMessage);
+        }
         catch (Exception e) { 
             log.error("An internal error occurred", e);
             resp.sendError(500, "An internal error occurred");
@@ -48,6 +48,9 @@ public class CreateShortLinkToEndpointTask extends Task {
         return result;
     }
 
+    @Override
+    protected boolean isBlocking() { return true; }
+
     @Override
     protected void executeThenScheduleSynchronizationPoint(
         @Nonnull TransformationContext context, @Nonnull SynchronizationPoint workComplete
@@ -6,6 +6,7 @@ import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidEx
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import com.offerready.xslt.destination.EmailPartDocumentDestination;
 import endpoints.OoxmlParameterExpander;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.TransformationContext;
 import endpoints.UploadedFile;
@@ -34,7 +35,6 @@ import java.util.regex.Pattern;
 
 import static com.databasesandlife.util.DomParser.*;
 import static com.offerready.xslt.destination.EmailPartDocumentDestination.newMimeBodyForDestination;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
 import static endpoints.config.ApplicationFactory.ooxmlResponsesDir;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -57,7 +57,7 @@ public class EmailTask extends Task {
     }
 
     protected static class AttachmentTransformation extends Attachment {
-        public @Nonnull String filenamePattern;
+        public @Nonnull ParameterTemplate filenamePattern;
         public @Nonnull Transformer contents;
         
         @Override public void assertParametersSuffice(
@@ -99,8 +99,8 @@ public class EmailTask extends Task {
     }
 
     protected final @Nonnull File staticDir;
-    protected final @Nonnull String fromPattern, subjectPattern;
-    protected final @Nonnull List<String> toPatterns;
+    protected final @Nonnull ParameterTemplate fromPattern, subjectPattern;
+    protected final @Nonnull List<ParameterTemplate> toPatterns;
     protected final @Nonnull List<Transformer> alternativeBodies = new ArrayList<>();
     protected final @Nonnull List<Attachment> attachments = new ArrayList<>();
     
@@ -134,10 +134,10 @@ public class EmailTask extends Task {
 
         this.staticDir = new File(applicationDir, ApplicationFactory.staticDir);
 
-        fromPattern = getMandatorySingleSubElement(config, "from").getTextContent().trim();
-        subjectPattern = getMandatorySingleSubElement(config, "subject").getTextContent().trim();
+        fromPattern = ParameterTemplate.compile(getMandatorySingleSubElement(config, "from").getTextContent().trim());
+        subjectPattern = ParameterTemplate.compile(getMandatorySingleSubElement(config, "subject").getTextContent().trim());
 
-        toPatterns = getSubElements(config, "to").stream().map(e -> e.getTextContent().trim()).toList();
+        toPatterns = getSubElements(config, "to").stream().map(e -> ParameterTemplate.compile(e.getTextContent().trim())).toList();
         if (toPatterns.isEmpty()) throw new ConfigurationException("At least one <to> must be present, " +
             "otherwise no emails would be sent, and the task would be pointless");
 
@@ -153,7 +153,7 @@ public class EmailTask extends Task {
                         getMandatoryAttribute(a, "filename"));
                 case "attachment-transformation" -> {
                     var result = new AttachmentTransformation();
-                    result.filenamePattern = getMandatoryAttribute(a, "filename");
+                    result.filenamePattern = ParameterTemplate.compile(getMandatoryAttribute(a, "filename"));
                     result.contents = findTransformer(transformers, a);
                     yield result;
                 }
@@ -297,7 +297,7 @@ public class EmailTask extends Task {
                 case AttachmentTransformation a -> {
                     try {
                         var result = new EmailPartDocumentDestination();
-                        result.setContentDispositionToDownload(replacePlainTextParameters(a.filenamePattern, stringParams));
+                        result.setContentDispositionToDownload(a.filenamePattern.expand(stringParams));
                         partTasks.add(context.scheduleTransformation(result, a.contents, inputIntermediateValues));
                         mainPart.addBodyPart(result.getBodyPart());
                     } catch (TransformationFailedException e) {
@@ -328,9 +328,9 @@ public class EmailTask extends Task {
                 synchronized (emailTransaction) {
                     for (var toPattern : toPatterns) {
                         var msg = emailTransaction.newMimeMessage();
-                        msg.setFrom(new InternetAddress(replacePlainTextParameters(fromPattern, stringParams)));
-                        msg.addRecipient(RecipientType.TO, new InternetAddress(replacePlainTextParameters(toPattern, stringParams)));
-                        msg.setSubject(replacePlainTextParameters(subjectPattern, stringParams));
+                        msg.setFrom(new InternetAddress(fromPattern.expand(stringParams)));
+                        msg.addRecipient(RecipientType.TO, new InternetAddress(toPattern.expand(stringParams)));
+                        msg.setSubject(subjectPattern.expand(stringParams));
                         msg.setContent(mainPart);
                         msg.setSentDate(new Date());
 
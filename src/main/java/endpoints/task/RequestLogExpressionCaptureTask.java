@@ -3,8 +3,8 @@ package endpoints.task;
 import com.databasesandlife.util.DomParser;
 import com.databasesandlife.util.ThreadPool.SynchronizationPoint;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
-import com.databasesandlife.util.jdbc.DbTransaction;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.ParameterTemplate;
 import endpoints.PlaintextParameterReplacer;
 import endpoints.RequestId;
 import endpoints.TransformationContext;
@@ -25,11 +25,11 @@ import java.util.stream.Stream;
 
 import static com.databasesandlife.util.DomParser.assertNoOtherElements;
 import static com.databasesandlife.util.DomParser.getMandatoryAttribute;
-import static endpoints.PlaintextParameterReplacer.replacePlainTextParameters;
 
 public class RequestLogExpressionCaptureTask extends Task {
     
-    protected final @Nonnull String key, valuePattern;
+    protected final @Nonnull String key;
+    protected final @Nonnull ParameterTemplate valuePattern;
     
     public RequestLogExpressionCaptureTask(
         @Nonnull XsltCompilationThreads threads, @Nonnull File applicationDir, @Nonnull Map<String, Transformer> transformers,
@@ -40,7 +40,7 @@ public class RequestLogExpressionCaptureTask extends Task {
         assertNoOtherElements(config);
 
         key = getMandatoryAttribute(config, "key");
-        valuePattern = getMandatoryAttribute(config, "value");
+        valuePattern = ParameterTemplate.compile(getMandatoryAttribute(config, "value"));
         
         if (key.contains("${")) throw new ConfigurationException("'key' may not contain parameters such as ${foo}");
     }
@@ -69,7 +69,7 @@ public class RequestLogExpressionCaptureTask extends Task {
         
         synchronized (context.requestLogExpressionCaptures) {
             context.requestLogExpressionCaptures.put(
-                replacePlainTextParameters(key, stringParams), replacePlainTextParameters(valuePattern, stringParams));
+                key, valuePattern.expand(stringParams));
         }
         
         context.threads.addTask(workComplete);
@@ -115,13 +115,17 @@ public class RequestLogExpressionCaptureTask extends Task {
         for (var e : nextEndpoints) assertUniqueCaptureKeys(endpointForName, newKeysSoFar, e);
     }
 
-    public static void writeToDb(@Nonnull DbTransaction tx, @Nonnull RequestId requestId, @Nonnull Map<String, String> vals) {
+    public static @Nonnull List<RequestLogExpressionCaptureRecord> newRecords(
+        @Nonnull RequestId requestId, @Nonnull Map<String, String> vals
+    ) {
+        var result = new ArrayList<RequestLogExpressionCaptureRecord>();
         for (var e : vals.entrySet()) {
             var record = new RequestLogExpressionCaptureRecord();
             record.setRequestId(requestId);
             record.setKey(e.getKey());
             record.setValue(e.getValue());
-            tx.insert(record);
+            result.add(record);
         }
+        return result;
     }
 }
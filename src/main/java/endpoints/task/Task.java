@@ -5,6 +5,9 @@ import com.databasesandlife.util.Timer;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.DocumentTemplateInvalidException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.RequestMetrics;
+import endpoints.RequestMetrics.Labels;
+import endpoints.RequestMetrics.Stage;
 import endpoints.TransformationContext;
 import endpoints.condition.Condition;
 import endpoints.config.EmailSendingConfigurationFactory;
@@ -81,6 +84,9 @@ public abstract class Task extends EndpointExecutionParticipant {
 
     public void assertTemplatesValid() throws DocumentTemplateInvalidException { }
     
+    /** Tasks which block on I/O, e.g. writing to the database, are not executed on the CPU-bound threads */
+    protected boolean isBlocking() { return false; }
+    
     /**
      * @implSpec
      *      This method is run within the thread pool.
@@ -108,17 +114,30 @@ public abstract class Task extends EndpointExecutionParticipant {
         @Nonnull TransformationContext context
     ) {
         var workComplete = new SynchronizationPoint();
+        var traceNode = context.trace == null ? null : context.trace.newNode(
+            "<endpoint name='" + context.endpoint.name.getName() + "'>: " + getHumanReadableId(), workComplete, dependencies);
         
-        context.threads.addTaskWithDependencies(dependencies, () -> {
+        Runnable execute = () -> {
             try {
+                if (traceNode != null) traceNode.started();
                 var stringParams = context.getParametersAndIntermediateValuesAndSecrets(inputIntermediateValues);
-                if (condition.evaluate(context.endpoint.getParameterMultipleValueSeparator(), stringParams))
+                if (condition.evaluate(context.endpoint.getParameterMultipleValueSeparator(), stringParams)) {
+                    var measurement = RequestMetrics.shared.start(Stage.task, getClass().getSimpleName(), Labels.of(context));
+                    context.threads.addTaskWithDependencies(List.of(workComplete), () -> {
+                        measurement.close();
+                        if (traceNode != null) traceNode.finished();
+                    });
                     logAndExecuteThenScheduleSynchronizationPoint(context, workComplete);
-                else
+                }
+                else {
+                    if (traceNode != null) traceNode.finished();
                     context.threads.addTask(workComplete);
+                }
             }
             catch (TaskExecutionFailedException e) { throw new RuntimeException(e); }
-        });
+        };
+        if (isBlocking()) context.threads.addTaskWithDependenciesOffPool(dependencies, execute);
+        else context.threads.addTaskWithDependencies(dependencies, execute);
 
         return workComplete;
     }
@@ -0,0 +1,35 @@
+CREATE TABLE on_demand_incrementing_number (
+  application  VARCHAR NOT NULL,
+  environment  VARCHAR NOT NULL,
+  type         VARCHAR NOT NULL,
+  period       VARCHAR NOT NULL,
+  last_value   INTEGER NOT NULL,
+  PRIMARY KEY (application, environment, type, period)
+);
+
+-- period is '' for perpetual, 'YYYY' for year, 'YYYY-MM' for month, in the application's timezone.
+-- Applications without an application_config row (single application mode) are seeded by the server on first use.
+
+INSERT INTO on_demand_incrementing_number
+SELECT application, environment, 'perpetual', '', MAX(on_demand_perpetual_incrementing_number)
+FROM request_log_ids
+WHERE on_demand_perpetual_incrementing_number IS NOT NULL
+GROUP BY application, environment;
+
+INSERT INTO on_demand_incrementing_number
+SELECT ids.application, ids.environment, 'year', 
+  to_char(log.datetime AT TIME ZONE cfg.timezone, 'YYYY'), MAX(ids.on_demand_year_incrementing_number)
+FROM request_log_ids ids
+JOIN request_log log ON log.request_id = ids.request_id
+JOIN application_config cfg ON cfg.application_name = ids.application
+WHERE ids.on_demand_year_incrementing_number IS NOT NULL
+GROUP BY 1, 2, 3, 4;
+
+INSERT INTO on_demand_incrementing_number
+SELECT ids.application, ids.environment, 'month', 
+  to_char(log.datetime AT TIME ZONE cfg.timezone, 'YYYY-MM'), MAX(ids.on_demand_month_incrementing_number)
+FROM request_log_ids ids
+JOIN request_log log ON log.request_id = ids.request_id
+JOIN application_config cfg ON cfg.application_name = ids.application
+WHERE ids.on_demand_month_incrementing_number IS NOT NULL
+GROUP BY 1, 2, 3, 4;
@@ -0,0 +1,2 @@
+ALTER TABLE request_log
+ADD execution_trace VARCHAR NULL;
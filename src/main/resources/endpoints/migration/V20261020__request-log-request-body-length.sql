@@ -0,0 +1,2 @@
+ALTER TABLE request_log
+ADD request_body_length BIGINT NULL;
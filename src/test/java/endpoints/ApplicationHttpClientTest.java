@@ -0,0 +1,94 @@
+package endpoints;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class ApplicationHttpClientTest extends TestCase {
+
+    protected @Nonnull HttpServer server;
+    protected final @Nonnull CountDownLatch slowResponse = new CountDownLatch(1);
+
+    protected static void respond(@Nonnull HttpExchange exchange, int statusCode, @Nonnull String body) throws IOException {
+        var bytes = body.getBytes(UTF_8);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (var o = exchange.getResponseBody()) { o.write(bytes); }
+    }
+
+    @Override protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ok", exchange -> respond(exchange, 200, "ok"));
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/ok");
+            respond(exchange, 302, "");
+        });
+        server.createContext("/slow", exchange -> {
+            try { slowResponse.await(); }
+            catch (InterruptedException e) { throw new IOException(e); }
+            respond(exchange, 200, "slow");
+        });
+        server.setExecutor(null);
+        server.start();
+    }
+
+    @Override protected void tearDown() {
+        slowResponse.countDown();
+        server.stop(0);
+    }
+
+    protected @Nonnull HttpRequest.Builder newRequest(@Nonnull String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + server.getAddress().getPort() + path));
+    }
+
+    public void testSend() throws Exception {
+        var client = new ApplicationHttpClient(ApplicationHttpClient.newHttpClient(Duration.ofSeconds(10)), 2, Duration.ofSeconds(10));
+        var response = client.send(newRequest("/ok"));
+        try (var body = response.body()) { assertEquals("ok", new String(body.readAllBytes(), UTF_8)); }
+        assertEquals(200, response.statusCode());
+        assertEquals(HttpClient.Version.HTTP_1_1, response.version()); // No "h2c" upgrade over plain HTTP
+        assertEquals(1, client.getStatistics().requestCount());
+        assertEquals(0, client.getStatistics().http2ResponseCount());
+        assertEquals(0, client.getStatistics().inFlight());
+    }
+
+    public void testSend_redirect() throws Exception {
+        var client = new ApplicationHttpClient(ApplicationHttpClient.newHttpClient(Duration.ofSeconds(10)), 2, Duration.ofSeconds(10));
+        var response = client.send(newRequest("/redirect"));
+        try (var body = response.body()) { assertEquals("ok", new String(body.readAllBytes(), UTF_8)); }
+        assertEquals(200, response.statusCode());
+        assertEquals("/ok", response.uri().getPath());
+    }
+
+    public void testSend_requestTimeout() throws Exception {
+        var client = new ApplicationHttpClient(ApplicationHttpClient.newHttpClient(Duration.ofSeconds(10)), 2, Duration.ofMillis(100));
+        try { client.send(newRequest("/slow")); fail(); }
+        catch (HttpTimeoutException ignored) { }
+        assertEquals(1, client.getStatistics().failureCount());
+        assertEquals(0, client.getStatistics().inFlight());
+    }
+
+    public void testSend_concurrentRequestsTimeout() throws Exception {
+        var client = new ApplicationHttpClient(ApplicationHttpClient.newHttpClient(Duration.ofSeconds(10)), 1, Duration.ofMillis(100));
+        client.permits.acquire(); // The only concurrent request allowed is in progress
+        try { client.send(newRequest("/ok")); fail(); }
+        catch (IOException e) { assertTrue(e.getMessage().contains("concurrent HTTP requests")); }
+        assertEquals(1, client.getStatistics().timeoutCount());
+        assertEquals(0, client.getStatistics().requestCount());
+
+        client.permits.release();
+        client.send(newRequest("/ok")).body().close();
+        assertEquals(1, client.getStatistics().requestCount());
+    }
+}
@@ -0,0 +1,144 @@
+package endpoints;
+
+import endpoints.config.ApplicationName;
+import endpoints.config.NodeName;
+import junit.framework.TestCase;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataResponse;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class AwsCloudWatchRequestMetricWriterTest extends TestCase {
+
+    protected static class FakeCloudWatchClient implements CloudWatchAsyncClient {
+        public final @Nonnull List<PutMetricDataRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        public volatile boolean fail = false;
+
+        @Override public String serviceName() { return "cloudwatch"; }
+        @Override public void close() { }
+
+        @Override public CompletableFuture<PutMetricDataResponse> putMetricData(PutMetricDataRequest request) {
+            requests.add(request);
+            if (fail) return CompletableFuture.failedFuture(new RuntimeException("CloudWatch unavailable"));
+            return CompletableFuture.completedFuture(PutMetricDataResponse.builder().build());
+        }
+    }
+
+    protected final @Nonnull FakeCloudWatchClient client = new FakeCloudWatchClient();
+    protected final @Nonnull ApplicationName application = new ApplicationName("app");
+
+    protected @Nonnull AwsCloudWatchRequestMetricWriter newWriter(int maxSeries) {
+        return new AwsCloudWatchRequestMetricWriter(client, "instance-1", Duration.ofHours(1), maxSeries);
+    }
+
+    protected static @Nonnull String dimension(@Nonnull MetricDatum datum, @Nonnull String name) {
+        return datum.dimensions().stream().filter(d -> d.name().equals(name)).findFirst().orElseThrow().value();
+    }
+
+    public void testPublish_aggregates() throws Exception {
+        var writer = newWriter(100);
+        for (var millis : List.of(10, 30, 20))
+            writer.scheduleWriteMetric(application, new NodeName("e"), PublishEnvironment.live, 200, Duration.ofMillis(millis));
+        writer.scheduleWriteMetric(application, new NodeName("e"), PublishEnvironment.live, 500, Duration.ofMillis(5));
+        assertEquals(2, writer.getStatistics().pendingSeries());
+
+        writer.publish().get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, client.requests.size());
+        var data = new ArrayList<>(client.requests.get(0).metricData());
+        data.sort(Comparator.comparing(d -> dimension(d, "StatusCode")));
+        assertEquals(2, data.size());
+
+        var ok = data.get(0);
+        assertEquals("200", dimension(ok, "StatusCode"));
+        assertEquals("instance-1", dimension(ok, "Instance"));
+        assertEquals("app", dimension(ok, "Application"));
+        assertEquals("e", dimension(ok, "Endpoint"));
+        assertEquals(3.0, ok.statisticValues().sampleCount());
+        assertEquals(60.0, ok.statisticValues().sum());
+        assertEquals(10.0, ok.statisticValues().minimum());
+        assertEquals(30.0, ok.statisticValues().maximum());
+        assertEquals(1.0, data.get(1).statisticValues().sampleCount());
+
+        assertEquals(0, writer.getStatistics().pendingSeries());
+        assertEquals(4, writer.getStatistics().requestCount());
+        assertEquals(2, writer.getStatistics().publishedCount());
+
+        // Nothing is sent for an interval without requests
+        writer.publish().get(10, TimeUnit.SECONDS);
+        assertEquals(1, client.requests.size());
+    }
+
+    public void testScheduleWriteMetric_maxSeries() throws Exception {
+        var writer = newWriter(2);
+        writer.scheduleWriteMetric(application, new NodeName("a"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        writer.scheduleWriteMetric(application, new NodeName("b"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        writer.scheduleWriteMetric(application, new NodeName("c"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        writer.scheduleWriteMetric(application, new NodeName("a"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        assertEquals(2, writer.getStatistics().pendingSeries());
+        assertEquals(1, writer.getStatistics().droppedCount());
+
+        // The bound applies per interval
+        writer.publish().get(10, TimeUnit.SECONDS);
+        writer.scheduleWriteMetric(application, new NodeName("c"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        assertEquals(1, writer.getStatistics().pendingSeries());
+        assertEquals(1, writer.getStatistics().droppedCount());
+    }
+
+    public void testPublish_batches() throws Exception {
+        var writer = newWriter(5_000);
+        for (int i = 0; i < 2_500; i++)
+            writer.scheduleWriteMetric(application, new NodeName("e" + i), PublishEnvironment.live, 200, Duration.ofMillis(1));
+
+        writer.publish().get(10, TimeUnit.SECONDS);
+
+        var sizes = client.requests.stream().map(r -> r.metricData().size()).sorted().toList();
+        assertEquals(List.of(500, 1_000, 1_000), sizes);
+        assertEquals(2_500, writer.getStatistics().publishedCount());
+    }
+
+    public void testPublish_failure() throws Exception {
+        var writer = newWriter(100);
+        client.fail = true;
+        writer.scheduleWriteMetric(application, new NodeName("e"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+
+        writer.publish().get(10, TimeUnit.SECONDS);
+        assertEquals(0, writer.getStatistics().publishedCount());
+        assertEquals(1, writer.getStatistics().droppedCount());
+
+        // A failed publish does not affect the following ones
+        client.fail = false;
+        writer.scheduleWriteMetric(application, new NodeName("e"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        writer.publish().get(10, TimeUnit.SECONDS);
+        assertEquals(1, writer.getStatistics().publishedCount());
+    }
+
+    public void testStartClose() {
+        var writer = newWriter(100);
+        writer.start();
+        try { writer.start(); fail(); }
+        catch (IllegalStateException ignored) { }
+
+        writer.scheduleWriteMetric(application, new NodeName("e"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        writer.close();
+        assertTrue(writer.scheduler.isShutdown());
+        assertEquals(1, client.requests.size()); // The interval has not ended, but close sends the pending metrics
+        assertEquals(1, writer.getStatistics().publishedCount());
+    }
+
+    public void testClose_notStarted() {
+        var writer = newWriter(100);
+        writer.scheduleWriteMetric(application, new NodeName("e"), PublishEnvironment.live, 200, Duration.ofMillis(1));
+        writer.close();
+        assertEquals(1, client.requests.size());
+    }
+}
@@ -0,0 +1,59 @@
+package endpoints;
+
+import junit.framework.TestCase;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CpuThreadsTest extends TestCase {
+
+    public void testAdmitRequest() throws Exception {
+        try (var cpuThreads = new CpuThreads(1, 2, Duration.ofSeconds(3))) {
+            assertTrue(cpuThreads.admitRequest());
+
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            cpuThreads.execute(() -> {
+                started.countDown();
+                try { release.await(); }
+                catch (InterruptedException ignored) { }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // The only thread is busy, so these wait in the queue
+            for (int i = 0; i < 2; i++) cpuThreads.execute(() -> { });
+            assertTrue(cpuThreads.admitRequest());
+            cpuThreads.execute(() -> { });
+            assertFalse(cpuThreads.admitRequest());
+            assertEquals(1, cpuThreads.getStatistics().rejectedCount());
+
+            // Once the queue has drained, requests are admitted again
+            release.countDown();
+            while (cpuThreads.getQueueLength() > 0) Thread.sleep(1);
+            assertTrue(cpuThreads.admitRequest());
+            assertEquals(1, cpuThreads.getStatistics().rejectedCount());
+        }
+    }
+
+    public void testRunBlocking_notOnPool() {
+        assertEquals("result", CpuThreads.runBlocking(() -> "result"));
+    }
+
+    public void testRunBlocking_compensates() throws Exception {
+        try (var cpuThreads = new CpuThreads(1, 1000, Duration.ofSeconds(1))) {
+            var released = new CountDownLatch(1);
+            var result = new CompletableFuture<String>();
+
+            // Blocks the only thread, until a task queued behind it has run
+            cpuThreads.execute(() -> result.complete(CpuThreads.runBlocking(() -> {
+                try { return released.await(10, TimeUnit.SECONDS) ? "released" : "timeout"; }
+                catch (InterruptedException e) { throw new RuntimeException(e); }
+            })));
+            cpuThreads.execute(released::countDown);
+
+            assertEquals("released", result.get(20, TimeUnit.SECONDS));
+        }
+    }
+}
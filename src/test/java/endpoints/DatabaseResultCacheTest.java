@@ -0,0 +1,104 @@
+package endpoints;
+
+import endpoints.DatabaseResultCache.Column;
+import endpoints.DatabaseResultCache.Rows;
+import junit.framework.TestCase;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DatabaseResultCacheTest extends TestCase {
+
+    protected static @Nonnull Rows rows(@Nonnull String value) {
+        return new Rows(List.of(List.of(new Column("col", value))));
+    }
+
+    protected static @Nonnull String value(@Nonnull Rows rows) {
+        return rows.rows().get(0).get(0).value();
+    }
+
+    public void testGet_hit() {
+        var cache = new DatabaseResultCache(10);
+        var queryCount = new AtomicInteger();
+        DatabaseResultCache.Query query = () -> rows("v" + queryCount.incrementAndGet());
+
+        assertEquals("v1", value(cache.get("jdbc:a", "SELECT ?", new Object[] { 1 }, Duration.ofMinutes(1), query)));
+        assertEquals("v1", value(cache.get("jdbc:a", "SELECT ?", new Object[] { 1 }, Duration.ofMinutes(1), query)));
+        assertEquals(1, queryCount.get());
+
+        // Different parameters, SQL or JDBC URL are different results
+        assertEquals("v2", value(cache.get("jdbc:a", "SELECT ?", new Object[] { 2 }, Duration.ofMinutes(1), query)));
+        assertEquals("v3", value(cache.get("jdbc:a", "SELECT ?+0", new Object[] { 1 }, Duration.ofMinutes(1), query)));
+        assertEquals("v4", value(cache.get("jdbc:b", "SELECT ?", new Object[] { 1 }, Duration.ofMinutes(1), query)));
+
+        assertEquals(1, cache.getStatistics().hits());
+        assertEquals(4, cache.getStatistics().misses());
+    }
+
+    public void testGet_expiry() throws Exception {
+        var cache = new DatabaseResultCache(10);
+        var queryCount = new AtomicInteger();
+        DatabaseResultCache.Query query = () -> rows("v" + queryCount.incrementAndGet());
+
+        assertEquals("v1", value(cache.get("jdbc:a", "SELECT 1", new Object[0], Duration.ofMillis(100), query)));
+        Thread.sleep(150);
+        assertEquals("v2", value(cache.get("jdbc:a", "SELECT 1", new Object[0], Duration.ofMillis(100), query)));
+        assertEquals(0, cache.getStatistics().hits());
+        assertEquals(1, cache.getStatistics().entries());
+    }
+
+    public void testGet_evictsLeastRecentlyUsed() {
+        var cache = new DatabaseResultCache(2);
+        cache.get("jdbc:a", "a", new Object[0], Duration.ofMinutes(1), () -> rows("a"));
+        cache.get("jdbc:a", "b", new Object[0], Duration.ofMinutes(1), () -> rows("b"));
+        cache.get("jdbc:a", "a", new Object[0], Duration.ofMinutes(1), () -> { throw new RuntimeException("should be cached"); });
+        cache.get("jdbc:a", "c", new Object[0], Duration.ofMinutes(1), () -> rows("c"));
+
+        assertEquals(2, cache.getStatistics().entries());
+        assertEquals(1, cache.getStatistics().evictions());
+        assertEquals("b2", value(cache.get("jdbc:a", "b", new Object[0], Duration.ofMinutes(1), () -> rows("b2"))));
+    }
+
+    public void testGet_failureNotCached() {
+        var cache = new DatabaseResultCache(10);
+        try {
+            cache.get("jdbc:a", "SELECT 1", new Object[0], Duration.ofMinutes(1), () -> { throw new RuntimeException("db down"); });
+            fail();
+        }
+        catch (RuntimeException e) { assertEquals("db down", e.getMessage()); }
+        assertEquals("v", value(cache.get("jdbc:a", "SELECT 1", new Object[0], Duration.ofMinutes(1), () -> rows("v"))));
+    }
+
+    public void testGet_singleFlight() throws Exception {
+        var cache = new DatabaseResultCache(10);
+        var queryCount = new AtomicInteger();
+        var queryStarted = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        DatabaseResultCache.Query query = () -> {
+            queryCount.incrementAndGet();
+            queryStarted.countDown();
+            try { release.await(); }
+            catch (InterruptedException e) { throw new RuntimeException(e); }
+            return rows("v");
+        };
+
+        var results = Collections.synchronizedList(new ArrayList<String>());
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) threads.add(Thread.startVirtualThread(() ->
+            results.add(value(cache.get("jdbc:a", "SELECT 1", new Object[0], Duration.ofMinutes(1), query)))));
+        assertTrue(queryStarted.await(10, TimeUnit.SECONDS));
+        while (cache.getStatistics().misses() + cache.getStatistics().coalescedMisses() < 5) Thread.sleep(1);
+        release.countDown();
+        for (var t : threads) t.join();
+
+        assertEquals(List.of("v", "v", "v", "v", "v"), results);
+        assertEquals(1, queryCount.get());
+        assertEquals(4, cache.getStatistics().coalescedMisses());
+    }
+}
@@ -0,0 +1,94 @@
+package endpoints;
+
+import com.databasesandlife.util.jdbc.DbTransaction.CannotConnectToDatabaseException;
+import junit.framework.TestCase;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.time.Duration;
+
+public class DbConnectionPoolTest extends TestCase {
+
+    protected @Nonnull DbConnectionPool newPool(
+        int maxSize, @Nonnull Duration idleTimeout, @CheckForNull Duration leakDetectionThreshold
+    ) {
+        return new DbConnectionPool(DeploymentParameters.get().jdbcUrl, maxSize, Duration.ofMillis(200),
+            idleTimeout, leakDetectionThreshold);
+    }
+
+    public void testGetConnection_returnedOnClose() throws Exception {
+        try (var pool = newPool(1, Duration.ofMinutes(10), null)) {
+            var connection = pool.getConnection();
+            assertEquals(1, pool.getStatistics().active());
+            connection.close();
+            assertTrue(connection.isClosed());
+            assertEquals(0, pool.getStatistics().active());
+            assertEquals(1, pool.getStatistics().idle());
+
+            // Same physical connection is reused
+            try (var again = pool.getConnection()) {
+                assertEquals(0, pool.getStatistics().idle());
+
+                // Closing the first borrow again neither returns, nor allows use of, the connection borrowed again
+                connection.close();
+                assertTrue(connection.isClosed());
+                assertFalse(again.isClosed());
+                assertEquals(1, pool.getStatistics().active());
+                try { connection.createStatement(); fail(); }
+                catch (SQLException ignored) { }
+            }
+            assertEquals(2, pool.getStatistics().borrowCount());
+            assertEquals(1, pool.getStatistics().idle());
+        }
+    }
+
+    public void testGetConnection_exhausted() throws Exception {
+        try (var pool = newPool(1, Duration.ofMinutes(10), null); var ignored = pool.getConnection()) {
+            try { pool.getConnection(); fail(); }
+            catch (CannotConnectToDatabaseException e) { assertTrue(e.getMessage().contains("Timeout")); }
+            assertEquals(1, pool.getStatistics().timeoutCount());
+        }
+    }
+
+    public void testDetectLeaks() throws Exception {
+        try (var pool = newPool(2, Duration.ofMinutes(10), Duration.ofMillis(1))) {
+            try (var ignored = pool.getConnection()) {
+                Thread.sleep(10);
+                pool.detectLeaks();
+                pool.detectLeaks();
+                assertEquals(1, pool.getStatistics().leakCount()); // Each leak is only reported once
+            }
+            pool.detectLeaks();
+            assertEquals(1, pool.getStatistics().leakCount());
+        }
+    }
+
+    public void testCloseExpiredIdleConnections() throws Exception {
+        try (var pool = newPool(2, Duration.ofMillis(1), null)) {
+            pool.getConnection().close();
+            assertEquals(1, pool.getStatistics().idle());
+            Thread.sleep(10);
+            pool.closeExpiredIdleConnections();
+            assertEquals(0, pool.getStatistics().idle());
+        }
+    }
+
+    public void testClose() throws Exception {
+        var pool = newPool(2, Duration.ofMinutes(10), null);
+        pool.start();
+        var housekeeping = pool.housekeeping;
+        assertTrue(housekeeping.isAlive());
+
+        var borrowed = pool.getConnection();
+        pool.getConnection().close();
+        pool.close();
+        assertFalse(housekeeping.isAlive());
+        assertEquals(0, pool.getStatistics().idle());
+
+        // Connection borrowed before the pool was closed is not pooled when returned
+        borrowed.close();
+        assertEquals(0, pool.getStatistics().idle());
+        assertEquals(0, pool.getStatistics().active());
+    }
+}
@@ -13,14 +13,19 @@ import endpoints.config.Endpoint;
 import endpoints.config.ParameterName;
 import endpoints.config.response.EmptyResponseConfiguration;
 import endpoints.config.response.RedirectResponseConfiguration;
+import endpoints.EndpointExecutor.ServerOverloadedException;
 import endpoints.task.Task;
 import junit.framework.TestCase;
 
 import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.lang.reflect.Proxy;
 import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 
 import static endpoints.TransformationContext.ParameterNotFoundPolicy.error;
@@ -80,9 +85,11 @@ public class EndpointExecutorTest extends TestCase {
                             RedirectResponseConfiguration.newForTesting("if='${param}' equals='special'", "https://foo.com/"),
                             EmptyResponseConfiguration.newForTesting()
                         );
+                        endpoint.createExecutionPlan();
                         
+                        var requestThreads = new RequestThreads();
                         var context = new TransformationContext(PublishEnvironment.live, ApplicationName.newRandomForTesting(), 
-                            Application.newForTesting(), tx, threads, endpoint,
+                            Application.newForTesting(), tx, requestThreads, endpoint,
                             Map.of(new ParameterName("param"), param), error, RequestId.newRandom(), 
                             Request.newForTesting(), Map.of(), Map.of());
                         
@@ -91,10 +98,11 @@ public class EndpointExecutorTest extends TestCase {
                             @Override public void accept(BufferedHttpResponseDocumentGenerationDestination x) { this.x=x; }
                         };
                         new EndpointExecutor().scheduleTasksAndSuccess(PublishEnvironment.live, ApplicationName.newRandomForTesting(), 
-                            new ApplicationConfig(false, false), context, endpoint, Map.of(),
-                            consumer);
+                            new ApplicationConfig(false, false, null, null), context, endpoint, Map.of(),
+                            consumer, x -> {});
                         
                         threads.execute();
+                        requestThreads.execute();
                         
                         assertTrue(context.alreadyDeliveredResponse);
                         assertEquals("ab", output.toString());
@@ -107,4 +115,37 @@ public class EndpointExecutorTest extends TestCase {
         
         p.execute();
     }
+
+    public void testAdmitRequest() throws Exception {
+        try (var cpuThreads = new CpuThreads(1, 0, Duration.ofSeconds(3))) {
+            EndpointExecutor.admitRequest(cpuThreads);
+
+            var release = new CountDownLatch(1);
+            for (int i = 0; i < 2; i++) cpuThreads.execute(() -> {
+                try { release.await(); }
+                catch (InterruptedException ignored) { }
+            });
+            while (cpuThreads.getQueueLength() == 0) Thread.sleep(1);
+            try {
+                EndpointExecutor.admitRequest(cpuThreads);
+                fail();
+            }
+            catch (ServerOverloadedException e) {
+                var headers = new LinkedHashMap<String, String>();
+                var status = new int[1];
+                var resp = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setHeader": headers.put((String) args[0], (String) args[1]); break;
+                            case "sendError": status[0] = (Integer) args[0]; break;
+                        }
+                        return null;
+                    });
+                e.sendError(resp);
+                assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, status[0]);
+                assertEquals(Map.of("Retry-After", "3"), headers);
+            }
+            finally { release.countDown(); }
+        }
+    }
 }
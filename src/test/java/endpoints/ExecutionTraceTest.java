@@ -0,0 +1,53 @@
+package endpoints;
+
+import junit.framework.TestCase;
+import org.json.JSONObject;
+
+import java.util.List;
+
+public class ExecutionTraceTest extends TestCase {
+
+    public void testToChromeTraceJson() {
+        var trace = new ExecutionTrace();
+        Runnable first = () -> {}, second = () -> {};
+
+        var firstNode = trace.newNode("first", first, List.of());
+        var secondNode = trace.newNode("second", second, List.of(first));
+        trace.newNode("never-started", null, List.of(second));
+
+        firstNode.started();
+        firstNode.finished();
+        secondNode.started();
+        secondNode.finished();
+
+        var events = new JSONObject(trace.toChromeTraceJson()).getJSONArray("traceEvents");
+        assertEquals(2, events.length());
+        assertEquals("first", events.getJSONObject(0).getString("name"));
+        assertEquals("X", events.getJSONObject(0).getString("ph"));
+        assertEquals(Thread.currentThread().getName(), events.getJSONObject(0).getString("tid"));
+        assertEquals(0, events.getJSONObject(0).getJSONObject("args").getJSONArray("dependencies").length());
+        assertEquals("second", events.getJSONObject(1).getString("name"));
+        assertEquals(0, events.getJSONObject(1).getJSONObject("args").getJSONArray("dependencies").getInt(0));
+        assertTrue(events.getJSONObject(1).getJSONObject("args").getDouble("waitMs") >= 0);
+    }
+
+    public void testToChromeTraceJson_notFinished() {
+        var trace = new ExecutionTrace();
+        Runnable failed = () -> {};
+
+        var failedNode = trace.newNode("failed", failed, List.of());
+        var dependentNode = trace.newNode("dependent", null, List.of(failed));
+        failedNode.started();
+        dependentNode.started();
+
+        var events = new JSONObject(trace.toChromeTraceJson()).getJSONArray("traceEvents");
+        assertEquals(2, events.length());
+        assertFalse(events.getJSONObject(0).getJSONObject("args").getBoolean("finished"));
+        assertEquals(0.0, events.getJSONObject(0).getDouble("dur"));
+        assertTrue(events.getJSONObject(1).getJSONObject("args").getDouble("waitMs") >= 0);
+
+        failedNode.finished();
+        events = new JSONObject(trace.toChromeTraceJson()).getJSONArray("traceEvents");
+        assertFalse(events.getJSONObject(0).getJSONObject("args").has("finished"));
+    }
+}
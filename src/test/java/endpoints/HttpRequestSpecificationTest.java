@@ -2,7 +2,6 @@ package endpoints;
 
 import com.databasesandlife.util.DomParser;
 import com.databasesandlife.util.TemporaryFile;
-import com.databasesandlife.util.ThreadPool;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
 import endpoints.HttpRequestSpecification.HttpRequestFailedException;
@@ -90,7 +89,7 @@ public class HttpRequestSpecificationTest extends TestCase {
             var application = Application.newForTesting(Map.of("t", Transformer.newIdentityTransformerForTesting()));
             try (var tx = new ApplicationTransaction(application)) {
                 var context = new TransformationContext(PublishEnvironment.live, ApplicationName.newRandomForTesting(), 
-                    application, tx, new ThreadPool(), Endpoint.newForTesting(), params,
+                    application, tx, new RequestThreads(), Endpoint.newForTesting(), params,
                     ParameterNotFoundPolicy.error, RequestId.newRandom(), endpoints.Request.newForTesting(), Map.of(), Map.of());
                 var resultContainer = new Object() {
                     public Element element;
@@ -160,12 +159,37 @@ public class HttpRequestSpecificationTest extends TestCase {
         runTestFail(configXml, (req, resp) -> resp.setStatus(HttpServletResponse.SC_CONFLICT));
     }
 
+    public void testExecuteAndParseResponse_errorMessage() throws Exception {
+        try {
+            runTest(false, "", (req, resp) -> {
+                resp.setStatus(HttpServletResponse.SC_CONFLICT);
+                resp.setContentType("text/plain");
+                IOUtils.write("already exists", resp.getOutputStream(), UTF_8);
+            });
+            fail();
+        }
+        catch (HttpRequestFailedException e) {
+            assertEquals(Integer.valueOf(HttpServletResponse.SC_CONFLICT), e.responseStatusCode);
+            assertTrue(e.getMessage(), e.getMessage().contains("returned 409 (body was: already exists)"));
+        }
+    }
+
     public void testExecuteAndParseResponse() throws Exception {
         // Test non GET method
         runTest(false, "<method name='POST'/>", (req, resp) -> {
             if ( ! req.getMethod().equals("POST")) resp.setStatus(HttpServletResponse.SC_CONFLICT);
         });
 
+        // Test GET with a request body is sent as POST, as HttpURLConnection, which was used previously, did
+        runTest(false, "<json-body>{ \"key\": \"${foo}\" }</json-body>", (req, resp) -> {
+            if ( ! req.getMethod().equals("POST")) resp.setStatus(HttpServletResponse.SC_CONFLICT);
+            if ( ! new String(req.getInputStream().readAllBytes()).contains("\"key\":\"bar\""))
+                resp.setStatus(HttpServletResponse.SC_CONFLICT);
+        });
+        runTest(false, "", (req, resp) -> {
+            if ( ! req.getMethod().equals("GET")) resp.setStatus(HttpServletResponse.SC_CONFLICT);
+        });
+
         // Test GET parameter incl parameter expansion
         runTest(false, "<get-parameter name='foo'>${foo}</get-parameter>", (req, resp) -> {
             if ( ! req.getParameter("foo").equals("bar")) resp.setStatus(HttpServletResponse.SC_CONFLICT);
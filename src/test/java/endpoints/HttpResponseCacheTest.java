@@ -0,0 +1,194 @@
+package endpoints;
+
+import endpoints.HttpRequestSpecification.HttpRequestFailedException;
+import endpoints.HttpResponseCache.CachePolicy;
+import endpoints.HttpResponseCache.CachedResponse;
+import endpoints.HttpResponseCache.FetchedResponse;
+import junit.framework.TestCase;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class HttpResponseCacheTest extends TestCase {
+
+    protected static @Nonnull HttpHeaders cacheControl(@Nonnull String... values) {
+        return HttpHeaders.of(Map.of("Cache-Control", List.of(values)), (k, v) -> true);
+    }
+
+    protected static @Nonnull FetchedResponse fetched(@Nonnull String body, @Nonnull Duration timeToLive) {
+        return new FetchedResponse(
+            new CachedResponse(URI.create("http://localhost/"), cacheControl(), body.getBytes(UTF_8)), timeToLive);
+    }
+
+    protected static @Nonnull String body(@Nonnull CachedResponse response) {
+        return new String(response.body(), UTF_8);
+    }
+
+    protected static void waitForRevalidation(@Nonnull HttpResponseCache cache) throws InterruptedException {
+        while (true) {
+            synchronized (cache) { if (cache.inFlight.isEmpty()) return; }
+            Thread.sleep(1);
+        }
+    }
+
+    public void testParseCacheControl() {
+        var directives = CachePolicy.parseCacheControl(List.of(
+            "No-Cache=\"set-cookie, x-foo\", max-age = 60", "private, ext=\"a \\\"quoted\\\" value\""));
+        assertEquals("set-cookie, x-foo", directives.get("no-cache"));
+        assertEquals("60", directives.get("max-age"));
+        assertTrue(directives.containsKey("private"));
+        assertNull(directives.get("private"));
+        assertEquals("a \"quoted\" value", directives.get("ext"));
+        assertFalse(directives.containsKey("x-foo"));
+    }
+
+    public void testGetTimeToLive() {
+        var policy = CachePolicy.parse("cache-control");
+        assertEquals(Duration.ZERO, policy.getTimeToLive(cacheControl()));
+        assertEquals(Duration.ofSeconds(60), policy.getTimeToLive(cacheControl("public, max-age=60")));
+        assertEquals(Duration.ofSeconds(60), policy.getTimeToLive(cacheControl("max-age=\"60\"")));
+        assertEquals(Duration.ofSeconds(10), policy.getTimeToLive(cacheControl("max-age=60, s-maxage=10")));
+        assertEquals(Duration.ofSeconds(60), policy.getTimeToLive(cacheControl("public", "max-age=60")));
+        assertEquals(Duration.ofSeconds(2_147_483_648L), policy.getTimeToLive(cacheControl("max-age=99999999999999999999")));
+        assertEquals(Duration.ZERO, policy.getTimeToLive(cacheControl("max-age=-1")));
+        assertEquals(Duration.ZERO, policy.getTimeToLive(cacheControl("max-age=60, no-store")));
+        assertEquals(Duration.ZERO, policy.getTimeToLive(cacheControl("max-age=60, no-cache")));
+        assertEquals(Duration.ZERO, policy.getTimeToLive(cacheControl("private, max-age=60")));
+        assertEquals(Duration.ZERO, policy.getTimeToLive(cacheControl("ext=\"no-store\"")));
+
+        // Only the named header fields may not be reused, not the whole response
+        assertEquals(Duration.ofSeconds(60), policy.getTimeToLive(cacheControl("no-cache=\"set-cookie\", max-age=60")));
+        assertEquals(Duration.ofSeconds(60), policy.getTimeToLive(cacheControl("private=\"x-user, x-foo\", max-age=60")));
+
+        // Directive names inside quoted values are not directives
+        assertEquals(Duration.ofSeconds(60), policy.getTimeToLive(cacheControl("ext=\"no-store, max-age=1\", max-age=60")));
+
+        assertEquals(Duration.ofSeconds(5), CachePolicy.parse("5").getTimeToLive(cacheControl("no-store")));
+    }
+
+    public void testGet_hit() throws Exception {
+        var cache = new HttpResponseCache(1_000);
+        var fetchCount = new AtomicInteger();
+        HttpResponseCache.Fetcher fetcher = () -> fetched("v" + fetchCount.incrementAndGet(), Duration.ofMinutes(1));
+
+        assertEquals("v1", body(cache.get("k", fetcher)));
+        assertEquals("v1", body(cache.get("k", fetcher)));
+        assertEquals("v2", body(cache.get("other", fetcher)));
+        assertEquals(2, fetchCount.get());
+        assertEquals(1, cache.getStatistics().hits());
+        assertEquals(2, cache.getStatistics().misses());
+    }
+
+    public void testGet_notCached() throws Exception {
+        var cache = new HttpResponseCache(1_000);
+        var fetchCount = new AtomicInteger();
+
+        // Time to live of zero, e.g. Cache-Control: no-store
+        assertEquals("v1", body(cache.get("k", () -> fetched("v" + fetchCount.incrementAndGet(), Duration.ZERO))));
+        assertEquals("v2", body(cache.get("k", () -> fetched("v" + fetchCount.incrementAndGet(), Duration.ZERO))));
+
+        // Errors
+        try { cache.get("e", () -> { throw new HttpRequestFailedException("http://localhost/", 500, "failed"); }); fail(); }
+        catch (HttpRequestFailedException ignored) { }
+        assertEquals("ok", body(cache.get("e", () -> fetched("ok", Duration.ofMinutes(1)))));
+
+        // Larger than the whole cache
+        assertEquals("x".repeat(2_000), body(cache.get("big", () -> fetched("x".repeat(2_000), Duration.ofMinutes(1)))));
+        assertEquals(0, cache.getStatistics().hits());
+    }
+
+    public void testGet_evictsLeastRecentlyUsed() throws Exception {
+        var cache = new HttpResponseCache(250);
+        cache.get("a", () -> fetched("a".repeat(100), Duration.ofMinutes(1)));
+        cache.get("b", () -> fetched("b".repeat(100), Duration.ofMinutes(1)));
+        cache.get("a", () -> { throw new IOException("should be cached"); });
+        cache.get("c", () -> fetched("c".repeat(100), Duration.ofMinutes(1)));
+
+        assertEquals(2, cache.getStatistics().entries());
+        assertEquals(200, cache.getStatistics().bytes());
+        cache.get("a", () -> { throw new IOException("should be cached"); });
+        assertEquals("b2", body(cache.get("b", () -> fetched("b2", Duration.ofMinutes(1)))));
+    }
+
+    public void testGet_coalescesMisses() throws Exception {
+        var cache = new HttpResponseCache(1_000);
+        var fetchCount = new AtomicInteger();
+        var fetchStarted = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        HttpResponseCache.Fetcher fetcher = () -> {
+            fetchCount.incrementAndGet();
+            fetchStarted.countDown();
+            try { release.await(); }
+            catch (InterruptedException e) { throw new IOException(e); }
+            return fetched("v", Duration.ofMinutes(1));
+        };
+
+        var results = Collections.synchronizedList(new ArrayList<String>());
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) threads.add(Thread.startVirtualThread(() -> {
+            try { results.add(body(cache.get("k", fetcher))); }
+            catch (Exception e) { results.add(e.toString()); }
+        }));
+        assertTrue(fetchStarted.await(10, TimeUnit.SECONDS));
+        while (cache.getStatistics().misses() + cache.getStatistics().coalescedMisses() < 5) Thread.sleep(1);
+        release.countDown();
+        for (var t : threads) t.join();
+
+        assertEquals(List.of("v", "v", "v", "v", "v"), results);
+        assertEquals(1, fetchCount.get());
+        assertEquals(4, cache.getStatistics().coalescedMisses());
+    }
+
+    public void testGet_staleWhileRevalidate() throws Exception {
+        var cache = new HttpResponseCache(1_000);
+        var timeToLive = Duration.ofMillis(500);
+        assertEquals("v1", body(cache.get("k", () -> fetched("v1", timeToLive))));
+        Thread.sleep(timeToLive.toMillis() + 100);
+
+        // Expired, so the stale response is served, and only one revalidation is started
+        var revalidationCount = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        HttpResponseCache.Fetcher revalidate = () -> {
+            revalidationCount.incrementAndGet();
+            try { release.await(); }
+            catch (InterruptedException e) { throw new IOException(e); }
+            return fetched("v2", Duration.ofMinutes(1));
+        };
+        assertEquals("v1", body(cache.get("k", revalidate)));
+        assertEquals("v1", body(cache.get("k", revalidate)));
+        assertEquals(2, cache.getStatistics().staleHits());
+
+        release.countDown();
+        waitForRevalidation(cache);
+        assertEquals("v2", body(cache.get("k", revalidate)));
+        assertEquals(1, revalidationCount.get());
+    }
+
+    public void testGet_staleWhileRevalidate_failureKeepsStale() throws Exception {
+        var cache = new HttpResponseCache(1_000);
+        var timeToLive = Duration.ofMillis(500);
+        assertEquals("v1", body(cache.get("k", () -> fetched("v1", timeToLive))));
+        Thread.sleep(timeToLive.toMillis() + 100);
+
+        var failed = new CountDownLatch(1);
+        assertEquals("v1", body(cache.get("k", () -> {
+            failed.countDown();
+            throw new IOException("Server down");
+        })));
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        waitForRevalidation(cache);
+        assertEquals("v1", body(cache.get("k", () -> { throw new IOException("Server still down"); })));
+    }
+}
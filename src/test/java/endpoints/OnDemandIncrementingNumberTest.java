@@ -19,9 +19,11 @@ import java.time.ZoneOffset;
 import java.util.HashMap;
 import java.util.Map;
 
+import static endpoints.OnDemandIncrementingNumber.OnDemandIncrementingNumberType.month;
 import static endpoints.OnDemandIncrementingNumber.OnDemandIncrementingNumberType.perpetual;
 import static endpoints.OnDemandIncrementingNumber.OnDemandIncrementingNumberType.year;
 import static endpoints.generated.jooq.Tables.APPLICATION_CONFIG;
+import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.HOURS;
 
 public class OnDemandIncrementingNumberTest extends TestCase {
@@ -78,6 +80,21 @@ public class OnDemandIncrementingNumberTest extends TestCase {
         }
     }
 
+    public void testGetOrFetchValue_counter() {
+        var app = ApplicationName.newRandomForTesting();
+        var now = LocalDateTime.of(2019, 1, 15, 12, 0).atOffset(ZoneOffset.UTC).toInstant();
+
+        try (var tx = new ApplicationTransaction(Application.newForTesting())) {
+            app.insertToDbForTesting(tx.db, PublishEnvironment.live);
+
+            // Numbers come from the counter, not from the request log, so increment even though nothing is logged
+            performTest(1, tx, app, month, now, "UTC");
+            performTest(2, tx, app, month, now, "UTC");
+            performTest(1, tx, app, month, now.plus(31, DAYS), "UTC");
+            performTest(3, tx, app, month, now, "UTC");
+        }
+    }
+
     public void testGetOrFetchValue_parallel() throws Exception {
         var now = LocalDateTime.of(2018, 12, 31, 22, 30).atOffset(ZoneOffset.UTC).toInstant();
         var applicationName = ApplicationName.newRandomForTesting();
@@ -112,7 +129,7 @@ public class OnDemandIncrementingNumberTest extends TestCase {
                     inc.put(perpetual, obj);
                     new EndpointExecutor().insertRequestLog(tx.db, applicationName, environment, endpoint, now, 
                         RequestId.newRandom(), Request.newForTesting(), true, true, true,
-                        new EndpointExecutor.ParameterTransformationLogger(), inc, Map.of(),
+                        new EndpointExecutor.ParameterTransformationLogger(), null, inc, Map.of(),
                         new BufferedHttpResponseDocumentGenerationDestination(), r -> {});
                     
                     tx.commit();
@@ -0,0 +1,78 @@
+package endpoints;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static java.util.regex.Matcher.quoteReplacement;
+
+/**
+ * Compares expanding a {@link ParameterTemplate} compiled once, against the regular expression scan of the template
+ * which was previously done on every expansion.
+ *    <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=endpoints.ParameterTemplateBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterTemplateBenchmark {
+
+    protected final String url = "https://api.example.com/customers/${customer-id}/orders?from=${from-date}&to=${to-date}";
+    protected final String condition = "${payment-method}";
+    protected final String literal = "application/json";
+
+    protected final ParameterTemplate urlTemplate = ParameterTemplate.compile(url);
+    protected final ParameterTemplate conditionTemplate = ParameterTemplate.compile(condition);
+    protected final ParameterTemplate literalTemplate = ParameterTemplate.compile(literal);
+
+    protected final Map<String, LazyCachingValue> parameters = new HashMap<>();
+    {
+        parameters.put("customer-id", LazyCachingValue.newFixed("12345"));
+        parameters.put("from-date", LazyCachingValue.newFixed("2026-01-01"));
+        parameters.put("to-date", LazyCachingValue.newFixed("2026-12-31"));
+        parameters.put("payment-method", LazyCachingValue.newFixed("invoice"));
+    }
+
+    /** The previous implementation */
+    protected static String replaceWithRegex(String template, Map<String, LazyCachingValue> parameters) {
+        var result = new StringBuilder();
+        var matcher = Pattern.compile("\\$\\{(.+?)}").matcher(template);
+        while (matcher.find()) {
+            var replacementLazyValue = parameters.get(matcher.group(1));
+            var replacement = replacementLazyValue == null ? matcher.group() : replacementLazyValue.get();
+            matcher.appendReplacement(result, quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    @Benchmark public String urlRegex() { return replaceWithRegex(url, parameters); }
+    @Benchmark public String urlCompiled() { return urlTemplate.expand(parameters); }
+
+    @Benchmark public String conditionRegex() { return replaceWithRegex(condition, parameters); }
+    @Benchmark public String conditionCompiled() { return conditionTemplate.expand(parameters); }
+
+    @Benchmark public String literalRegex() { return replaceWithRegex(literal, parameters); }
+    @Benchmark public String literalCompiled() { return literalTemplate.expand(parameters); }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ParameterTemplateBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,37 @@
+package endpoints;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+import static endpoints.LazyCachingValue.newFixed;
+
+public class ParameterTemplateTest extends TestCase {
+
+    protected String expand(String template) {
+        var params = Map.of("foo", newFixed("FOO"), "bar", newFixed("BAR"), "}", newFixed("BRACE"));
+        return ParameterTemplate.compile(template).expand(params);
+    }
+
+    public void testExpand() {
+        assertEquals("", expand(""));
+        assertEquals("no parameters", expand("no parameters"));
+        assertEquals("FOO", expand("${foo}"));
+        assertEquals("a FOO b BAR c", expand("a ${foo} b ${bar} c"));
+        assertEquals("FOOBAR", expand("${foo}${bar}"));
+
+        // Not found, or not a parameter
+        assertEquals("a ${unknown} b", expand("a ${unknown} b"));
+        assertEquals("${} ${foo", expand("${} ${foo"));
+        assertEquals("$FOO", expand("$${foo}"));
+        assertEquals("${fo\no} FOO", expand("${fo\no} ${foo}"));
+
+        // Same as the regular expression \$\{(.+?)}, the name is at least one character, up to the next "}"
+        assertEquals("BRACE", expand("${}}"));
+        assertEquals("${${foo}", expand("${${foo}"));
+    }
+
+    public void testToString() {
+        assertEquals("a ${foo} b", ParameterTemplate.compile("a ${foo} b").toString());
+    }
+}
@@ -0,0 +1,35 @@
+package endpoints;
+
+import endpoints.EndpointExecutor.RequestTooLargeException;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+
+public class RequestBodyBufferTest extends TestCase {
+
+    public void testRead() throws Exception {
+        var body = "0123456789".getBytes();
+
+        // In memory
+        try (var buffer = RequestBodyBuffer.read(new ByteArrayInputStream(body), 100, 100)) {
+            assertEquals(10, buffer.getLength());
+            assertNull(buffer.file);
+            assertEquals("0123456789", new String(buffer.newInputStream().readAllBytes()));
+            assertEquals("012", new String(buffer.getPrefix(3)));
+        }
+
+        // Spilled to temporary file, which is deleted on close
+        var buffer = RequestBodyBuffer.read(new ByteArrayInputStream(body), 100, 5);
+        assertNotNull(buffer.file);
+        assertTrue(buffer.file.exists());
+        try (var in = buffer.newInputStream()) { assertEquals("0123456789", new String(in.readAllBytes())); }
+        try (var in = buffer.newInputStream()) { assertEquals("0123456789", new String(in.readAllBytes())); }
+        assertEquals("012", new String(buffer.getPrefix(3)));
+        buffer.close();
+        assertFalse(buffer.file.exists());
+
+        // Too large
+        try { RequestBodyBuffer.read(new ByteArrayInputStream(body), 9, 5); fail(); }
+        catch (RequestTooLargeException ignored) { }
+    }
+}
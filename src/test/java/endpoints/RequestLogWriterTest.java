@@ -0,0 +1,74 @@
+package endpoints;
+
+import endpoints.RequestLogWriter.RequestLogEntry;
+import endpoints.config.ApplicationName;
+import endpoints.config.NodeName;
+import endpoints.generated.jooq.tables.records.RequestLogIdsRecord;
+import endpoints.generated.jooq.tables.records.RequestLogRecord;
+import endpoints.task.RequestLogExpressionCaptureTask;
+import junit.framework.TestCase;
+
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.util.Map;
+
+import static endpoints.generated.jooq.Tables.REQUEST_LOG;
+import static endpoints.generated.jooq.Tables.REQUEST_LOG_EXPRESSION_CAPTURE;
+import static endpoints.generated.jooq.Tables.REQUEST_LOG_IDS;
+
+public class RequestLogWriterTest extends TestCase {
+
+    protected @Nonnull RequestLogEntry newEntry(@Nonnull ApplicationName app, @Nonnull RequestId requestId) {
+        var ids = new RequestLogIdsRecord();
+        ids.setRequestId(requestId);
+        ids.setApplication(app);
+        ids.setEndpoint(new NodeName("endpoint"));
+        ids.setEnvironment(PublishEnvironment.live);
+
+        var log = new RequestLogRecord();
+        log.setRequestId(requestId);
+        log.setDatetime(Instant.now());
+        log.setStatusCode(200);
+        log.setUserAgent("user agent");
+
+        return new RequestLogEntry(ids, log,
+            RequestLogExpressionCaptureTask.newRecords(requestId, Map.of("country", "de", "language", "en")));
+    }
+
+    protected int countRows(@Nonnull RequestId requestId) {
+        try (var tx = DeploymentParameters.get().newDbTransaction()) {
+            return tx.jooq().fetchCount(REQUEST_LOG_IDS, REQUEST_LOG_IDS.REQUEST_ID.eq(requestId))
+                + tx.jooq().fetchCount(REQUEST_LOG, REQUEST_LOG.REQUEST_ID.eq(requestId))
+                + tx.jooq().fetchCount(REQUEST_LOG_EXPRESSION_CAPTURE, REQUEST_LOG_EXPRESSION_CAPTURE.REQUEST_ID.eq(requestId));
+        }
+    }
+
+    public void testWrite_committed() {
+        var app = ApplicationName.newRandomForTesting();
+        var requestId = RequestId.newRandom();
+        var writer = new RequestLogWriter();
+
+        try (var tx = DeploymentParameters.get().newDbTransaction()) {
+            app.insertToDbForTesting(tx, PublishEnvironment.live);
+            writer.write(tx, newEntry(app, requestId));
+            tx.commit();
+        }
+
+        assertEquals(4, countRows(requestId));
+        assertEquals(1, writer.getStatistics().writtenCount());
+    }
+
+    public void testWrite_rolledBack() {
+        var app = ApplicationName.newRandomForTesting();
+        var requestId = RequestId.newRandom();
+
+        try (var tx = DeploymentParameters.get().newDbTransaction()) {
+            app.insertToDbForTesting(tx, PublishEnvironment.live);
+            new RequestLogWriter().write(tx, newEntry(app, requestId));
+            assertEquals(1, tx.jooq().fetchCount(REQUEST_LOG, REQUEST_LOG.REQUEST_ID.eq(requestId)));
+            // Not committed, for example because a later step of the request failed
+        }
+
+        assertEquals(0, countRows(requestId));
+    }
+}
@@ -0,0 +1,34 @@
+package endpoints;
+
+import endpoints.RequestMetrics.Labels;
+import endpoints.RequestMetrics.Stage;
+import junit.framework.TestCase;
+
+import java.time.Duration;
+
+public class RequestMetricsTest extends TestCase {
+
+    public void testAppendPrometheus() {
+        var metrics = new RequestMetrics(10);
+        var labels = new Labels("app", "end\"point", "live");
+        metrics.record(Stage.dataSource, "xml-from-url", labels, Duration.ofMillis(3));
+        metrics.record(Stage.dataSource, "xml-from-url", labels, Duration.ofMillis(200));
+
+        var out = new StringBuilder();
+        metrics.appendPrometheus(out);
+        var series = "stage=\"data_source\",type=\"xml-from-url\",application=\"app\",endpoint=\"end\\\"point\",environment=\"live\"";
+        assertTrue(out.toString(), out.toString().contains("endpoints_stage_duration_seconds_bucket{" + series + ",le=\"0.001\"} 0\n"));
+        assertTrue(out.toString(), out.toString().contains("endpoints_stage_duration_seconds_bucket{" + series + ",le=\"0.005\"} 1\n"));
+        assertTrue(out.toString(), out.toString().contains("endpoints_stage_duration_seconds_bucket{" + series + ",le=\"+Inf\"} 2\n"));
+        assertTrue(out.toString(), out.toString().contains("endpoints_stage_duration_seconds_count{" + series + "} 2\n"));
+    }
+
+    public void testRecord_maxSeries() {
+        var metrics = new RequestMetrics(2);
+        for (int i = 0; i < 5; i++)
+            metrics.record(Stage.task, null, new Labels("app", "endpoint" + i, "live"), Duration.ofMillis(1));
+
+        assertEquals(3, metrics.histograms.size()); // 2 normal series, plus "_other_"
+        assertEquals(3, metrics.limitedSeriesCount.get());
+    }
+}
@@ -0,0 +1,112 @@
+package endpoints;
+
+import junit.framework.TestCase;
+import lombok.SneakyThrows;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+public class RequestThreadsTest extends TestCase {
+
+    protected static final @Nonnull CpuThreads cpuThreads = new CpuThreads(2, 1_000, Duration.ofSeconds(1));
+
+    protected static class TestRequestThreads extends RequestThreads {
+        protected final @Nonnull CpuThreads cpuThreads;
+
+        public TestRequestThreads(@Nonnull CpuThreads cpuThreads) { this.cpuThreads = cpuThreads; }
+
+        @Override protected @Nonnull CpuThreads getCpuThreads() { return cpuThreads; }
+    }
+
+    @SneakyThrows(IOException.class)
+    protected static void throwChecked() {
+        throw new IOException("checked");
+    }
+
+    public void testExecute_checkedException() {
+        var threads = new TestRequestThreads(cpuThreads);
+        var failing = threads.addTaskOffPool(RequestThreadsTest::throwChecked);
+        threads.addTaskWithDependenciesOffPool(List.of(failing), () -> fail("must not run"));
+
+        try { threads.execute(); fail("expected exception"); }
+        catch (RuntimeException e) { assertTrue(e.getCause() instanceof IOException); }
+    }
+
+    public void testExecute_dependencyOrder() {
+        var threads = new TestRequestThreads(cpuThreads);
+        var order = Collections.synchronizedList(new ArrayList<String>());
+
+        // Dependents are added before the tasks they depend on, and CPU and blocking tasks depend on each other
+        Runnable a = () -> order.add("a"), b = () -> order.add("b"), c = () -> order.add("c");
+        threads.addTaskWithDependencies(List.of(b, c), () -> order.add("d"));
+        threads.addTaskWithDependenciesOffPool(List.of(a), b);
+        threads.addTaskWithDependencies(List.of(a), c);
+        threads.addTaskOffPool(a);
+        assertTrue(order.isEmpty()); // Nothing runs before execute
+
+        threads.execute();
+
+        assertEquals(4, order.size());
+        assertEquals("a", order.get(0));
+        assertEquals("d", order.get(3));
+    }
+
+    public void testExecute_tasksAddedWhileExecuting() {
+        var threads = new TestRequestThreads(cpuThreads);
+        var order = Collections.synchronizedList(new ArrayList<String>());
+
+        threads.addTask(() -> {
+            var added = threads.addTaskOffPool(() -> order.add("added"));
+            threads.addTaskWithDependencies(List.of(added), () -> order.add("dependent on added"));
+            order.add("first");
+        });
+        threads.execute();
+
+        assertEquals(3, order.size());
+        assertTrue(order.indexOf("added") < order.indexOf("dependent on added"));
+        assertTrue(order.contains("first"));
+    }
+
+    public void testExecute_dependsOnTaskNeverAdded() {
+        var threads = new TestRequestThreads(cpuThreads);
+        Runnable neverAdded = () -> { };
+        threads.addTaskWithDependencies(List.of(neverAdded), () -> fail("must not run"));
+        threads.addTask(() -> { });
+
+        try { threads.execute(); fail("expected exception"); }
+        catch (IllegalStateException e) { assertTrue(e.getMessage().contains("never added")); }
+    }
+
+    public void testExecute_alreadyExecuted() {
+        var threads = new TestRequestThreads(cpuThreads);
+        threads.execute();
+        try { threads.execute(); fail("expected exception"); }
+        catch (IllegalStateException ignored) { }
+    }
+
+    public void testExecute_rejected() {
+        var closed = new CpuThreads(1, 1_000, Duration.ofSeconds(1));
+        closed.close();
+
+        // Rejected when execute starts the tasks
+        var threads = new TestRequestThreads(closed);
+        threads.addTask(() -> fail("must not run"));
+        threads.addTask(() -> fail("must not run"));
+        try { threads.execute(); fail("expected exception"); }
+        catch (RejectedExecutionException ignored) { }
+        assertEquals(0, threads.runningCount);
+
+        // Rejected when a task completes and its dependent is started
+        var dependentRejected = new TestRequestThreads(closed);
+        var blocking = dependentRejected.addTaskOffPool(() -> { });
+        dependentRejected.addTaskWithDependencies(List.of(blocking), () -> fail("must not run"));
+        try { dependentRejected.execute(); fail("expected exception"); }
+        catch (RejectedExecutionException ignored) { }
+        assertEquals(0, dependentRejected.runningCount);
+    }
+}
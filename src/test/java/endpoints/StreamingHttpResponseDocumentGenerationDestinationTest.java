@@ -0,0 +1,172 @@
+package endpoints;
+
+import com.offerready.xslt.destination.BufferedHttpResponseDocumentGenerationDestination;
+import junit.framework.TestCase;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class StreamingHttpResponseDocumentGenerationDestinationTest extends TestCase {
+
+    /** Records what is sent to the client; the status and headers are committed once the body is written */
+    protected static class FakeResponse {
+        public int status = HttpServletResponse.SC_OK;
+        public final @Nonnull Map<String, List<String>> headers = new LinkedHashMap<>();
+        public final @Nonnull ByteArrayOutputStream body = new ByteArrayOutputStream();
+        public boolean committed = false;
+
+        public final @Nonnull HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "setStatus": status = (Integer) args[0]; return null;
+                    case "getStatus": return status;
+                    case "setHeader": headers.put((String) args[0], new ArrayList<>(List.of((String) args[1]))); return null;
+                    case "addHeader": headers.computeIfAbsent((String) args[0], k -> new ArrayList<>()).add((String) args[1]); return null;
+                    case "setContentType": headers.put("Content-Type", new ArrayList<>(List.of((String) args[0]))); return null;
+                    case "getHeaderNames": return List.copyOf(headers.keySet());
+                    case "getHeaders": return headers.getOrDefault((String) args[0], List.of());
+                    case "getOutputStream": return newOutputStream();
+                    case "flushBuffer": committed = true; return null;
+                    case "isCommitted": return committed;
+                    case "reset":
+                        if (committed) throw new IllegalStateException("Response already committed");
+                        status = HttpServletResponse.SC_OK;
+                        headers.clear();
+                        body.reset();
+                        return null;
+                    default:
+                        if (method.getReturnType() == boolean.class) return false;
+                        if (method.getReturnType() == int.class) return 0;
+                        if (method.getReturnType() == long.class) return 0L;
+                        return null;
+                }
+            });
+
+        protected @Nonnull ServletOutputStream newOutputStream() {
+            return new ServletOutputStream() {
+                @Override public boolean isReady() { return true; }
+                @Override public void setWriteListener(WriteListener writeListener) { }
+                @Override public void write(int b) { committed = true; body.write(b); }
+            };
+        }
+    }
+
+    public void testFormatContentDispositionToDownload() {
+        assertEquals("attachment; filename=\"report.pdf\"",
+            StreamingHttpResponseDocumentGenerationDestination.formatContentDispositionToDownload("report.pdf"));
+        assertEquals("attachment; filename=\"a\\\"b\\\\c_d.pdf\"",
+            StreamingHttpResponseDocumentGenerationDestination.formatContentDispositionToDownload("a\"b\\c\nd.pdf"));
+        assertEquals("attachment; filename=\"_ber uns.pdf\"; filename*=UTF-8''%C3%BCber%20uns.pdf",
+            StreamingHttpResponseDocumentGenerationDestination.formatContentDispositionToDownload("über uns.pdf"));
+    }
+
+    public void testStreamed() throws Exception {
+        var fake = new FakeResponse();
+        var destination = new StreamingHttpResponseDocumentGenerationDestination(fake.response);
+        destination.setStatusCode(HttpServletResponse.SC_OK);
+        destination.setContentType("application/pdf");
+        destination.setContentDispositionToDownload("report.pdf");
+        assertFalse(destination.isCommitted());
+
+        try (var out = destination.getOutputStream()) { out.write("first".getBytes(UTF_8)); }
+        assertTrue(destination.isCommitted());
+        assertEquals("first", fake.body.toString(UTF_8)); // Sent before the body is complete, not buffered
+
+        // Closing the body does not complete the response, the request is still to be logged
+        destination.getOutputStream().write(" second".getBytes(UTF_8));
+        destination.deliver(fake.response);
+
+        assertEquals(HttpServletResponse.SC_OK, fake.status);
+        assertEquals(List.of("application/pdf"), fake.headers.get("Content-Type"));
+        assertEquals(List.of("attachment; filename=\"report.pdf\""), fake.headers.get("Content-Disposition"));
+        assertEquals("first second", fake.body.toString(UTF_8));
+    }
+
+    public void testReset_errorBeforeFirstByte() throws Exception {
+        var fake = new FakeResponse();
+        fake.response.addHeader("Access-Control-Allow-Origin", "*");
+
+        var success = new StreamingHttpResponseDocumentGenerationDestination(fake.response);
+        success.setStatusCode(HttpServletResponse.SC_OK);
+        success.setContentType("application/pdf");
+        success.setContentDispositionToDownload("report.pdf");
+        assertFalse(success.isCommitted());
+
+        // Failure before any of the body has been written: the <error> can still be delivered
+        success.reset();
+        assertFalse(success.isCommitted());
+        assertEquals(List.of("*"), fake.headers.get("Access-Control-Allow-Origin"));
+        assertNull(fake.headers.get("Content-Disposition"));
+        assertNull(fake.headers.get("Content-Type"));
+
+        var error = new BufferedHttpResponseDocumentGenerationDestination();
+        error.setStatusCode(HttpServletResponse.SC_BAD_REQUEST);
+        error.setContentType("text/plain");
+        try (var out = error.getOutputStream()) { out.write("error".getBytes(UTF_8)); }
+        error.deliver(fake.response);
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, fake.status);
+        assertEquals("error", fake.body.toString(UTF_8));
+        assertNull(fake.headers.get("Content-Disposition"));
+    }
+
+    protected static @Nonnull Map<String, List<String>> headers(@Nonnull String... nameValues) {
+        var result = new LinkedHashMap<String, List<String>>();
+        for (int i = 0; i < nameValues.length; i += 2)
+            result.computeIfAbsent(nameValues[i], k -> new ArrayList<>()).add(nameValues[i + 1]);
+        return result;
+    }
+
+    protected static @CheckForNull List<Long> parseRange(@Nonnull Map<String, List<String>> headers) {
+        var range = StreamingHttpResponseDocumentGenerationDestination.parseRange(headers, "\"abc\"", 1000);
+        return range == null ? null : List.of(range[0], range[1]);
+    }
+
+    public void testParseRange() {
+        assertNull(parseRange(headers()));
+        assertEquals(List.of(0L, 99L), parseRange(headers("range", "bytes=0-99")));
+        assertEquals(List.of(500L, 999L), parseRange(headers("range", "bytes=500-")));         // Open-ended
+        assertEquals(List.of(900L, 999L), parseRange(headers("range", "bytes=900-5000")));     // End after the file
+        assertEquals(List.of(900L, 999L), parseRange(headers("range", "bytes=-100")));         // Suffix
+        assertEquals(List.of(0L, 999L), parseRange(headers("range", "bytes=-5000")));          // Suffix longer than the file
+
+        // Unsatisfiable: the start is after the end of the file, so sendStaticFile responds 416
+        assertEquals(List.of(1000L, 999L), parseRange(headers("range", "bytes=1000-")));
+        assertEquals(List.of(1000L, 999L), parseRange(headers("range", "bytes=-0")));
+
+        // Invalid or unsupported, so the whole file is sent
+        assertNull(parseRange(headers("range", "bytes=5-3")));
+        assertNull(parseRange(headers("range", "bytes=-")));
+        assertNull(parseRange(headers("range", "bytes=0-1,5-6")));                             // Multi-range
+        assertNull(parseRange(headers("range", "bytes=0-1", "range", "bytes=5-6")));
+        assertNull(parseRange(headers("range", "items=0-1")));
+        assertNull(parseRange(headers("range", "bytes=99999999999999999999-")));
+
+        // If-Range
+        assertEquals(List.of(0L, 99L), parseRange(headers("range", "bytes=0-99", "if-range", "\"abc\"")));
+        assertNull(parseRange(headers("range", "bytes=0-99", "if-range", "\"other\"")));
+    }
+
+    public void testMatchesIfNoneMatch() {
+        assertFalse(StreamingHttpResponseDocumentGenerationDestination.matchesIfNoneMatch(headers(), "\"abc\""));
+        for (var ifNoneMatch : List.of("\"abc\"", "W/\"abc\"", "*", "\"x\", \"abc\"", "\"x\",W/\"abc\""))
+            assertTrue(ifNoneMatch, StreamingHttpResponseDocumentGenerationDestination.matchesIfNoneMatch(
+                headers("if-none-match", ifNoneMatch), "\"abc\""));
+        for (var ifNoneMatch : List.of("\"x\"", "abc", "\"x\", \"y\"", "\"abcd\""))
+            assertFalse(ifNoneMatch, StreamingHttpResponseDocumentGenerationDestination.matchesIfNoneMatch(
+                headers("if-none-match", ifNoneMatch), "\"abc\""));
+        assertTrue(StreamingHttpResponseDocumentGenerationDestination.matchesIfNoneMatch(
+            headers("if-none-match", "\"x\"", "if-none-match", "\"abc\""), "\"abc\""));
+    }
+}
@@ -0,0 +1,93 @@
+package endpoints;
+
+import com.offerready.xslt.JsonXmlConverter;
+import junit.framework.TestCase;
+import org.json.JSONException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import static com.databasesandlife.util.DomParser.formatXmlPretty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class StreamingJsonXmlConverterTest extends TestCase {
+
+    protected String convert(long maxBytes, String json) {
+        var result = new StreamingJsonXmlConverter(maxBytes).convertJsonToXml(
+            "application/json", new ByteArrayInputStream(json.getBytes(UTF_8)), "root");
+        return formatXmlPretty(result).replaceAll("<\\?xml[^>]*>", "").replaceAll("\\s+", "");
+    }
+
+    /** The non-streaming converter orders the elements of an object by the hash of their keys, not as in the JSON */
+    protected static @Nonnull String canonical(@Nonnull Element element) {
+        var attributes = new TreeSet<String>();
+        for (int i = 0; i < element.getAttributes().getLength(); i++) {
+            var a = element.getAttributes().item(i);
+            attributes.add(a.getNodeName() + "=\"" + a.getNodeValue() + "\"");
+        }
+
+        var text = new StringBuilder();
+        var children = new ArrayList<String>();
+        for (var child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE) text.append(child.getNodeValue());
+            if (child instanceof Element e) children.add(canonical(e));
+        }
+        children.sort(Comparator.comparing(c -> c.substring(0, c.indexOf(' ')))); // Stable, so array items keep their order
+
+        return element.getTagName() + " " + attributes + " [" + text.toString().trim() + "] " + children;
+    }
+
+    protected void assertSameAsNonStreaming(@Nonnull String json) throws Exception {
+        var expected = new JsonXmlConverter().convertJsonToXml(
+            "application/json", new ByteArrayInputStream(json.getBytes(UTF_8)), "root");
+        var actual = new StreamingJsonXmlConverter(1000).convertJsonToXml(
+            "application/json", new ByteArrayInputStream(json.getBytes(UTF_8)), "root");
+        assertEquals(json, canonical(expected), canonical(actual));
+    }
+
+    public void testConvertJsonToXml() {
+        assertEquals("<root><b>1</b><a>x</a><a>y</a><c><d>true</d></c><e/></root>",
+            convert(1000, "{ \"b\": 1, \"a\": [\"x\", \"y\"], \"c\": { \"d\": true }, \"e\": null }"));
+        assertEquals("<root><item>1</item><item>2</item></root>", convert(1000, "[1, 2]"));
+        assertEquals("<root><_0031_a>x</_0031_a></root>", convert(1000, "{ \"1a\": \"x\" }"));
+        assertEquals("<root><a id=\"5\">text</a></root>", convert(1000, "{ \"a\": { \"id\": 5, \"_content\": \"text\" } }"));
+
+        // Numbers are as written in the JSON, not reformatted
+        assertEquals("<root><a>1.50</a><b>1e3</b><c>12345678901234567890</c></root>",
+            convert(1000, "{ \"a\": 1.50, \"b\": 1e3, \"c\": 12345678901234567890 }"));
+
+        try { convert(1000, "{ \"a\": "); fail(); }
+        catch (JSONException ignored) { }
+
+        try { convert(1000, "{ } { }"); fail(); }
+        catch (JSONException ignored) { }
+
+        try { convert(10, "{ \"a\": \"longer than the maximum\" }"); fail(); }
+        catch (JSONException ignored) { }
+    }
+
+    public void testConvertJsonToXml_sameAsNonStreaming() throws Exception {
+        for (var json : List.of(
+            // Numbers
+            "{ \"int\": 1, \"negative\": -42, \"decimal\": 1.5, \"zero\": 0, \"long\": 9007199254740993 }",
+            // Strings, booleans and null
+            "{ \"s\": \"text with <markup> & \\\"quotes\\\"\", \"t\": true, \"f\": false, \"n\": null }",
+            // Nested arrays
+            "{ \"a\": [1, [2, 3], [[4]], { \"b\": [5, 6] }] }",
+            "[{ \"a\": 1 }, { \"a\": 2 }]",
+            // Empty objects and arrays
+            "{ \"empty\": {}, \"none\": [], \"nested\": { \"empty\": {} } }",
+            "{}",
+            // Keys which are not valid element names
+            "{ \"1a\": 1, \"a b\": 2, \"a:b\": 3, \"-a\": 4, \"a-b.c_d\": 5 }",
+            // Text with attributes
+            "{ \"a\": { \"id\": 5, \"1x\": \"y\", \"_content\": \"text\" }, \"b\": [{ \"_content\": 1 }, { \"_content\": 2 }] }"
+        )) assertSameAsNonStreaming(json);
+    }
+}
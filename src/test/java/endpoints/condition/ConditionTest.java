@@ -3,6 +3,7 @@ package endpoints.condition;
 import com.databasesandlife.util.gwtsafe.ConfigurationException;
 import junit.framework.TestCase;
 
+import java.util.List;
 import java.util.Map;
 
 import static com.databasesandlife.util.DomParser.from;
@@ -72,4 +73,36 @@ public class ConditionTest extends TestCase {
         assertFalse(condition.evaluate("||", Map.of("foo", newFixed("||51")))); // Some are empty
         assertFalse(condition.evaluate("||", Map.of("foo", newFixed("foo||51")))); // Some are not numbers
     }
+
+    public void testEvaluate_constants() {
+        // Right-hand side split once, but evaluated with a separator other than the default
+        var equalsBarOrBaz = new Condition(Condition.Operator.equals, "${foo}", "bar;baz");
+        assertTrue(equalsBarOrBaz.evaluate(";", Map.of("foo", newFixed("baz"))));
+        assertFalse(equalsBarOrBaz.evaluate("||", Map.of("foo", newFixed("baz"))));
+        assertTrue(equalsBarOrBaz.evaluate(";", Map.of("foo", newFixed("baz"))));
+
+        // Both sides constant
+        assertTrue(new Condition(Condition.Operator.le, "1||2", "2||3").evaluate("||", Map.of()));
+        assertFalse(new Condition(Condition.Operator.lt, "1||2", "2||3").evaluate("||", Map.of()));
+    }
+
+    public void testSplitValues() {
+        assertEquals(List.of(""), List.of(Condition.splitValues("", "||")));
+        assertEquals(List.of("a"), List.of(Condition.splitValues("a", "||")));
+        assertEquals(List.of("", "a", "b"), List.of(Condition.splitValues("||a||b||||", "||")));
+        assertEquals(List.of(), List.of(Condition.splitValues("||||", "||")));
+    }
+
+    public void testEvaluate_constantsPerSeparator() {
+        var condition = new Condition(Condition.Operator.equals, "a,b||c", "a");
+
+        // Alternating separators, e.g. a condition shared by endpoints with different separators
+        for (int i = 0; i < 2; i++) {
+            assertTrue(condition.evaluate(",", Map.of()));
+            assertFalse(condition.evaluate("||", Map.of()));
+        }
+        assertSame(condition.getLhs(",", Map.of()), condition.getLhs(",", Map.of()));
+        assertSame(condition.getLhs("||", Map.of()), condition.getLhs("||", Map.of()));
+        assertEquals(List.of("a,b", "c"), List.of(condition.getLhs("||", Map.of()).values));
+    }
 }
@@ -0,0 +1,91 @@
+package endpoints.config;
+
+import endpoints.LazyCachingValue.LazyParameterComputationException;
+import junit.framework.TestCase;
+import software.amazon.awssdk.services.secretsmanager.model.ResourceNotFoundException;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AwsSecretsToParameterMappingTest extends TestCase {
+
+    protected static class FakeSecretsMapping extends AwsSecretsToParameterMapping {
+        public @CheckForNull String secretValue = "value-1";
+        public @Nonnull Instant now = Instant.parse("2020-01-01T00:00:00Z");
+        public final @Nonnull AtomicInteger fetchCount = new AtomicInteger();
+
+        public FakeSecretsMapping(@Nonnull Duration timeToLive, @Nonnull Duration notFoundTimeToLive) throws Exception {
+            super(new File("non-existent-aws-secrets.xml"), timeToLive, notFoundTimeToLive);
+        }
+
+        @Override protected @Nonnull Instant now() { return now; }
+
+        @Override protected @Nonnull String fetchSecretValue(@Nonnull String secretName) {
+            fetchCount.incrementAndGet();
+            if (secretValue == null) throw ResourceNotFoundException.builder().message("Not found: " + secretName).build();
+            return secretValue;
+        }
+
+        public void waitForRefresh() throws InterruptedException {
+            while ( ! refreshing.isEmpty()) Thread.sleep(10);
+        }
+    }
+
+    public void testGetSecret_timeToLive() throws Exception {
+        var mapping = new FakeSecretsMapping(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        assertEquals("value-1", mapping.getSecret("s"));
+
+        mapping.secretValue = "value-2";
+        mapping.now = mapping.now.plus(Duration.ofMinutes(5));
+        assertEquals("value-1", mapping.getSecret("s"));
+        assertEquals(1, mapping.fetchCount.get());
+
+        mapping.now = mapping.now.plus(Duration.ofMinutes(5));
+        assertEquals("value-2", mapping.getSecret("s"));
+        assertEquals(2, mapping.fetchCount.get());
+    }
+
+    public void testGetSecret_refreshAhead() throws Exception {
+        var mapping = new FakeSecretsMapping(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        assertEquals("value-1", mapping.getSecret("s"));
+
+        mapping.secretValue = "value-2";
+        mapping.now = mapping.now.plus(Duration.ofMinutes(9));
+        assertEquals("value-1", mapping.getSecret("s"));
+        mapping.waitForRefresh();
+        assertEquals(2, mapping.fetchCount.get());
+        assertEquals("value-2", mapping.getSecret("s"));
+    }
+
+    public void testGetSecret_refreshAheadNotFoundKeepsValue() throws Exception {
+        var mapping = new FakeSecretsMapping(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        assertEquals("value-1", mapping.getSecret("s"));
+
+        mapping.secretValue = null;
+        mapping.now = mapping.now.plus(Duration.ofMinutes(9));
+        assertEquals("value-1", mapping.getSecret("s"));
+        mapping.waitForRefresh();
+        assertEquals("value-1", mapping.getSecret("s"));
+    }
+
+    public void testGetSecret_notFound() throws Exception {
+        var mapping = new FakeSecretsMapping(Duration.ZERO, Duration.ofMinutes(1));
+        mapping.secretValue = null;
+
+        LazyParameterComputationException first = null;
+        try { mapping.getSecret("s"); fail(); }
+        catch (LazyParameterComputationException e) { first = e; }
+        try { mapping.getSecret("s"); fail(); }
+        catch (LazyParameterComputationException e) { assertNotSame(first, e); }
+        assertEquals(1, mapping.fetchCount.get());
+
+        mapping.secretValue = "value-1";
+        mapping.now = mapping.now.plus(Duration.ofMinutes(1));
+        assertEquals("value-1", mapping.getSecret("s"));
+        assertEquals(2, mapping.fetchCount.get());
+    }
+}
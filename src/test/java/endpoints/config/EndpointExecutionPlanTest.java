@@ -0,0 +1,103 @@
+package endpoints.config;
+
+import com.databasesandlife.util.DomParser;
+import com.databasesandlife.util.ThreadPool.SynchronizationPoint;
+import com.databasesandlife.util.gwtsafe.ConfigurationException;
+import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.TransformationContext;
+import endpoints.config.response.ResponseConfiguration;
+import endpoints.task.Task;
+import junit.framework.TestCase;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class EndpointExecutionPlanTest extends TestCase {
+
+    protected static class TestTask extends Task {
+        public final @Nonnull Set<IntermediateValueName> outputs;
+
+        public TestTask(int indexFromZero, @Nonnull String xml, @Nonnull String... outputs) throws ConfigurationException {
+            super(new XsltCompilationThreads(), new File("/"), Map.of(), indexFromZero, DomParser.from(xml));
+            this.outputs = Set.of(Arrays.stream(outputs).map(IntermediateValueName::new).toArray(IntermediateValueName[]::new));
+        }
+
+        @Override public @Nonnull Set<IntermediateValueName> getOutputIntermediateValues() { return outputs; }
+
+        @Override protected void executeThenScheduleSynchronizationPoint(
+            @Nonnull TransformationContext context, @Nonnull SynchronizationPoint workComplete
+        ) { }
+    }
+
+    protected static @Nonnull Endpoint newEndpoint(@Nonnull String successXml, @Nonnull TestTask... tasks) throws Exception {
+        var result = Endpoint.newForTesting();
+        result.success = List.of(new ResponseConfiguration(DomParser.from(successXml)) { });
+        result.tasks.addAll(List.of(tasks));
+        return result;
+    }
+
+    protected static @Nonnull List<Integer> indexes(@Nonnull int[] dependencies) {
+        return Arrays.stream(dependencies).boxed().toList();
+    }
+
+    public void testTopologicalOrder() throws Exception {
+        var a = new TestTask(0, "<task><input-intermediate-value name='b-out'/></task>");
+        var b = new TestTask(1, "<task id='b'><after task-id='c'/></task>", "b-out");
+        var c = new TestTask(2, "<task id='c'/>");
+        var d = new TestTask(3, "<task/>");
+        var endpoint = newEndpoint("<success/>", a, b, c, d);
+        endpoint.createExecutionPlan();
+        var plan = endpoint.getExecutionPlan();
+
+        // Tasks without dependencies keep their order from endpoints.xml, each task comes after those it depends on
+        assertEquals(List.of(c, d, b, a), plan.tasks);
+        assertEquals(List.of(), indexes(plan.taskDependencies[0]));
+        assertEquals(List.of(), indexes(plan.taskDependencies[1]));
+        assertEquals(List.of(0), indexes(plan.taskDependencies[2]));
+        assertEquals(List.of(2), indexes(plan.taskDependencies[3]));
+    }
+
+    public void testSuccessDependencies() throws Exception {
+        var a = new TestTask(0, "<task id='a'/>");
+        var b = new TestTask(1, "<task/>", "b-out");
+        var c = new TestTask(2, "<task><after task-id='a'/></task>");
+        var endpoint = newEndpoint("<success><after task-id='a'/><input-intermediate-value name='b-out'/></success>", a, b, c);
+        endpoint.createExecutionPlan();
+        var plan = endpoint.getExecutionPlan();
+
+        assertEquals(1, plan.successDependencies.length);
+        assertEquals(List.of(0, 1), indexes(plan.successDependencies[0]));
+    }
+
+    public void testUnknownTaskId() throws Exception {
+        var endpoint = newEndpoint("<success/>", new TestTask(0, "<task><after task-id='x'/></task>"));
+        try { endpoint.createExecutionPlan(); fail(); }
+        catch (ConfigurationException e) { assertTrue(e.getMessage(), e.getMessage().contains("<after task-id='x'/>")); }
+
+        endpoint = newEndpoint("<success><after task-id='x'/></success>");
+        try { endpoint.createExecutionPlan(); fail(); }
+        catch (ConfigurationException e) { assertTrue(e.getMessage(), e.getMessage().contains("<after task-id='x'/>")); }
+    }
+
+    public void testUnknownIntermediateValue() throws Exception {
+        var endpoint = newEndpoint("<success/>", new TestTask(0, "<task><input-intermediate-value name='x'/></task>"));
+        try { endpoint.createExecutionPlan(); fail(); }
+        catch (ConfigurationException e) { assertTrue(e.getMessage(), e.getMessage().contains("'x'")); }
+
+        endpoint = newEndpoint("<success><input-intermediate-value name='x'/></success>");
+        try { endpoint.createExecutionPlan(); fail(); }
+        catch (ConfigurationException e) { assertTrue(e.getMessage(), e.getMessage().contains("'x'")); }
+    }
+
+    public void testCircularDependency() throws Exception {
+        var endpoint = newEndpoint("<success/>",
+            new TestTask(0, "<task id='a'><input-intermediate-value name='b-out'/></task>"),
+            new TestTask(1, "<task><after task-id='a'/></task>", "b-out"));
+        try { endpoint.createExecutionPlan(); fail(); }
+        catch (ConfigurationException e) { assertTrue(e.getMessage(), e.getMessage().contains("Circular")); }
+    }
+}
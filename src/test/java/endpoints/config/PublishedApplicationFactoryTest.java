@@ -0,0 +1,125 @@
+package endpoints.config;
+
+import com.databasesandlife.util.gwtsafe.ConfigurationException;
+import com.databasesandlife.util.jdbc.DbTransaction;
+import endpoints.GitRevision;
+import endpoints.PublishEnvironment;
+import endpoints.config.ApplicationFactory.ApplicationConfig;
+import endpoints.config.PublishedApplicationFactory.ApplicationDefn;
+import junit.framework.TestCase;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PublishedApplicationFactoryTest extends TestCase {
+
+    /** Loads applications without Git or the database */
+    protected static class FakePublishedApplicationFactory extends PublishedApplicationFactory {
+        public final @Nonnull Map<ApplicationDefn, GitRevision> published = new HashMap<>();
+        public final @Nonnull List<GitRevision> loaded = new ArrayList<>();
+        public boolean loadFails = false;
+        public @Nonnull Runnable duringFetchApplicationConfig = () -> { };
+        public int applicationConfigFetchCount = 0;
+
+        public FakePublishedApplicationFactory() {
+            super(new File("/tmp"), Duration.ofMillis(10));
+        }
+
+        @Override protected @Nonnull Map<ApplicationDefn, GitRevision> fetchPublishedRevisions() {
+            synchronized (published) { return new HashMap<>(published); }
+        }
+
+        @Override protected @Nonnull Application loadAndCache(@Nonnull ApplicationDefn defn, @Nonnull GitRevision revision)
+        throws ConfigurationException {
+            if (loadFails) throw new ConfigurationException("Invalid application");
+            var application = Application.newForTesting();
+            application.revision = revision;
+            putIntoCache(defn, application);
+            synchronized (loaded) { loaded.add(revision); }
+            return application;
+        }
+
+        @Override protected @Nonnull ApplicationConfig fetchApplicationConfigFromDb(
+            @Nonnull DbTransaction db, @Nonnull ApplicationName applicationName
+        ) {
+            applicationConfigFetchCount++;
+            duringFetchApplicationConfig.run();
+            return new ApplicationConfig(false, false, "fetch " + applicationConfigFetchCount, null);
+        }
+    }
+
+    protected final ApplicationDefn defn = new ApplicationDefn(new ApplicationName("app"), PublishEnvironment.live);
+    protected final GitRevision revision1 = new GitRevision("1111"), revision2 = new GitRevision("2222");
+
+    protected GitRevision getLoadedRevision(@Nonnull PublishedApplicationFactory factory) {
+        return factory.getLoadedApplications().get(0).application().revision;
+    }
+
+    public void testReloadChangedApplications() throws Exception {
+        var factory = new FakePublishedApplicationFactory();
+        factory.loadAndCache(defn, revision1);
+        factory.published.put(defn, revision1);
+
+        factory.reloadChangedApplications();
+        assertEquals(List.of(revision1), factory.loaded);
+
+        factory.published.put(defn, revision2);
+        factory.reloadChangedApplications();
+        assertEquals(List.of(revision1, revision2), factory.loaded);
+        assertEquals(revision2, getLoadedRevision(factory));
+    }
+
+    public void testReloadChangedApplications_invalidKeepsPreviousRevision() throws Exception {
+        var factory = new FakePublishedApplicationFactory();
+        factory.loadAndCache(defn, revision1);
+        factory.published.put(defn, revision2);
+        factory.loadFails = true;
+
+        factory.reloadChangedApplications();
+        assertEquals(revision1, getLoadedRevision(factory));
+    }
+
+    public void testReloadChangedApplications_unpublished() throws Exception {
+        var factory = new FakePublishedApplicationFactory();
+        factory.loadAndCache(defn, revision1);
+
+        factory.reloadChangedApplications();
+        assertEquals(List.of(), factory.getLoadedApplications());
+    }
+
+    public void testStartClose() throws Exception {
+        var factory = new FakePublishedApplicationFactory();
+        factory.loadAndCache(defn, revision1);
+        synchronized (factory.published) { factory.published.put(defn, revision2); }
+
+        factory.start();
+        var poller = factory.poller;
+        for (int i = 0; i < 500 && ! revision2.equals(getLoadedRevision(factory)); i++) Thread.sleep(10);
+        factory.close();
+
+        assertFalse(poller.isAlive());
+        assertEquals(revision2, getLoadedRevision(factory));
+    }
+
+    public void testFetchApplicationConfig() {
+        var factory = new FakePublishedApplicationFactory();
+        assertEquals("fetch 1", factory.fetchApplicationConfig(null, defn.name()).displayName());
+        assertEquals("fetch 1", factory.fetchApplicationConfig(null, defn.name()).displayName());
+
+        factory.invalidateApplicationConfig(defn.name());
+        assertEquals("fetch 2", factory.fetchApplicationConfig(null, defn.name()).displayName());
+
+        // Invalidated while being fetched: might be out of date, so is not cached
+        factory.invalidateApplicationConfig(defn.name());
+        factory.duringFetchApplicationConfig = () -> factory.invalidateApplicationConfig(defn.name());
+        assertEquals("fetch 3", factory.fetchApplicationConfig(null, defn.name()).displayName());
+        factory.duringFetchApplicationConfig = () -> { };
+        assertEquals("fetch 4", factory.fetchApplicationConfig(null, defn.name()).displayName());
+        assertEquals("fetch 4", factory.fetchApplicationConfig(null, defn.name()).displayName());
+    }
+}
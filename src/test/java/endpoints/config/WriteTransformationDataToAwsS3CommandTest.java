@@ -1,10 +1,10 @@
 package endpoints.config;
 
 import com.databasesandlife.util.DomParser;
-import com.databasesandlife.util.ThreadPool;
 import endpoints.DeploymentParameters;
 import endpoints.PublishEnvironment;
 import endpoints.RequestId;
+import endpoints.RequestThreads;
 import junit.framework.TestCase;
 
 import java.util.Map;
@@ -36,7 +36,7 @@ public class WriteTransformationDataToAwsS3CommandTest extends TestCase {
             """;
         var command = new WriteTransformationDataToAwsS3Command(DomParser.from(config));
         var requestId = RequestId.newRandom();
-        var threads = new ThreadPool();
+        var threads = new RequestThreads();
         command.scheduleWriting(threads, PublishEnvironment.live, requestId, new AwsS3Configuration(bucketName), 
             "my-data-source", "application/text", "My text".getBytes(UTF_8));
         threads.execute();
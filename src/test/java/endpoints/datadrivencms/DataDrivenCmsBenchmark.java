@@ -0,0 +1,98 @@
+package endpoints.datadrivencms;
+
+import com.databasesandlife.util.DomParser;
+import endpoints.LazyCachingValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the matching instances of a few thousand data-driven CMS instances via a {@link DataDrivenCmsIndex},
+ * against evaluating the conditions of every instance, which was previously done for every request.
+ *    <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=endpoints.datadrivencms.DataDrivenCmsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataDrivenCmsBenchmark {
+
+    protected static final int countryCount = 50, idCount = 20, instancesPerCountryAndId = 3;
+
+    protected List<DataDrivenCmsFile> files;
+    protected DataDrivenCmsIndex index;
+    protected final Map<String, LazyCachingValue> parameters = Map.of(
+        "country", LazyCachingValue.newFixed("country-17"),
+        "language", LazyCachingValue.newFixed("en"));
+
+    @Setup public void setup() throws Exception {
+        files = new ArrayList<>();
+        for (int c = 0; c < countryCount; c++) {
+            var xml = new StringBuilder("<data-driven-cms>");
+            for (int id = 0; id < idCount; id++) {
+                xml.append("<content id='content-").append(id).append("'>");
+                for (int i = 0; i < instancesPerCountryAndId; i++)
+                    xml.append("<instance priority='").append(i).append("'><condition-folder>")
+                        .append("<condition if='${country}' equals='country-").append(c).append("'/>")
+                        .append("<condition if='${language}' notequals='xx'/>")
+                        .append("</condition-folder><copy><element>").append(c).append("</element></copy></instance>");
+                xml.append("</content>");
+                xml.append("<property id='property-").append(id).append("'>")
+                    .append("<instance priority='1' value='").append(c).append("'><condition-folder>")
+                    .append("<condition if='${country}' equals='country-").append(c).append("'/>")
+                    .append("</condition-folder></instance></property>");
+            }
+            xml.append("</data-driven-cms>");
+            files.add(new DataDrivenCmsFile(DomParser.from(xml.toString())));
+        }
+        index = new DataDrivenCmsIndex("||", files);
+    }
+
+    /** The previous implementation: evaluates the conditions of every instance */
+    protected int evaluateEveryInstance() {
+        var result = 0;
+        for (var file : files) {
+            if ( ! file.globalConditions.evaluate("||", parameters)) continue;
+            for (var content : file.contents) if (content.conditionFolders.evaluate("||", parameters)) result++;
+            for (var property : file.properties) if (property.conditionFolders.evaluate("||", parameters)) result++;
+        }
+        return result;
+    }
+
+    protected int findWithIndex() {
+        var fileMatches = new boolean[files.size()];
+        for (int f = 0; f < files.size(); f++) fileMatches[f] = files.get(f).globalConditions.evaluate("||", parameters);
+
+        var result = 0;
+        for (var instances : index.contents.find("||", parameters, fileMatches).values()) result += instances.size();
+        for (var instances : index.properties.find("||", parameters, fileMatches).values()) result += instances.size();
+        return result;
+    }
+
+    @Benchmark public int findEveryInstance() { return evaluateEveryInstance(); }
+    @Benchmark public int findIndexed() { return findWithIndex(); }
+
+    @Benchmark public Object createDataSourceOutputIndexed() { return index.createDataSourceOutput(parameters); }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DataDrivenCmsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
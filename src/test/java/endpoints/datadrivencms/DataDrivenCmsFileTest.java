@@ -124,4 +124,49 @@ public class DataDrivenCmsFileTest extends TestCase {
         
         assertEquals(expected, stringOutput);
     }
+
+    public void testCreateDataSourceOutput_indexed() throws Exception {
+        var file = """
+            <data-driven-cms>
+                <content id="greeting">
+                    <instance priority="1">
+                        <condition-folder>
+                            <condition if="${country}" equals="de||at"/>
+                        </condition-folder>
+                        <copy><element>hallo</element></copy>
+                    </instance>
+                    <instance priority="1">
+                        <condition-folder>
+                            <condition if="${country}" equals="fr"/>
+                            <condition if="${language}" notequals="de"/>
+                        </condition-folder>
+                        <copy><element>bonjour</element></copy>
+                    </instance>
+                    <instance priority="0">
+                        <copy><element>hello</element></copy>  <!-- not indexed, always evaluated -->
+                    </instance>
+                </content>
+                <property id="currency">
+                    <instance priority="1" value="chf">
+                        <condition-folder><condition if="${country}" equals="ch"/></condition-folder>
+                        <condition-folder><condition if="${country}" equals="li"/></condition-folder>
+                    </instance>
+                </property>
+            </data-driven-cms>
+            """;
+        var index = new DataDrivenCmsIndex("||", List.of(new DataDrivenCmsFile(DomParser.from(file))));
+
+        var at = DomParser.formatXmlPretty(index.createDataSourceOutput(Map.of("country", LazyCachingValue.newFixed("at"),
+            "language", LazyCachingValue.newFixed("de"))));
+        assertTrue(at.contains("hallo"));
+        assertFalse(at.contains("bonjour"));
+        assertTrue(at.contains("hello"));
+        assertFalse(at.contains("chf"));
+
+        var multiple = DomParser.formatXmlPretty(index.createDataSourceOutput(Map.of("country", LazyCachingValue.newFixed("fr||li"),
+            "language", LazyCachingValue.newFixed("fr"))));
+        assertFalse(multiple.contains("hallo"));
+        assertTrue(multiple.contains("bonjour"));
+        assertTrue(multiple.contains("chf"));
+    }
 }
@@ -0,0 +1,123 @@
+package endpoints.datadrivencms;
+
+import com.databasesandlife.util.DomParser;
+import endpoints.LazyCachingValue;
+import junit.framework.TestCase;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+public class DataDrivenCmsIndexTest extends TestCase {
+
+    /** Indexable, and not indexable, conditions, including ones on the same expression and with multiple values */
+    protected static final @Nonnull String[] conditions = {
+        "if='${country}' equals='de'",
+        "if='${country}' equals='at'",
+        "if='${country}' equals='de||at'",
+        "if='${country}' equals='de,ch'",
+        "if='${country}' equals=''",
+        "if='${country}' notequals='de'",
+        "if='${country}' equals='${other}'",
+        "if='${country}' isempty='true'",
+        "if='${language}' equals='en'",
+        "if='${language}' equals='fr||de'",
+        "if='x${country}' equals='xch'",
+        "if='${number}' gt='5'",
+    };
+
+    protected static final @Nonnull Map<String, String[]> parameterValues = Map.of(
+        "country", new String[] { "de", "at", "ch", "", "de||at", "de,ch", "ch||fr", "de,at||ch" },
+        "language", new String[] { "en", "de", "fr", "en||fr" },
+        "number", new String[] { "1", "7", "x", "3||9" },
+        "other", new String[] { "de", "at", "de||ch" });
+
+    protected static @Nonnull String randomConditionFolders(@Nonnull Random random) {
+        var result = new StringBuilder();
+        for (int f = random.nextInt(3); f > 0; f--) {
+            result.append("<condition-folder>");
+            for (int c = 1 + random.nextInt(2); c > 0; c--)
+                result.append("<condition ").append(conditions[random.nextInt(conditions.length)]).append("/>");
+            result.append("</condition-folder>");
+        }
+        return result.toString();
+    }
+
+    protected static @Nonnull DataDrivenCmsFile randomFile(@Nonnull Random random, int fileIndex) throws Exception {
+        var xml = new StringBuilder("<data-driven-cms>");
+        if (random.nextInt(4) == 0) xml.append("<condition ").append(conditions[random.nextInt(conditions.length)]).append("/>");
+        for (int id = random.nextInt(4); id > 0; id--) {
+            xml.append("<content id='content-").append(random.nextInt(4)).append("'>");
+            for (int i = random.nextInt(4); i > 0; i--)
+                xml.append("<instance priority='").append(random.nextInt(3)).append("'>").append(randomConditionFolders(random))
+                    .append("<copy><element>").append(fileIndex).append("</element></copy></instance>");
+            xml.append("</content>");
+            xml.append("<property id='property-").append(random.nextInt(4)).append("'>");
+            for (int i = random.nextInt(4); i > 0; i--)
+                xml.append("<instance priority='").append(random.nextInt(3)).append("' value='").append(fileIndex).append("'>")
+                    .append(randomConditionFolders(random)).append("</instance>");
+            xml.append("</property>");
+        }
+        xml.append("</data-driven-cms>");
+        return new DataDrivenCmsFile(DomParser.from(xml.toString()));
+    }
+
+    /** Evaluates the conditions of every instance, without the index */
+    protected static <T extends DataDrivenCmsInstance> @Nonnull Map<String, List<T>> evaluateEveryInstance(
+        @Nonnull String separator, @Nonnull Map<String, LazyCachingValue> params,
+        @Nonnull List<DataDrivenCmsFile> files, @Nonnull Function<DataDrivenCmsFile, List<T>> itemsExtractor
+    ) {
+        var all = new ArrayList<T>();
+        var matches = new HashMap<T, Boolean>();
+        for (var file : files) {
+            var fileMatches = file.globalConditions.evaluate(separator, params);
+            for (var instance : itemsExtractor.apply(file)) {
+                all.add(instance);
+                matches.put(instance, fileMatches);
+            }
+        }
+        all.sort(Comparator.comparing((T i) -> i.contentId).thenComparing(i -> -i.priority));
+
+        var result = new LinkedHashMap<String, List<T>>();
+        for (var instance : all) {
+            if ( ! matches.get(instance)) continue;
+            var instances = result.computeIfAbsent(instance.contentId, id -> new ArrayList<>());
+            if (instance.conditionFolders.evaluate(separator, params)) instances.add(instance);
+        }
+        return result;
+    }
+
+    public void testFind_sameAsEvaluatingEveryInstance() throws Exception {
+        var random = new Random(42);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            var files = new ArrayList<DataDrivenCmsFile>();
+            for (int f = random.nextInt(5); f > 0; f--) files.add(randomFile(random, files.size()));
+
+            for (var separator : List.of("||", ",")) {
+                var index = new DataDrivenCmsIndex(separator, files);
+                for (int request = 0; request < 20; request++) {
+                    var params = new HashMap<String, LazyCachingValue>();
+                    for (var e : parameterValues.entrySet())
+                        params.put(e.getKey(), LazyCachingValue.newFixed(e.getValue()[random.nextInt(e.getValue().length)]));
+
+                    var fileMatches = new boolean[files.size()];
+                    for (int f = 0; f < files.size(); f++) fileMatches[f] = files.get(f).globalConditions.evaluate(separator, params);
+
+                    var message = "iteration " + iteration + ", separator " + separator + ", request " + request;
+                    assertEquals(message,
+                        List.copyOf(evaluateEveryInstance(separator, params, files, f -> f.contents).entrySet()),
+                        List.copyOf(index.contents.find(separator, params, fileMatches).entrySet()));
+                    assertEquals(message,
+                        List.copyOf(evaluateEveryInstance(separator, params, files, f -> f.properties).entrySet()),
+                        List.copyOf(index.properties.find(separator, params, fileMatches).entrySet()));
+                }
+            }
+        }
+    }
+}
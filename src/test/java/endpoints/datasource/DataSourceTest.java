@@ -0,0 +1,101 @@
+package endpoints.datasource;
+
+import com.databasesandlife.util.DomParser;
+import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.ApplicationTransaction;
+import endpoints.PublishEnvironment;
+import endpoints.Request;
+import endpoints.RequestId;
+import endpoints.RequestThreads;
+import endpoints.TransformationContext;
+import endpoints.TransformationContext.ParameterNotFoundPolicy;
+import endpoints.config.Application;
+import endpoints.config.ApplicationName;
+import endpoints.config.Endpoint;
+import endpoints.config.IntermediateValueName;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DataSourceTest extends TestCase {
+
+    protected final @Nonnull AtomicInteger executions = new AtomicInteger();
+
+    protected @Nonnull DataSource newCountingDataSource() throws Exception {
+        var command = new DataSourceCommand(new XsltCompilationThreads(), new File("."), DomParser.from("<counting/>")) {
+            @Override public @Nonnull DataSourceCommandFetcher scheduleFetch(
+                @Nonnull TransformationContext context, @Nonnull Set<IntermediateValueName> visibleIntermediateValues
+            ) {
+                var result = new DataSourceCommandFetcher() {
+                    @Override protected @Nonnull Element[] populateOrThrow() {
+                        var doc = DomParser.newDocumentBuilder().newDocument();
+                        return new Element[] { doc.createElement("execution-" + executions.incrementAndGet()) };
+                    }
+                };
+                context.threads.addTask(result);
+                return result;
+            }
+        };
+        return new DataSource(List.of(command), List.of());
+    }
+
+    protected static @Nonnull TransformationContext newContext(@Nonnull Application application, @Nonnull ApplicationTransaction tx) {
+        return new TransformationContext(PublishEnvironment.live, ApplicationName.newRandomForTesting(),
+            application, tx, new RequestThreads(), Endpoint.newForTesting(), Map.of(),
+            ParameterNotFoundPolicy.error, RequestId.newRandom(), Request.newForTesting(), Map.of(), Map.of());
+    }
+
+    public void testScheduleExecution_executedOncePerContext() throws Exception {
+        var source = newCountingDataSource();
+        var otherSource = newCountingDataSource();
+
+        var application = Application.newForTesting();
+        try (var tx = new ApplicationTransaction(application)) {
+            var context = newContext(application, tx);
+
+            var outputs = new Object() {
+                public Document first, second, other;
+            };
+            source.scheduleExecution(context, Set.of(), d -> outputs.first = d);
+            source.scheduleExecution(context, Set.of(), d -> outputs.second = d);
+            otherSource.scheduleExecution(context, Set.of(), d -> outputs.other = d);
+            context.threads.execute();
+
+            assertEquals(2, executions.get());
+            assertEquals(DomParser.formatXmlPretty(outputs.first.getDocumentElement()),
+                DomParser.formatXmlPretty(outputs.second.getDocumentElement()));
+            assertNotSame(outputs.first, outputs.second); // Each transformer reads its own document
+            assertFalse(DomParser.formatXmlPretty(outputs.first.getDocumentElement())
+                .equals(DomParser.formatXmlPretty(outputs.other.getDocumentElement())));
+        }
+    }
+
+    public void testScheduleExecution_afterDocumentCreated() throws Exception {
+        var source = newCountingDataSource();
+
+        var application = Application.newForTesting();
+        try (var tx = new ApplicationTransaction(application)) {
+            var context = newContext(application, tx);
+
+            // The first transformer may already be reading the document, so the second cannot be given a copy of it
+            var outputs = new ArrayList<String>();
+            source.scheduleExecution(context, Set.of(), first -> {
+                outputs.add(first.getDocumentElement().getFirstChild().getNodeName());
+                try { source.scheduleExecution(context, Set.of(), second ->
+                    outputs.add(second.getDocumentElement().getFirstChild().getNodeName())); }
+                catch (TransformationFailedException e) { throw new RuntimeException(e); }
+            });
+            context.threads.execute();
+
+            assertEquals(List.of("execution-1", "execution-2"), outputs);
+        }
+    }
+}
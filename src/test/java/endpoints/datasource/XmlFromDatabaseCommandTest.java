@@ -0,0 +1,47 @@
+package endpoints.datasource;
+
+import com.databasesandlife.util.DomParser;
+import com.offerready.xslt.WeaklyCachedXsltTransformer.XsltCompilationThreads;
+import endpoints.DatabaseResultCache.Column;
+import endpoints.DatabaseResultCache.Rows;
+import junit.framework.TestCase;
+import org.w3c.dom.Element;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.List;
+
+public class XmlFromDatabaseCommandTest extends TestCase {
+
+    protected static @Nonnull List<String> columnNames(@Nonnull Element row) {
+        return DomParser.getSubElements(row, "*").stream().map(Element::getTagName).toList();
+    }
+
+    public void testToElements_duplicateColumns() {
+        var rows = new Rows(List.of(
+            List.of(new Column("id", "1"), new Column("name", "a"), new Column("id", "2")),
+            List.of(new Column("id", "3"), new Column("name", null), new Column("id", "4"))));
+        var root = XmlFromDatabaseCommand.toElements("result", rows)[0];
+
+        assertEquals("result", root.getTagName());
+        var rowElements = DomParser.getSubElements(root, "row");
+        assertEquals(2, rowElements.size());
+        assertEquals(List.of("id", "name", "id"), columnNames(rowElements.get(0)));
+        var columns = DomParser.getSubElements(rowElements.get(0), "*");
+        assertEquals("1", columns.get(0).getTextContent());
+        assertEquals("2", columns.get(2).getTextContent());
+        assertEquals("", DomParser.getSubElements(rowElements.get(1), "*").get(1).getTextContent());
+    }
+
+    public void testQuery_duplicateColumns() throws Exception {
+        var config = DomParser.from("<xml-from-database>" +
+            "<jdbc-connection-string from-environment-variable='ENDPOINTS_JDBC_URL'/>" +
+            "<sql>SELECT 1 AS id, 'a' AS name, 2 AS id</sql>" +
+            "</xml-from-database>");
+        var command = new XmlFromDatabaseCommand(new XsltCompilationThreads(), new File("."), config);
+
+        var rows = command.query(new Object[0]).rows();
+        assertEquals(1, rows.size());
+        assertEquals(List.of("id", "name", "id"), rows.get(0).stream().map(Column::name).toList());
+    }
+}